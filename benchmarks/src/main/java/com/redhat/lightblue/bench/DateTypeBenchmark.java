@@ -0,0 +1,82 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.metadata.types.DateType;
+
+/**
+ * Date parsing and formatting by DateType, compared to a cloned
+ * DateFormat, under concurrent load
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class DateTypeBenchmark {
+
+    private Date date;
+    private String text;
+
+    @Setup
+    public void setup() {
+        date = new Date(1400000000123L);
+        text = DateType.formatDate(date);
+    }
+
+    @Benchmark
+    public String format() {
+        return DateType.formatDate(date);
+    }
+
+    @Benchmark
+    public Date parse() throws ParseException {
+        return DateType.parseDate(text);
+    }
+
+    @Benchmark
+    public String formatClonedDateFormat() {
+        return DateType.getDateFormat().format(date);
+    }
+
+    @Benchmark
+    public Date parseClonedDateFormat() throws ParseException {
+        DateFormat fmt = DateType.getDateFormat();
+        return fmt.parse(text);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
+import com.redhat.lightblue.crud.validator.EmptyEntityConstraintValidators;
+import com.redhat.lightblue.mediator.Mediator;
+import com.redhat.lightblue.metadata.AbstractGetMetadata;
+import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.metadata.parser.Extensions;
+import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
+import com.redhat.lightblue.metadata.parser.StreamingJSONMetadataParser;
+import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.test.crud.InMemoryCRUDController;
+import com.redhat.lightblue.test.metadata.FakeMetadata;
+import com.redhat.lightblue.test.metadata.parser.FakeDataStoreParser;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
+
+/**
+ * Benchmark fixtures. Metadata and documents are the ones used by the
+ * crud unit tests, copied into the benchmark jar by the build. Larger
+ * document sets are generated from the sample document.
+ */
+public final class Fixtures {
+
+    public static final JsonNodeFactory NODE_FACTORY = JsonNodeFactory.withExactBigDecimals(true);
+
+    public static final String BACKEND = "mongo";
+
+    public static final String SAMPLE_METADATA = "testMetadata.json";
+    public static final String SAMPLE_DOC = "sample1.json";
+    public static final String USER_METADATA = "usermd.json";
+    public static final String USER_DOC = "userdata.json";
+
+    /**
+     * The entities in the composite/ resources. A refers to B and C, C
+     * refers to D.
+     */
+    public static final String[] COMPOSITE_ENTITIES = {"A", "B", "C", "D"};
+    public static final String COMPOSITE_VERSION = "1.0.0";
+
+    /**
+     * Loads a JSON resource
+     */
+    public static JsonNode json(String resource) {
+        try {
+            return AbstractJsonNodeTest.loadJsonNode(resource);
+        } catch (IOException e) {
+            throw new IllegalStateException(resource, e);
+        }
+    }
+
+    /**
+     * Loads a resource as a string
+     */
+    public static String text(String resource) {
+        try {
+            return AbstractJsonNodeTest.loadResource(resource);
+        } catch (IOException e) {
+            throw new IllegalStateException(resource, e);
+        }
+    }
+
+    /**
+     * Parses a JSON string, where ' is used in place of "
+     */
+    public static JsonNode quoted(String s) {
+        try {
+            return JsonUtils.json(s.replace('\'', '\"'));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(s, e);
+        }
+    }
+
+    public static QueryExpression query(String s) {
+        return QueryExpression.fromJson(quoted(s));
+    }
+
+    public static Projection projection(String s) {
+        return Projection.fromJson(quoted(s));
+    }
+
+    public static UpdateExpression update(String s) {
+        return UpdateExpression.fromJson(quoted(s));
+    }
+
+    public static Extensions<JsonNode> extensions() {
+        Extensions<JsonNode> extensions = new Extensions<>();
+        extensions.addDefaultExtensions();
+        extensions.registerDataStoreParser(BACKEND, new FakeDataStoreParser<JsonNode>(BACKEND));
+        return extensions;
+    }
+
+    public static JSONMetadataParser parser() {
+        return new JSONMetadataParser(extensions(), new DefaultTypes(), NODE_FACTORY);
+    }
+
+    public static StreamingJSONMetadataParser streamingParser() {
+        return new StreamingJSONMetadataParser(extensions(), new DefaultTypes(), NODE_FACTORY);
+    }
+
+    /**
+     * Parses the metadata resource, and adds the predefined fields
+     */
+    public static EntityMetadata metadata(String resource) {
+        EntityMetadata md = parser().parseEntityMetadata(json(resource));
+        PredefinedFields.ensurePredefinedFields(md);
+        return md;
+    }
+
+    /**
+     * Returns the composite metadata of the entity in the composite/
+     * resources, with the references included by the projection and the
+     * query resolved
+     */
+    public static CompositeMetadata compositeMetadata(String entity, Projection p, QueryExpression q) {
+        final Map<String, EntityMetadata> entities = new HashMap<>();
+        AbstractGetMetadata gmd = new AbstractGetMetadata(p, q) {
+            @Override
+            protected EntityMetadata retrieveMetadata(Path injectionField, String entityName, String version) {
+                EntityMetadata md = entities.get(entityName);
+                if (md == null) {
+                    md = parser().parseEntityMetadata(json("composite/" + entityName + ".json"));
+                    entities.put(entityName, md);
+                }
+                return md;
+            }
+        };
+        return CompositeMetadata.buildCompositeMetadata(parser().parseEntityMetadata(json("composite/" + entity + ".json")), gmd);
+    }
+
+    /**
+     * Returns a mediator for the composite/ entities, with their
+     * documents loaded into the controller
+     */
+    public static Mediator compositeMediator(InMemoryCRUDController controller) {
+        FakeMetadata metadata = new FakeMetadata();
+        for (String entity : COMPOSITE_ENTITIES) {
+            EntityMetadata md = parser().parseEntityMetadata(json("composite/" + entity + ".json"));
+            PredefinedFields.ensurePredefinedFields(md);
+            metadata.setEntityInfo(md.getEntityInfo());
+            metadata.setEntityMetadata(entity, md.getVersion().getValue(), md);
+            List<JsonDoc> docs = new ArrayList<>();
+            for (JsonNode doc : json("composite/" + entity + "_data.json")) {
+                docs.add(new JsonDoc(doc));
+            }
+            controller.load(md, docs);
+        }
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
+        factory.addCRUDController(BACKEND, controller);
+        return new Mediator(metadata, factory);
+    }
+
+    /**
+     * Returns the sample document
+     */
+    public static JsonDoc document() {
+        return new JsonDoc(json(SAMPLE_DOC));
+    }
+
+    /**
+     * Generates n documents from the sample document. Each document has
+     * different values for field1, field3, field4, and field7 has
+     * arraySize elements.
+     */
+    public static List<JsonDoc> documents(int n, int arraySize) {
+        JsonNode sample = json(SAMPLE_DOC);
+        ObjectNode element = (ObjectNode) sample.get("field7").get(0);
+        List<JsonDoc> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ObjectNode doc = (ObjectNode) sample.deepCopy();
+            doc.put("field1", "value" + i);
+            doc.put("field3", i);
+            doc.put("field4", i * 1.5);
+            ArrayNode arr = NODE_FACTORY.arrayNode();
+            for (int j = 0; j < arraySize; j++) {
+                ObjectNode e = element.deepCopy();
+                e.put("elemf1", "elvalue" + j + "_" + i);
+                e.put("elemf3", j);
+                arr.add(e);
+            }
+            doc.set("field7", arr);
+            list.add(new JsonDoc(doc));
+        }
+        return list;
+    }
+
+    private Fixtures() {
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonNodeCursor;
+import com.redhat.lightblue.util.KeyValueCursor;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * JsonDoc access, modification, and cursors on the sample document
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonDocBenchmark {
+
+    private JsonDoc doc;
+    private Path simple;
+    private Path indexed;
+    private Path any;
+    private Path relative;
+    private Path target;
+    private Path newPath;
+    private int value;
+
+    @Setup
+    public void setup() {
+        doc = Fixtures.document();
+        simple = new Path("field6.nf7.nnf1");
+        indexed = new Path("field7.2.elemf1");
+        any = new Path("field7.*.elemf1");
+        relative = new Path("field6.nf7.$parent.nf1");
+        target = new Path("field6.nf7.nnf2");
+        newPath = new Path("field6.nf12.x");
+    }
+
+    @Benchmark
+    public JsonNode getSimple() {
+        return doc.get(simple);
+    }
+
+    @Benchmark
+    public JsonNode getIndexed() {
+        return doc.get(indexed);
+    }
+
+    @Benchmark
+    public JsonNode getRelative() {
+        return doc.get(relative);
+    }
+
+    @Benchmark
+    public int getAllNodes() {
+        int n = 0;
+        for (KeyValueCursor<Path, JsonNode> c = doc.getAllNodes(any); c.hasNext();) {
+            c.next();
+            n++;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public JsonNode modify() {
+        return doc.modify(target, Fixtures.NODE_FACTORY.numberNode(value++), false);
+    }
+
+    @Benchmark
+    public JsonDoc copyAndModifyCreatePath() {
+        JsonDoc copy = doc.copy();
+        copy.modify(newPath, Fixtures.NODE_FACTORY.textNode("x"), true);
+        return copy;
+    }
+
+    @Benchmark
+    public JsonDoc copy() {
+        return doc.copy();
+    }
+
+    @Benchmark
+    public int cursor() {
+        int n = 0;
+        for (JsonNodeCursor c = doc.cursor(); c.next();) {
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+/**
+ * A log-linear histogram of latencies in nanoseconds. Each power of two
+ * range is divided into 64 buckets, so a recorded value is reported
+ * with less than 1.6% error. Recording does not allocate. This class
+ * is not thread safe: each thread records into its own histogram, and
+ * the histograms are merged when the run completes.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    public void record(long nanos) {
+        long v = nanos < 0 ? 0 : nanos;
+        counts[index(v)]++;
+        count++;
+        sum += v;
+        if (v > max) {
+            max = v;
+        }
+    }
+
+    public void merge(LatencyHistogram h) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += h.counts[i];
+        }
+        count += h.count;
+        sum += h.sum;
+        if (h.max > max) {
+            max = h.max;
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the value at the percentile, between 0 and 100. The value
+     * is the upper bound of the bucket containing the percentile, capped
+     * by the maximum recorded value.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            n += counts[i];
+            if (n >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Values below 128 have their own bucket. Above that, the bucket is
+     * given by the position of the highest bit, and the next SUB_BITS
+     * bits.
+     */
+    static int index(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (v >>> shift) - SUB_BUCKETS;
+    }
+
+    static long upperBound(int index) {
+        int region = index / SUB_BUCKETS;
+        if (region == 0) {
+            return index;
+        }
+        int shift = region - 1;
+        long sub = SUB_BUCKETS + index % SUB_BUCKETS;
+        long bound = ((sub + 1) << shift) - 1;
+        return bound < 0 ? Long.MAX_VALUE : bound;
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.EntityVersion;
+import com.redhat.lightblue.OperationStatus;
+import com.redhat.lightblue.Response;
+import com.redhat.lightblue.crud.DeleteRequest;
+import com.redhat.lightblue.crud.FindRequest;
+import com.redhat.lightblue.crud.InsertionRequest;
+import com.redhat.lightblue.crud.SaveRequest;
+import com.redhat.lightblue.crud.UpdateRequest;
+import com.redhat.lightblue.mediator.Mediator;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.test.AllocationMeter;
+import com.redhat.lightblue.test.crud.InMemoryCRUDController;
+
+/**
+ * Concurrent load test of the mediator. A number of threads send a
+ * weighted mix of insert, save, update, delete, find and composite find
+ * requests for the composite/ entities, stored in the in-memory CRUD
+ * controller, for a fixed duration after a warmup period.
+ *
+ * For each operation, the result gives the throughput, latency
+ * percentiles, and bytes allocated per request, as JSON. Allocation is
+ * measured with AllocationMeter, and is reported as -1 if it is not
+ * available.
+ *
+ * Usage:
+ * <pre>
+ *   java -cp benchmarks.jar com.redhat.lightblue.bench.LoadTest [name=value ...]
+ * </pre>
+ * Options:
+ * <ul>
+ * <li>threads: Number of threads, default 8</li>
+ * <li>duration: Measured duration, in seconds, default 30</li>
+ * <li>warmup: Warmup duration, in seconds, default 5</li>
+ * <li>mix: Operation weights, default
+ * insert=1,save=1,update=2,delete=1,find=10,compositeFind=5</li>
+ * <li>latency: Simulated controller latency, in milliseconds, default 0</li>
+ * <li>failureRate: Simulated controller failure rate, default 0</li>
+ * <li>seed: Random seed, default 0</li>
+ * <li>out: Output file, default standard output</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    public enum Op {
+        INSERT("insert"),
+        SAVE("save"),
+        UPDATE("update"),
+        DELETE("delete"),
+        FIND("find"),
+        COMPOSITE_FIND("compositeFind");
+
+        private final String key;
+
+        private Op(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public static Op fromKey(String key) {
+            for (Op op : values()) {
+                if (op.key.equals(key)) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation:" + key);
+        }
+    }
+
+    public static final String DEFAULT_MIX = "insert=1,save=1,update=2,delete=1,find=10,compositeFind=5";
+
+    private static final String ENTITY = "A";
+
+    private int threads = 8;
+    private long duration = 30;
+    private long warmup = 5;
+    private long latency = 0;
+    private double failureRate = 0;
+    private long seed = 0;
+    private String out;
+    private final Map<Op, Integer> mix = new EnumMap<>(Op.class);
+
+    private Mediator mediator;
+    private final List<String> ids = new ArrayList<>();
+    private Projection findProjection;
+    private Projection compositeProjection;
+    private Projection idProjection;
+
+    /**
+     * Statistics of an operation for a thread
+     */
+    private static final class OpStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long errors;
+        private long allocated;
+
+        public void merge(OpStats s) {
+            latency.merge(s.latency);
+            errors += s.errors;
+            allocated += s.allocated;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final int id;
+        private final Random random;
+        private final Map<Op, OpStats> stats = new EnumMap<>(Op.class);
+        private final ArrayDeque<String> inserted = new ArrayDeque<>();
+        private final Op[] ops;
+        private final int[] weights;
+        private final int totalWeight;
+        private final long measureStart;
+        private final long end;
+        private long n = 0;
+
+        public Worker(int id, long measureStart, long end) {
+            this.id = id;
+            this.random = new Random(seed + id);
+            this.measureStart = measureStart;
+            this.end = end;
+            ops = mix.keySet().toArray(new Op[mix.size()]);
+            weights = new int[ops.length];
+            int w = 0;
+            for (int i = 0; i < ops.length; i++) {
+                w += mix.get(ops[i]);
+                weights[i] = w;
+                stats.put(ops[i], new OpStats());
+            }
+            totalWeight = w;
+        }
+
+        @Override
+        public void run() {
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                Op op = choose();
+                long a0 = AllocationMeter.getAllocatedBytes();
+                boolean ok;
+                try {
+                    ok = execute(op);
+                } catch (RuntimeException e) {
+                    ok = false;
+                }
+                long t = System.nanoTime() - now;
+                long a = AllocationMeter.getAllocatedBytes() - a0;
+                if (now >= measureStart) {
+                    OpStats s = stats.get(op);
+                    s.latency.record(t);
+                    s.allocated += a;
+                    if (!ok) {
+                        s.errors++;
+                    }
+                }
+            }
+        }
+
+        private Op choose() {
+            int x = random.nextInt(totalWeight);
+            for (int i = 0; i < weights.length; i++) {
+                if (x < weights[i]) {
+                    return ops[i];
+                }
+            }
+            return ops[ops.length - 1];
+        }
+
+        private boolean execute(Op op) {
+            Response response;
+            switch (op) {
+                case INSERT:
+                    response = insert();
+                    break;
+                case SAVE:
+                    response = save();
+                    break;
+                case UPDATE:
+                    response = update();
+                    break;
+                case DELETE:
+                    response = delete();
+                    break;
+                case FIND:
+                    response = find(findProjection);
+                    break;
+                default:
+                    response = find(compositeProjection);
+                    break;
+            }
+            return response.getStatus() != OperationStatus.ERROR;
+        }
+
+        private String randomId() {
+            return ids.get(random.nextInt(ids.size()));
+        }
+
+        private JsonNode newDoc(String docId) {
+            return Fixtures.quoted("{'_id':'" + docId + "','objectType':'" + ENTITY + "','field1':'v" + random.nextInt()
+                    + "','obj1':{'field1':'o','c_ref':'C0" + (1 + random.nextInt(9)) + "'},'b_ref':'B0" + (1 + random.nextInt(9)) + "'}");
+        }
+
+        private Response insert() {
+            String docId = "L" + id + "-" + (n++);
+            InsertionRequest req = new InsertionRequest();
+            req.setEntityVersion(new EntityVersion(ENTITY, Fixtures.COMPOSITE_VERSION));
+            req.setEntityData(newDoc(docId));
+            req.setReturnFields(idProjection);
+            Response response = mediator.insert(req);
+            if (response.getStatus() != OperationStatus.ERROR) {
+                inserted.addLast(docId);
+            }
+            return response;
+        }
+
+        private Response save() {
+            String docId = inserted.isEmpty() ? "L" + id + "-" + (n++) : inserted.peekLast();
+            SaveRequest req = new SaveRequest();
+            req.setEntityVersion(new EntityVersion(ENTITY, Fixtures.COMPOSITE_VERSION));
+            req.setEntityData(newDoc(docId));
+            req.setReturnFields(idProjection);
+            req.setUpsert(true);
+            Response response = mediator.save(req);
+            if (inserted.isEmpty() && response.getStatus() != OperationStatus.ERROR) {
+                inserted.addLast(docId);
+            }
+            return response;
+        }
+
+        private Response update() {
+            UpdateRequest req = new UpdateRequest();
+            req.setEntityVersion(new EntityVersion(ENTITY, Fixtures.COMPOSITE_VERSION));
+            req.setQuery(Fixtures.query("{'field':'_id','op':'=','rvalue':'" + randomId() + "'}"));
+            req.setUpdateExpression(Fixtures.update("{'$set':{'field1':'u" + random.nextInt() + "'}}"));
+            return mediator.update(req);
+        }
+
+        private Response delete() {
+            String docId = inserted.isEmpty() ? "L" + id + "-none" : inserted.pollFirst();
+            DeleteRequest req = new DeleteRequest();
+            req.setEntityVersion(new EntityVersion(ENTITY, Fixtures.COMPOSITE_VERSION));
+            req.setQuery(Fixtures.query("{'field':'_id','op':'=','rvalue':'" + docId + "'}"));
+            return mediator.delete(req);
+        }
+
+        private Response find(Projection projection) {
+            FindRequest req = new FindRequest();
+            req.setEntityVersion(new EntityVersion(ENTITY, Fixtures.COMPOSITE_VERSION));
+            req.setQuery(Fixtures.query("{'field':'_id','op':'=','rvalue':'" + randomId() + "'}"));
+            req.setProjection(projection);
+            return mediator.find(req);
+        }
+    }
+
+    /**
+     * Sets an option
+     *
+     * @throws IllegalArgumentException if the option or its value is
+     * invalid
+     */
+    public void setOption(String name, String value) {
+        switch (name) {
+            case "threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "duration":
+                duration = Long.parseLong(value);
+                break;
+            case "warmup":
+                warmup = Long.parseLong(value);
+                break;
+            case "mix":
+                setMix(value);
+                break;
+            case "latency":
+                latency = Long.parseLong(value);
+                break;
+            case "failureRate":
+                failureRate = Double.parseDouble(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "out":
+                out = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option:" + name);
+        }
+    }
+
+    private void setMix(String value) {
+        mix.clear();
+        for (String x : value.split(",")) {
+            int eq = x.indexOf('=');
+            if (eq == -1) {
+                throw new IllegalArgumentException("Invalid mix:" + value);
+            }
+            int weight = Integer.parseInt(x.substring(eq + 1).trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Invalid mix:" + value);
+            }
+            if (weight > 0) {
+                mix.put(Op.fromKey(x.substring(0, eq).trim()), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("Empty mix");
+        }
+    }
+
+    private void setup() {
+        if (mix.isEmpty()) {
+            setMix(DEFAULT_MIX);
+        }
+        InMemoryCRUDController controller = new InMemoryCRUDController();
+        controller.setRandomSeed(seed);
+        mediator = Fixtures.compositeMediator(controller);
+        controller.setLatency(latency, latency);
+        controller.setFailureRate(failureRate);
+        for (JsonNode doc : Fixtures.json("composite/" + ENTITY + "_data.json")) {
+            ids.add(doc.get("_id").asText());
+        }
+        findProjection = Fixtures.projection("{'field':'*','recursive':1}");
+        compositeProjection = Fixtures.projection("[{'field':'*','recursive':1},{'field':'b'},{'field':'obj1.c'}]");
+        idProjection = Fixtures.projection("{'field':'_id'}");
+    }
+
+    /**
+     * Runs the load test, and returns the result
+     */
+    public ObjectNode run() throws InterruptedException {
+        setup();
+        long start = System.nanoTime();
+        long measureStart = start + warmup * 1000000000l;
+        long end = measureStart + duration * 1000000000l;
+        List<Worker> workers = new ArrayList<>(threads);
+        List<Thread> workerThreads = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Worker w = new Worker(i, measureStart, end);
+            Thread t = new Thread(w, "load-" + i);
+            workers.add(w);
+            workerThreads.add(t);
+            t.start();
+        }
+        for (Thread t : workerThreads) {
+            t.join();
+        }
+
+        Map<Op, OpStats> stats = new EnumMap<>(Op.class);
+        OpStats total = new OpStats();
+        for (Op op : mix.keySet()) {
+            OpStats s = new OpStats();
+            for (Worker w : workers) {
+                s.merge(w.stats.get(op));
+            }
+            stats.put(op, s);
+            total.merge(s);
+        }
+
+        ObjectNode result = Fixtures.NODE_FACTORY.objectNode();
+        result.put("threads", threads);
+        result.put("durationSeconds", duration);
+        result.put("warmupSeconds", warmup);
+        result.put("latencyMillis", latency);
+        result.put("failureRate", failureRate);
+        ObjectNode mixNode = result.putObject("mix");
+        for (Map.Entry<Op, Integer> entry : mix.entrySet()) {
+            mixNode.put(entry.getKey().getKey(), entry.getValue());
+        }
+        ObjectNode ops = result.putObject("operations");
+        for (Map.Entry<Op, OpStats> entry : stats.entrySet()) {
+            ops.set(entry.getKey().getKey(), toJson(entry.getValue()));
+        }
+        ObjectNode totalNode = toJson(total);
+        if (AllocationMeter.isSupported()) {
+            totalNode.put("allocatedBytesPerSecond", total.allocated / duration);
+        }
+        result.set("total", totalNode);
+        return result;
+    }
+
+    private ObjectNode toJson(OpStats s) {
+        ObjectNode node = Fixtures.NODE_FACTORY.objectNode();
+        long count = s.latency.getCount();
+        node.put("count", count);
+        node.put("errors", s.errors);
+        node.put("throughput", (double) count / duration);
+        ObjectNode lat = node.putObject("latencyMicros");
+        lat.put("mean", s.latency.getMean() / 1000.0);
+        lat.put("p50", s.latency.getValueAtPercentile(50) / 1000.0);
+        lat.put("p99", s.latency.getValueAtPercentile(99) / 1000.0);
+        lat.put("p999", s.latency.getValueAtPercentile(99.9) / 1000.0);
+        lat.put("max", s.latency.getMax() / 1000.0);
+        node.put("allocatedBytesPerOp", AllocationMeter.isSupported() ? (count == 0 ? 0 : s.allocated / count) : -1);
+        return node;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadTest test = new LoadTest();
+        try {
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq == -1) {
+                    throw new IllegalArgumentException("Expected name=value:" + arg);
+                }
+                test.setOption(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadTest [threads=n] [duration=seconds] [warmup=seconds] [mix=" + DEFAULT_MIX
+                    + "] [latency=millis] [failureRate=rate] [seed=n] [out=file]");
+            System.exit(1);
+        }
+        ObjectNode result = test.run();
+        ObjectMapper mapper = new ObjectMapper();
+        if (test.out == null) {
+            System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+        } else {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(new File(test.out), result);
+        }
+    }
+}
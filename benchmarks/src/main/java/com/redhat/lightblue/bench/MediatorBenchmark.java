@@ -0,0 +1,112 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.EntityVersion;
+import com.redhat.lightblue.OperationStatus;
+import com.redhat.lightblue.Response;
+import com.redhat.lightblue.crud.FindRequest;
+import com.redhat.lightblue.crud.UpdateRequest;
+import com.redhat.lightblue.mediator.Mediator;
+import com.redhat.lightblue.test.crud.InMemoryCRUDController;
+
+/**
+ * End-to-end mediator requests on the composite/ entities A, B, C, D,
+ * stored in the in-memory CRUD controller. The latency parameter adds a
+ * simulated back end latency to each controller call, so composite
+ * finds show the cost of their controller round trips.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediatorBenchmark {
+
+    @Param({"0", "1"})
+    public int latency;
+
+    private Mediator mediator;
+    private FindRequest findSimple;
+    private FindRequest findComposite;
+    private UpdateRequest update;
+
+    @Setup
+    public void setup() {
+        InMemoryCRUDController controller = new InMemoryCRUDController();
+        controller.setRandomSeed(0);
+        mediator = Fixtures.compositeMediator(controller);
+        controller.setLatency(latency, latency);
+
+        findSimple = new FindRequest();
+        findSimple.setEntityVersion(new EntityVersion("A", Fixtures.COMPOSITE_VERSION));
+        findSimple.setQuery(Fixtures.query("{'field':'_id','op':'=','rvalue':'A01'}"));
+        findSimple.setProjection(Fixtures.projection("{'field':'*','recursive':1}"));
+
+        findComposite = new FindRequest();
+        findComposite.setEntityVersion(new EntityVersion("A", Fixtures.COMPOSITE_VERSION));
+        findComposite.setQuery(Fixtures.query("{'field':'_id','op':'=','rvalue':'A01'}"));
+        findComposite.setProjection(Fixtures.projection("[{'field':'*','recursive':1},{'field':'b'},{'field':'obj1.c'}]"));
+
+        update = new UpdateRequest();
+        update.setEntityVersion(new EntityVersion("A", Fixtures.COMPOSITE_VERSION));
+        update.setQuery(Fixtures.query("{'field':'_id','op':'=','rvalue':'A01'}"));
+        update.setUpdateExpression(Fixtures.update("{'$set':{'field1':'x'}}"));
+
+        check(mediator.find(findSimple));
+        check(mediator.find(findComposite));
+        check(mediator.update(update));
+    }
+
+    private static void check(Response response) {
+        if (response.getStatus() != OperationStatus.COMPLETE) {
+            throw new IllegalStateException(response.getErrors().toString());
+        }
+    }
+
+    @Benchmark
+    public Response findSimple() {
+        return mediator.find(findSimple);
+    }
+
+    @Benchmark
+    public Response findComposite() {
+        return mediator.find(findComposite);
+    }
+
+    @Benchmark
+    public Response update() {
+        return mediator.update(update);
+    }
+}
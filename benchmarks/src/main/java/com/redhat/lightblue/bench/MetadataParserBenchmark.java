@@ -0,0 +1,97 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
+import com.redhat.lightblue.metadata.parser.StreamingJSONMetadataParser;
+import com.redhat.lightblue.util.JsonCodec;
+
+/**
+ * Metadata parsing from a JSON tree, from text through a JSON tree, and
+ * from text with the streaming parser; and metadata conversion to JSON
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataParserBenchmark {
+
+    @Param({"testMetadata.json", "usermd.json", "composite/A.json"})
+    public String metadata;
+
+    private JSONMetadataParser parser;
+    private StreamingJSONMetadataParser streamingParser;
+    private JsonNode tree;
+    private byte[] text;
+    private EntityMetadata md;
+
+    @Setup
+    public void setup() {
+        parser = Fixtures.parser();
+        streamingParser = Fixtures.streamingParser();
+        tree = Fixtures.json(metadata);
+        text = Fixtures.text(metadata).getBytes(StandardCharsets.UTF_8);
+        md = parser.parseEntityMetadata(tree);
+    }
+
+    @Benchmark
+    public EntityMetadata parseTree() {
+        return parser.parseEntityMetadata(tree);
+    }
+
+    @Benchmark
+    public EntityMetadata parseText() {
+        return parser.parseEntityMetadata(new ByteArrayInputStream(text), JsonCodec.TEXT);
+    }
+
+    @Benchmark
+    public EntityMetadata parseTextStreaming() throws IOException {
+        try (JsonParser p = JsonCodec.TEXT.createParser(new ByteArrayInputStream(text))) {
+            return streamingParser.parseEntityMetadata(p);
+        }
+    }
+
+    @Benchmark
+    public JsonNode convert() {
+        return parser.convert(md);
+    }
+}
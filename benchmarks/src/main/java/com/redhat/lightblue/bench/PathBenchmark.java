@@ -0,0 +1,120 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.util.MutablePath;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Path parsing, matching, and manipulation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+
+    private static final String PATH = "field8.nf1.nnf4.2.elemf1";
+
+    /**
+     * More distinct strings than the parse cache holds, so parsing them
+     * in turn always misses the cache
+     */
+    private static final int N_UNCACHED = Path.PARSE_CACHE_SIZE * 2;
+
+    private String[] uncached;
+    private int next;
+    private Path path;
+    private Path equalPath;
+    private Path pattern;
+    private Path prefix;
+
+    @Setup
+    public void setup() {
+        uncached = new String[N_UNCACHED];
+        for (int i = 0; i < N_UNCACHED; i++) {
+            uncached[i] = "field8.nf1.nnf4." + i + ".elemf1";
+        }
+        path = new Path(PATH);
+        equalPath = new MutablePath(path).immutableCopy();
+        pattern = new Path("field8.*.nnf4.*.elemf1");
+        prefix = new Path("field8.nf1");
+    }
+
+    @Benchmark
+    public Path parseCached() {
+        return new Path(PATH);
+    }
+
+    @Benchmark
+    public Path parseUncached() {
+        next = (next + 1) % N_UNCACHED;
+        return new Path(uncached[next]);
+    }
+
+    @Benchmark
+    public boolean matchesPattern() {
+        return path.matches(pattern);
+    }
+
+    @Benchmark
+    public boolean matchesLiteral() {
+        return path.matches(equalPath);
+    }
+
+    @Benchmark
+    public boolean equalsPath() {
+        return path.equals(equalPath);
+    }
+
+    @Benchmark
+    public Path prefixSuffix() {
+        return path.prefix(-1).suffix(-1);
+    }
+
+    @Benchmark
+    public Path mutablePath() {
+        MutablePath p = new MutablePath(prefix);
+        p.push("nnf4");
+        p.push(2);
+        p.push("elemf1");
+        p.setLast("elemf2");
+        return p.immutableCopy();
+    }
+
+    @Benchmark
+    public String pathToString() {
+        return new MutablePath(path).toString();
+    }
+}
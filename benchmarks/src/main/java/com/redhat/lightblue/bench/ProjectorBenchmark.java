@@ -0,0 +1,78 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * Projection of the sample document with each projection type
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectorBenchmark {
+
+    private static final Map<String, String> PROJECTIONS = new HashMap<>();
+
+    static {
+        PROJECTIONS.put("field", "{'field':'field6.nf7.nnf1','include':1}");
+        PROJECTIONS.put("recursive", "{'field':'*','include':1,'recursive':1}");
+        PROJECTIONS.put("list", "[{'field':'field1','include':1},{'field':'field6.*','include':1},{'field':'field7.*.elemf1','include':1}]");
+        PROJECTIONS.put("arrayRange", "{'field':'field7','range':[1,2],'project':{'field':'elemf3'}}");
+        PROJECTIONS.put("arrayQuery", "{'field':'field7','match':{'field':'elemf3','op':'>','rvalue':4},'project':{'field':'*'}}");
+    }
+
+    @Param({"field", "recursive", "list", "arrayRange", "arrayQuery"})
+    public String projection;
+
+    private JsonDoc doc;
+    private Projector projector;
+
+    @Setup
+    public void setup() {
+        doc = Fixtures.document();
+        projector = Projector.getInstance(Fixtures.projection(PROJECTIONS.get(projection)),
+                Fixtures.metadata(Fixtures.SAMPLE_METADATA));
+    }
+
+    @Benchmark
+    public JsonDoc project() {
+        return projector.project(doc, Fixtures.NODE_FACTORY);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.eval.QueryEvaluator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * Evaluation of each query type on the sample document
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryEvaluatorBenchmark {
+
+    private static final Map<String, String> QUERIES = new HashMap<>();
+
+    static {
+        QUERIES.put("value", "{'field':'field4','op':'>','rvalue':3.5}");
+        QUERIES.put("field", "{'field':'field4','op':'>','rfield':'field3'}");
+        QUERIES.put("regex", "{'field':'field1','regex':'Val.*','caseInsensitive':1}");
+        QUERIES.put("in", "{'field':'field6.nf1','op':'$in','values':['blah','yada','nvalue1']}");
+        QUERIES.put("and", "{'$and':[{'field':'field4','op':'>','rvalue':3.5},{'field':'field6.nf1','op':'>','rvalue':'nvalue0'}]}");
+        QUERIES.put("or", "{'$or':[{'field':'field1','regex':'Val.*'},{'field':'field3','op':'$eq','rvalue':4}]}");
+        QUERIES.put("not", "{'$not':{'$and':[{'field':'field1','regex':'Val.*','caseInsensitive':1},{'field':'field3','op':'$eq','rvalue':3}]}}");
+        QUERIES.put("arrayContains", "{'array':'field6.nf6','contains':'$all','values':['one','two']}");
+        QUERIES.put("arrayMatch", "{'array':'field7','elemMatch':{'field':'elemf3','op':'>','rvalue':4}}");
+    }
+
+    @Param({"value", "field", "regex", "in", "and", "or", "not", "arrayContains", "arrayMatch"})
+    public String query;
+
+    private EntityMetadata md;
+    private JsonDoc doc;
+    private QueryEvaluator evaluator;
+
+    @Setup
+    public void setup() {
+        md = Fixtures.metadata(Fixtures.SAMPLE_METADATA);
+        doc = Fixtures.document();
+        evaluator = QueryEvaluator.getInstance(Fixtures.query(QUERIES.get(query)), md);
+    }
+
+    @Benchmark
+    public boolean evaluate() {
+        return evaluator.evaluate(doc).getResult();
+    }
+
+    @Benchmark
+    public QueryEvaluator getInstance() {
+        return QueryEvaluator.getInstance(Fixtures.query(QUERIES.get(query)), md);
+    }
+}
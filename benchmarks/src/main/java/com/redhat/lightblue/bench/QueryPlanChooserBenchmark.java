@@ -0,0 +1,88 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.assoc.QueryPlan;
+import com.redhat.lightblue.assoc.QueryPlanChooser;
+import com.redhat.lightblue.assoc.iterators.BruteForceQueryPlanIterator;
+import com.redhat.lightblue.assoc.iterators.First;
+import com.redhat.lightblue.assoc.scorers.IndexedFieldScorer;
+import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.query.QueryExpression;
+
+/**
+ * Query plan selection for composite entities with 1 to 5 entities. The
+ * association graph grows with the references the projection includes:
+ * A, A-B, A-B-C, A-B-C-D, and A-B-C-(B,D).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryPlanChooserBenchmark {
+
+    private static final String[] PROJECTIONS = {
+        "{'field':'field1','include':1}",
+        "{'field':'b','include':1}",
+        "[{'field':'obj1.c','include':1},{'field':'b','include':1}]",
+        "[{'field':'obj1.c.*.obj1.d','include':1},{'field':'b','include':1}]",
+        "[{'field':'obj1.c.*.obj1.d','include':1},{'field':'obj1.c.*.b','include':1},{'field':'b','include':1}]"
+    };
+
+    @Param({"1", "2", "3", "4", "5"})
+    public int entities;
+
+    @Param({"bruteForce", "first"})
+    public String iterator;
+
+    private CompositeMetadata md;
+    private QueryExpression query;
+
+    @Setup
+    public void setup() {
+        query = Fixtures.query("{'field':'field1','op':'=','rvalue':'s'}");
+        md = Fixtures.compositeMetadata("A", Fixtures.projection(PROJECTIONS[entities - 1]), null);
+    }
+
+    @Benchmark
+    public QueryPlan choose() {
+        QueryPlanChooser chooser = new QueryPlanChooser(md,
+                "first".equals(iterator) ? new First() : new BruteForceQueryPlanIterator(),
+                new IndexedFieldScorer(),
+                query,
+                null);
+        return chooser.choose();
+    }
+}
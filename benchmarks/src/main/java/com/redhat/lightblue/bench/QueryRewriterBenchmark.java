@@ -0,0 +1,93 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.assoc.qrew.QueryRewriter;
+import com.redhat.lightblue.query.QueryExpression;
+
+/**
+ * Query rewriting to the normal form used by query planning, on
+ * queries of growing size. The notOr queries are negated disjunctions of
+ * disjunctions, which are rewritten to conjunctions of $nin. The
+ * nestedAnd queries are nested conjunctions, which are flattened.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryRewriterBenchmark {
+
+    @Param({"notOr", "nestedAnd"})
+    public String shape;
+
+    @Param({"2", "8", "32"})
+    public int terms;
+
+    private QueryRewriter rewriter;
+    private QueryExpression query;
+
+    @Setup
+    public void setup() {
+        rewriter = new QueryRewriter();
+        StringBuilder bld = new StringBuilder();
+        if ("notOr".equals(shape)) {
+            bld.append("{'$not':{'$or':[");
+            for (int i = 0; i < terms; i++) {
+                if (i > 0) {
+                    bld.append(',');
+                }
+                bld.append("{'$or':[{'field':'f").append(i % 4).append("','op':'=','rvalue':'v").append(i).append("'},").
+                        append("{'field':'f").append(i % 4).append("','op':'=','rvalue':'w").append(i).append("'}]}");
+            }
+            bld.append("]}}");
+        } else {
+            for (int i = 0; i < terms; i++) {
+                bld.append("{'$and':[{'field':'f").append(i).append("','op':'=','rvalue':'v").append(i).append("'}");
+                if (i + 1 < terms) {
+                    bld.append(',');
+                }
+            }
+            for (int i = 0; i < terms; i++) {
+                bld.append("]}");
+            }
+        }
+        query = Fixtures.query(bld.toString());
+    }
+
+    @Benchmark
+    public QueryExpression rewrite() {
+        return rewriter.rewrite(query);
+    }
+}
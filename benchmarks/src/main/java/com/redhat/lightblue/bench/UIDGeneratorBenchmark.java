@@ -0,0 +1,82 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.UIDFields;
+import com.redhat.lightblue.metadata.types.UIDGenerator;
+import com.redhat.lightblue.metadata.types.UIDType;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * UID generation with each generator, and UID field initialization of
+ * inserted documents, from multiple threads sharing one generator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class UIDGeneratorBenchmark {
+
+    @Param({"secure", "random", "timeOrdered", "counter"})
+    public String generator;
+
+    private UIDGenerator gen;
+    private EntityMetadata md;
+    private JsonNode doc;
+
+    @Setup
+    public void setup() {
+        gen = UIDType.getGenerator(generator);
+        md = Fixtures.metadata(Fixtures.USER_METADATA);
+        doc = Fixtures.json(Fixtures.USER_DOC);
+    }
+
+    @Benchmark
+    public String newValue() {
+        return gen.newValue();
+    }
+
+    @Benchmark
+    public JsonDoc insert() {
+        JsonDoc d = new JsonDoc(doc.deepCopy());
+        UIDFields.initializeUIDFields(Fixtures.NODE_FACTORY, md, d, gen);
+        return d;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.lightblue.eval.Updater;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Updates of the sample document with each update type. Every update
+ * runs on a new copy of the document, so copy is the baseline to
+ * subtract.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdaterBenchmark {
+
+    private static final Map<String, String> UPDATES = new HashMap<>();
+
+    static {
+        UPDATES.put("set", "[{'$set':{'field1':'set1','field2':'set2','field5':0,'field6.nf1':'set6'}},{'$add':{'field3':1}}]");
+        UPDATES.put("setIndexed", "{'$set':{'field6.nf5.0':'50','field6.nf6.1':'blah','field7.0.elemf1':'test'}}");
+        UPDATES.put("unset", "{'$unset':['field1','field6.nf2','field6.nf6.1','field7.1']}");
+        UPDATES.put("append", "{'$append':{'field6.nf6':['five','six',{'$valueof':'field2'}]}}");
+        UPDATES.put("insert", "{'$insert':{'field6.nf6.2':['five','six',{'$valueof':'field2'}]}}");
+        UPDATES.put("foreach", "{'$foreach':{'field7':{'field':'elemf1','op':'=','rvalue':'elvalue0_1'},'$update':{'$set':{'elemf1':'test'}}}}");
+    }
+
+    @Param({"set", "setIndexed", "unset", "append", "insert", "foreach"})
+    public String update;
+
+    private EntityMetadata md;
+    private JsonDoc doc;
+    private Updater updater;
+    private Path root;
+
+    @Setup
+    public void setup() {
+        md = Fixtures.metadata(Fixtures.SAMPLE_METADATA);
+        doc = Fixtures.document();
+        updater = Updater.getInstance(Fixtures.NODE_FACTORY, md, Fixtures.update(UPDATES.get(update)));
+        root = new Path();
+    }
+
+    @Benchmark
+    public JsonDoc copy() {
+        return doc.copy();
+    }
+
+    @Benchmark
+    public JsonDoc copyAndUpdate() {
+        JsonDoc copy = doc.copy();
+        updater.update(copy, md.getFieldTreeRoot(), root);
+        return copy;
+    }
+}
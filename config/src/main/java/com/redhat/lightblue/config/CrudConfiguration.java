@@ -27,6 +27,8 @@ import java.util.Iterator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.mediator.AsyncTaskManager;
 import com.redhat.lightblue.util.JsonInitializable;
 
 /**
@@ -43,8 +45,22 @@ public class CrudConfiguration implements JsonInitializable, Serializable {
      */
     public static final transient String FILENAME = "lightblue-crud.json";
 
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 100;
+
     private ControllerConfiguration controllers[];
     private boolean validateRequests=false;
+    private int documentValidationLimit=JsonTranslator.DEFAULT_DOCUMENT_VALIDATION_LIMIT;
+    private int validationThreads=0;
+    private int parallelValidationThreshold=Factory.DEFAULT_PARALLEL_VALIDATION_THRESHOLD;
+    private int bulkThreads=0;
+    private int asyncThreads=0;
+    private int asyncQueueSize=DEFAULT_ASYNC_QUEUE_SIZE;
+    private int asyncMaxTasks=AsyncTaskManager.DEFAULT_MAX_TASKS;
+    private long asyncResultTTL=AsyncTaskManager.DEFAULT_RESULT_TTL;
+    private boolean coalesceFinds=false;
+    private long findCoalescingWindow=0;
+    private String uidGenerator;
+    private long uidNodeId=-1;
 
     public boolean isValidateRequests() {
         return validateRequests;
@@ -54,6 +70,151 @@ public class CrudConfiguration implements JsonInitializable, Serializable {
         validateRequests=b;
     }
 
+    /**
+     * Maximum number of documents in a request that are validated
+     * against the request schema
+     */
+    public int getDocumentValidationLimit() {
+        return documentValidationLimit;
+    }
+
+    public void setDocumentValidationLimit(int n) {
+        documentValidationLimit=n;
+    }
+
+    /**
+     * Number of threads used to validate the documents of large inserts
+     * and saves. Validation is sequential if this is less than 2.
+     */
+    public int getValidationThreads() {
+        return validationThreads;
+    }
+
+    public void setValidationThreads(int n) {
+        validationThreads=n;
+    }
+
+    /**
+     * Minimum number of documents in a request that are validated in
+     * parallel
+     */
+    public int getParallelValidationThreshold() {
+        return parallelValidationThreshold;
+    }
+
+    public void setParallelValidationThreshold(int n) {
+        parallelValidationThreshold=n;
+    }
+
+    /**
+     * Number of threads used to run the requests of unordered bulk
+     * calls. Bulk requests are run sequentially if this is less than 2.
+     */
+    public int getBulkThreads() {
+        return bulkThreads;
+    }
+
+    public void setBulkThreads(int n) {
+        bulkThreads=n;
+    }
+
+    /**
+     * Number of threads running asynchronous requests. Requests asking
+     * for asynchronous execution run synchronously if this is 0.
+     */
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public void setAsyncThreads(int n) {
+        asyncThreads=n;
+    }
+
+    /**
+     * Maximum number of asynchronous requests waiting for a thread
+     */
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    public void setAsyncQueueSize(int n) {
+        asyncQueueSize=n;
+    }
+
+    /**
+     * Maximum number of asynchronous requests, running or waiting to be
+     * fetched
+     */
+    public int getAsyncMaxTasks() {
+        return asyncMaxTasks;
+    }
+
+    public void setAsyncMaxTasks(int n) {
+        asyncMaxTasks=n;
+    }
+
+    /**
+     * How long the result of an asynchronous request is kept, in
+     * milliseconds
+     */
+    public long getAsyncResultTTL() {
+        return asyncResultTTL;
+    }
+
+    public void setAsyncResultTTL(long l) {
+        asyncResultTTL=l;
+    }
+
+    /**
+     * If true, identical concurrent find requests share one execution
+     */
+    public boolean isCoalesceFinds() {
+        return coalesceFinds;
+    }
+
+    public void setCoalesceFinds(boolean b) {
+        coalesceFinds=b;
+    }
+
+    /**
+     * How long the result of a coalesced find request is given to
+     * identical requests after it completes, in milliseconds. If 0, only
+     * the requests that arrive while it is running share the result.
+     */
+    public long getFindCoalescingWindow() {
+        return findCoalescingWindow;
+    }
+
+    public void setFindCoalescingWindow(long l) {
+        findCoalescingWindow=l;
+    }
+
+    /**
+     * The generator for the values of UID fields: one of secure, random,
+     * timeOrdered, counter, or the name of a class implementing
+     * UIDGenerator. If null, UUID.randomUUID() is used.
+     */
+    public String getUidGenerator() {
+        return uidGenerator;
+    }
+
+    public void setUidGenerator(String s) {
+        uidGenerator=s;
+    }
+
+    /**
+     * Node id of the counter UID generator. Every node sharing a
+     * backend must have a different node id. If negative, a random node
+     * id is used.
+     */
+    public long getUidNodeId() {
+        return uidNodeId;
+    }
+
+    public void setUidNodeId(long l) {
+        uidNodeId=l;
+    }
+
     /**
      * @return the controllers
      */
@@ -103,6 +264,54 @@ public class CrudConfiguration implements JsonInitializable, Serializable {
             x=node.get("validateRequests");
             if(x!=null)
                 validateRequests=x.booleanValue();
+
+            x=node.get("documentValidationLimit");
+            if(x!=null)
+                documentValidationLimit=x.intValue();
+
+            x=node.get("validationThreads");
+            if(x!=null)
+                validationThreads=x.intValue();
+
+            x=node.get("parallelValidationThreshold");
+            if(x!=null)
+                parallelValidationThreshold=x.intValue();
+
+            x=node.get("bulkThreads");
+            if(x!=null)
+                bulkThreads=x.intValue();
+
+            x=node.get("asyncThreads");
+            if(x!=null)
+                asyncThreads=x.intValue();
+
+            x=node.get("asyncQueueSize");
+            if(x!=null)
+                asyncQueueSize=x.intValue();
+
+            x=node.get("asyncMaxTasks");
+            if(x!=null)
+                asyncMaxTasks=x.intValue();
+
+            x=node.get("asyncResultTTL");
+            if(x!=null)
+                asyncResultTTL=x.longValue();
+
+            x=node.get("coalesceFinds");
+            if(x!=null)
+                coalesceFinds=x.booleanValue();
+
+            x=node.get("findCoalescingWindow");
+            if(x!=null)
+                findCoalescingWindow=x.longValue();
+
+            x=node.get("uidGenerator");
+            if(x!=null)
+                uidGenerator=x.asText();
+
+            x=node.get("uidNodeId");
+            if(x!=null)
+                uidNodeId=x.longValue();
         }
     }
 }
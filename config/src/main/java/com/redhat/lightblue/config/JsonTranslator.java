@@ -18,6 +18,8 @@
  */
 package com.redhat.lightblue.config;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
@@ -27,8 +29,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.fge.jsonschema.main.JsonSchema;
 import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonCodec;
 import com.redhat.lightblue.util.JsonUtils;
 
 /**
@@ -36,13 +42,27 @@ import com.redhat.lightblue.util.JsonUtils;
  * optionally validating based on a schema. The POJO classes and their
  * correcponding schema must be registered before they're used to
  * parse json docs.
+ *
+ * Schemas are loaded and compiled once when a translation is
+ * registered, and reused for every document. For requests carrying
+ * entity data, the data field can be declared during registration. If
+ * the number of documents in that field exceeds the document
+ * validation limit, only the request envelope is validated against
+ * the schema, and the documents are only checked to be JSON
+ * objects. The validation of the document contents is then left to
+ * the metadata constraints, so large requests are not walked by the
+ * schema validator in addition to the translation.
  */
 public class JsonTranslator {
 
     private static final Logger LOGGER=LoggerFactory.getLogger(JsonTranslator.class);
 
+    public static final int DEFAULT_DOCUMENT_VALIDATION_LIMIT=100;
+
     private final Map<Class,TranslationInfo> translationMap=new HashMap<>();
 
+    private int documentValidationLimit=DEFAULT_DOCUMENT_VALIDATION_LIMIT;
+
     /**
      * An abstraction that defines how json document is parsed to a POJO
      */
@@ -110,10 +130,12 @@ public class JsonTranslator {
         private final FromJson fromJson;
         private boolean validate;
         private final JsonSchema schema;
+        private final String dataField;
 
-        public TranslationInfo(FromJson fromJson,JsonSchema schema) {
+        public TranslationInfo(FromJson fromJson,JsonSchema schema,String dataField) {
             this.fromJson=fromJson;
             this.schema=schema;
+            this.dataField=dataField;
         }
 
         public JsonSchema getSchema() {
@@ -148,7 +170,44 @@ public class JsonTranslator {
      * @param schema The JSON schema
      */
     public void registerTranslation(Class clazz,FromJson fromJson,JsonSchema schema) {
-        TranslationInfo ti=new TranslationInfo(fromJson,schema);
+        registerTranslation(clazz,fromJson,schema,null);
+    }
+
+    /**
+     * Registers a translation for a request containing entity data
+     *
+     * @param clazz The POJO class that will be returned when a JSON
+     * document of this type is parsed
+     * @param fromJson The implementation of FromJson interface that
+     * performs the actual parsing
+     * @param resource The resource name in class path containing the schema
+     * @param dataField The name of the field containing the entity
+     * data. If this field contains more documents than the document
+     * validation limit, the documents are not validated against the
+     * schema.
+     */
+    public void registerTranslation(Class clazz,FromJson fromJson,String resource,String dataField) {
+        try {
+            registerTranslation(clazz,fromJson,JsonUtils.loadSchema(resource),dataField);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(resource,e);
+        }
+    }
+
+    /**
+     * Registers a translation with the given schema for a request
+     * containing entity data
+     *
+     * @param clazz The POJO class that will be returned when a JSON
+     * document of this type is parsed
+     * @param fromJson The implementation of FromJson interface that
+     * performs the actual parsing
+     * @param schema The JSON schema
+     * @param dataField The name of the field containing the entity
+     * data, or null
+     */
+    public void registerTranslation(Class clazz,FromJson fromJson,JsonSchema schema,String dataField) {
+        TranslationInfo ti=new TranslationInfo(fromJson,schema,dataField);
         translationMap.put(clazz,ti);
     }
 
@@ -179,6 +238,20 @@ public class JsonTranslator {
         }
     }
 
+    /**
+     * Sets the maximum number of documents in the entity data of a
+     * request that will be validated against the request schema. If
+     * a request contains more documents, only the request envelope is
+     * validated against the schema.
+     */
+    public void setDocumentValidationLimit(int limit) {
+        documentValidationLimit=limit;
+    }
+
+    public int getDocumentValidationLimit() {
+        return documentValidationLimit;
+    }
+
     /**
      * Sets the validation flag for all POJOs
      */
@@ -206,7 +279,7 @@ public class JsonTranslator {
         if(t.validate) {
             LOGGER.debug("validating {}",clazz);
             try {
-                String validationErrors=JsonUtils.jsonSchemaValidation(t.getSchema(),node);
+                String validationErrors=JsonUtils.jsonSchemaValidation(t.getSchema(),getValidationNode(t,node));
                 if(validationErrors!=null) {
                     throw Error.get(ConfigConstants.ERR_VALIDATION_FAILED,validationErrors);
                 }
@@ -218,4 +291,60 @@ public class JsonTranslator {
         }
         return (T)t.fromJson.fromJson(node);
     }
+
+    /**
+     * Reads a document from the stream in the wire format of the codec,
+     * and parses it, optionally validating it according to a registered
+     * schema. The stream is not closed.
+     *
+     * @param clazz The expected return POJO type
+     * @param stream The stream containing the document
+     * @param codec The codec of the wire format, text or binary JSON
+     *
+     * @return The POJO
+     */
+    public <T> T parse(Class<T> clazz,InputStream stream,JsonCodec codec) throws IOException {
+        return parse(clazz,codec.read(stream));
+    }
+
+    /**
+     * Parses a document given in the wire format of the codec,
+     * optionally validating it according to a registered schema
+     *
+     * @param clazz The expected return POJO type
+     * @param bytes The document
+     * @param codec The codec of the wire format, text or binary JSON
+     *
+     * @return The POJO
+     */
+    public <T> T parse(Class<T> clazz,byte[] bytes,JsonCodec codec) throws IOException {
+        return parse(clazz,codec.read(bytes));
+    }
+
+    /**
+     * Returns the node that will be validated against the schema. If
+     * the entity data contains more documents than the limit, returns
+     * a shallow copy of the request with empty entity data, after
+     * making sure the documents are objects.
+     */
+    private JsonNode getValidationNode(TranslationInfo t,JsonNode node) {
+        if(t.dataField!=null&&node instanceof ObjectNode) {
+            JsonNode data=node.get(t.dataField);
+            if(data instanceof ArrayNode&&data.size()>documentValidationLimit) {
+                LOGGER.debug("Skipping schema validation for {} documents",data.size());
+                int i=0;
+                for(JsonNode doc:data) {
+                    if(!(doc instanceof ObjectNode)) {
+                        throw Error.get(ConfigConstants.ERR_VALIDATION_FAILED,t.dataField+"."+i+" is not an object");
+                    }
+                    i++;
+                }
+                ObjectNode copy=JsonNodeFactory.instance.objectNode();
+                copy.setAll((ObjectNode)node);
+                copy.set(t.dataField,JsonNodeFactory.instance.arrayNode());
+                return copy;
+            }
+        }
+        return node;
+    }
 }
@@ -23,6 +23,11 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +46,8 @@ import com.redhat.lightblue.crud.SaveRequest;
 import com.redhat.lightblue.crud.UpdateRequest;
 import com.redhat.lightblue.crud.interceptors.UIDInterceptor;
 import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
+import com.redhat.lightblue.mediator.AsyncTaskManager;
+import com.redhat.lightblue.mediator.FindCoalescer;
 import com.redhat.lightblue.mediator.Mediator;
 import com.redhat.lightblue.metadata.EntityInfo;
 import com.redhat.lightblue.metadata.EntityMetadata;
@@ -50,7 +57,11 @@ import com.redhat.lightblue.metadata.MetadataConstants;
 import com.redhat.lightblue.metadata.parser.DataStoreParser;
 import com.redhat.lightblue.metadata.parser.Extensions;
 import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
+import com.redhat.lightblue.metadata.parser.StreamingJSONMetadataParser;
+import com.redhat.lightblue.metadata.types.CounterUIDGenerator;
 import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.metadata.types.UIDGenerator;
+import com.redhat.lightblue.metadata.types.UIDType;
 import com.redhat.lightblue.util.JsonUtils;
 
 /**
@@ -72,6 +83,9 @@ public final class LightblueFactory implements Serializable {
     private transient volatile Mediator mediator = null;
     private volatile Factory factory;
     private transient volatile JsonTranslator jsonTranslator=null;
+    private transient JsonNode metadataConfigurationRoot = null;
+    private volatile WarmupConfiguration warmupConfiguration = null;
+    private volatile boolean warmedUp = false;
 
     public LightblueFactory(DataSourcesConfiguration datasources) {
         this.datasources = datasources;
@@ -90,10 +104,28 @@ public final class LightblueFactory implements Serializable {
                 extensions.registerDataStoreParser(backendParser.getDefaultName(), backendParser);
             }
 
-            parser = new JSONMetadataParser(extensions, new DefaultTypes(), NODE_FACTORY);
+            // The streaming parser only helps when metadata is read from
+            // bytes, e.g. by a metadata backend. Requests translated by the
+            // JsonTranslator are already trees, and are parsed as trees.
+            JsonNode x = getMetadataConfigurationRoot().get("streamingParser");
+            if (x != null && x.booleanValue()) {
+                LOGGER.debug("Using streaming metadata parser");
+                parser = new StreamingJSONMetadataParser(extensions, new DefaultTypes(), NODE_FACTORY);
+            } else {
+                parser = new JSONMetadataParser(extensions, new DefaultTypes(), NODE_FACTORY);
+            }
         }
     }
 
+    private synchronized JsonNode getMetadataConfigurationRoot() throws IOException {
+        if (metadataConfigurationRoot == null) {
+            try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(MetadataConfiguration.FILENAME)) {
+                metadataConfigurationRoot = JsonUtils.json(is);
+            }
+        }
+        return metadataConfigurationRoot;
+    }
+
     private synchronized void initializeMediator()
             throws ClassNotFoundException, IllegalAccessException, InvocationTargetException, IOException, NoSuchMethodException, InstantiationException {
         if (mediator == null) {
@@ -115,9 +147,37 @@ public final class LightblueFactory implements Serializable {
 
             // Set validation flag for all crud requests
             getJsonTranslator().setValidation(Request.class,configuration.isValidateRequests());
+            getJsonTranslator().setDocumentValidationLimit(configuration.getDocumentValidationLimit());
 
             Factory f = new Factory();
             f.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+            if (configuration.getValidationThreads() > 1) {
+                LOGGER.debug("Using {} threads for constraint validation", configuration.getValidationThreads());
+                f.setValidationExecutor(Executors.newFixedThreadPool(configuration.getValidationThreads(),
+                        new DaemonThreadFactory("lightblue-validation-")), configuration.getValidationThreads());
+                f.setParallelValidationThreshold(configuration.getParallelValidationThreshold());
+            }
+            if (configuration.getBulkThreads() > 1) {
+                LOGGER.debug("Using {} threads for bulk requests", configuration.getBulkThreads());
+                f.setBulkExecutor(Executors.newFixedThreadPool(configuration.getBulkThreads(),
+                        new DaemonThreadFactory("lightblue-bulk-")));
+            }
+            if (configuration.getAsyncThreads() > 0) {
+                LOGGER.debug("Using {} threads for async requests", configuration.getAsyncThreads());
+                f.setAsyncTaskManager(new AsyncTaskManager(new ThreadPoolExecutor(configuration.getAsyncThreads(),
+                        configuration.getAsyncThreads(), 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(Math.max(1, configuration.getAsyncQueueSize())),
+                        new DaemonThreadFactory("lightblue-async-")),
+                        configuration.getAsyncMaxTasks(), configuration.getAsyncResultTTL()));
+            }
+            if (configuration.isCoalesceFinds()) {
+                LOGGER.debug("Coalescing find requests, window {} ms", configuration.getFindCoalescingWindow());
+                f.setFindCoalescer(new FindCoalescer(configuration.getFindCoalescingWindow()));
+            }
+            if (configuration.getUidGenerator() != null) {
+                LOGGER.debug("Using UID generator {}", configuration.getUidGenerator());
+                f.setUIDGenerator(newUIDGenerator(configuration));
+            }
 
             // Add default interceptors
             new UIDInterceptor().register(f.getInterceptors());
@@ -137,14 +197,24 @@ public final class LightblueFactory implements Serializable {
         }
     }
 
+    private static UIDGenerator newUIDGenerator(CrudConfiguration configuration)
+            throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        String name = configuration.getUidGenerator();
+        if (CounterUIDGenerator.NAME.equals(name) && configuration.getUidNodeId() >= 0) {
+            return new CounterUIDGenerator(configuration.getUidNodeId());
+        }
+        try {
+            return UIDType.getGenerator(name);
+        } catch (IllegalArgumentException e) {
+            return (UIDGenerator) Class.forName(name).newInstance();
+        }
+    }
+
     private synchronized void initializeMetadata() throws IOException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
         if (metadata == null) {
             LOGGER.debug("Initializing metadata");
 
-            JsonNode root;
-            try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(MetadataConfiguration.FILENAME)) {
-                root = JsonUtils.json(is);
-            }
+            JsonNode root = getMetadataConfigurationRoot();
             LOGGER.debug("Config root:{}", root);
 
             JsonNode cfgClass = root.get("type");
@@ -160,6 +230,10 @@ public final class LightblueFactory implements Serializable {
             getJsonTranslator().setValidation(EntitySchema.class,cfg.isValidateRequests());
             getJsonTranslator().setValidation(EntityInfo.class,cfg.isValidateRequests());
 
+            WarmupConfiguration wcfg = new WarmupConfiguration();
+            wcfg.initializeFromJson(root.get("warmup"));
+            warmupConfiguration = wcfg;
+
             metadata = cfg.createMetadata(datasources, getJSONParser(), this);
         }
     }
@@ -210,13 +284,15 @@ public final class LightblueFactory implements Serializable {
                                        "json-schema/findRequest.json");
                 tx.registerTranslation(InsertionRequest.class,
                                        new JsonTranslator.StaticFactoryMethod(InsertionRequest.class,"fromJson",ObjectNode.class),
-                                       "json-schema/insertRequest.json");
+                                       "json-schema/insertRequest.json",
+                                       "data");
                 tx.registerTranslation(DeleteRequest.class,
                                        new JsonTranslator.StaticFactoryMethod(DeleteRequest.class,"fromJson",ObjectNode.class),
                                        "json-schema/deleteRequest.json");
                 tx.registerTranslation(SaveRequest.class,
                                        new JsonTranslator.StaticFactoryMethod(SaveRequest.class,"fromJson",ObjectNode.class),
-                                       "json-schema/saveRequest.json");
+                                       "json-schema/saveRequest.json",
+                                       "data");
                 tx.registerTranslation(UpdateRequest.class,
                                        new JsonTranslator.StaticFactoryMethod(UpdateRequest.class,"fromJson",ObjectNode.class),
                                        "json-schema/updateRequest.json");
@@ -266,10 +342,82 @@ public final class LightblueFactory implements Serializable {
         return mediator;
     }
 
+    /**
+     * Loads all active metadata, and builds composite metadata for
+     * the configured entities if warm-up is enabled in metadata
+     * configuration. This call blocks until warm-up is complete or
+     * times out. If warm-up times out, isReady() keeps returning false,
+     * and warmUp() can be called again to retry.
+     *
+     * @return true if the factory is ready
+     */
+    public boolean warmUp()
+            throws ClassNotFoundException, IllegalAccessException, InvocationTargetException, IOException, NoSuchMethodException, InstantiationException, InterruptedException {
+        Metadata md = getMetadata();
+        getMediator();
+        if (warmupConfiguration.isEnabled()) {
+            LOGGER.info("Starting metadata warm-up");
+            if (!new MetadataWarmup(md, warmupConfiguration).run()) {
+                LOGGER.warn("Metadata warm-up did not complete in {} seconds, not ready", warmupConfiguration.getTimeoutSeconds());
+                return false;
+            }
+        }
+        warmedUp = true;
+        return true;
+    }
+
+    /**
+     * Returns true if the factory is ready to serve requests. The
+     * factory is not ready before metadata is initialized. If warm-up
+     * is enabled, the factory is ready only after warmUp() completes
+     * within the warm-up timeout.
+     */
+    public boolean isReady() {
+        if (warmedUp) {
+            return true;
+        }
+        WarmupConfiguration wcfg = warmupConfiguration;
+        return wcfg != null && !wcfg.isEnabled();
+    }
+
+    /**
+     * Shuts down the CRUD factory, if it was initialized. The host
+     * application should call this when it stops, so pending work is
+     * completed and worker threads are stopped.
+     */
+    public void shutdown() {
+        Factory f = factory;
+        if (f != null) {
+            LOGGER.info("Shutting down");
+            f.shutdown();
+        }
+    }
+
     public JsonTranslator getJsonTranslator() {
         if(jsonTranslator==null) {
             initializeJsonTranslator();
         }
         return jsonTranslator;
     }
+
+    /**
+     * Creates daemon threads for parallel validation and bulk requests,
+     * so the worker threads do not prevent the JVM from exiting
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final ThreadFactory delegate = Executors.defaultThreadFactory();
+        private final String prefix;
+
+        public DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = delegate.newThread(r);
+            t.setDaemon(true);
+            t.setName(prefix + t.getName());
+            return t;
+        }
+    }
 }
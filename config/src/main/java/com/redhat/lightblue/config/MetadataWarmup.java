@@ -0,0 +1,207 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.mediator.DefaultMetadataResolver;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Metadata;
+import com.redhat.lightblue.metadata.MetadataStatus;
+import com.redhat.lightblue.metadata.VersionInfo;
+import com.redhat.lightblue.query.FieldProjection;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Loads all active entity metadata in parallel, so the metadata
+ * implementation parses and caches them before the first request
+ * arrives. Optionally builds composite metadata for the configured
+ * top level entities. Failures to load individual entities are
+ * logged and counted, they do not stop the warm-up.
+ */
+public class MetadataWarmup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataWarmup.class);
+
+    private static final Projection DEFAULT_PROJECTION = new FieldProjection(new Path("*"), true, true);
+
+    private final Metadata metadata;
+    private final WarmupConfiguration cfg;
+
+    private int numLoaded;
+    private int numFailed;
+
+    public MetadataWarmup(Metadata metadata, WarmupConfiguration cfg) {
+        this.metadata = metadata;
+        this.cfg = cfg;
+    }
+
+    /**
+     * Number of entity versions and composite metadata successfully loaded
+     */
+    public synchronized int getNumLoaded() {
+        return numLoaded;
+    }
+
+    /**
+     * Number of entity versions and composite metadata that failed to load
+     */
+    public synchronized int getNumFailed() {
+        return numFailed;
+    }
+
+    /**
+     * Runs the warm-up, and returns when all metadata is loaded, or
+     * when the configured timeout expires.
+     *
+     * @return true if warm-up completed within the timeout
+     */
+    public boolean run() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(cfg.getThreads());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            String[] names = metadata.getEntityNames(MetadataStatus.ACTIVE);
+            LOGGER.debug("Warming up {} entities", names == null ? 0 : names.length);
+            if (names != null) {
+                for (String name : names) {
+                    futures.add(executor.submit(new LoadEntity(name)));
+                }
+            }
+            // Composite metadata is built after all entity metadata
+            // is loaded, so the referenced entities are already cached
+            if (!waitFor(futures, start)) {
+                return false;
+            }
+            futures.clear();
+            for (WarmupConfiguration.CompositeEntity ce : cfg.getCompositeEntities()) {
+                futures.add(executor.submit(new BuildComposite(ce)));
+            }
+            if (!waitFor(futures, start)) {
+                return false;
+            }
+            LOGGER.info("Metadata warm-up complete in {} msecs, loaded:{} failed:{}",
+                    System.currentTimeMillis() - start, numLoaded, numFailed);
+            return true;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean waitFor(List<Future<?>> futures, long start) throws InterruptedException {
+        long deadline = start + TimeUnit.SECONDS.toMillis(cfg.getTimeoutSeconds());
+        for (Future<?> f : futures) {
+            try {
+                f.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                LOGGER.warn("Metadata warm-up timed out after {} seconds", cfg.getTimeoutSeconds());
+                return false;
+            } catch (ExecutionException e) {
+                // Tasks handle their own failures
+                LOGGER.warn("Metadata warm-up task failed", e.getCause());
+            }
+        }
+        return true;
+    }
+
+    private synchronized void loaded() {
+        numLoaded++;
+    }
+
+    private synchronized void failed() {
+        numFailed++;
+    }
+
+    private class LoadEntity implements Callable<Void> {
+        private final String entityName;
+
+        public LoadEntity(String entityName) {
+            this.entityName = entityName;
+        }
+
+        @Override
+        public Void call() {
+            VersionInfo[] versions;
+            try {
+                versions = metadata.getEntityVersions(entityName);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Cannot get versions of {}: {}", entityName, e.toString());
+                failed();
+                return null;
+            }
+            if (versions != null) {
+                for (VersionInfo v : versions) {
+                    if (v.getStatus() != MetadataStatus.DISABLED) {
+                        try {
+                            EntityMetadata md = metadata.getEntityMetadata(entityName, v.getValue());
+                            if (md == null) {
+                                LOGGER.warn("No metadata for {}:{}", entityName, v.getValue());
+                                failed();
+                            } else {
+                                LOGGER.debug("Loaded {}:{}", entityName, v.getValue());
+                                loaded();
+                            }
+                        } catch (RuntimeException e) {
+                            LOGGER.warn("Cannot load {}:{}: {}", entityName, v.getValue(), e.toString());
+                            failed();
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private class BuildComposite implements Callable<Void> {
+        private final WarmupConfiguration.CompositeEntity entity;
+
+        public BuildComposite(WarmupConfiguration.CompositeEntity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                Projection p = entity.getProjection() == null ? DEFAULT_PROJECTION
+                        : Projection.fromJson(entity.getProjection());
+                DefaultMetadataResolver resolver = new DefaultMetadataResolver(metadata);
+                resolver.initialize(entity.getEntity(), entity.getVersion(), null, p);
+                LOGGER.debug("Built composite metadata for {}:{}", entity.getEntity(), entity.getVersion());
+                loaded();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Cannot build composite metadata for {}:{}: {}",
+                        entity.getEntity(), entity.getVersion(), e.toString());
+                failed();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import com.redhat.lightblue.util.JsonInitializable;
+
+/**
+ * Metadata warm-up configuration. This is read from the "warmup"
+ * element of the metadata configuration file:
+ *
+ * <pre>
+ *   "warmup": {
+ *      "enabled": true,
+ *      "threads": 4,
+ *      "timeoutSeconds": 300,
+ *      "compositeEntities": [
+ *          { "entity": "user", "version": "1.0.0", "projection": {...} }
+ *      ]
+ *   }
+ * </pre>
+ *
+ * When warm-up is enabled, all active versions of all active
+ * entities are loaded on a bounded thread pool before the factory
+ * reports itself as ready. Composite metadata is pre-built for the
+ * entities listed in compositeEntities. Version and projection are
+ * optional for composite entities; if version is omitted the default
+ * version is used, and if the projection is omitted all non-reference
+ * fields are projected.
+ */
+public class WarmupConfiguration implements JsonInitializable, Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_TIMEOUT_SECONDS = 300;
+
+    private boolean enabled = false;
+    private int threads = DEFAULT_THREADS;
+    private int timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+    private final List<CompositeEntity> compositeEntities = new ArrayList<>();
+
+    /**
+     * A top level entity for which the composite metadata will be
+     * built during warm-up
+     */
+    public static class CompositeEntity implements Serializable {
+
+        private static final long serialVersionUID = 1l;
+
+        private final String entity;
+        private final String version;
+        private final JsonNode projection;
+
+        public CompositeEntity(String entity, String version, JsonNode projection) {
+            this.entity = entity;
+            this.version = version;
+            this.projection = projection;
+        }
+
+        public String getEntity() {
+            return entity;
+        }
+
+        /**
+         * Entity version, null means default version
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Projection used to decide which references are resolved. Can be null.
+         */
+        public JsonNode getProjection() {
+            return projection;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean b) {
+        enabled = b;
+    }
+
+    /**
+     * Number of threads used to load metadata
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int n) {
+        threads = n;
+    }
+
+    /**
+     * Maximum time to wait for warm-up to complete
+     */
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds(int n) {
+        timeoutSeconds = n;
+    }
+
+    public List<CompositeEntity> getCompositeEntities() {
+        return compositeEntities;
+    }
+
+    @Override
+    public void initializeFromJson(JsonNode node) {
+        if (node != null) {
+            JsonNode x = node.get("enabled");
+            if (x != null) {
+                enabled = x.booleanValue();
+            }
+            x = node.get("threads");
+            if (x != null) {
+                threads = x.intValue();
+            }
+            if (threads <= 0) {
+                throw new IllegalArgumentException("'threads' must be positive: " + node.toString());
+            }
+            x = node.get("timeoutSeconds");
+            if (x != null) {
+                timeoutSeconds = x.intValue();
+            }
+            x = node.get("compositeEntities");
+            if (x instanceof ArrayNode) {
+                for (JsonNode elem : x) {
+                    JsonNode entity = elem.get("entity");
+                    if (entity == null) {
+                        throw new IllegalArgumentException("'entity' is required: " + elem.toString());
+                    }
+                    JsonNode version = elem.get("version");
+                    compositeEntities.add(new CompositeEntity(entity.asText(),
+                            version == null ? null : version.asText(),
+                            elem.get("projection")));
+                }
+            } else if (x != null) {
+                throw new IllegalArgumentException("'compositeEntities' must be instanceof ArrayNode: " + node.toString());
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@
  */
 package com.redhat.lightblue.config;
 
+import java.io.ByteArrayInputStream;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -25,7 +27,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import com.redhat.lightblue.Request;
 import com.redhat.lightblue.crud.DeleteRequest;
+import com.redhat.lightblue.crud.InsertionRequest;
 
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonCodec;
 import com.redhat.lightblue.util.test.FileUtil;
 
 import static com.redhat.lightblue.util.JsonUtils.json;
@@ -91,4 +96,60 @@ public class CrudValidationTest {
             System.out.println(e);
         }
     }
+
+    @Test
+    public void testLargeInsertValidatesEnvelopeOnly() throws Exception {
+        LightblueFactory lbf=new LightblueFactory(new DataSourcesConfiguration());
+        lbf.getJsonTranslator().setValidation(Request.class,true);
+
+        // The first document has no objectType, so it fails schema validation
+        JsonNode node = json("{\"objectType\":\"some_entity\",\"data\":[{\"a\":1},{\"objectType\":\"some_entity\"}]}");
+        lbf.getJsonTranslator().setDocumentValidationLimit(2);
+        try {
+            lbf.getJsonTranslator().parse(InsertionRequest.class,node);
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(ConfigConstants.ERR_VALIDATION_FAILED,e.getErrorCode());
+        }
+
+        // Above the limit, documents are left to metadata constraints
+        lbf.getJsonTranslator().setDocumentValidationLimit(1);
+        InsertionRequest req=lbf.getJsonTranslator().parse(InsertionRequest.class,node);
+        Assert.assertEquals(2,req.getEntityData().size());
+
+        // The envelope is still validated
+        node = json("{\"objectType\":\"some_entity\",\"bad\":1,\"data\":[{\"a\":1},{\"a\":2}]}");
+        try {
+            lbf.getJsonTranslator().parse(InsertionRequest.class,node);
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(ConfigConstants.ERR_VALIDATION_FAILED,e.getErrorCode());
+        }
+
+        // Documents must be objects
+        node = json("{\"objectType\":\"some_entity\",\"data\":[{\"a\":1},2]}");
+        try {
+            lbf.getJsonTranslator().parse(InsertionRequest.class,node);
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(ConfigConstants.ERR_VALIDATION_FAILED,e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testParseBytes() throws Exception {
+        LightblueFactory lbf=new LightblueFactory(new DataSourcesConfiguration());
+        lbf.getJsonTranslator().setValidation(Request.class,true);
+
+        byte[] bytes=JsonCodec.TEXT.toBytes(json(FileUtil.readFile("valid-deletion-req.json")));
+        DeleteRequest req=lbf.getJsonTranslator().parse(DeleteRequest.class,bytes,JsonCodec.TEXT);
+        Assert.assertNotNull(req);
+        req=lbf.getJsonTranslator().parse(DeleteRequest.class,new ByteArrayInputStream(bytes),JsonCodec.TEXT);
+        Assert.assertNotNull(req);
+
+        // The same request in binary JSON
+        byte[] smile=JsonCodec.SMILE.toBytes(json(FileUtil.readFile("valid-deletion-req.json")));
+        DeleteRequest sreq=lbf.getJsonTranslator().parse(DeleteRequest.class,new ByteArrayInputStream(smile),JsonCodec.SMILE);
+        Assert.assertEquals(req.toJson(),sreq.toJson());
+    }
 }
@@ -18,8 +18,17 @@
  */
 package com.redhat.lightblue.config;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.Metadata;
+import com.redhat.lightblue.metadata.parser.StreamingJSONMetadataParser;
 import com.redhat.lightblue.mediator.Mediator;
+import com.redhat.lightblue.util.JsonUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import com.redhat.lightblue.metadata.test.DatabaseMetadata;
@@ -45,4 +54,54 @@ public class LightblueFactoryTest {
         Mediator m = mgr.getMediator();
         Assert.assertNotNull(m);
     }
+
+    @Test
+    public void readyWithoutWarmup() throws Exception {
+        LightblueFactory mgr = new LightblueFactory(new DataSourcesConfiguration());
+        Assert.assertFalse(mgr.isReady());
+        Assert.assertTrue(mgr.warmUp());
+        Assert.assertTrue(mgr.isReady());
+    }
+
+    private static final String METADATA = "{'entityInfo':{'name':'test','datastore':{'backend':'test'}},"
+            + "'schema':{'name':'test','version':{'value':'1.0.0','changelog':'test'},'status':{'value':'active'},"
+            + "'access':{'insert':['anyone'],'update':['anyone'],'find':['anyone'],'delete':['anyone']},"
+            + "'fields':{'_id':{'type':'string'},'a':{'type':'integer'},"
+            + "'o':{'type':'object','fields':{'b':{'type':'string'}}},'arr':{'type':'array','items':{'type':'string'}}}}}";
+
+    private static EntityMetadata parseMetadata(LightblueFactory mgr) throws Exception {
+        mgr.getJSONParser().getExtensions().registerDataStoreParser("test", new TestDataStoreParser());
+        return mgr.getJsonTranslator().parse(EntityMetadata.class, JsonUtils.json(METADATA.replace('\'', '"')));
+    }
+
+    @Test
+    public void streamingParser() throws Exception {
+        LightblueFactory mgr = new LightblueFactory(new DataSourcesConfiguration());
+        Assert.assertFalse(mgr.getJSONParser() instanceof StreamingJSONMetadataParser);
+        EntityMetadata expected = parseMetadata(mgr);
+
+        final JsonNode cfg;
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(MetadataConfiguration.FILENAME)) {
+            cfg = JsonUtils.json(is);
+        }
+        ((ObjectNode) cfg).put("streamingParser", true);
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new ClassLoader(loader) {
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                if (MetadataConfiguration.FILENAME.equals(name)) {
+                    return new ByteArrayInputStream(cfg.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                return super.getResourceAsStream(name);
+            }
+        });
+        try {
+            mgr = new LightblueFactory(new DataSourcesConfiguration());
+            Assert.assertTrue(mgr.getJSONParser() instanceof StreamingJSONMetadataParser);
+            EntityMetadata actual = parseMetadata(mgr);
+            Assert.assertEquals(mgr.getJSONParser().convert(expected).toString(), mgr.getJSONParser().convert(actual).toString());
+        } finally {
+            Thread.currentThread().setContextClassLoader(loader);
+        }
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.config;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Metadata;
+import com.redhat.lightblue.metadata.MetadataStatus;
+import com.redhat.lightblue.metadata.VersionInfo;
+import com.redhat.lightblue.util.JsonUtils;
+
+public class MetadataWarmupTest {
+
+    private VersionInfo version(String v, MetadataStatus status) {
+        VersionInfo vi = new VersionInfo();
+        vi.setValue(v);
+        vi.setStatus(status);
+        return vi;
+    }
+
+    @Test
+    public void configurationTest() throws Exception {
+        WarmupConfiguration cfg = new WarmupConfiguration();
+        cfg.initializeFromJson(JsonUtils.json("{\"enabled\":true,\"threads\":2,\"compositeEntities\":[{\"entity\":\"a\"},{\"entity\":\"b\",\"version\":\"1.0\",\"projection\":{\"field\":\"x\"}}]}"));
+        Assert.assertTrue(cfg.isEnabled());
+        Assert.assertEquals(2, cfg.getThreads());
+        Assert.assertEquals(WarmupConfiguration.DEFAULT_TIMEOUT_SECONDS, cfg.getTimeoutSeconds());
+        Assert.assertEquals(2, cfg.getCompositeEntities().size());
+        Assert.assertNull(cfg.getCompositeEntities().get(0).getVersion());
+        Assert.assertNull(cfg.getCompositeEntities().get(0).getProjection());
+        Assert.assertEquals("1.0", cfg.getCompositeEntities().get(1).getVersion());
+        Assert.assertNotNull(cfg.getCompositeEntities().get(1).getProjection());
+    }
+
+    @Test
+    public void loadsAllActiveVersions() throws Exception {
+        Metadata md = mock(Metadata.class);
+        when(md.getEntityNames(MetadataStatus.ACTIVE)).thenReturn(new String[]{"a", "b"});
+        when(md.getEntityVersions("a")).thenReturn(new VersionInfo[]{version("1.0", MetadataStatus.ACTIVE),
+            version("2.0", MetadataStatus.DEPRECATED),
+            version("3.0", MetadataStatus.DISABLED)});
+        when(md.getEntityVersions("b")).thenReturn(new VersionInfo[]{version("1.0", MetadataStatus.ACTIVE)});
+        when(md.getEntityMetadata("a", "1.0")).thenReturn(mock(EntityMetadata.class));
+        when(md.getEntityMetadata("a", "2.0")).thenReturn(mock(EntityMetadata.class));
+        when(md.getEntityMetadata("b", "1.0")).thenThrow(new IllegalStateException("broken"));
+
+        WarmupConfiguration cfg = new WarmupConfiguration();
+        cfg.setEnabled(true);
+        MetadataWarmup w = new MetadataWarmup(md, cfg);
+        Assert.assertTrue(w.run());
+        Assert.assertEquals(2, w.getNumLoaded());
+        Assert.assertEquals(1, w.getNumFailed());
+        verify(md, never()).getEntityMetadata("a", "3.0");
+    }
+}
@@ -43,7 +43,9 @@ public class ExecutionOptions extends JsonObject {
 
     /**
      * The time limit within which the call should complete. The call stops
-     * execution once the limit is exceeded, and partial results are returned
+     * execution once the limit is exceeded, and partial results are
+     * returned. The limit is checked between the steps of the call, so a
+     * back-end call already running is not cancelled.
      */
     public void setTimeLimit(long l) {
         timeLimit = l;
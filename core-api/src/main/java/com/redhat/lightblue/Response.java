@@ -18,13 +18,17 @@
  */
 package com.redhat.lightblue;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.JsonObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -51,6 +55,7 @@ public class Response extends JsonObject {
     private String taskHandle;
     private SessionInfo session;
     private transient JsonNode entityData;
+    private transient List<JsonDoc> entityDocuments;
     private final List<DataError> dataErrors = new ArrayList<>();
     private final List<Error> errors = new ArrayList<>();
 
@@ -145,16 +150,36 @@ public class Response extends JsonObject {
     }
 
     /**
-     * Returns the entity data resulting from the call.
+     * Returns the entity data resulting from the call. If the entity data
+     * is given as a list of documents, the array node is built on the
+     * first call, and the same node is returned afterwards.
      */
     public JsonNode getEntityData() {
+        if (entityData == null && entityDocuments != null) {
+            ArrayNode arrayNode = new ArrayNode(jsonNodeFactory);
+            for (JsonDoc doc : entityDocuments) {
+                arrayNode.add(doc.getRoot());
+            }
+            entityData = arrayNode;
+        }
         return entityData;
     }
 
+    /**
+     * Sets the entity data resulting from the call as a list of
+     * documents. writeTo writes the documents directly, without building
+     * an array node for them. This replaces the entity data set before.
+     */
+    public void setEntityDocuments(List<JsonDoc> documents) {
+        entityData = null;
+        entityDocuments = documents;
+    }
+
     /**
      * Returns the entity data resulting from the call.
      */
     public void setEntityData(JsonNode node) {
+        entityDocuments = null;
         // if the node is not an array then wrap it in an array
         if (node != null && !node.isArray()) {
             ArrayNode arrayNode = new ArrayNode(jsonNodeFactory);
@@ -190,12 +215,67 @@ public class Response extends JsonObject {
         builder.add(PROPERTY_MATCH_COUNT, matchCount);
         builder.add(PROPERTY_TASK_HANDLE, taskHandle);
         builder.add(PROPERTY_SESSION, session);
-        builder.add(PROPERTY_PROCESSED, entityData);
+        builder.add(PROPERTY_PROCESSED, getEntityData());
         builder.addJsonObjectsList(PROPERTY_DATA_ERRORS, dataErrors);
         builder.addErrorsList(PROPERTY_ERRORS, errors);
         return builder.build();
     }
 
+    /**
+     * Writes the JSON representation of this to the generator, without
+     * building the JSON tree of the response. If the entity data is given
+     * as a list of documents, the documents are written one by one. The
+     * response is not modified, and can be written more than once.
+     */
+    public void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        if (status != null) {
+            generator.writeStringField(PROPERTY_STATUS, status.name());
+        }
+        generator.writeNumberField(PROPERTY_MOD_COUNT, modifiedCount);
+        generator.writeNumberField(PROPERTY_MATCH_COUNT, matchCount);
+        if (taskHandle != null) {
+            generator.writeStringField(PROPERTY_TASK_HANDLE, taskHandle);
+        }
+        if (session != null) {
+            generator.writeFieldName(PROPERTY_SESSION);
+            writeNode(generator, session.toJson());
+        }
+        if (entityDocuments != null) {
+            generator.writeArrayFieldStart(PROPERTY_PROCESSED);
+            for (JsonDoc doc : entityDocuments) {
+                doc.writeTo(generator);
+            }
+            generator.writeEndArray();
+        } else if (entityData != null) {
+            generator.writeFieldName(PROPERTY_PROCESSED);
+            writeNode(generator, entityData);
+        }
+        if (!dataErrors.isEmpty()) {
+            generator.writeArrayFieldStart(PROPERTY_DATA_ERRORS);
+            for (DataError x : dataErrors) {
+                writeNode(generator, x.toJson());
+            }
+            generator.writeEndArray();
+        }
+        if (!errors.isEmpty()) {
+            generator.writeArrayFieldStart(PROPERTY_ERRORS);
+            for (Error x : errors) {
+                writeNode(generator, x.toJson());
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeNode(JsonGenerator generator, JsonNode node) throws IOException {
+        if (generator.getCodec() != null) {
+            generator.writeTree(node);
+        } else {
+            ((BaseJsonNode) node).serialize(generator, null);
+        }
+    }
+
     public static class ResponseBuilder {
 
         private OperationStatus status;
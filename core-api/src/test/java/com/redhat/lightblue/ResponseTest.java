@@ -18,17 +18,22 @@
  */
 package com.redhat.lightblue;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.Response.ResponseBuilder;
 import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.JsonObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -257,6 +262,53 @@ public class ResponseTest {
         assertTrue(response.toJson().equals(expectedNode));
     }
 
+    @Test
+    public void testEntityDocuments() throws Exception {
+        List<JsonDoc> docs = new ArrayList<>();
+        docs.add(new JsonDoc(JsonObject.getFactory().objectNode().put("a", 1)));
+        docs.add(new JsonDoc(JsonObject.getFactory().objectNode().put("a", 2)));
+        response.setEntityDocuments(docs);
+
+        assertEquals(2, response.getEntityData().size());
+        assertEquals(2, response.getEntityData().get(1).get("a").asInt());
+        // Same data on every call, and after the response is written
+        assertSame(response.getEntityData(), response.getEntityData());
+        StringWriter writer = new StringWriter();
+        JsonGenerator gen = new JsonFactory().createGenerator(writer);
+        response.writeTo(gen);
+        gen.close();
+        assertEquals(2, response.getEntityData().size());
+        assertEquals(2, new ObjectMapper().readTree(writer.toString()).get("processed").size());
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        List<JsonDoc> docs = new ArrayList<>();
+        docs.add(new JsonDoc(JsonObject.getFactory().objectNode().put("a", 1)));
+        docs.add(new JsonDoc(JsonObject.getFactory().objectNode().put("a", 2)));
+        response.setStatus(OperationStatus.COMPLETE);
+        response.setMatchCount(2);
+        response.setTaskHandle("task");
+        response.getErrors().addAll(getPopulatedErrors(2));
+        response.getDataErrors().addAll(getPopulatedDataErrors(1));
+
+        response.setEntityDocuments(docs);
+        StringWriter codecWriter = new StringWriter();
+        JsonGenerator gen = new ObjectMapper().getFactory().createGenerator(codecWriter);
+        response.writeTo(gen);
+        gen.close();
+
+        StringWriter plainWriter = new StringWriter();
+        gen = new JsonFactory().createGenerator(plainWriter);
+        response.writeTo(gen);
+        gen.close();
+
+        JsonNode expected = response.toJson();
+        assertEquals(2, expected.get("processed").size());
+        assertEquals(expected, new ObjectMapper().readTree(codecWriter.toString()));
+        assertEquals(expected, new ObjectMapper().readTree(plainWriter.toString()));
+    }
+
     private List<DataError> getPopulatedDataErrors(int numberOfErrors) {
         List<DataError> dataErrors = new ArrayList<>();
 
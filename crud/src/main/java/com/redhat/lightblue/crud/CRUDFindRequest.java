@@ -42,6 +42,7 @@ public class CRUDFindRequest implements Serializable {
     private Sort sort;
     private Long from;
     private Long to;
+    private boolean countOnly;
 
     /**
      * The query
@@ -117,6 +118,22 @@ public class CRUDFindRequest implements Serializable {
         to = l;
     }
 
+    /**
+     * If true, only the number of matching documents is computed, and no
+     * documents are returned
+     */
+    public boolean isCountOnly() {
+        return countOnly;
+    }
+
+    /**
+     * If true, only the number of matching documents is computed, and no
+     * documents are returned
+     */
+    public void setCountOnly(boolean b) {
+        countOnly = b;
+    }
+
     /**
      * Shallow copy from r to this
      */
@@ -126,6 +143,7 @@ public class CRUDFindRequest implements Serializable {
         sort=r.sort;
         from=r.from;
         to=r.to;
+        countOnly=r.countOnly;
     }
 
     /**
@@ -147,6 +165,9 @@ public class CRUDFindRequest implements Serializable {
             arr.add(to);
             node.set("range", arr);
         }
+        if (countOnly) {
+            node.put("countOnly", true);
+        }
     }
 
     /**
@@ -171,6 +192,10 @@ public class CRUDFindRequest implements Serializable {
             from = ((ArrayNode) x).get(0).asLong();
             to = ((ArrayNode) x).get(1).asLong();
         }
+        x = node.get("countOnly");
+        if (x != null) {
+            countOnly = x.asBoolean();
+        }
     }
 
 }
@@ -50,6 +50,7 @@ public abstract class CRUDOperationContext implements MetadataResolver, Serializ
     private final Map<String, Object> propertyMap = new HashMap<>();
     private final Operation operation;
     private final HookManager hookManager;
+    private long deadline = 0;
 
     /**
      * This is the constructor used to represent the context of an operation
@@ -63,7 +64,8 @@ public abstract class CRUDOperationContext implements MetadataResolver, Serializ
         this.factory = f;
         // can assume are adding to an empty DocCtx list
         addDocuments(docs);
-        this.hookManager = new HookManager(factory.getHookResolver(), factory.getNodeFactory());
+        this.hookManager = new HookManager(factory.getHookResolver(), factory.getNodeFactory(),
+                factory.getHookDispatcher(), factory.getHookBatcher());
         this.callerRoles=new HashSet<>();
     }
 
@@ -295,6 +297,69 @@ public abstract class CRUDOperationContext implements MetadataResolver, Serializ
         propertyMap.put(name, value);
     }
 
+    /**
+     * Sets the time limit of the operation, starting now. The operation
+     * should stop once the time limit is exceeded. A time limit less than
+     * or equal to 0 means no time limit.
+     *
+     * The time limit is checked between the steps of an operation, with
+     * checkTimeLimit. A CRUD controller call that is already running is
+     * not interrupted; the controller can use getRemainingTime to bound
+     * its own back-end calls.
+     *
+     * @param timeLimit Time limit in milliseconds
+     */
+    public void setTimeLimit(long timeLimit) {
+        deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : 0;
+    }
+
+    /**
+     * Returns the time the operation should complete by, in
+     * milliseconds since epoch, or 0 if there is no time limit
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Sets the time the operation should complete by, in milliseconds
+     * since epoch. 0 means no time limit. This is used to pass the
+     * deadline of an operation to the operations derived from it.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Returns the time left until the deadline in milliseconds, 0 if the
+     * deadline has passed, or Long.MAX_VALUE if there is no time
+     * limit. CRUD controllers can use this to set backend timeouts.
+     */
+    public long getRemainingTime() {
+        if (deadline <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Returns if the time limit of the operation is exceeded
+     */
+    public boolean isTimeLimitExceeded() {
+        return deadline > 0 && System.currentTimeMillis() >= deadline;
+    }
+
+    /**
+     * Throws an error if the time limit of the operation is exceeded
+     *
+     * @throws Error with code CrudConstants.ERR_TIME_LIMIT_EXCEEDED
+     */
+    public void checkTimeLimit() {
+        if (isTimeLimitExceeded()) {
+            throw Error.get(CrudConstants.ERR_TIME_LIMIT_EXCEEDED, entityName);
+        }
+    }
+
     /**
      * The hookManager for this operation
      */
@@ -0,0 +1,160 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.lightblue.metadata.EntityConstraint;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Field;
+import com.redhat.lightblue.metadata.FieldConstraint;
+import com.redhat.lightblue.metadata.FieldCursor;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.Registry;
+
+/**
+ * The constraints of an entity, compiled into flat lists of
+ * constraints with their resolved checkers. Only the constrained
+ * fields of the entity are included, in field cursor order. A plan is
+ * immutable once built, and can be shared between threads and
+ * constraint validators.
+ *
+ * If there is no checker for a constraint, the checker of that step
+ * is null. The constraint validator reports it when a document is
+ * validated, the same way it does without a plan.
+ */
+public final class ConstraintPlan {
+
+    private final List<EntityStep> entitySteps;
+    private final List<FieldStep> fieldSteps;
+
+    /**
+     * An entity constraint and its checker
+     */
+    public static final class EntityStep {
+        private final EntityConstraint constraint;
+        private final EntityConstraintChecker checker;
+
+        private EntityStep(EntityConstraint constraint, EntityConstraintChecker checker) {
+            this.constraint = constraint;
+            this.checker = checker;
+        }
+
+        public EntityConstraint getConstraint() {
+            return constraint;
+        }
+
+        public EntityConstraintChecker getChecker() {
+            return checker;
+        }
+    }
+
+    /**
+     * A field constraint, the field it is defined for, and its checker
+     */
+    public static final class FieldStep {
+        private final FieldTreeNode fieldNode;
+        private final Path fieldPath;
+        private final String fieldPathString;
+        private final FieldConstraint constraint;
+        private final FieldConstraintChecker checker;
+
+        private FieldStep(FieldTreeNode fieldNode,
+                          Path fieldPath,
+                          FieldConstraint constraint,
+                          FieldConstraintChecker checker) {
+            this.fieldNode = fieldNode;
+            this.fieldPath = fieldPath;
+            this.fieldPathString = fieldPath.toString();
+            this.constraint = constraint;
+            this.checker = checker;
+        }
+
+        public FieldTreeNode getFieldNode() {
+            return fieldNode;
+        }
+
+        public Path getFieldPath() {
+            return fieldPath;
+        }
+
+        /**
+         * Returns the string representation of the field path, used as
+         * error context
+         */
+        public String getFieldPathString() {
+            return fieldPathString;
+        }
+
+        public FieldConstraint getConstraint() {
+            return constraint;
+        }
+
+        public FieldConstraintChecker getChecker() {
+            return checker;
+        }
+    }
+
+    private ConstraintPlan(List<EntityStep> entitySteps, List<FieldStep> fieldSteps) {
+        this.entitySteps = Collections.unmodifiableList(entitySteps);
+        this.fieldSteps = Collections.unmodifiableList(fieldSteps);
+    }
+
+    /**
+     * Compiles the constraints of the given entity, resolving the
+     * checkers using the given registries
+     */
+    public static ConstraintPlan compile(EntityMetadata md,
+                                         Registry<String, FieldConstraintChecker> fRegistry,
+                                         Registry<String, EntityConstraintChecker> eRegistry) {
+        List<EntityStep> entitySteps = new ArrayList<>();
+        List<EntityConstraint> entityConstraints = md.getConstraints();
+        if (entityConstraints != null) {
+            for (EntityConstraint x : entityConstraints) {
+                entitySteps.add(new EntityStep(x, eRegistry.find(x.getType())));
+            }
+        }
+        List<FieldStep> fieldSteps = new ArrayList<>();
+        FieldCursor cursor = md.getFieldCursor();
+        while (cursor.next()) {
+            FieldTreeNode node = cursor.getCurrentNode();
+            if (node instanceof Field) {
+                List<FieldConstraint> constraints = ((Field) node).getConstraints();
+                if (constraints != null) {
+                    Path path = cursor.getCurrentPath();
+                    for (FieldConstraint x : constraints) {
+                        fieldSteps.add(new FieldStep(node, path, x, fRegistry.find(x.getType())));
+                    }
+                }
+            }
+        }
+        return new ConstraintPlan(entitySteps, fieldSteps);
+    }
+
+    public List<EntityStep> getEntitySteps() {
+        return entitySteps;
+    }
+
+    public List<FieldStep> getFieldSteps() {
+        return fieldSteps;
+    }
+}
@@ -38,16 +38,20 @@ import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.FieldTreeNode;
 import com.redhat.lightblue.metadata.FieldConstraint;
 import com.redhat.lightblue.metadata.EntityConstraint;
-import com.redhat.lightblue.metadata.Field;
-import com.redhat.lightblue.metadata.FieldCursor;
 
+/**
+ * Validates documents against the field and entity constraints of an
+ * entity. The constraints are checked using a precompiled constraint
+ * plan, so only the constrained fields are visited for each document.
+ * The error context for the constraint, field, and value is only built
+ * for the errors reported by the checkers.
+ */
 public class ConstraintValidator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConstraintValidator.class);
 
-    private final Registry<String, FieldConstraintChecker> fRegistry;
-    private final Registry<String, EntityConstraintChecker> eRegistry;
     private final EntityMetadata md;
+    private final ConstraintPlan plan;
 
     private final Map<JsonDoc, List<Error>> docErrors = new HashMap<>();
     private final List<Error> errors = new ArrayList<>();
@@ -62,9 +66,16 @@ public class ConstraintValidator {
     protected ConstraintValidator(Registry<String, FieldConstraintChecker> r,
                                   Registry<String, EntityConstraintChecker> e,
                                   EntityMetadata md) {
-        this.fRegistry = r;
-        this.eRegistry = e;
+        this(md, ConstraintPlan.compile(md, r, e));
+    }
+
+    /**
+     * Constructs a constraint validator using a precompiled plan for
+     * the entity
+     */
+    protected ConstraintValidator(EntityMetadata md, ConstraintPlan plan) {
         this.md = md;
+        this.plan = plan;
     }
 
     public void clearErrors() {
@@ -134,13 +145,26 @@ public class ConstraintValidator {
     }
 
     public void validateDocs(List<? extends JsonDoc> docList) {
+        validateDocs(docList, docList);
+    }
+
+    /**
+     * Validates some of the documents of a document list. The entity
+     * constraint checkers see the complete document list as the current
+     * document list. This is used to validate a large list in parallel,
+     * using a validator for each partition of the list.
+     *
+     * @param docList The complete document list
+     * @param docsToValidate The documents of docList that will be validated
+     */
+    public void validateDocs(List<? extends JsonDoc> docList, List<? extends JsonDoc> docsToValidate) {
         currentDocList = docList;
         currentDoc = null;
 
-        LOGGER.debug("validateDocs() enter with {} docs", docList.size());
+        LOGGER.debug("validateDocs() enter with {} docs", docsToValidate.size());
         Error.push("validateDocs");
         try {
-            for (JsonDoc doc : docList) {
+            for (JsonDoc doc : docsToValidate) {
                 validateDoc(doc);
             }
         } catch (Error e) {
@@ -164,11 +188,9 @@ public class ConstraintValidator {
             currentFieldConstraint = null;
             currentFieldNode = null;
             currentFieldPath = null;
-            Path currentValuePath = null;
-            JsonNode currentValue = null;
             checkEntityConstraints(doc);
             currentEntityConstraint = null;
-            checkConstraints(doc, currentValuePath, currentValue);
+            checkConstraints(doc);
         } catch (Error e) {
             // rethrow lightblue error
             throw e;
@@ -188,123 +210,141 @@ public class ConstraintValidator {
 
     private void checkEntityConstraints(JsonDoc doc) {
         LOGGER.debug("checking entity constraints");
-        for (EntityConstraint x : md.getConstraints()) {
-            currentEntityConstraint = x;
+        for (ConstraintPlan.EntityStep step : plan.getEntitySteps()) {
+            currentEntityConstraint = step.getConstraint();
             String constraintType = currentEntityConstraint.getType();
-            LOGGER.debug("checking entity constraint " + constraintType);
-            Error.push(constraintType);
+            LOGGER.debug("checking entity constraint {}", constraintType);
+            int nDocErrors = numDocErrors(doc);
+            int nErrors = errors.size();
             try {
-                EntityConstraintChecker checker = eRegistry.find(constraintType);
+                EntityConstraintChecker checker = step.getChecker();
                 if (checker == null) {
                     throw Error.get(CrudConstants.ERR_NO_CONSTRAINT);
                 }
                 checker.checkConstraint(this, currentEntityConstraint, doc);
             } catch (Error e) {
                 // rethrow lightblue error
+                e.pushContext(constraintType);
                 throw e;
             } catch (Exception e) {
                 // throw new Error (preserves current error context)
                 LOGGER.error(e.getMessage(), e);
-                throw Error.get(CrudConstants.ERR_CRUD, e.getMessage());
-            } finally {
-                Error.pop();
+                Error err = Error.get(CrudConstants.ERR_CRUD, e.getMessage());
+                err.pushContext(constraintType);
+                throw err;
             }
+            addContext(doc, nDocErrors, nErrors, constraintType, null, null);
         }
     }
 
-    private void checkConstraints(JsonDoc doc, Path currentValuePath, JsonNode currentValue) {
+    private void checkConstraints(JsonDoc doc) {
         LOGGER.debug("checking field constraints");
-        FieldCursor cursor = md.getFieldCursor();
-        while (cursor.next()) {
-            currentFieldNode = cursor.getCurrentNode();
-            currentFieldPath = cursor.getCurrentPath();
-            LOGGER.debug("checking field {}", currentFieldPath);
-            Error.push(currentFieldPath.toString());
-            try {
-                List<FieldConstraint> constraints = null;
-                if (currentFieldNode instanceof Field) {
-                    constraints = ((Field) currentFieldNode).getConstraints();
-                }
-                if (constraints != null && !constraints.isEmpty()) {
-                    checkFieldConstraints(doc, constraints, currentValuePath, currentValue);
-                }
-            } catch (Error e) {
-                // rethrow lightblue error
-                throw e;
-            } catch (Exception e) {
-                // throw new Error (preserves current error context)
-                LOGGER.error(e.getMessage(), e);
-                throw Error.get(CrudConstants.ERR_CRUD, e.getMessage());
-            } finally {
-                Error.pop();
-            }
-        }
-    }
-
-    private void checkFieldConstraints(JsonDoc doc, List<FieldConstraint> constraints, Path currentValuePath, JsonNode currentValue) {
-
-        for (FieldConstraint x : constraints) {
-            currentFieldConstraint = x;
+        for (ConstraintPlan.FieldStep step : plan.getFieldSteps()) {
+            currentFieldNode = step.getFieldNode();
+            currentFieldPath = step.getFieldPath();
+            currentFieldConstraint = step.getConstraint();
             String constraintType = currentFieldConstraint.getType();
-            LOGGER.debug("checking constraint " + constraintType);
-            Error.push(constraintType);
+            LOGGER.debug("checking field {} constraint {}", currentFieldPath, constraintType);
+            Path currentValuePath = null;
+            int nDocErrors = numDocErrors(doc);
+            int nErrors = errors.size();
             try {
-                FieldConstraintChecker checker = fRegistry.find(constraintType);
+                FieldConstraintChecker checker = step.getChecker();
                 if (checker == null) {
                     throw Error.get(CrudConstants.ERR_NO_CONSTRAINT);
                 }
                 if (checker instanceof FieldConstraintDocChecker) {
                     // Constraint needs to be checked once for the doc
-                    checkFieldContraints(doc, (FieldConstraintDocChecker) checker);
+                    ((FieldConstraintDocChecker) checker).checkConstraint(this,
+                            currentFieldNode,
+                            currentFieldPath,
+                            currentFieldConstraint,
+                            doc);
+                    addContext(doc, nDocErrors, nErrors, step.getFieldPathString(), constraintType, null);
                 } else if (checker instanceof FieldConstraintValueChecker) {
                     // Constraint needs to be checked for all the values in the doc
-                    checkValueContraints(doc, (FieldConstraintChecker) checker, currentValuePath, currentValue);
+                    KeyValueCursor<Path, JsonNode> fieldValues = doc.getAllNodes(currentFieldPath);
+                    while (fieldValues.hasNext()) {
+                        fieldValues.next();
+                        currentValuePath = fieldValues.getCurrentKey();
+                        ((FieldConstraintValueChecker) checker).checkConstraint(this,
+                                currentFieldNode,
+                                currentFieldPath,
+                                currentFieldConstraint,
+                                currentValuePath,
+                                doc,
+                                fieldValues.getCurrentValue());
+                        if (numDocErrors(doc) > nDocErrors || errors.size() > nErrors) {
+                            addContext(doc, nDocErrors, nErrors, step.getFieldPathString(), constraintType,
+                                    currentValuePath.toString());
+                            nDocErrors = numDocErrors(doc);
+                            nErrors = errors.size();
+                        }
+                    }
                 }
             } catch (Error e) {
                 // rethrow lightblue error
+                addContext(e, step.getFieldPathString(), constraintType, currentValuePath);
                 throw e;
             } catch (Exception e) {
                 // throw new Error (preserves current error context)
                 LOGGER.error(e.getMessage(), e);
-                throw Error.get(CrudConstants.ERR_CRUD, e.getMessage());
-            } finally {
-                Error.pop();
+                Error err = Error.get(CrudConstants.ERR_CRUD, e.getMessage());
+                addContext(err, step.getFieldPathString(), constraintType, currentValuePath);
+                throw err;
             }
         }
     }
 
-    private void checkFieldContraints(JsonDoc doc, FieldConstraintDocChecker checker) {
-        ((FieldConstraintDocChecker) checker).checkConstraint(this,
-                currentFieldNode,
-                currentFieldPath,
-                currentFieldConstraint,
-                doc);
+    private static void addContext(Error e, String fieldPath, String constraintType, Path valuePath) {
+        e.pushContext(fieldPath);
+        e.pushContext(constraintType);
+        if (valuePath != null) {
+            e.pushContext(valuePath.toString());
+        }
     }
 
-    private void checkValueContraints(JsonDoc doc, FieldConstraintChecker checker, Path currentValuePath, JsonNode currentValue) {
-        KeyValueCursor<Path, JsonNode> fieldValues = doc.getAllNodes(currentFieldPath);
-        while (fieldValues.hasNext()) {
-            fieldValues.next();
-            currentValuePath = fieldValues.getCurrentKey();
-            currentValue = fieldValues.getCurrentValue();
-            Error.push(currentValuePath.toString());
-            try {
-                ((FieldConstraintValueChecker) checker).checkConstraint(this,
-                        currentFieldNode,
-                        currentFieldPath,
-                        currentFieldConstraint,
-                        currentValuePath,
-                        doc,
-                        currentValue);
-            } catch (Error e) {
-                // rethrow lightblue error
-                throw e;
-            } catch (Exception e) {
-                // throw new Error (preserves current error context)
-                LOGGER.error(e.getMessage(), e);
-                throw Error.get(CrudConstants.ERR_CRUD, e.getMessage());
-            } finally {
-                Error.pop();
+    private int numDocErrors(JsonDoc doc) {
+        List<Error> list = docErrors.get(doc);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * Adds the error context to the errors added by a checker. The
+     * errors are created by the checkers using the thread context,
+     * which only contains the document level context. The constraint
+     * level context is only built for the errors that are actually
+     * reported. Null context elements are ignored. The context of an
+     * error is appended only once, even if the checker added the same
+     * error object multiple times.
+     */
+    private void addContext(JsonDoc doc, int nDocErrors, int nErrors, String c1, String c2, String c3) {
+        List<Error> list = docErrors.get(doc);
+        if (list != null) {
+            addContext(list, nDocErrors, c1, c2, c3);
+        }
+        addContext(errors, nErrors, c1, c2, c3);
+    }
+
+    private static void addContext(List<Error> list, int from, String c1, String c2, String c3) {
+        int n = list.size();
+        for (int i = from; i < n; i++) {
+            Error e = list.get(i);
+            boolean seen = false;
+            for (int j = from; j < i; j++) {
+                if (list.get(j) == e) {
+                    seen = true;
+                    break;
+                }
+            }
+            if (!seen) {
+                e.pushContext(c1);
+                if (c2 != null) {
+                    e.pushContext(c2);
+                }
+                if (c3 != null) {
+                    e.pushContext(c3);
+                }
             }
         }
     }
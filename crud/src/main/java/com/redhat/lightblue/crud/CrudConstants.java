@@ -69,6 +69,13 @@ public final class CrudConstants {
     public static final String ERR_METADATA_APPEARS_TWICE = "crud:MetadataAppearsTwice";
     public static final String ERR_UNKNOWN_ENTITY = "crud:UnknownEntity";
 
+    public static final String ERR_UNSUPPORTED_REQUEST = "crud:UnsupportedRequest";
+
+    public static final String ERR_TIME_LIMIT_EXCEEDED = "crud:TimeLimitExceeded";
+    public static final String ERR_ASYNC_REJECTED = "crud:AsyncRejected";
+    public static final String ERR_UNKNOWN_TASK = "crud:UnknownTask";
+    public static final String ERR_TASK_CANCELLED = "crud:TaskCancelled";
+
     private CrudConstants() {
 
     }
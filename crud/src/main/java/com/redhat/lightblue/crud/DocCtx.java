@@ -18,14 +18,21 @@
  */
 package com.redhat.lightblue.crud;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 import java.util.HashMap;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.KeyValueCursor;
+import com.redhat.lightblue.util.Path;
 
 import com.redhat.lightblue.DataError;
 
@@ -43,9 +50,17 @@ import com.redhat.lightblue.DataError;
  * to point to something else if projections are applied, or null if document
  * will not appear in the output.</li>
  * </ul>
+ *
+ * The DocCtx instance reads and modifies the document it is constructed
+ * with, so a controller can return LazyJsonDoc instances: they are
+ * parsed only as far as the documents are accessed, and unparsed fields
+ * are written to the response as they are.
  */
 public class DocCtx extends JsonDoc {
 
+    private static final long serialVersionUID = 1l;
+
+    private final JsonDoc doc;
     private final List<Error> errors = new ArrayList<>();
     private JsonDoc outputDoc = this;
     private JsonDoc originalDoc = null;
@@ -53,7 +68,43 @@ public class DocCtx extends JsonDoc {
     private final Map<String, Object> propertyMap = new HashMap<>();
 
     public DocCtx(JsonDoc doc) {
-        super(doc.getRoot());
+        super(null);
+        this.doc = doc instanceof DocCtx ? ((DocCtx) doc).doc : doc;
+    }
+
+    @Override
+    public JsonNode getRoot() {
+        return doc.getRoot();
+    }
+
+    @Override
+    public JsonNode get(Path p) {
+        return doc.get(p);
+    }
+
+    @Override
+    public KeyValueCursor<Path, JsonNode> getAllNodes(Path p) {
+        return doc.getAllNodes(p);
+    }
+
+    @Override
+    public JsonNode modify(Path p, JsonNode newValue, boolean createPath) {
+        return doc.modify(p, newValue, createPath);
+    }
+
+    @Override
+    public JsonDoc copy() {
+        return doc.copy();
+    }
+
+    @Override
+    public JsonDoc select(Set<String> fields) {
+        return doc.select(fields);
+    }
+
+    @Override
+    public void writeTo(JsonGenerator generator) throws IOException {
+        doc.writeTo(generator);
     }
 
     /**
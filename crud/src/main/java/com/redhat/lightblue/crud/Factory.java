@@ -18,17 +18,29 @@
  */
 package com.redhat.lightblue.crud;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 
 import com.redhat.lightblue.util.DefaultRegistry;
 import com.redhat.lightblue.util.Resolver;
 
+import com.redhat.lightblue.metadata.CompositeMetadata;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.types.UIDGenerator;
 
+import com.redhat.lightblue.mediator.AsyncTaskManager;
+import com.redhat.lightblue.mediator.FindCoalescer;
 import com.redhat.lightblue.hooks.HookResolver;
 import com.redhat.lightblue.hooks.CRUDHook;
+import com.redhat.lightblue.hooks.HookBatcher;
+import com.redhat.lightblue.hooks.HookDispatcher;
 
 import com.redhat.lightblue.interceptor.InterceptorManager;
 
@@ -47,10 +59,32 @@ public class Factory implements Serializable {
     private final DefaultRegistry<String, CRUDController> crudControllers = new DefaultRegistry<>();
 
     private HookResolver hookResolver;
+    private transient volatile HookDispatcher hookDispatcher;
+    private transient volatile HookBatcher hookBatcher;
     private final InterceptorManager interceptors = new InterceptorManager();
 
     private JsonNodeFactory nodeFactory;
 
+    /**
+     * Compiled constraint plans, keyed by entity metadata instance. Keys
+     * are weak, so plans are discarded with their metadata.
+     */
+    private transient Map<EntityMetadata, ConstraintPlan> constraintPlans = newPlanCache();
+
+    public static final int DEFAULT_PARALLEL_VALIDATION_THRESHOLD = 1000;
+
+    private transient volatile ExecutorService validationExecutor;
+    private volatile int validationThreads;
+    private int parallelValidationThreshold = DEFAULT_PARALLEL_VALIDATION_THRESHOLD;
+
+    private transient volatile ExecutorService bulkExecutor;
+
+    private transient volatile AsyncTaskManager asyncTaskManager;
+
+    private transient volatile FindCoalescer findCoalescer;
+
+    private transient volatile UIDGenerator uidGenerator;
+
     /**
      * Adds a field constraint validator
      *
@@ -59,6 +93,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addFieldConstraintValidator(String name, FieldConstraintChecker checker) {
         fieldConstraintValidatorRegistry.add(name, checker);
+        constraintPlans.clear();
     }
 
     /**
@@ -69,6 +104,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addFieldConstraintValidators(Resolver<String, FieldConstraintChecker> r) {
         fieldConstraintValidatorRegistry.add(r);
+        constraintPlans.clear();
     }
 
     /**
@@ -79,6 +115,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addEntityConstraintValidator(String name, EntityConstraintChecker checker) {
         entityConstraintValidatorRegistry.add(name, checker);
+        constraintPlans.clear();
     }
 
     /**
@@ -89,6 +126,7 @@ public class Factory implements Serializable {
      */
     public synchronized void addEntityConstraintValidators(Resolver<String, EntityConstraintChecker> r) {
         entityConstraintValidatorRegistry.add(r);
+        constraintPlans.clear();
     }
 
     /**
@@ -96,9 +134,144 @@ public class Factory implements Serializable {
      * validators for the given entity
      */
     public ConstraintValidator getConstraintValidator(EntityMetadata md) {
-        return new ConstraintValidator(fieldConstraintValidatorRegistry,
-                entityConstraintValidatorRegistry,
-                md);
+        return new ConstraintValidator(md, getConstraintPlan(md));
+    }
+
+    /**
+     * Returns the compiled constraint plan for the given entity. Plans
+     * are compiled once for each entity metadata instance, and reused,
+     * so metadata that is reloaded gets a new plan. A simple composite
+     * metadata uses the plan of the entity metadata it is built
+     * from. Composite metadata with resolved references contain the
+     * fields of other entities as well, so plans for those are
+     * compiled for each call.
+     */
+    public ConstraintPlan getConstraintPlan(EntityMetadata md) {
+        EntityMetadata key = md;
+        if (md instanceof CompositeMetadata) {
+            CompositeMetadata cmd = (CompositeMetadata) md;
+            if (!cmd.isSimple() || cmd.getOriginalMetadata() == null) {
+                return ConstraintPlan.compile(md, fieldConstraintValidatorRegistry, entityConstraintValidatorRegistry);
+            }
+            key = cmd.getOriginalMetadata();
+        }
+        ConstraintPlan plan = constraintPlans.get(key);
+        if (plan == null) {
+            plan = ConstraintPlan.compile(key, fieldConstraintValidatorRegistry, entityConstraintValidatorRegistry);
+            constraintPlans.put(key, plan);
+        }
+        return plan;
+    }
+
+    private static Map<EntityMetadata, ConstraintPlan> newPlanCache() {
+        return Collections.synchronizedMap(new WeakHashMap<EntityMetadata, ConstraintPlan>());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        constraintPlans = newPlanCache();
+    }
+
+    /**
+     * Sets the executor used to validate the documents of large inserts
+     * and saves in parallel. If executor is null, or number of threads
+     * is less than 2, documents are validated sequentially.
+     *
+     * @param executor The executor
+     * @param nThreads Number of threads of the executor. The documents
+     * are split into this many partitions.
+     */
+    public synchronized void setValidationExecutor(ExecutorService executor, int nThreads) {
+        validationExecutor = executor;
+        validationThreads = nThreads;
+    }
+
+    /**
+     * Returns the executor used for parallel constraint validation, or
+     * null if parallel validation is not enabled
+     */
+    public ExecutorService getValidationExecutor() {
+        return validationThreads > 1 ? validationExecutor : null;
+    }
+
+    /**
+     * Returns the number of threads used for parallel constraint validation
+     */
+    public int getValidationThreads() {
+        return validationThreads;
+    }
+
+    /**
+     * Returns the minimum number of documents that are validated in
+     * parallel
+     */
+    public int getParallelValidationThreshold() {
+        return parallelValidationThreshold;
+    }
+
+    public void setParallelValidationThreshold(int n) {
+        parallelValidationThreshold = n;
+    }
+
+    /**
+     * Sets the executor used to run the requests of unordered bulk
+     * calls in parallel. If null, bulk requests are run sequentially.
+     * This must not be the same executor as the validation executor.
+     */
+    public synchronized void setBulkExecutor(ExecutorService executor) {
+        bulkExecutor = executor;
+    }
+
+    /**
+     * Returns the executor for unordered bulk calls, or null
+     */
+    public ExecutorService getBulkExecutor() {
+        return bulkExecutor;
+    }
+
+    /**
+     * Sets the task manager running asynchronous requests. If null,
+     * requests asking for asynchronous execution run synchronously.
+     */
+    public synchronized void setAsyncTaskManager(AsyncTaskManager mgr) {
+        asyncTaskManager = mgr;
+    }
+
+    /**
+     * Returns the task manager running asynchronous requests, or null
+     */
+    public AsyncTaskManager getAsyncTaskManager() {
+        return asyncTaskManager;
+    }
+
+    /**
+     * Sets the coalescer shared by identical find requests. If null,
+     * every find request runs separately.
+     */
+    public synchronized void setFindCoalescer(FindCoalescer coalescer) {
+        findCoalescer = coalescer;
+    }
+
+    /**
+     * Returns the coalescer shared by identical find requests, or null
+     */
+    public FindCoalescer getFindCoalescer() {
+        return findCoalescer;
+    }
+
+    /**
+     * Sets the generator for the values of UID fields. If null, the
+     * default generator of UIDType is used.
+     */
+    public synchronized void setUIDGenerator(UIDGenerator generator) {
+        uidGenerator = generator;
+    }
+
+    /**
+     * Returns the generator for the values of UID fields, or null
+     */
+    public UIDGenerator getUIDGenerator() {
+        return uidGenerator;
     }
 
     /**
@@ -140,6 +313,59 @@ public class Factory implements Serializable {
         return hookResolver;
     }
 
+    /**
+     * Returns the dispatcher for asynchronous hooks
+     */
+    public HookDispatcher getHookDispatcher() {
+        HookDispatcher d = hookDispatcher;
+        if (d == null) {
+            synchronized (this) {
+                d = hookDispatcher;
+                if (d == null) {
+                    hookDispatcher = d = new HookDispatcher();
+                }
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Returns the batcher for batched hooks
+     */
+    public HookBatcher getHookBatcher() {
+        HookBatcher b = hookBatcher;
+        if (b == null) {
+            synchronized (this) {
+                b = hookBatcher;
+                if (b == null) {
+                    hookBatcher = b = new HookBatcher();
+                }
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Releases the resources held by the factory: asynchronous requests
+     * are stopped, pending hook batches are delivered, and the batcher
+     * and asynchronous hook threads are stopped. The host application should call this when it stops
+     * using the factory.
+     */
+    public void shutdown() {
+        AsyncTaskManager m = asyncTaskManager;
+        if (m != null) {
+            m.shutdown();
+        }
+        HookDispatcher d = hookDispatcher;
+        if (d != null) {
+            d.shutdown();
+        }
+        HookBatcher b = hookBatcher;
+        if (b != null) {
+            b.shutdown();
+        }
+    }
+
     /**
      * Returns the hook with the given name. Returns null if hook doesn't exist
      */
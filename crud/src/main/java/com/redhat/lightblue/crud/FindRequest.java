@@ -106,6 +106,22 @@ public class FindRequest extends Request {
         cfr.setTo(l);
     }
 
+    /**
+     * If true, only the number of matching documents is returned in
+     * matchCount, and no documents are returned
+     */
+    public boolean isCountOnly() {
+        return cfr.isCountOnly();
+    }
+
+    /**
+     * If true, only the number of matching documents is returned in
+     * matchCount, and no documents are returned
+     */
+    public void setCountOnly(boolean b) {
+        cfr.setCountOnly(b);
+    }
+
     public CRUDFindRequest getCRUDFindRequest() {
         return cfr;
     }
@@ -28,6 +28,7 @@ import com.redhat.lightblue.mediator.OperationContext;
 
 import com.redhat.lightblue.metadata.UIDFields;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.types.UIDGenerator;
 
 import com.redhat.lightblue.interceptor.CRUDDocInterceptor;
 import com.redhat.lightblue.interceptor.MediatorInterceptor;
@@ -48,14 +49,16 @@ public class UIDInterceptor implements CRUDDocInterceptor, MediatorInterceptor {
     @Override
     public void run(OperationContext ctx) {
         JsonNodeFactory nodeFactory = ctx.getFactory().getNodeFactory();
+        UIDGenerator generator = ctx.getFactory().getUIDGenerator();
         EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
         for (DocCtx doc : ctx.getDocuments()) {
-            UIDFields.initializeUIDFields(nodeFactory, md, doc);
+            UIDFields.initializeUIDFields(nodeFactory, md, doc, generator);
         }
     }
 
     @Override
     public void run(CRUDOperationContext ctx, DocCtx doc) {
-        UIDFields.initializeUIDFields(ctx.getFactory().getNodeFactory(), ctx.getEntityMetadata(ctx.getEntityName()), doc);
+        UIDFields.initializeUIDFields(ctx.getFactory().getNodeFactory(), ctx.getEntityMetadata(ctx.getEntityName()), doc,
+                ctx.getFactory().getUIDGenerator());
     }
 }
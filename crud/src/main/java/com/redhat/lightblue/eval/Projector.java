@@ -18,6 +18,9 @@
  */
 package com.redhat.lightblue.eval;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,6 +36,7 @@ import com.redhat.lightblue.metadata.ObjectField;
 import com.redhat.lightblue.metadata.SimpleArrayElement;
 import com.redhat.lightblue.metadata.SimpleField;
 import com.redhat.lightblue.metadata.ResolvedReferenceField;
+import com.redhat.lightblue.query.ArrayProjection;
 import com.redhat.lightblue.query.ArrayQueryMatchProjection;
 import com.redhat.lightblue.query.ArrayRangeProjection;
 import com.redhat.lightblue.query.FieldProjection;
@@ -61,6 +65,10 @@ import com.redhat.lightblue.util.Path;
  * Recursive inclusion projections don't cross entity boundaries
  * (i.e. references) unless there is an explicit inclusion projection
  * for the referenced entity, or a field under that entity.
+ *
+ * A projector built for an entity reads only the top-level fields its
+ * projection can include, using JsonDoc.select(), so a document that
+ * parses its fields on demand does not parse the others.
  */
 public abstract class Projector {
 
@@ -68,6 +76,7 @@ public abstract class Projector {
 
     private final FieldTreeNode rootMdNode;
     private final Path rootMdPath;
+    private Set<String> rootFields;
 
     protected Projector(Path ctxPath, FieldTreeNode ctx) {
         this.rootMdNode = ctx;
@@ -114,7 +123,48 @@ public abstract class Projector {
      * Builds a projector using the given projection and entity metadata
      */
     public static Projector getInstance(Projection projection, EntityMetadata md) {
-        return getInstance(projection, Path.EMPTY, md.getFieldTreeRoot());
+        Projector projector = getInstance(projection, Path.EMPTY, md.getFieldTreeRoot());
+        projector.rootFields = getIncludedFields(projection, new HashSet<String>());
+        return projector;
+    }
+
+    /**
+     * Adds the top-level fields the projection can include to the
+     * set. Returns null if they cannot be determined without looking at
+     * the document, that is, if the projection includes a field by
+     * pattern, or evaluates a query.
+     */
+    private static Set<String> getIncludedFields(Projection projection, Set<String> fields) {
+        if (projection instanceof ProjectionList) {
+            for (Projection x : ((ProjectionList) projection).getItems()) {
+                if (getIncludedFields(x, fields) == null) {
+                    return null;
+                }
+            }
+        } else if (projection instanceof ArrayQueryMatchProjection) {
+            return null;
+        } else {
+            Path field;
+            boolean include;
+            if (projection instanceof FieldProjection) {
+                field = ((FieldProjection) projection).getField();
+                include = ((FieldProjection) projection).isInclude();
+            } else {
+                ArrayProjection p = (ArrayProjection) projection;
+                if (p.getProject() != null && getIncludedFields(p.getProject(), new HashSet<String>()) == null) {
+                    return null;
+                }
+                field = p.getField();
+                include = p.isInclude();
+            }
+            if (include) {
+                if (field.isEmpty() || field.head(0).equals(Path.ANY)) {
+                    return null;
+                }
+                fields.add(field.head(0));
+            }
+        }
+        return fields;
     }
 
     /**
@@ -138,8 +188,13 @@ public abstract class Projector {
      */
     public JsonDoc project(JsonDoc doc,
                            JsonNodeFactory factory) {
+        if (rootFields != null) {
+            doc = doc.select(rootFields);
+        }
         JsonNodeCursor cursor = doc.cursor();
-        cursor.firstChild();
+        if (!cursor.firstChild()) {
+            return new JsonDoc(factory.objectNode());
+        }
 
         ObjectNode root = projectObject(this,
                 factory,
@@ -60,7 +60,7 @@ public class QueryEvaluationContext {
     }
 
     public KeyValueCursor<Path, JsonNode> getNodes(Path relativePath) {
-        return new JsonDoc(contextRoot).getAllNodes(new Path(relativePath));
+        return JsonDoc.getAllNodes(contextRoot, relativePath.immutableCopy());
     }
 
     public Path getPath() {
@@ -0,0 +1,75 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.hooks;
+
+import com.redhat.lightblue.metadata.HookConfiguration;
+
+/**
+ * A hook configuration that can request asynchronous dispatch of the
+ * hook. Hook configuration parsers return configurations implementing
+ * this interface for hooks that can run asynchronously. If the hook
+ * configuration does not implement this interface, or if
+ * isAsynchronous() returns false, the hook is called on the request
+ * thread.
+ *
+ * Asynchronous hooks are queued to a bounded queue for the hook, and
+ * called by the worker threads of that queue. The queue and its
+ * threads are created using the configuration of the first call to
+ * the hook.
+ */
+public interface AsyncHookConfiguration extends HookConfiguration {
+
+    /**
+     * What to do when the queue of an asynchronous hook is full
+     */
+    enum OverflowPolicy {
+        /**
+         * Wait until there is space in the queue
+         */
+        BLOCK,
+        /**
+         * Drop the hook call, and count it as dropped
+         */
+        DROP,
+        /**
+         * Call the hook on the request thread
+         */
+        SYNCHRONOUS
+    }
+
+    /**
+     * Returns if the hook should be called asynchronously
+     */
+    boolean isAsynchronous();
+
+    /**
+     * Returns the maximum number of hook calls waiting in the queue
+     */
+    int getQueueCapacity();
+
+    /**
+     * Returns the number of worker threads calling the hook
+     */
+    int getThreads();
+
+    /**
+     * Returns what to do when the queue is full
+     */
+    OverflowPolicy getOverflowPolicy();
+}
@@ -0,0 +1,46 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.hooks;
+
+import com.redhat.lightblue.metadata.HookConfiguration;
+
+/**
+ * A hook configuration that can request batching of hook calls across
+ * requests. The hook documents of the calls to the same hook for the
+ * same entity version are collected, and the hook is called once for
+ * the batch, when the batch reaches the batch size, or when the oldest
+ * document in the batch has waited for the batch window.
+ *
+ * If the hook configuration does not implement this interface, or if
+ * the batch size is less than 2, the hook is called once for each
+ * request.
+ */
+public interface BatchingHookConfiguration extends HookConfiguration {
+
+    /**
+     * Returns the maximum number of documents in a batch
+     */
+    int getBatchSize();
+
+    /**
+     * Returns the maximum time a document waits in a batch, in
+     * milliseconds
+     */
+    long getBatchWindowMillis();
+}
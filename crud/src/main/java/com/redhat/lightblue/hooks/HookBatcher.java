@@ -0,0 +1,262 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.hooks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+
+/**
+ * Collects hook documents across requests, and calls the hooks with
+ * batches of documents. There is a batch for each hook and entity
+ * version. A batch is delivered by the thread that fills it, or by the
+ * flush thread when the batch window of the batch expires. On
+ * shutdown, all pending batches are delivered. The batcher does not
+ * register a JVM shutdown hook; the host application shuts it down
+ * through Factory.shutdown().
+ *
+ * The number of delivered and failed documents are counted for each
+ * hook. A failed batch is logged and not retried.
+ */
+public class HookBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HookBatcher.class);
+
+    /**
+     * How often the batch windows are checked
+     */
+    public static final long FLUSH_CHECK_MILLIS = 100;
+
+    private final Map<String, Batch> batches = new HashMap<>();
+    private final Map<String, Stats> stats = new HashMap<>();
+    private ScheduledExecutorService flusher;
+    private boolean shutdown = false;
+
+    private static final class Batch {
+        private final String hookName;
+        private final CRUDHook crudHook;
+        private final EntityMetadata md;
+        private final BatchingHookConfiguration cfg;
+        private final long created = System.currentTimeMillis();
+        private final List<HookDoc> docs = new ArrayList<>();
+
+        public Batch(String hookName, CRUDHook crudHook, EntityMetadata md, BatchingHookConfiguration cfg) {
+            this.hookName = hookName;
+            this.crudHook = crudHook;
+            this.md = md;
+            this.cfg = cfg;
+        }
+
+        public boolean isFull() {
+            return docs.size() >= cfg.getBatchSize();
+        }
+
+        public boolean isExpired(long now) {
+            return now - created >= cfg.getBatchWindowMillis();
+        }
+    }
+
+    private static final class Stats {
+        private long numDelivered;
+        private long numFailed;
+    }
+
+    /**
+     * Adds the documents to the batch of the hook for the entity. If the
+     * batch becomes full, it is delivered on the calling thread.
+     */
+    public void add(String hookName,
+                    CRUDHook crudHook,
+                    EntityMetadata md,
+                    BatchingHookConfiguration cfg,
+                    List<HookDoc> docs) {
+        List<Batch> full = new ArrayList<>();
+        synchronized (this) {
+            if (shutdown) {
+                full.add(newBatch(hookName, crudHook, md, cfg, docs));
+            } else {
+                startFlusher();
+                String key = getKey(hookName, md);
+                Batch batch = batches.get(key);
+                for (HookDoc doc : docs) {
+                    if (batch == null) {
+                        batch = new Batch(hookName, crudHook, md, cfg);
+                        batches.put(key, batch);
+                    }
+                    batch.docs.add(doc);
+                    if (batch.isFull()) {
+                        batches.remove(key);
+                        full.add(batch);
+                        batch = null;
+                    }
+                }
+            }
+        }
+        for (Batch b : full) {
+            deliver(b);
+        }
+    }
+
+    /**
+     * Delivers the batches whose batch window has expired
+     */
+    public void flushExpired() {
+        long now = System.currentTimeMillis();
+        List<Batch> expired = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Batch> entry : new ArrayList<>(batches.entrySet())) {
+                if (entry.getValue().isExpired(now)) {
+                    batches.remove(entry.getKey());
+                    expired.add(entry.getValue());
+                }
+            }
+        }
+        for (Batch b : expired) {
+            deliver(b);
+        }
+    }
+
+    /**
+     * Delivers all pending batches
+     */
+    public void flush() {
+        List<Batch> all;
+        synchronized (this) {
+            all = new ArrayList<>(batches.values());
+            batches.clear();
+        }
+        for (Batch b : all) {
+            deliver(b);
+        }
+    }
+
+    /**
+     * Delivers all pending batches, and stops the flush thread. Hooks
+     * added after shutdown are called without batching.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            if (flusher != null) {
+                flusher.shutdown();
+                flusher = null;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Returns the number of documents delivered to the hook
+     */
+    public synchronized long getDeliveredCount(String hookName) {
+        Stats s = stats.get(hookName);
+        return s == null ? 0 : s.numDelivered;
+    }
+
+    /**
+     * Returns the number of documents in batches that failed
+     */
+    public synchronized long getFailedCount(String hookName) {
+        Stats s = stats.get(hookName);
+        return s == null ? 0 : s.numFailed;
+    }
+
+    /**
+     * Returns the number of documents waiting to be delivered to the hook
+     */
+    public synchronized int getPendingCount(String hookName) {
+        int n = 0;
+        for (Batch b : batches.values()) {
+            if (b.hookName.equals(hookName)) {
+                n += b.docs.size();
+            }
+        }
+        return n;
+    }
+
+    private static Batch newBatch(String hookName,
+                                  CRUDHook crudHook,
+                                  EntityMetadata md,
+                                  BatchingHookConfiguration cfg,
+                                  List<HookDoc> docs) {
+        Batch b = new Batch(hookName, crudHook, md, cfg);
+        b.docs.addAll(docs);
+        return b;
+    }
+
+    private static String getKey(String hookName, EntityMetadata md) {
+        return hookName + ":" + md.getName() + ":" + (md.getVersion() == null ? null : md.getVersion().getValue());
+    }
+
+    private void deliver(Batch b) {
+        LOGGER.debug("Delivering {} docs to hook {}", b.docs.size(), b.hookName);
+        boolean success = false;
+        try {
+            b.crudHook.processHook(b.md, b.cfg, b.docs);
+            success = true;
+        } catch (RuntimeException e) {
+            LOGGER.error("Hook {} failed for a batch of {} docs: {}", b.hookName, b.docs.size(), e.toString(), e);
+        }
+        synchronized (this) {
+            Stats s = stats.get(b.hookName);
+            if (s == null) {
+                s = new Stats();
+                stats.put(b.hookName, s);
+            }
+            if (success) {
+                s.numDelivered += b.docs.size();
+            } else {
+                s.numFailed += b.docs.size();
+            }
+        }
+    }
+
+    private void startFlusher() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "lightblue-hook-batcher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flushExpired();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Hook batch flush failed", e);
+                    }
+                }
+            }, FLUSH_CHECK_MILLIS, FLUSH_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
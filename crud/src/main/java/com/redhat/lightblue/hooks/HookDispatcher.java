@@ -0,0 +1,235 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.hooks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.MonitorRegistry;
+import com.netflix.servo.annotations.DataSourceType;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Calls asynchronous hooks. Each hook has its own bounded queue and
+ * worker threads, so a slow hook does not delay the other hooks. The
+ * queue and the threads of a hook are created when the hook is first
+ * dispatched. Worker threads are daemon threads.
+ *
+ * A hook call that fails is logged, and the failure is not reported to
+ * the caller. Dropped hook calls are published as a Servo counter for
+ * each hook, tagged with the hook name and the dispatcher instance. The
+ * counters are unregistered on shutdown.
+ */
+public class HookDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HookDispatcher.class);
+
+    public static final String DROPPED_COUNTER = "lightblue.hook.dropped";
+    public static final String TAG_HOOK = "hook";
+    public static final String TAG_INSTANCE = "instance";
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final Map<String, HookQueue> queues = new HashMap<>();
+    private final MonitorRegistry registry;
+    private final String instance = Integer.toString(INSTANCES.incrementAndGet());
+
+    private static final class HookQueue {
+        private final String hookName;
+        private final BlockingQueue<Runnable> queue;
+        private final AsyncHookConfiguration.OverflowPolicy overflowPolicy;
+        private final List<Thread> threads = new ArrayList<>();
+        private final AtomicLong numDropped = new AtomicLong();
+        private final BasicGauge<Long> droppedCounter;
+
+        public HookQueue(String hookName, AsyncHookConfiguration cfg, String instance) {
+            this.hookName = hookName;
+            // A gauge of the count, typed as a counter. BasicCounter's hash
+            // code changes with its value, so it can't be unregistered
+            this.droppedCounter = new BasicGauge<>(MonitorConfig.builder(DROPPED_COUNTER).
+                    withTag(DataSourceType.COUNTER).
+                    withTag(TAG_HOOK, hookName).
+                    withTag(TAG_INSTANCE, instance).build(), new Callable<Long>() {
+                        @Override
+                        public Long call() {
+                            return numDropped.get();
+                        }
+                    });
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, cfg.getQueueCapacity()));
+            this.overflowPolicy = cfg.getOverflowPolicy() == null
+                    ? AsyncHookConfiguration.OverflowPolicy.BLOCK : cfg.getOverflowPolicy();
+            int n = Math.max(1, cfg.getThreads());
+            for (int i = 0; i < n; i++) {
+                Thread t = new Thread(new Worker(), "lightblue-hook-" + hookName + "-" + i);
+                t.setDaemon(true);
+                threads.add(t);
+            }
+            for (Thread t : threads) {
+                t.start();
+            }
+        }
+
+        public void dispatch(Runnable call) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    try {
+                        queue.put(call);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        drop();
+                    }
+                    break;
+                case DROP:
+                    if (!queue.offer(call)) {
+                        drop();
+                    }
+                    break;
+                case SYNCHRONOUS:
+                    if (!queue.offer(call)) {
+                        LOGGER.debug("Queue of hook {} is full, calling synchronously", hookName);
+                        run(call);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void drop() {
+            numDropped.incrementAndGet();
+            LOGGER.warn("Queue of hook {} is full, hook call dropped", hookName);
+        }
+
+        private void run(Runnable call) {
+            try {
+                call.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("Asynchronous hook {} failed: {}", hookName, e.toString(), e);
+            }
+        }
+
+        public void shutdown() {
+            for (Thread t : threads) {
+                t.interrupt();
+            }
+        }
+
+        private final class Worker implements Runnable {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        HookQueue.this.run(queue.take());
+                    }
+                } catch (InterruptedException e) {
+                    LOGGER.debug("Worker of hook {} stopped", hookName);
+                }
+            }
+        }
+    }
+
+    public HookDispatcher() {
+        this(DefaultMonitorRegistry.getInstance());
+    }
+
+    /**
+     * @param registry The registry for the counters of dropped hook calls
+     */
+    public HookDispatcher(MonitorRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Dispatches a hook call to the queue of the hook. Depending on the
+     * overflow policy, this call may block until there is space in the
+     * queue, drop the call, or run the call on the current thread if the
+     * queue is full.
+     *
+     * @param hookName Name of the hook
+     * @param cfg The hook configuration, used to create the queue of the
+     * hook if it doesn't exist
+     * @param call The hook call
+     */
+    public void dispatch(String hookName, AsyncHookConfiguration cfg, Runnable call) {
+        getQueue(hookName, cfg).dispatch(call);
+    }
+
+    /**
+     * Returns the number of hook calls dropped because the queue of the
+     * hook was full
+     */
+    public long getDroppedCount(String hookName) {
+        HookQueue q;
+        synchronized (queues) {
+            q = queues.get(hookName);
+        }
+        return q == null ? 0 : q.numDropped.get();
+    }
+
+    /**
+     * Returns the number of hook calls waiting in the queue of the hook
+     */
+    public int getQueueSize(String hookName) {
+        HookQueue q;
+        synchronized (queues) {
+            q = queues.get(hookName);
+        }
+        return q == null ? 0 : q.queue.size();
+    }
+
+    /**
+     * Stops all worker threads, and unregisters the counters. Hook calls
+     * waiting in the queues are not called.
+     */
+    public void shutdown() {
+        synchronized (queues) {
+            for (HookQueue q : queues.values()) {
+                q.shutdown();
+                registry.unregister(q.droppedCounter);
+            }
+            queues.clear();
+        }
+    }
+
+    private HookQueue getQueue(String hookName, AsyncHookConfiguration cfg) {
+        synchronized (queues) {
+            HookQueue q = queues.get(hookName);
+            if (q == null) {
+                LOGGER.debug("Creating queue for hook {}, capacity={}, threads={}, overflow={}",
+                        hookName, cfg.getQueueCapacity(), cfg.getThreads(), cfg.getOverflowPolicy());
+                q = new HookQueue(hookName, cfg, instance);
+                queues.put(hookName, q);
+                registry.register(q.droppedCounter);
+            }
+            return q;
+        }
+    }
+}
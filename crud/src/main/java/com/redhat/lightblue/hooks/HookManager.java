@@ -27,6 +27,7 @@ import com.redhat.lightblue.eval.Projector;
 import com.redhat.lightblue.mediator.OperationContext;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.Hook;
+import com.redhat.lightblue.metadata.HookConfiguration;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
 import org.slf4j.Logger;
@@ -47,52 +48,100 @@ import java.util.Map;
  *
  * Each hook receives a list containing pre- and post- update versions of the
  * documents. If there are multiple hooks for the given operation, the hooks of
- * that operation share the document copies. Because of this, hooks must treat
+ * that operation share the document copies, and the hooks with the same
+ * projection share the projected copies. Because of this, hooks must treat
  * documents as read-only.
  *
- *
+ * Hooks whose configuration is an {@link AsyncHookConfiguration}
+ * requesting asynchronous dispatch are passed to the hook dispatcher,
+ * and called by the worker threads of that hook. Hooks whose
+ * configuration is a {@link BatchingHookConfiguration} are passed to
+ * the hook batcher, and called with batches of documents collected
+ * across requests. The remaining hooks are called on the calling
+ * thread.
  */
 public class HookManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(HookManager.class);
 
     private final HookResolver resolver;
     private final JsonNodeFactory factory;
+    private final HookDispatcher dispatcher;
+    private final HookBatcher batcher;
 
     private final List<HookDocs> queuedHooks = new ArrayList<>();
 
+    /**
+     * A document and the hooks that will be called for it. Snapshots of
+     * the document are created only as needed, and shared between
+     * hooks. If a hook has a projection, the projected snapshot is
+     * built directly from the document, without copying the whole
+     * document first, and it is shared between the hooks with the same
+     * projection. The original document kept by DocCtx may be shared
+     * with the back-end (e.g. a stored document that is being deleted),
+     * so it is copied once for the pre-update snapshot, and the copy is
+     * shared between the hooks.
+     */
     private static final class DocHooks {
-        private final JsonDoc pre;
-        private final JsonDoc post;
+        private final DocCtx doc;
+        private final JsonDoc original;
         private final Operation op;
         private final Map<Hook, CRUDHook> hooks;
+        private boolean hasSnapshot = false;
+        private JsonDoc pre;
+        private JsonDoc post;
+        private final Map<String, JsonDoc[]> projectedSnapshots = new HashMap<>();
 
         public DocHooks(DocCtx doc, Map<Hook, CRUDHook> hooks) {
+            this.doc = doc;
             op = doc.getOperationPerformed();
-            // Create a copy of the original version of the document, if non-null
             if (op == Operation.INSERT || op == Operation.FIND) {
-                pre = null;
+                original = null;
             } else {
-                JsonDoc preDoc = doc.getOriginalDocument();
-                if (preDoc != null) {
-                    pre = preDoc.copy();
-                } else {
-                    pre = null;
-                }
+                original = doc.getOriginalDocument();
             }
-            // If original copy is the same instance as the document
-            // copy, use the same pre value as post value otherwise,
-            // copy the doc and use that as the post value
-            // If we're deleting, post copy is null
-            if (op == Operation.DELETE) {
-                post = null;
+            this.hooks = hooks;
+        }
+
+        /**
+         * Returns the pre- and post- versions of the document for the
+         * given hook
+         */
+        public JsonDoc[] getSnapshot(Hook hook, Projector projector, JsonNodeFactory factory) {
+            if (projector == null) {
+                if (!hasSnapshot) {
+                    // Copy the original once. If it is the same
+                    // instance as the document, use the copy as both
+                    // pre and post value. If we're deleting, post copy
+                    // is null
+                    pre = original == null ? null : original.copy();
+                    if (op == Operation.DELETE) {
+                        post = null;
+                    } else if (original == doc && pre != null) {
+                        post = pre;
+                    } else {
+                        post = doc.copy();
+                    }
+                    hasSnapshot = true;
+                }
+                return new JsonDoc[]{pre, post};
             } else {
-                if (doc.getOriginalDocument() == doc && pre != null) {
-                    post = pre;
-                } else {
-                    post = doc.copy();
+                String key = hook.getProjection().toString();
+                JsonDoc[] snapshot = projectedSnapshots.get(key);
+                if (snapshot == null) {
+                    JsonDoc projectedPre = original == null ? null : projector.project(original, factory);
+                    JsonDoc projectedPost;
+                    if (op == Operation.DELETE) {
+                        projectedPost = null;
+                    } else if (original == doc && projectedPre != null) {
+                        projectedPost = projectedPre;
+                    } else {
+                        projectedPost = projector.project(doc, factory);
+                    }
+                    snapshot = new JsonDoc[]{projectedPre, projectedPost};
+                    projectedSnapshots.put(key, snapshot);
                 }
+                return snapshot;
             }
-            this.hooks = hooks;
         }
     }
 
@@ -118,8 +167,27 @@ public class HookManager {
      * Construct hooks with the given hook resolver
      */
     public HookManager(HookResolver r, JsonNodeFactory factory) {
+        this(r, factory, null);
+    }
+
+    /**
+     * Construct hooks with the given hook resolver and hook
+     * dispatcher. If dispatcher is null, all hooks are called
+     * synchronously.
+     */
+    public HookManager(HookResolver r, JsonNodeFactory factory, HookDispatcher dispatcher) {
+        this(r, factory, dispatcher, null);
+    }
+
+    /**
+     * Construct hooks with the given hook resolver, hook dispatcher, and
+     * hook batcher. If batcher is null, hooks are not batched.
+     */
+    public HookManager(HookResolver r, JsonNodeFactory factory, HookDispatcher dispatcher, HookBatcher batcher) {
         resolver = r;
         this.factory = factory;
+        this.dispatcher = dispatcher;
+        this.batcher = batcher;
     }
 
     /**
@@ -158,36 +226,45 @@ public class HookManager {
     /**
      * Calls all queued hooks, and then clears the queued hooks. Any hook that
      * failed will be logged, but hook execution will continue unless one of the
-     * hooks throws an exception with @StopHookProcessing annotation.
+     * synchronous hooks throws an exception with @StopHookProcessing
+     * annotation. Asynchronous and batched hooks are dispatched, and their
+     * failures are only logged.
      */
     public void callQueuedHooks() {
-        for (HookDocs hd : queuedHooks) {
-            List<HookDoc> processedDocuments;
-            if (hd.hook.getProjection() != null) {
-                // Project the docs
-                processedDocuments = new ArrayList<>(hd.docs.size());
-                Projector projector = Projector.getInstance(hd.hook.getProjection(), hd.md);
-                for (HookDoc doc : hd.docs) {
-                    processedDocuments.add(new HookDoc(
-                            doc.getEntityMetadata(),
-                            project(doc.getPreDoc(), projector),
-                            project(doc.getPostDoc(), projector),
-                            doc.getOperation()));
-                }
+        for (final HookDocs hd : queuedHooks) {
+            HookConfiguration cfg = hd.hook.getConfiguration();
+            if (batcher != null
+                    && cfg instanceof BatchingHookConfiguration
+                    && ((BatchingHookConfiguration) cfg).getBatchSize() > 1) {
+                LOGGER.debug("Batching hook {}", hd.hook.getName());
+                batcher.add(hd.hook.getName(), hd.crudHook, hd.md, (BatchingHookConfiguration) cfg, hd.docs);
+            } else if (dispatcher != null
+                    && cfg instanceof AsyncHookConfiguration
+                    && ((AsyncHookConfiguration) cfg).isAsynchronous()) {
+                LOGGER.debug("Dispatching hook {}", hd.hook.getName());
+                dispatcher.dispatch(hd.hook.getName(), (AsyncHookConfiguration) cfg, new Runnable() {
+                    @Override
+                    public void run() {
+                        callHook(hd);
+                    }
+                });
             } else {
-                processedDocuments = hd.docs;
-            }
-            try {
-                hd.crudHook.processHook(hd.md, hd.hook.getConfiguration(), processedDocuments);
-            } catch (RuntimeException e) {
-                if (e.getClass().isAnnotationPresent(StopHookProcessing.class)) {
-                    throw e;
+                try {
+                    callHook(hd);
+                } catch (RuntimeException e) {
+                    if (e.getClass().isAnnotationPresent(StopHookProcessing.class)) {
+                        throw e;
+                    }
                 }
             }
         }
         clear();
     }
 
+    private void callHook(HookDocs hd) {
+        hd.crudHook.processHook(hd.md, hd.hook.getConfiguration(), hd.docs);
+    }
+
     private void queueHooks(CRUDOperationContext ctx, boolean mediatorHooks) {
         LOGGER.debug("queueHooks start mediatorHooks={}", mediatorHooks);
         EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
@@ -213,10 +290,11 @@ public class HookManager {
             // the document between hooks.  First we create a list of
             // DocHooks. Each element in this list contains a
             // document, and all the hooks associated with that
-            // document. This step also creates copies of the
-            // documents. Then, we create another list, the HookDocs
+            // document. Then, we create another list, the HookDocs
             // list where each element gives a hook, and all the
-            // documents that will be passed to that hook.
+            // documents that will be passed to that hook. The
+            // document snapshots, projected or not, are created in
+            // the second step, once for each distinct projection.
             List<DocHooks> docHooksList = new ArrayList<>();
             for (DocCtx doc : documents) {
                 if (doc.getOperationPerformed() != null) {
@@ -258,6 +336,7 @@ public class HookManager {
             // create a list of hooks, each containing the documents
             // it will get.
             Map<Hook, HookDocs> hookCache = new HashMap<>();
+            Map<String, Projector> projectors = new HashMap<>();
             for (DocHooks dh : docHooksList) {
                 for (Map.Entry<Hook, CRUDHook> hook : dh.hooks.entrySet()) {
                     HookDocs hd = hookCache.get(hook.getKey());
@@ -273,9 +352,10 @@ public class HookManager {
                         who = ((OperationContext)ctx).getRequest().getClientId().getPrincipal();
                     }
 
+                    JsonDoc[] snapshot = dh.getSnapshot(hook.getKey(), getProjector(projectors, hook.getKey(), md), factory);
                     hd.docs.add(new HookDoc(
                             hd.md,
-                            dh.pre, dh.post, dh.op, who));
+                            snapshot[0], snapshot[1], dh.op, who));
                 }
             }
             LOGGER.debug("Queueing {} hooks", hookCache.size());
@@ -284,11 +364,21 @@ public class HookManager {
         }
     }
 
-    private JsonDoc project(JsonDoc doc, Projector p) {
-        if (doc == null) {
+    /**
+     * Returns the projector for the projection of the hook, or null if
+     * the hook has no projection. Projectors are shared between hooks
+     * with the same projection.
+     */
+    private Projector getProjector(Map<String, Projector> projectors, Hook hook, EntityMetadata md) {
+        if (hook.getProjection() == null) {
             return null;
-        } else {
-            return p.project(doc, factory);
         }
+        String key = hook.getProjection().toString();
+        Projector projector = projectors.get(key);
+        if (projector == null) {
+            projector = Projector.getInstance(hook.getProjection(), md);
+            projectors.put(key, projector);
+        }
+        return projector;
     }
 }
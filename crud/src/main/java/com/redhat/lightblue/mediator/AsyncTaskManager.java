@@ -0,0 +1,195 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mediator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.Response;
+
+/**
+ * Runs requests asynchronously, and keeps their results until they are
+ * fetched. Each task is identified by a task handle. The number of
+ * tasks kept is bounded, and results that are not fetched within the
+ * result time-to-live are discarded.
+ *
+ * When the store is full, expired results are discarded first, then the
+ * oldest completed results. If all tasks are still running, new tasks
+ * are rejected.
+ *
+ * A cancelled task is kept like a completed one, so fetching it reports
+ * that it was cancelled instead of reporting an unknown task.
+ */
+public class AsyncTaskManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncTaskManager.class);
+
+    public static final int DEFAULT_MAX_TASKS = 1000;
+    public static final long DEFAULT_RESULT_TTL = 600000;
+
+    private final ExecutorService executor;
+    private final int maxTasks;
+    private final long resultTTL;
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+
+    private static final class Task implements Callable<Response> {
+        private final Callable<Response> call;
+        private volatile long completed = 0;
+        private Future<Response> future;
+
+        public Task(Callable<Response> call) {
+            this.call = call;
+        }
+
+        @Override
+        public Response call() throws Exception {
+            try {
+                return call.call();
+            } finally {
+                completed = System.currentTimeMillis();
+            }
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        public boolean isExpired(long now, long ttl) {
+            return future.isDone() && completed > 0 && now - completed >= ttl;
+        }
+    }
+
+    /**
+     * Constructs an async task manager
+     *
+     * @param executor The executor running the tasks. The executor should
+     * have a bounded queue, and reject tasks when the queue is full.
+     * @param maxTasks Maximum number of running and completed tasks kept
+     * @param resultTTL How long the result of a completed task is kept,
+     * in milliseconds
+     */
+    public AsyncTaskManager(ExecutorService executor, int maxTasks, long resultTTL) {
+        this.executor = executor;
+        this.maxTasks = maxTasks;
+        this.resultTTL = resultTTL;
+    }
+
+    /**
+     * Submits a task, and returns its task handle
+     *
+     * @throws RejectedExecutionException if the task cannot be accepted
+     */
+    public synchronized String submit(Callable<Response> call) {
+        purge();
+        if (tasks.size() >= maxTasks) {
+            throw new RejectedExecutionException("Too many async tasks:" + tasks.size());
+        }
+        Task task = new Task(call);
+        task.future = executor.submit(task);
+        String handle = UUID.randomUUID().toString();
+        tasks.put(handle, task);
+        LOGGER.debug("Submitted async task {}", handle);
+        return handle;
+    }
+
+    /**
+     * Returns the future of the task, or null if there is no such task
+     */
+    public synchronized Future<Response> getFuture(String handle) {
+        Task task = tasks.get(handle);
+        return task == null ? null : task.future;
+    }
+
+    /**
+     * Returns the future of the task, and removes the task if it is
+     * complete. Returns null if there is no such task.
+     */
+    public synchronized Future<Response> fetch(String handle) {
+        Task task = tasks.get(handle);
+        if (task == null) {
+            return null;
+        }
+        if (task.isDone()) {
+            tasks.remove(handle);
+        }
+        return task.future;
+    }
+
+    /**
+     * Cancels the task. The cancelled task is kept until it is fetched or
+     * its result expires. Returns false if there is no such task, or if
+     * the task is already complete.
+     */
+    public synchronized boolean cancel(String handle) {
+        Task task = tasks.get(handle);
+        if (task == null || task.isDone()) {
+            return false;
+        }
+        LOGGER.debug("Cancelling async task {}", handle);
+        boolean cancelled = task.future.cancel(true);
+        if (cancelled && task.completed == 0) {
+            task.completed = System.currentTimeMillis();
+        }
+        return cancelled;
+    }
+
+    /**
+     * Returns the number of tasks, running or completed, kept
+     */
+    public synchronized int getTaskCount() {
+        return tasks.size();
+    }
+
+    /**
+     * Stops the executor. Running tasks are interrupted, and tasks that
+     * are submitted after this call are rejected.
+     */
+    public void shutdown() {
+        LOGGER.debug("Shutting down async task manager");
+        executor.shutdownNow();
+    }
+
+    /**
+     * Discards expired results. If the store is still full, discards the
+     * oldest completed results.
+     */
+    private void purge() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Task> itr = tasks.values().iterator(); itr.hasNext();) {
+            if (itr.next().isExpired(now, resultTTL)) {
+                itr.remove();
+            }
+        }
+        for (Iterator<Task> itr = tasks.values().iterator(); itr.hasNext() && tasks.size() >= maxTasks;) {
+            if (itr.next().isDone()) {
+                LOGGER.debug("Discarding an async result that was not fetched");
+                itr.remove();
+            }
+        }
+    }
+}
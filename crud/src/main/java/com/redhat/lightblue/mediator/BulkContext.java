@@ -0,0 +1,111 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mediator;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.ClientIdentification;
+import com.redhat.lightblue.Request;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.FindRequest;
+import com.redhat.lightblue.crud.Operation;
+import com.redhat.lightblue.metadata.Metadata;
+
+/**
+ * Shares metadata resolution and caller role computation between the
+ * requests of a bulk call. Requests for the same entity version share
+ * the metadata resolver. Find requests share the resolver only if they
+ * also have the same query and projection, because those determine
+ * the composite metadata. Caller roles are shared between the requests
+ * that share a resolver and have the same client identification
+ * instance.
+ *
+ * This class is thread safe. A resolver is not modified after it is
+ * initialized, so it can be used by multiple requests concurrently.
+ */
+class BulkContext {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkContext.class);
+
+    private final Metadata metadata;
+    private final Factory factory;
+    private final ConcurrentHashMap<String, Resolved> resolved = new ConcurrentHashMap<>();
+
+    private static final class Resolved {
+        private final DefaultMetadataResolver resolver;
+        private final Map<ClientIdentification, Set<String>> callerRoles = new IdentityHashMap<>();
+
+        public Resolved(DefaultMetadataResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        public synchronized Set<String> getCallerRoles(ClientIdentification id) {
+            Set<String> roles = callerRoles.get(id);
+            if (roles == null) {
+                roles = OperationContext.getCallerRoles(resolver.getMetadataRoles(), id);
+                callerRoles.put(id, roles);
+            }
+            return roles;
+        }
+    }
+
+    public BulkContext(Metadata metadata, Factory factory) {
+        this.metadata = metadata;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns a new operation context for the request, reusing the
+     * metadata resolver and caller roles of an earlier request if
+     * possible
+     */
+    public OperationContext newCtx(Request request, Operation operation) {
+        String key = getKey(request);
+        Resolved r = resolved.get(key);
+        if (r == null) {
+            // Metadata errors are not cached, every request reports them
+            r = new Resolved(OperationContext.newResolver(request, metadata));
+            Resolved existing = resolved.putIfAbsent(key, r);
+            if (existing != null) {
+                r = existing;
+            }
+        } else {
+            LOGGER.debug("Reusing metadata for {}", key);
+        }
+        return new OperationContext(request, metadata, factory, operation,
+                r.resolver, r.getCallerRoles(request.getClientId()));
+    }
+
+    private static String getKey(Request request) {
+        StringBuilder bld = new StringBuilder();
+        bld.append(request.getEntityVersion().getEntity()).append(':')
+                .append(request.getEntityVersion().getVersion());
+        if (request instanceof FindRequest) {
+            bld.append(':').append(((FindRequest) request).getQuery())
+                    .append(':').append(((FindRequest) request).getProjection());
+        }
+        return bld.toString();
+    }
+}
@@ -43,7 +43,9 @@ import com.redhat.lightblue.query.FieldComparisonExpression;
 import com.redhat.lightblue.query.FieldProjection;
 import com.redhat.lightblue.query.RelativeRewriteIterator;
 import com.redhat.lightblue.query.FieldInfo;
+import com.redhat.lightblue.query.Sort;
 
+import com.redhat.lightblue.crud.CrudConstants;
 import com.redhat.lightblue.crud.CRUDFindRequest;
 import com.redhat.lightblue.crud.CRUDFindResponse;
 import com.redhat.lightblue.crud.FindRequest;
@@ -149,38 +151,10 @@ public class CompositeFindImpl implements Finder {
                                                                          ctx.getTopLevelEntityMetadata());
 
         LOGGER.debug("Minimal find tree size={}",minimalTree.size());
-        QueryPlan searchQPlan=null;
         QueryPlanNode searchQPlanRoot=null;
         if(minimalTree.size()>1) {
             // The query depends on several entities. so, we query first, and then retrieve
-            QueryPlanChooser qpChooser=new QueryPlanChooser(root,
-                                                            new BruteForceQueryPlanIterator(),
-                                                            new IndexedFieldScorer(),
-                                                            ((FindRequest)ctx.getRequest()).getQuery(),
-                                                            minimalTree);
-            searchQPlan=qpChooser.choose();
-            LOGGER.debug("Chosen query plan:{}",searchQPlan);
-            ctx.setProperty(Mediator.CTX_QPLAN,searchQPlan);
-            init(searchQPlan);
-            // At this stage, we have Execution objects assigned to query plan nodes
-            
-            // Put the executions in order
-            QueryPlanNode[] nodeOrdering=searchQPlan.getBreadthFirstNodeOrdering();
-            // Execute nodes.
-            for(QueryPlanNode node:nodeOrdering) {
-                LOGGER.debug("Composite find: {}",node.getName());
-                QueryPlanNodeExecutor exec=node.getProperty(QueryPlanNodeExecutor.class);
-                if(node.getMetadata().getParent()==null) {
-                    searchQPlanRoot=node;
-                    if (req.getTo() != null && req.getFrom() != null) {
-                        exec.setRange(req.getFrom(), req.getTo());
-                    }
-                    exec.execute(ctx,req.getSort());
-                } else {
-                    exec.execute(ctx,null);
-                }
-            }
-            LOGGER.debug("Composite find: search complete");
+            searchQPlanRoot=search(ctx,minimalTree,req.getFrom(),req.getTo(),req.getSort());
         }
 
         LOGGER.debug("Composite find: retrieving documents");
@@ -188,7 +162,7 @@ public class CompositeFindImpl implements Finder {
         // Create a new query plan for retrieval. This one will have
         // the root document at the root.
         QueryPlan retrievalQPlan;
-        if(searchQPlan==null) {
+        if(searchQPlanRoot==null) {
             // No search was performed. We have to search now.
             retrievalQPlan=new QueryPlanChooser(root,new First(),new SimpleScorer(),((FindRequest)ctx.getRequest()).getQuery(),null).choose();
             ctx.setProperty(Mediator.CTX_QPLAN,retrievalQPlan);
@@ -205,7 +179,7 @@ public class CompositeFindImpl implements Finder {
         for(int i=0;i<nodeOrdering.length;i++) {
             if(nodeOrdering[i].getMetadata().getParent()==null) {
                 // This is the root node. If we know the result docs, assign them, otherwise, search
-                if(searchQPlan!=null) {
+                if(searchQPlanRoot!=null) {
                     rootDocs=searchQPlanRoot.getProperty(QueryPlanNodeExecutor.class).getDocs();
                     nodeOrdering[i].getProperty(QueryPlanNodeExecutor.class).setDocs(rootDocs);
                 } else {
@@ -220,7 +194,19 @@ public class CompositeFindImpl implements Finder {
             } else {
                 LOGGER.debug("Composite retrieval: {}",nodeOrdering[i].getName());
                 QueryPlanNodeExecutor exec=nodeOrdering[i].getProperty(QueryPlanNodeExecutor.class);
-                exec.execute(ctx,null);
+                try {
+                    exec.execute(ctx,null);
+                } catch (Error e) {
+                    if(CrudConstants.ERR_TIME_LIMIT_EXCEEDED.equals(e.getErrorCode())) {
+                        // The root documents are known, return them
+                        // with the child documents retrieved so far
+                        LOGGER.debug("Composite retrieval: time limit exceeded at {}",nodeOrdering[i].getName());
+                        errors.add(e);
+                        break;
+                    } else {
+                        throw e;
+                    }
+                }
             }
         }
 
@@ -243,6 +229,74 @@ public class CompositeFindImpl implements Finder {
         return response;
     }
     
+    /**
+     * Counts the documents matching the query. Only the search plan is
+     * executed, documents are not retrieved. If the query refers only to
+     * the root entity, the root entity controller counts the documents.
+     */
+    @Override
+    public long count(OperationContext ctx,
+                      CRUDFindRequest req) {
+        LOGGER.debug("Composite count: start");
+        Set<CompositeMetadata> minimalTree=findMinimalSetOfQueryEntities(req.getQuery(),
+                                                                         ctx.getTopLevelEntityMetadata());
+        long count;
+        if(minimalTree.size()>1) {
+            QueryPlanNode searchQPlanRoot=search(ctx,minimalTree,null,null,null);
+            count=searchQPlanRoot.getProperty(QueryPlanNodeExecutor.class).getDocs().size();
+        } else {
+            OperationContext rootCtx=ctx.getDerivedOperationContext(root.getName(),req);
+            count=new SimpleFindImpl(root,factory).count(rootCtx,req);
+        }
+        ctx.setDocuments(new ArrayList<DocCtx>());
+        LOGGER.debug("Composite count: end, count={}",count);
+        return count;
+    }
+
+    /**
+     * Chooses and executes a search plan for a query that depends on
+     * several entities, and returns the root entity node of the search
+     * plan. The documents found for the root entity are kept in the
+     * executor of that node.
+     */
+    private QueryPlanNode search(OperationContext ctx,
+                                 Set<CompositeMetadata> minimalTree,
+                                 Long from,
+                                 Long to,
+                                 Sort sort) {
+        QueryPlanChooser qpChooser=new QueryPlanChooser(root,
+                                                        new BruteForceQueryPlanIterator(),
+                                                        new IndexedFieldScorer(),
+                                                        ((FindRequest)ctx.getRequest()).getQuery(),
+                                                        minimalTree);
+        QueryPlan searchQPlan=qpChooser.choose();
+        LOGGER.debug("Chosen query plan:{}",searchQPlan);
+        ctx.setProperty(Mediator.CTX_QPLAN,searchQPlan);
+        init(searchQPlan);
+        // At this stage, we have Execution objects assigned to query plan nodes
+
+        // Put the executions in order
+        QueryPlanNode[] nodeOrdering=searchQPlan.getBreadthFirstNodeOrdering();
+        QueryPlanNode searchQPlanRoot=null;
+        // Execute nodes.
+        for(QueryPlanNode node:nodeOrdering) {
+            ctx.checkTimeLimit();
+            LOGGER.debug("Composite find: {}",node.getName());
+            QueryPlanNodeExecutor exec=node.getProperty(QueryPlanNodeExecutor.class);
+            if(node.getMetadata().getParent()==null) {
+                searchQPlanRoot=node;
+                if (to != null && from != null) {
+                    exec.setRange(from, to);
+                }
+                exec.execute(ctx,sort);
+            } else {
+                exec.execute(ctx,null);
+            }
+        }
+        LOGGER.debug("Composite find: search complete");
+        return searchQPlanRoot;
+    }
+
      private void retrieveFragments(QueryPlanDoc doc,
                                    QueryPlanNodeExecutor exec) {
         // We only process child nodes.
@@ -0,0 +1,442 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mediator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.MonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+import com.redhat.lightblue.OperationStatus;
+import com.redhat.lightblue.crud.CrudConstants;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.FindRequest;
+import com.redhat.lightblue.metadata.CompositeMetadata;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Shares the execution of identical find requests. Two find requests are
+ * identical if they have the same entity, version, query, projection,
+ * sort, range, count-only flag, execution options, and effective caller
+ * roles. The first request runs, and the identical requests that arrive
+ * while it is running wait for it. If the coalescing window is greater
+ * than 0, the result is also given to the identical requests that arrive
+ * within the window after the first request completes.
+ *
+ * Only the execution of the find by the back-end is shared. Each caller
+ * checks access, and runs the mediator interceptors and hooks in its own
+ * operation context, using its own copy of the result.
+ *
+ * Within the window, a caller may get a result that does not reflect a
+ * write completed after the result was read. The mediator invalidates
+ * the results that read an entity when it writes to that entity, but
+ * writes by other processes are not seen until the window ends. If the shared
+ * execution throws an exception, each waiting caller gets an error of
+ * its own, and the result is not kept.
+ */
+public class FindCoalescer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FindCoalescer.class);
+
+    public static final String COALESCE_COUNTER = "lightblue.mediator.coalesce";
+    public static final String TAG_RESULT = "result";
+    public static final String TAG_INSTANCE = "instance";
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final long window;
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final BasicCounter hits;
+    private final BasicCounter misses;
+    private volatile long lastPurge = System.currentTimeMillis();
+
+    /**
+     * The result of a find execution: what the back-end left in the
+     * operation context. The result built by the caller that ran the
+     * find refers to the documents of its operation context. The
+     * coalescer copies the documents and errors only for the callers
+     * that share the result, so a find that is not shared is not
+     * copied.
+     */
+    public static final class Result {
+        private final OperationStatus status;
+        private final long matchCount;
+        private final List<Error> errors;
+        private final List<DocCtx> documents;
+
+        public Result(OperationContext ctx, long matchCount) {
+            this.status = ctx.getStatus();
+            this.matchCount = matchCount;
+            this.errors = new ArrayList<>(ctx.getErrors());
+            this.documents = ctx.getDocuments();
+        }
+
+        private Result(Result r) {
+            this.status = r.status;
+            this.matchCount = r.matchCount;
+            this.errors = copyErrors(r.errors);
+            this.documents = copy(r.documents);
+        }
+
+        public long getMatchCount() {
+            return matchCount;
+        }
+
+        /**
+         * Sets the status, errors and documents of the operation context
+         * to this result. The result returned to a sharing caller is its
+         * own copy, so it is not copied again.
+         */
+        public void copyTo(OperationContext ctx) {
+            ctx.setStatus(status);
+            ctx.addErrors(errors);
+            ctx.setDocuments(documents);
+        }
+
+        private Result copy() {
+            return new Result(this);
+        }
+
+        private static List<DocCtx> copy(List<DocCtx> documents) {
+            if (documents == null) {
+                return null;
+            }
+            List<DocCtx> list = new ArrayList<>(documents.size());
+            for (DocCtx doc : documents) {
+                DocCtx copy = new DocCtx(doc.copy());
+                copy.setOutputDocument(copyOf(doc.getOutputDocument(), doc, copy));
+                copy.setOriginalDocument(copyOf(doc.getOriginalDocument(), doc, copy));
+                copy.setOperationPerformed(doc.getOperationPerformed());
+                copy.addErrors(copyErrors(doc.getErrors()));
+                list.add(copy);
+            }
+            return list;
+        }
+
+        private static JsonDoc copyOf(JsonDoc doc, DocCtx source, DocCtx copy) {
+            if (doc == null) {
+                return null;
+            } else if (doc == source) {
+                return copy;
+            } else {
+                return doc.copy();
+            }
+        }
+
+        private static List<Error> copyErrors(List<Error> errors) {
+            List<Error> list = new ArrayList<>(errors.size());
+            for (Error e : errors) {
+                list.add(Error.fromJson(e.toJson()));
+            }
+            return list;
+        }
+    }
+
+    /**
+     * An execution of a find, shared by the callers that join it. When
+     * the find completes, the result is copied once if there are
+     * callers waiting or if the result is kept for the window. Each
+     * waiting caller then gets a copy of that copy, except the last one
+     * when the result is not kept, which gets the copy itself. Once a
+     * result that is not kept is complete, no caller can join.
+     */
+    private static final class Flight {
+        private final Set<String> entities;
+        private final boolean keep;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile long completed = 0;
+        private int waiters = 0;
+        private boolean sealed = false;
+        private Result result;
+        private Exception error;
+
+        public Flight(Set<String> entities, boolean keep) {
+            this.entities = entities;
+            this.keep = keep;
+        }
+
+        public synchronized boolean join() {
+            if (sealed && result == null && error == null) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        public void complete(Result r) {
+            synchronized (this) {
+                sealed = true;
+                if (waiters > 0 || keep) {
+                    result = r.copy();
+                }
+            }
+            completed = System.currentTimeMillis();
+            done.countDown();
+        }
+
+        public void fail(Exception e) {
+            synchronized (this) {
+                sealed = true;
+                error = e;
+            }
+            completed = System.currentTimeMillis();
+            done.countDown();
+        }
+
+        public boolean isExpired(long now, long window) {
+            return completed > 0 && now - completed > window;
+        }
+
+        public Result get(long timeout) {
+            boolean ok;
+            try {
+                ok = done.await(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                leave();
+                Thread.currentThread().interrupt();
+                throw Error.get(CrudConstants.ERR_CRUD, e.toString());
+            }
+            if (!ok) {
+                leave();
+                throw Error.get(CrudConstants.ERR_TIME_LIMIT_EXCEEDED, "Waiting for an identical find");
+            }
+            synchronized (this) {
+                waiters--;
+                if (error instanceof Error) {
+                    throw Error.get(((Error) error).getErrorCode(), ((Error) error).getMsg());
+                } else if (error != null) {
+                    throw Error.get(CrudConstants.ERR_CRUD, error);
+                }
+                if (!keep && waiters == 0) {
+                    Result r = result;
+                    result = null;
+                    return r;
+                }
+                return result.copy();
+            }
+        }
+
+        private synchronized void leave() {
+            waiters--;
+        }
+    }
+
+    /**
+     * Constructs a find coalescer whose counters are registered with the
+     * default monitor registry
+     *
+     * @param window How long the result of a request is given to
+     * identical requests after it completes, in milliseconds
+     */
+    public FindCoalescer(long window) {
+        this(window, DefaultMonitorRegistry.getInstance());
+    }
+
+    /**
+     * Constructs a find coalescer whose counters are registered with the
+     * given registry. The counters are tagged with an instance id, so
+     * coalescers registered with the same registry don't collide.
+     */
+    public FindCoalescer(long window, MonitorRegistry registry) {
+        this.window = window;
+        String instance = Integer.toString(INSTANCES.incrementAndGet());
+        hits = new BasicCounter(MonitorConfig.builder(COALESCE_COUNTER).withTag(TAG_RESULT, "hit").
+                withTag(TAG_INSTANCE, instance).build());
+        misses = new BasicCounter(MonitorConfig.builder(COALESCE_COUNTER).withTag(TAG_RESULT, "miss").
+                withTag(TAG_INSTANCE, instance).build());
+        registry.register(hits);
+        registry.register(misses);
+    }
+
+    /**
+     * Runs the find call, or waits for an identical call already running
+     * and returns its result. The caller that runs the find gets the
+     * result of its own call. A caller that shares the result gets its
+     * own copy, and sets it into its operation context using
+     * Result.copyTo.
+     *
+     * @param key The key of the request, built by getKey
+     * @param entities The names of all entities read by the request,
+     * built by getEntityNames. The result is discarded when any of
+     * them is invalidated.
+     * @param timeout How long to wait for an identical call, in
+     * milliseconds
+     * @param call The find call
+     */
+    public Result find(String key, Set<String> entities, long timeout, Callable<Result> call) throws Exception {
+        long now = System.currentTimeMillis();
+        purge(now);
+        Flight flight = new Flight(entities, window > 0);
+        Flight existing = flights.putIfAbsent(key, flight);
+        while (existing != null && (existing.isExpired(now, window) || !existing.join())) {
+            flights.remove(key, existing);
+            existing = flights.putIfAbsent(key, flight);
+        }
+        if (existing == null) {
+            misses.increment();
+            boolean keep = false;
+            try {
+                Result result = call.call();
+                flight.complete(result);
+                keep = window > 0;
+                return result;
+            } catch (Exception e) {
+                flight.fail(e);
+                throw e;
+            } finally {
+                if (!keep) {
+                    flights.remove(key, flight);
+                }
+            }
+        } else {
+            LOGGER.debug("Coalescing find {}", key);
+            hits.increment();
+            return existing.get(timeout);
+        }
+    }
+
+    /**
+     * Discards the results of the requests that read the entity,
+     * including composite requests whose parent is another entity, so
+     * the finds that start after this call run again. Identical requests
+     * already waiting for a result still get it.
+     */
+    public void invalidate(String entity) {
+        for (Iterator<Flight> itr = flights.values().iterator(); itr.hasNext();) {
+            if (itr.next().entities.contains(entity)) {
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the entities in the composite metadata: the
+     * root entity, and all entities reached through references
+     */
+    public static Set<String> getEntityNames(CompositeMetadata md) {
+        Set<String> names = new HashSet<>();
+        addEntityNames(md, names);
+        return names;
+    }
+
+    private static void addEntityNames(CompositeMetadata md, Set<String> names) {
+        names.add(md.getName());
+        for (Path p : md.getChildPaths()) {
+            addEntityNames(md.getChildMetadata(p), names);
+        }
+    }
+
+    /**
+     * Returns the number of requests that shared the execution of an
+     * identical request
+     */
+    public long getHitCount() {
+        return hits.getValue().longValue();
+    }
+
+    /**
+     * Returns the number of requests that were executed
+     */
+    public long getMissCount() {
+        return misses.getValue().longValue();
+    }
+
+    /**
+     * Returns the key of the find request for the caller roles. Object
+     * fields of the query, projection and sort are ordered by name, so
+     * equivalent requests have the same key.
+     */
+    public static String getKey(FindRequest req, Set<String> callerRoles) {
+        StringBuilder bld = new StringBuilder();
+        bld.append(req.getEntityVersion().getEntity()).append(':').
+                append(req.getEntityVersion().getVersion()).append(':').
+                append(new TreeSet<>(callerRoles)).append(':');
+        appendCanonical(bld, req.getQuery() == null ? null : req.getQuery().toJson());
+        bld.append(':');
+        appendCanonical(bld, req.getProjection() == null ? null : req.getProjection().toJson());
+        bld.append(':');
+        appendCanonical(bld, req.getSort() == null ? null : req.getSort().toJson());
+        bld.append(':').append(req.getFrom()).append(':').append(req.getTo()).
+                append(':').append(req.isCountOnly()).append(':');
+        appendCanonical(bld, req.getExecution() == null ? null : req.getExecution().toJson());
+        return bld.toString();
+    }
+
+    private static void appendCanonical(StringBuilder bld, JsonNode node) {
+        if (node == null) {
+            bld.append("null");
+        } else if (node.isObject()) {
+            Map<String, JsonNode> fields = new TreeMap<>();
+            for (Iterator<Map.Entry<String, JsonNode>> itr = node.fields(); itr.hasNext();) {
+                Map.Entry<String, JsonNode> entry = itr.next();
+                fields.put(entry.getKey(), entry.getValue());
+            }
+            bld.append('{');
+            for (Map.Entry<String, JsonNode> entry : fields.entrySet()) {
+                bld.append(entry.getKey()).append('=');
+                appendCanonical(bld, entry.getValue());
+                bld.append(',');
+            }
+            bld.append('}');
+        } else if (node.isArray()) {
+            bld.append('[');
+            for (JsonNode x : node) {
+                appendCanonical(bld, x);
+                bld.append(',');
+            }
+            bld.append(']');
+        } else {
+            bld.append(node.toString());
+        }
+    }
+
+    /**
+     * Removes the expired results
+     */
+    private void purge(long now) {
+        if (now - lastPurge >= Math.max(window, 1000)) {
+            lastPurge = now;
+            for (Iterator<Flight> itr = flights.values().iterator(); itr.hasNext();) {
+                if (itr.next().isExpired(now, window)) {
+                    itr.remove();
+                }
+            }
+        }
+    }
+}
@@ -25,4 +25,9 @@ import com.redhat.lightblue.crud.CRUDFindResponse;
 public interface Finder  {
 
     CRUDFindResponse find(OperationContext ctx, CRUDFindRequest req);
+
+    /**
+     * Returns the number of documents matching the request query
+     */
+    long count(OperationContext ctx, CRUDFindRequest req);
 }
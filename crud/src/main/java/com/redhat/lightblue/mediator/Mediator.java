@@ -21,6 +21,14 @@ package com.redhat.lightblue.mediator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,11 +81,29 @@ public class Mediator {
 
     private final Metadata metadata;
     private final Factory factory;
+    private final MediatorMetrics metrics;
+
+    /**
+     * The bulk context of the bulk call running on the current thread
+     */
+    private static final ThreadLocal<BulkContext> BULK_CONTEXT = new ThreadLocal<>();
+
+    /**
+     * Set while an asynchronous request runs on an async worker thread
+     */
+    private static final ThreadLocal<Boolean> IN_ASYNC_TASK = new ThreadLocal<>();
 
     public Mediator(Metadata md,
                     Factory factory) {
+        this(md, factory, MediatorMetrics.getDefault());
+    }
+
+    public Mediator(Metadata md,
+                    Factory factory,
+                    MediatorMetrics metrics) {
         this.metadata = md;
         this.factory = factory;
+        this.metrics = metrics;
     }
 
     /**
@@ -91,26 +117,35 @@ public class Mediator {
      */
     public Response insert(InsertionRequest req) {
         LOGGER.debug("insert {}", req.getEntityVersion());
+        Response asyncResponse = runAsync(req);
+        if (asyncResponse != null) {
+            return asyncResponse;
+        }
+        long start = System.nanoTime();
         Error.push("insert(" + req.getEntityVersion().toString() + ")");
         Response response = new Response(factory.getNodeFactory());
+        OperationContext ctx = null;
         try {
-            OperationContext ctx = newCtx(req, Operation.INSERT);
+            ctx = newCtx(req, Operation.INSERT);
             EntityMetadata md = ctx.getTopLevelEntityMetadata();
             if (!md.getAccess().getInsert().hasAccess(ctx.getCallerRoles())) {
                 ctx.setStatus(OperationStatus.ERROR);
                 ctx.addError(Error.get(CrudConstants.ERR_NO_ACCESS, "insert " + ctx.getTopLevelEntityName()));
             } else {
-                factory.getInterceptors().callInterceptors(InterceptPoint.PRE_MEDIATOR_INSERT, ctx);
+                callInterceptors(InterceptPoint.PRE_MEDIATOR_INSERT, ctx);
                 CRUDController controller = factory.getCRUDController(md);
                 updatePredefinedFields(ctx,controller,md.getName());
                 runBulkConstraintValidation(ctx);
                 if (!ctx.hasErrors() && ctx.hasDocumentsWithoutErrors()) {
                     LOGGER.debug(CRUD_MSG_PREFIX, controller.getClass().getName());
+                    ctx.checkTimeLimit();
+                    long t = System.nanoTime();
                     controller.insert(ctx, req.getReturnFields());
+                    metrics.recordPhase(MediatorMetrics.PHASE_CONTROLLER, Operation.INSERT, System.nanoTime() - t);
                     ctx.getHookManager().queueMediatorHooks(ctx);
                     List<JsonDoc> insertedDocuments = ctx.getOutputDocumentsWithoutErrors();
                     if (insertedDocuments != null && !insertedDocuments.isEmpty()) {
-                        response.setEntityData(JsonDoc.listToDoc(insertedDocuments, factory.getNodeFactory()));
+                        response.setEntityDocuments(insertedDocuments);
                         response.setModifiedCount(insertedDocuments.size());
                     }
                     if (insertedDocuments != null && insertedDocuments.size() == ctx.getDocuments().size()) {
@@ -123,13 +158,13 @@ public class Mediator {
                 } else {
                     ctx.setStatus(OperationStatus.ERROR);
                 }
-                factory.getInterceptors().callInterceptors(InterceptPoint.POST_MEDIATOR_INSERT, ctx);
+                callInterceptors(InterceptPoint.POST_MEDIATOR_INSERT, ctx);
             }
             response.getDataErrors().addAll(ctx.getDataErrors());
             response.getErrors().addAll(ctx.getErrors());
             response.setStatus(ctx.getStatus());
             if (response.getStatus() != OperationStatus.ERROR) {
-                ctx.getHookManager().callQueuedHooks();
+                callQueuedHooks(ctx);
             }
         } catch (Error e) {
             response.getErrors().add(e);
@@ -139,6 +174,9 @@ public class Mediator {
             response.setStatus(OperationStatus.ERROR);
         } finally {
             Error.pop();
+            invalidateFinds(req);
+            metrics.recordRequest(Operation.INSERT, ctx == null ? null : ctx.getTopLevelEntityMetadata(),
+                    response.getStatus(), System.nanoTime() - start);
         }
         return response;
     }
@@ -157,27 +195,36 @@ public class Mediator {
      */
     public Response save(SaveRequest req) {
         LOGGER.debug("save {}", req.getEntityVersion());
+        Response asyncResponse = runAsync(req);
+        if (asyncResponse != null) {
+            return asyncResponse;
+        }
+        long start = System.nanoTime();
         Error.push("save(" + req.getEntityVersion().toString() + ")");
         Response response = new Response(factory.getNodeFactory());
+        OperationContext ctx = null;
         try {
-            OperationContext ctx = newCtx(req, Operation.SAVE);
+            ctx = newCtx(req, Operation.SAVE);
             EntityMetadata md = ctx.getTopLevelEntityMetadata();
             if (!md.getAccess().getUpdate().hasAccess(ctx.getCallerRoles())
                     || (req.isUpsert() && !md.getAccess().getInsert().hasAccess(ctx.getCallerRoles()))) {
                 ctx.setStatus(OperationStatus.ERROR);
                 ctx.addError(Error.get(CrudConstants.ERR_NO_ACCESS, "insert/update " + ctx.getTopLevelEntityName()));
             } else {
-                factory.getInterceptors().callInterceptors(InterceptPoint.PRE_MEDIATOR_SAVE, ctx);
+                callInterceptors(InterceptPoint.PRE_MEDIATOR_SAVE, ctx);
                 CRUDController controller = factory.getCRUDController(md);
                 updatePredefinedFields(ctx,controller,md.getName());
                 runBulkConstraintValidation(ctx);
                 if (!ctx.hasErrors() && ctx.hasDocumentsWithoutErrors()) {
                     LOGGER.debug(CRUD_MSG_PREFIX, controller.getClass().getName());
+                    ctx.checkTimeLimit();
+                    long t = System.nanoTime();
                     controller.save(ctx, req.isUpsert(), req.getReturnFields());
+                    metrics.recordPhase(MediatorMetrics.PHASE_CONTROLLER, Operation.SAVE, System.nanoTime() - t);
                     ctx.getHookManager().queueMediatorHooks(ctx);
                     List<JsonDoc> updatedDocuments = ctx.getOutputDocumentsWithoutErrors();
                     if (updatedDocuments != null && !updatedDocuments.isEmpty()) {
-                        response.setEntityData(JsonDoc.listToDoc(updatedDocuments, factory.getNodeFactory()));
+                        response.setEntityDocuments(updatedDocuments);
                         response.setModifiedCount(updatedDocuments.size());
                     }
                     if (updatedDocuments != null && updatedDocuments.size() == ctx.getDocuments().size()) {
@@ -188,13 +235,13 @@ public class Mediator {
                         ctx.setStatus(OperationStatus.ERROR);
                     }
                 }
-                factory.getInterceptors().callInterceptors(InterceptPoint.POST_MEDIATOR_SAVE, ctx);
+                callInterceptors(InterceptPoint.POST_MEDIATOR_SAVE, ctx);
             }
             response.getDataErrors().addAll(ctx.getDataErrors());
             response.getErrors().addAll(ctx.getErrors());
             response.setStatus(ctx.getStatus());
             if (response.getStatus() != OperationStatus.ERROR) {
-                ctx.getHookManager().callQueuedHooks();
+                callQueuedHooks(ctx);
             }
         } catch (Error e) {
             response.getErrors().add(e);
@@ -204,6 +251,9 @@ public class Mediator {
             response.setStatus(OperationStatus.ERROR);
         } finally {
             Error.pop();
+            invalidateFinds(req);
+            metrics.recordRequest(Operation.SAVE, ctx == null ? null : ctx.getTopLevelEntityMetadata(),
+                    response.getStatus(), System.nanoTime() - start);
         }
         return response;
     }
@@ -223,40 +273,49 @@ public class Mediator {
      */
     public Response update(UpdateRequest req) {
         LOGGER.debug("update {}", req.getEntityVersion());
+        Response asyncResponse = runAsync(req);
+        if (asyncResponse != null) {
+            return asyncResponse;
+        }
+        long start = System.nanoTime();
         Error.push("update(" + req.getEntityVersion().toString() + ")");
         Response response = new Response(factory.getNodeFactory());
+        OperationContext ctx = null;
         try {
-            OperationContext ctx = newCtx(req, Operation.UPDATE);
+            ctx = newCtx(req, Operation.UPDATE);
             EntityMetadata md = ctx.getTopLevelEntityMetadata();
             if (!md.getAccess().getUpdate().hasAccess(ctx.getCallerRoles())) {
                 ctx.setStatus(OperationStatus.ERROR);
                 ctx.addError(Error.get(CrudConstants.ERR_NO_ACCESS, "update " + ctx.getTopLevelEntityName()));
             } else {
-                factory.getInterceptors().callInterceptors(InterceptPoint.PRE_MEDIATOR_UPDATE, ctx);
+                callInterceptors(InterceptPoint.PRE_MEDIATOR_UPDATE, ctx);
                 CRUDController controller = factory.getCRUDController(md);
                 LOGGER.debug(CRUD_MSG_PREFIX, controller.getClass().getName());
+                ctx.checkTimeLimit();
+                long t = System.nanoTime();
                 CRUDUpdateResponse updateResponse = controller.update(ctx,
                         req.getQuery(),
                         req.getUpdateExpression(),
                         req.getReturnFields());
+                metrics.recordPhase(MediatorMetrics.PHASE_CONTROLLER, Operation.UPDATE, System.nanoTime() - t);
                 ctx.getHookManager().queueMediatorHooks(ctx);
                 LOGGER.debug("# Updated", updateResponse.getNumUpdated());
                 response.setModifiedCount(updateResponse.getNumUpdated());
                 List<JsonDoc> updatedDocuments = ctx.getOutputDocumentsWithoutErrors();
                 if (updatedDocuments != null && !updatedDocuments.isEmpty()) {
-                    response.setEntityData(JsonDoc.listToDoc(updatedDocuments, factory.getNodeFactory()));
+                    response.setEntityDocuments(updatedDocuments);
                 }
                 if (ctx.hasErrors()) {
                     ctx.setStatus(OperationStatus.ERROR);
                 } else {
                     ctx.setStatus(OperationStatus.COMPLETE);
                 }
-                factory.getInterceptors().callInterceptors(InterceptPoint.POST_MEDIATOR_UPDATE, ctx);
+                callInterceptors(InterceptPoint.POST_MEDIATOR_UPDATE, ctx);
             }
             response.getErrors().addAll(ctx.getErrors());
             response.setStatus(ctx.getStatus());
             if (response.getStatus() != OperationStatus.ERROR) {
-                ctx.getHookManager().callQueuedHooks();
+                callQueuedHooks(ctx);
             }
         } catch (Error e) {
             response.getErrors().add(e);
@@ -266,26 +325,38 @@ public class Mediator {
             response.setStatus(OperationStatus.ERROR);
         } finally {
             Error.pop();
+            invalidateFinds(req);
+            metrics.recordRequest(Operation.UPDATE, ctx == null ? null : ctx.getTopLevelEntityMetadata(),
+                    response.getStatus(), System.nanoTime() - start);
         }
         return response;
     }
 
     public Response delete(DeleteRequest req) {
         LOGGER.debug("delete {}", req.getEntityVersion());
+        Response asyncResponse = runAsync(req);
+        if (asyncResponse != null) {
+            return asyncResponse;
+        }
+        long start = System.nanoTime();
         Error.push("delete(" + req.getEntityVersion().toString() + ")");
         Response response = new Response(factory.getNodeFactory());
+        OperationContext ctx = null;
         try {
-            OperationContext ctx = newCtx(req, Operation.DELETE);
+            ctx = newCtx(req, Operation.DELETE);
             EntityMetadata md = ctx.getTopLevelEntityMetadata();
             if (!md.getAccess().getDelete().hasAccess(ctx.getCallerRoles())) {
                 ctx.setStatus(OperationStatus.ERROR);
                 ctx.addError(Error.get(CrudConstants.ERR_NO_ACCESS, "delete " + ctx.getTopLevelEntityName()));
             } else {
-                factory.getInterceptors().callInterceptors(InterceptPoint.PRE_MEDIATOR_DELETE, ctx);
+                callInterceptors(InterceptPoint.PRE_MEDIATOR_DELETE, ctx);
                 CRUDController controller = factory.getCRUDController(md);
                 LOGGER.debug(CRUD_MSG_PREFIX, controller.getClass().getName());
+                ctx.checkTimeLimit();
+                long t = System.nanoTime();
                 CRUDDeleteResponse result = controller.delete(ctx,
                         req.getQuery());
+                metrics.recordPhase(MediatorMetrics.PHASE_CONTROLLER, Operation.DELETE, System.nanoTime() - t);
                 ctx.getHookManager().queueMediatorHooks(ctx);
                 response.setModifiedCount(result.getNumDeleted());
                 if (ctx.hasErrors()) {
@@ -293,12 +364,12 @@ public class Mediator {
                 } else {
                     ctx.setStatus(OperationStatus.COMPLETE);
                 }
-                factory.getInterceptors().callInterceptors(InterceptPoint.POST_MEDIATOR_DELETE, ctx);
+                callInterceptors(InterceptPoint.POST_MEDIATOR_DELETE, ctx);
             }
             response.getErrors().addAll(ctx.getErrors());
             response.setStatus(ctx.getStatus());
             if (response.getStatus() != OperationStatus.ERROR) {
-                ctx.getHookManager().callQueuedHooks();
+                callQueuedHooks(ctx);
             }
         } catch (Error e) {
             response.getErrors().add(e);
@@ -308,6 +379,9 @@ public class Mediator {
             response.setStatus(OperationStatus.ERROR);
         } finally {
             Error.pop();
+            invalidateFinds(req);
+            metrics.recordRequest(Operation.DELETE, ctx == null ? null : ctx.getTopLevelEntityMetadata(),
+                    response.getStatus(), System.nanoTime() - start);
         }
         return response;
     }
@@ -321,91 +395,525 @@ public class Mediator {
      */
     public Response find(FindRequest req) {
         LOGGER.debug("find {}", req.getEntityVersion());
+        Response asyncResponse = runAsync(req);
+        if (asyncResponse != null) {
+            return asyncResponse;
+        }
+        long start = System.nanoTime();
         Error.push("find(" + req.getEntityVersion().toString() + ")");
         Response response = new Response(factory.getNodeFactory());
         response.setStatus(OperationStatus.ERROR);
+        OperationContext ctx = null;
         try {
-            OperationContext ctx = newCtx(req, Operation.FIND);
-            CompositeMetadata md = ctx.getTopLevelEntityMetadata();
-            if (!md.getAccess().getFind().hasAccess(ctx.getCallerRoles())) {
-                ctx.setStatus(OperationStatus.ERROR);
-                LOGGER.debug("No access");
-                ctx.addError(Error.get(CrudConstants.ERR_NO_ACCESS, "find " + ctx.getTopLevelEntityName()));
+            ctx = newCtx(req, Operation.FIND);
+            runFind(ctx, req, response);
+        } catch (Error e) {
+            LOGGER.debug("Error during find:{}", e);
+            response.getErrors().add(e);
+        } catch (Exception e) {
+            LOGGER.debug("Exception during find:{}", e);
+            response.getErrors().add(Error.get(CrudConstants.ERR_CRUD, e));
+        } finally {
+            Error.pop();
+            metrics.recordRequest(Operation.FIND, ctx == null ? null : ctx.getTopLevelEntityMetadata(),
+                    response.getStatus(), System.nanoTime() - start);
+        }
+        return response;
+    }
+
+    /**
+     * Runs the find request in the operation context, and fills the
+     * response. If the factory has a find coalescer, the execution of the
+     * find by the back-end is shared with identical requests, and the
+     * rest runs in the operation context of each caller.
+     */
+    private void runFind(OperationContext ctx, FindRequest req, Response response) throws Exception {
+        CompositeMetadata md = ctx.getTopLevelEntityMetadata();
+        if (!md.getAccess().getFind().hasAccess(ctx.getCallerRoles())) {
+            ctx.setStatus(OperationStatus.ERROR);
+            LOGGER.debug("No access");
+            ctx.addError(Error.get(CrudConstants.ERR_NO_ACCESS, "find " + ctx.getTopLevelEntityName()));
+        } else {
+            callInterceptors(InterceptPoint.PRE_MEDIATOR_FIND, ctx);
+            FindCoalescer coalescer = factory.getFindCoalescer();
+            if (coalescer == null) {
+                response.setMatchCount(executeFind(ctx, req));
             } else {
-                factory.getInterceptors().callInterceptors(InterceptPoint.PRE_MEDIATOR_FIND, ctx);
-                Finder finder;
-                if(ctx.isSimple()) {
-                    LOGGER.debug("Simple entity");
-                    finder=new SimpleFindImpl(md,factory);
-                } else {
-                    LOGGER.debug("Composite entity");
-                    finder=new CompositeFindImpl(md,factory);
+                CoalescedFind call = new CoalescedFind(ctx, req);
+                FindCoalescer.Result result = coalescer.find(FindCoalescer.getKey(req, ctx.getCallerRoles()),
+                        FindCoalescer.getEntityNames(md), ctx.getRemainingTime(), call);
+                if (!call.ran) {
+                    result.copyTo(ctx);
                 }
-
-                CRUDFindResponse result=finder.find(ctx,req.getCRUDFindRequest());
-
-                ctx.setStatus(OperationStatus.COMPLETE);
-                response.setMatchCount(result.getSize());
+                response.setMatchCount(result.getMatchCount());
+            }
+            if (!req.isCountOnly()) {
                 List<DocCtx> documents = ctx.getDocuments();
                 if (documents != null) {
                     List<JsonDoc> resultList = new ArrayList<>(documents.size());
                     for (DocCtx doc : documents) {
                         resultList.add(doc.getOutputDocument());
                     }
-                    response.setEntityData(JsonDoc.listToDoc(resultList, factory.getNodeFactory()));
+                    response.setEntityDocuments(resultList);
                 }
+            }
+
+            callInterceptors(InterceptPoint.POST_MEDIATOR_FIND, ctx);
+        }
+        // call any queued up hooks (regardless of status)
+        ctx.getHookManager().queueMediatorHooks(ctx);
 
-                factory.getInterceptors().callInterceptors(InterceptPoint.POST_MEDIATOR_FIND, ctx);
+        response.setStatus(ctx.getStatus());
+        response.getErrors().addAll(ctx.getErrors());
+        if (response.getStatus() != OperationStatus.ERROR) {
+            callQueuedHooks(ctx);
+        }
+    }
+
+
+    /**
+     * Discards the coalesced find results for the entity of a write
+     * request
+     */
+    private void invalidateFinds(Request req) {
+        FindCoalescer coalescer = factory.getFindCoalescer();
+        if (coalescer != null) {
+            coalescer.invalidate(req.getEntityVersion().getEntity());
+        }
+    }
+
+    /**
+     * Runs the find or count using the back-end, and returns the match
+     * count. The documents found are left in the operation context.
+     */
+    private long executeFind(OperationContext ctx, FindRequest req) {
+        CompositeMetadata md = ctx.getTopLevelEntityMetadata();
+        Finder finder;
+        if(ctx.isSimple()) {
+            LOGGER.debug("Simple entity");
+            finder=new SimpleFindImpl(md,factory);
+        } else {
+            LOGGER.debug("Composite entity");
+            finder=new CompositeFindImpl(md,factory);
+        }
+
+        long t = System.nanoTime();
+        long count;
+        if(req.isCountOnly()) {
+            LOGGER.debug("Count only");
+            count=finder.count(ctx,req.getCRUDFindRequest());
+            ctx.setStatus(OperationStatus.COMPLETE);
+        } else {
+            CRUDFindResponse result=finder.find(ctx,req.getCRUDFindRequest());
+            if(hasError(ctx.getErrors(),CrudConstants.ERR_TIME_LIMIT_EXCEEDED)) {
+                // The finder ran out of time, and returned what it found so far
+                ctx.setStatus(OperationStatus.PARTIAL);
+            } else {
+                ctx.setStatus(OperationStatus.COMPLETE);
             }
-            // call any queued up hooks (regardless of status)
-            ctx.getHookManager().queueMediatorHooks(ctx);
+            count=result.getSize();
+        }
+        metrics.recordPhase(MediatorMetrics.PHASE_CONTROLLER, Operation.FIND, System.nanoTime() - t);
+        return count;
+    }
 
-            response.setStatus(ctx.getStatus());
-            response.getErrors().addAll(ctx.getErrors());
-            if (response.getStatus() != OperationStatus.ERROR) {
-                ctx.getHookManager().callQueuedHooks();
+    private static boolean hasError(List<Error> errors,String errorCode) {
+        for(Error x:errors) {
+            if(errorCode.equals(x.getErrorCode())) {
+                return true;
             }
-        } catch (Error e) {
-            LOGGER.debug("Error during find:{}", e);
-            response.getErrors().add(e);
-        } catch (Exception e) {
-            LOGGER.debug("Exception during find:{}", e);
-            response.getErrors().add(Error.get(CrudConstants.ERR_CRUD, e));
+        }
+        return false;
+    }
+
+    protected OperationContext newCtx(Request request,Operation operation) {
+        long t = System.nanoTime();
+        BulkContext bulk = BULK_CONTEXT.get();
+        OperationContext ctx;
+        if (bulk != null) {
+            ctx = bulk.newCtx(request, operation);
+        } else {
+            ctx = new OperationContext(request, metadata, factory, operation);
+        }
+        metrics.recordPhase(MediatorMetrics.PHASE_METADATA, operation, System.nanoTime() - t);
+        return ctx;
+    }
+
+    private void callInterceptors(InterceptPoint.MediatorInterceptPoint pt, OperationContext ctx) {
+        long t = System.nanoTime();
+        factory.getInterceptors().callInterceptors(pt, ctx);
+        metrics.recordPhase(MediatorMetrics.PHASE_INTERCEPTORS, ctx.getOperation(), System.nanoTime() - t);
+    }
+
+    private void callQueuedHooks(OperationContext ctx) {
+        long t = System.nanoTime();
+        ctx.getHookManager().callQueuedHooks();
+        metrics.recordPhase(MediatorMetrics.PHASE_HOOKS, ctx.getOperation(), System.nanoTime() - t);
+    }
+
+    /**
+     * Runs the given requests in order, and returns their responses
+     *
+     * @see #bulk(List, boolean)
+     */
+    public List<Response> bulk(List<Request> requests) {
+        return bulk(requests, true);
+    }
+
+    /**
+     * Runs multiple independent requests, and returns their responses in
+     * the same order as the requests. Requests for the same entity version
+     * share metadata resolution and caller role computation.
+     *
+     * If ordered is true, requests are run one after the other, in the
+     * given order. Otherwise, requests may run in parallel using the bulk
+     * executor of the factory. If there is no bulk executor, requests are
+     * run sequentially. A failed request does not stop the others.
+     *
+     * @param requests The requests. Each request must be an insert, save,
+     * update, delete, or find request.
+     * @param ordered Whether to run the requests in order
+     */
+    public List<Response> bulk(List<Request> requests, boolean ordered) {
+        LOGGER.debug("bulk: {} requests, ordered={}", requests.size(), ordered);
+        BulkContext bulkCtx = new BulkContext(metadata, factory);
+        List<Response> responses = new ArrayList<>(requests.size());
+        ExecutorService executor = ordered ? null : factory.getBulkExecutor();
+        if (executor == null || requests.size() < 2) {
+            for (Request req : requests) {
+                responses.add(runInBulk(bulkCtx, req));
+            }
+        } else {
+            List<Future<Response>> futures = new ArrayList<>(requests.size());
+            for (Request req : requests) {
+                futures.add(executor.submit(new BulkRequest(bulkCtx, req)));
+            }
+            for (Future<Response> f : futures) {
+                Response response;
+                try {
+                    response = f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    response = errorResponse(Error.get(CrudConstants.ERR_CRUD, e.toString()));
+                } catch (ExecutionException e) {
+                    response = errorResponse(e.getCause() instanceof Error ? (Error) e.getCause()
+                            : Error.get(CrudConstants.ERR_CRUD, e.getCause().toString()));
+                }
+                responses.add(response);
+            }
+        }
+        return responses;
+    }
+
+    private Response runInBulk(BulkContext bulkCtx, Request req) {
+        BulkContext previous = BULK_CONTEXT.get();
+        BULK_CONTEXT.set(bulkCtx);
+        try {
+            return dispatch(req);
         } finally {
-            Error.pop();
+            if (previous == null) {
+                BULK_CONTEXT.remove();
+            } else {
+                BULK_CONTEXT.set(previous);
+            }
+        }
+    }
+
+    private Response dispatch(Request req) {
+        if (req instanceof InsertionRequest) {
+            return insert((InsertionRequest) req);
+        } else if (req instanceof SaveRequest) {
+            return save((SaveRequest) req);
+        } else if (req instanceof UpdateRequest) {
+            return update((UpdateRequest) req);
+        } else if (req instanceof DeleteRequest) {
+            return delete((DeleteRequest) req);
+        } else if (req instanceof FindRequest) {
+            return find((FindRequest) req);
+        } else {
+            return errorResponse(Error.get(CrudConstants.ERR_UNSUPPORTED_REQUEST,
+                    req == null ? null : req.getClass().getName()));
+        }
+    }
+
+    /**
+     * If the request asks for asynchronous execution, runs it using the
+     * async task manager of the factory, and waits for it for the
+     * duration given in the request. Returns the response if the request
+     * completes in time, or a response with ASYNC status and the task
+     * handle. Returns null if the request should run on the calling
+     * thread.
+     */
+    private Response runAsync(Request req) {
+        if (req.getExecution() == null
+                || req.getExecution().getAsynchronous() <= 0
+                || IN_ASYNC_TASK.get() != null) {
+            return null;
+        }
+        AsyncTaskManager mgr = factory.getAsyncTaskManager();
+        if (mgr == null) {
+            LOGGER.debug("Async execution is not enabled, running synchronously");
+            return null;
+        }
+        String handle;
+        try {
+            handle = mgr.submit(new AsyncRequest(req));
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Async request rejected", e);
+            return errorResponse(Error.get(CrudConstants.ERR_ASYNC_REJECTED, e.getMessage()));
+        }
+        try {
+            mgr.getFuture(handle).get(req.getExecution().getAsynchronous(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.debug("Request continues asynchronously, task {}", handle);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            // Reported by getAsyncResult
+        }
+        return getAsyncResult(handle);
+    }
+
+    /**
+     * Returns the result of an asynchronous request without removing it.
+     * If the request is still running, returns a response with ASYNC
+     * status and the task handle.
+     *
+     * @param taskHandle The task handle returned in the ASYNC response
+     */
+    public Response pollAsyncResult(String taskHandle) {
+        AsyncTaskManager mgr = factory.getAsyncTaskManager();
+        return taskResponse(taskHandle, mgr == null ? null : mgr.getFuture(taskHandle));
+    }
+
+    /**
+     * Returns the result of an asynchronous request, and discards it. If
+     * the request is still running, returns a response with ASYNC status
+     * and the task handle, and the result can be fetched later.
+     *
+     * @param taskHandle The task handle returned in the ASYNC response
+     */
+    public Response getAsyncResult(String taskHandle) {
+        AsyncTaskManager mgr = factory.getAsyncTaskManager();
+        return taskResponse(taskHandle, mgr == null ? null : mgr.fetch(taskHandle));
+    }
+
+    /**
+     * Cancels an asynchronous request. Returns true if the request was
+     * running and is cancelled.
+     *
+     * @param taskHandle The task handle returned in the ASYNC response
+     */
+    public boolean cancelAsync(String taskHandle) {
+        AsyncTaskManager mgr = factory.getAsyncTaskManager();
+        return mgr != null && mgr.cancel(taskHandle);
+    }
+
+    private Response taskResponse(String taskHandle, Future<Response> future) {
+        if (future == null) {
+            return errorResponse(Error.get(CrudConstants.ERR_UNKNOWN_TASK, taskHandle));
         }
+        Response response;
+        if (!future.isDone()) {
+            response = new Response(factory.getNodeFactory());
+            response.setStatus(OperationStatus.ASYNC);
+        } else {
+            try {
+                response = future.get();
+            } catch (CancellationException e) {
+                response = errorResponse(Error.get(CrudConstants.ERR_TASK_CANCELLED, taskHandle));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                response = errorResponse(Error.get(CrudConstants.ERR_CRUD, e.toString()));
+            } catch (ExecutionException e) {
+                response = errorResponse(Error.get(CrudConstants.ERR_CRUD, e.getCause().toString()));
+            }
+        }
+        response.setTaskHandle(taskHandle);
         return response;
     }
 
+    private Response errorResponse(Error e) {
+        Response response = new Response(factory.getNodeFactory());
+        response.getErrors().add(e);
+        response.setStatus(OperationStatus.ERROR);
+        return response;
+    }
 
-    protected OperationContext newCtx(Request request,Operation operation) {
-        return new OperationContext(request, metadata, factory, operation);
+    private final class AsyncRequest implements Callable<Response> {
+        private final Request req;
+        // The bulk call submitting the request, if any. Thread locals are
+        // not inherited by the worker thread.
+        private final BulkContext bulkCtx;
+
+        public AsyncRequest(Request req) {
+            this.req = req;
+            this.bulkCtx = BULK_CONTEXT.get();
+        }
+
+        @Override
+        public Response call() {
+            IN_ASYNC_TASK.set(Boolean.TRUE);
+            try {
+                return bulkCtx == null ? dispatch(req) : runInBulk(bulkCtx, req);
+            } finally {
+                IN_ASYNC_TASK.remove();
+            }
+        }
+    }
+
+    private final class CoalescedFind implements Callable<FindCoalescer.Result> {
+        private final OperationContext ctx;
+        private final FindRequest req;
+        private boolean ran = false;
+
+        public CoalescedFind(OperationContext ctx, FindRequest req) {
+            this.ctx = ctx;
+            this.req = req;
+        }
+
+        @Override
+        public FindCoalescer.Result call() {
+            ran = true;
+            return new FindCoalescer.Result(ctx, executeFind(ctx, req));
+        }
+    }
+
+    private final class BulkRequest implements Callable<Response> {
+        private final BulkContext bulkCtx;
+        private final Request req;
+
+        public BulkRequest(BulkContext bulkCtx, Request req) {
+            this.bulkCtx = bulkCtx;
+            this.req = req;
+        }
+
+        @Override
+        public Response call() {
+            return runInBulk(bulkCtx, req);
+        }
     }
 
     /**
-     * Runs constraint validation
+     * Runs constraint validation. If the factory has a validation
+     * executor and there are enough documents, the documents are
+     * partitioned and each partition is validated by a separate
+     * validator in parallel. Errors are merged in document order, so the
+     * result is the same as sequential validation.
      */
     private void runBulkConstraintValidation(OperationContext ctx) {
         LOGGER.debug("Bulk constraint validation");
+        long t = System.nanoTime();
         EntityMetadata md = ctx.getTopLevelEntityMetadata();
-        ConstraintValidator constraintValidator = factory.getConstraintValidator(md);
         List<DocCtx> docs = ctx.getDocumentsWithoutErrors();
-        constraintValidator.validateDocs(docs);
-        Map<JsonDoc, List<Error>> docErrors = constraintValidator.getDocErrors();
-        for (Map.Entry<JsonDoc, List<Error>> entry : docErrors.entrySet()) {
-            JsonDoc doc = entry.getKey();
-            List<Error> errors = entry.getValue();
+        ExecutorService executor = factory.getValidationExecutor();
+        if (executor != null && docs.size() >= factory.getParallelValidationThreshold()) {
+            runParallelConstraintValidation(ctx, md, docs, executor, factory.getValidationThreads());
+        } else {
+            ConstraintValidator constraintValidator = factory.getConstraintValidator(md);
+            constraintValidator.validateDocs(docs);
+            Map<JsonDoc, List<Error>> docErrors = constraintValidator.getDocErrors();
+            for (Map.Entry<JsonDoc, List<Error>> entry : docErrors.entrySet()) {
+                JsonDoc doc = entry.getKey();
+                List<Error> errors = entry.getValue();
+                if (errors != null && !errors.isEmpty()) {
+                    ((DocCtx) doc).addErrors(errors);
+                }
+            }
+            List<Error> errors = constraintValidator.getErrors();
             if (errors != null && !errors.isEmpty()) {
-                ((DocCtx) doc).addErrors(errors);
+                ctx.addErrors(errors);
             }
         }
-        List<Error> errors = constraintValidator.getErrors();
-        if (errors != null && !errors.isEmpty()) {
-            ctx.addErrors(errors);
-        }
+        metrics.recordPhase(MediatorMetrics.PHASE_VALIDATION, ctx.getOperation(), System.nanoTime() - t);
         LOGGER.debug("Constraint validation complete");
     }
 
+    private void runParallelConstraintValidation(OperationContext ctx,
+                                                 EntityMetadata md,
+                                                 List<DocCtx> docs,
+                                                 ExecutorService executor,
+                                                 int nThreads) {
+        int n = docs.size();
+        int partitionSize = (n + nThreads - 1) / nThreads;
+        LOGGER.debug("Validating {} docs in partitions of {}", n, partitionSize);
+        List<String> errorContext = Error.getThreadContext();
+        List<ConstraintValidator> validators = new ArrayList<>();
+        List<List<DocCtx>> partitions = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < n; from += partitionSize) {
+            ConstraintValidator validator = factory.getConstraintValidator(md);
+            List<DocCtx> partition = docs.subList(from, Math.min(n, from + partitionSize));
+            validators.add(validator);
+            partitions.add(partition);
+            futures.add(executor.submit(new ValidatePartition(validator, docs, partition, errorContext)));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Error.get(CrudConstants.ERR_CRUD, e.toString());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                } else {
+                    throw Error.get(CrudConstants.ERR_CRUD, e.getCause().toString());
+                }
+            }
+        }
+        for (int i = 0; i < validators.size(); i++) {
+            ConstraintValidator validator = validators.get(i);
+            Map<JsonDoc, List<Error>> docErrors = validator.getDocErrors();
+            for (DocCtx doc : partitions.get(i)) {
+                List<Error> errors = docErrors.get(doc);
+                if (errors != null && !errors.isEmpty()) {
+                    doc.addErrors(errors);
+                }
+            }
+            List<Error> errors = validator.getErrors();
+            if (errors != null && !errors.isEmpty()) {
+                ctx.addErrors(errors);
+            }
+        }
+    }
+
+    /**
+     * Validates a partition of the documents with its own validator,
+     * using the error context of the requesting thread
+     */
+    private static final class ValidatePartition implements Callable<Void> {
+        private final ConstraintValidator validator;
+        private final List<DocCtx> docs;
+        private final List<DocCtx> partition;
+        private final List<String> errorContext;
+
+        public ValidatePartition(ConstraintValidator validator,
+                                 List<DocCtx> docs,
+                                 List<DocCtx> partition,
+                                 List<String> errorContext) {
+            this.validator = validator;
+            this.docs = docs;
+            this.partition = partition;
+            this.errorContext = errorContext;
+        }
+
+        @Override
+        public Void call() {
+            for (String x : errorContext) {
+                Error.push(x);
+            }
+            try {
+                validator.validateDocs(docs, partition);
+            } finally {
+                for (int i = 0; i < errorContext.size(); i++) {
+                    Error.pop();
+                }
+            }
+            return null;
+        }
+    }
+
     private void updatePredefinedFields(OperationContext ctx,CRUDController controller, String entity) {
         for (JsonDoc doc : ctx.getDocuments()) {
             PredefinedFields.updateArraySizes(factory.getNodeFactory(), doc);
@@ -0,0 +1,167 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mediator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.MonitorRegistry;
+import com.netflix.servo.monitor.BasicTimer;
+import com.netflix.servo.monitor.BucketConfig;
+import com.netflix.servo.monitor.BucketTimer;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.Timer;
+
+import com.redhat.lightblue.OperationStatus;
+import com.redhat.lightblue.crud.Operation;
+import com.redhat.lightblue.metadata.EntityMetadata;
+
+/**
+ * Servo timers for mediator operations. There is a bucket timer for each
+ * operation, entity, version, and response status, giving the request
+ * count and latency histogram. The entity and version tags come from
+ * the resolved metadata, not from the request, so the number of timers
+ * is bounded by the entities that exist. Requests whose metadata cannot
+ * be resolved are recorded with the "unknown" entity and version. There is a basic timer for each
+ * operation and request phase: metadata resolution, constraint
+ * validation, controller calls, hooks, and interceptors.
+ *
+ * Timers are created on first use and registered with the monitor
+ * registry, so they are published by the registry poller set up by
+ * ServoGraphiteSetup. Request timers keep microseconds, and phase timers
+ * keep nanoseconds, so phases shorter than a millisecond are not
+ * recorded as 0.
+ */
+public class MediatorMetrics {
+
+    public static final String REQUEST_TIMER = "lightblue.mediator.request";
+    public static final String PHASE_TIMER = "lightblue.mediator.phase";
+
+    public static final String TAG_OPERATION = "operation";
+    public static final String TAG_ENTITY = "entity";
+    public static final String TAG_VERSION = "version";
+    public static final String TAG_STATUS = "status";
+    public static final String TAG_PHASE = "phase";
+
+    public static final String PHASE_METADATA = "metadata";
+    public static final String PHASE_VALIDATION = "validation";
+    public static final String PHASE_CONTROLLER = "controller";
+    public static final String PHASE_HOOKS = "hooks";
+    public static final String PHASE_INTERCEPTORS = "interceptors";
+
+    public static final String UNKNOWN = "unknown";
+
+    /**
+     * Upper bounds of request latency buckets, in milliseconds
+     */
+    private static final long[] BUCKETS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private static final MediatorMetrics DEFAULT = new MediatorMetrics(DefaultMonitorRegistry.getInstance());
+
+    private final MonitorRegistry registry;
+    private final BucketConfig bucketConfig;
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public MediatorMetrics(MonitorRegistry registry) {
+        this.registry = registry;
+        long[] buckets = new long[BUCKETS.length];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = TimeUnit.MILLISECONDS.toMicros(BUCKETS[i]);
+        }
+        this.bucketConfig = new BucketConfig.Builder().withTimeUnit(TimeUnit.MICROSECONDS).withBuckets(buckets).build();
+    }
+
+    /**
+     * Returns the metrics registered with the default monitor registry
+     */
+    public static MediatorMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records a completed request
+     *
+     * @param op The operation
+     * @param md Resolved metadata of the entity, or null if the metadata
+     * could not be resolved
+     * @param status Response status
+     * @param nanos Duration of the request, in nanoseconds
+     */
+    public void recordRequest(Operation op, EntityMetadata md, OperationStatus status, long nanos) {
+        String entity = UNKNOWN;
+        String version = UNKNOWN;
+        if (md != null && md.getName() != null && md.getVersion() != null && md.getVersion().getValue() != null) {
+            entity = md.getName();
+            version = md.getVersion().getValue();
+        }
+        getRequestTimer(op, entity, version, status).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a completed request phase
+     *
+     * @param phase One of the PHASE_ constants
+     * @param op The operation
+     * @param nanos Duration of the phase, in nanoseconds
+     */
+    public void recordPhase(String phase, Operation op, long nanos) {
+        getPhaseTimer(phase, op).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the request timer for the operation, entity, version and
+     * status
+     */
+    public Timer getRequestTimer(Operation op, String entity, String version, OperationStatus status) {
+        String key = op + ":" + entity + ":" + version + ":" + status;
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = register(key, new BucketTimer(MonitorConfig.builder(REQUEST_TIMER).
+                    withTag(TAG_OPERATION, String.valueOf(op)).
+                    withTag(TAG_ENTITY, String.valueOf(entity)).
+                    withTag(TAG_VERSION, String.valueOf(version)).
+                    withTag(TAG_STATUS, String.valueOf(status)).build(), bucketConfig, TimeUnit.MICROSECONDS));
+        }
+        return timer;
+    }
+
+    /**
+     * Returns the timer for the phase of the operation
+     */
+    public Timer getPhaseTimer(String phase, Operation op) {
+        String key = phase + ":" + op;
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = register(key, new BasicTimer(MonitorConfig.builder(PHASE_TIMER).
+                    withTag(TAG_PHASE, phase).
+                    withTag(TAG_OPERATION, String.valueOf(op)).build(), TimeUnit.MILLISECONDS));
+        }
+        return timer;
+    }
+
+    private Timer register(String key, Timer timer) {
+        Timer existing = timers.putIfAbsent(key, timer);
+        if (existing != null) {
+            return existing;
+        }
+        registry.register(timer);
+        return timer;
+    }
+}
@@ -64,14 +64,47 @@ public final class OperationContext extends CRUDOperationContext {
                             Metadata metadata,
                             Factory factory,
                             Operation operation) {
-        super(operation, 
-              request.getEntityVersion().getEntity(), 
-              factory, 
+        this(request, metadata, factory, operation, newResolver(request, metadata), null);
+    }
+
+    /**
+     * Construct operation context using an initialized metadata
+     * resolver. The resolver can be shared between operation contexts
+     * of requests for the same entity version, query, and projection.
+     *
+     * @param request The top-level request
+     * @param metadata Metadata manager
+     * @param factory The factory to get validators and controllers
+     * @param operation The operation in progress
+     * @param resolver Metadata resolver initialized for the request
+     * @param callerRoles Roles of the caller. If null, caller roles are
+     * computed from the client identification of the request
+     */
+    public OperationContext(Request request,
+                            Metadata metadata,
+                            Factory factory,
+                            Operation operation,
+                            DefaultMetadataResolver resolver,
+                            Set<String> callerRoles) {
+        super(operation,
+              request.getEntityVersion().getEntity(),
+              factory,
               request instanceof DocRequest ? JsonDoc.docList( ((DocRequest)request).getEntityData()):null );
         this.request = request;
         this.metadata = metadata;
-        this.resolver = new DefaultMetadataResolver(metadata);
+        this.resolver = resolver;
+        addCallerRoles(callerRoles == null ? getCallerRoles(resolver.getMetadataRoles(), request.getClientId()) : callerRoles);
+        LOGGER.debug("Caller roles:{}", getCallerRoles());
+        if (request.getExecution() != null) {
+            setTimeLimit(request.getExecution().getTimeLimit());
+        }
+    }
 
+    /**
+     * Returns a new metadata resolver initialized for the request
+     */
+    public static DefaultMetadataResolver newResolver(Request request, Metadata metadata) {
+        DefaultMetadataResolver resolver = new DefaultMetadataResolver(metadata);
         if(request instanceof FindRequest) {
             // Setup composite metadata for find requests
             resolver.initialize(request.getEntityVersion().getEntity(),
@@ -83,8 +116,14 @@ public final class OperationContext extends CRUDOperationContext {
                                 request.getEntityVersion().getVersion(),
                                 null,null);
         }
-        addCallerRoles(getCallerRoles(resolver.getMetadataRoles(), request.getClientId()));
-        LOGGER.debug("Caller roles:{}", getCallerRoles());
+        return resolver;
+    }
+
+    /**
+     * Returns the metadata resolver of this context
+     */
+    public DefaultMetadataResolver getResolver() {
+        return resolver;
     }
 
     /**
@@ -127,14 +166,16 @@ public final class OperationContext extends CRUDOperationContext {
         // original request, but query information from the argument
         // 'req'
 
-        return new OperationContext(newReq,
-                                    metadata,
-                                    getFactory(),
-                                    Operation.FIND,
-                                    resolver,
-                                    new ArrayList<DocCtx>(),
-                                    getCallerRoles(),
-                                    getHookManager());
+        OperationContext ctx=new OperationContext(newReq,
+                                                  metadata,
+                                                  getFactory(),
+                                                  Operation.FIND,
+                                                  resolver,
+                                                  new ArrayList<DocCtx>(),
+                                                  getCallerRoles(),
+                                                  getHookManager());
+        ctx.setDeadline(getDeadline());
+        return ctx;
     }
 
     /**
@@ -202,7 +243,10 @@ public final class OperationContext extends CRUDOperationContext {
         this.status = status;
     }
 
-    private Set<String> getCallerRoles(Set<String> metadataRoles, ClientIdentification id) {
+    /**
+     * Returns the metadata roles the client is in
+     */
+    public static Set<String> getCallerRoles(Set<String> metadataRoles, ClientIdentification id) {
         Set<String> callerRoles = new HashSet<>();
         if (!metadataRoles.isEmpty() && id != null) {
             for (String metadataRole : metadataRoles) {
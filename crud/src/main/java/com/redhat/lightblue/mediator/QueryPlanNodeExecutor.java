@@ -179,6 +179,7 @@ public class QueryPlanNodeExecutor {
            
             // Iterate n-tuples
             for(Iterator<List<QueryPlanDoc>> tupleItr=tuples.tuples();tupleItr.hasNext();) {
+                ctx.checkTimeLimit();
                 List<QueryPlanDoc> tuple=tupleItr.next();
                 LOGGER.debug("Processing an {}-tuple",tuple.size());
                 // Tuple elements are ordered the same way as the
@@ -19,22 +19,36 @@
  */
 package com.redhat.lightblue.mediator;
 
+import java.util.ArrayList;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.redhat.lightblue.OperationStatus;
 
 import com.redhat.lightblue.crud.CRUDController;
+import com.redhat.lightblue.crud.CRUDCounter;
 import com.redhat.lightblue.crud.CRUDFindRequest;
 import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.DocCtx;
 import com.redhat.lightblue.crud.Factory;
 
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.PredefinedFields;
+
+import com.redhat.lightblue.query.FieldProjection;
+import com.redhat.lightblue.query.Projection;
 
 public class SimpleFindImpl implements Finder {
 
     private static final Logger LOGGER=LoggerFactory.getLogger(SimpleFindImpl.class);
 
+    /**
+     * The projection used to count documents if the controller cannot
+     * count natively
+     */
+    private static final Projection COUNT_PROJECTION=new FieldProjection(PredefinedFields.OBJECTTYPE_PATH,true,false);
+
     private final EntityMetadata md;
     private final CRUDController controller;
 
@@ -49,6 +63,7 @@ public class SimpleFindImpl implements Finder {
     @Override
     public CRUDFindResponse find(OperationContext ctx,
                                  CRUDFindRequest req) {
+        ctx.checkTimeLimit();
         CRUDFindResponse result = controller.find(ctx,
                                                   req.getQuery(),
                                                   req.getProjection(),
@@ -57,4 +72,25 @@ public class SimpleFindImpl implements Finder {
                                                   req.getTo());
         return result;
     }
+
+    @Override
+    public long count(OperationContext ctx,
+                      CRUDFindRequest req) {
+        ctx.checkTimeLimit();
+        if(controller instanceof CRUDCounter) {
+            return ((CRUDCounter)controller).count(ctx,req.getQuery());
+        } else {
+            // The response size is the number of matching documents,
+            // regardless of the range, so retrieve at most one document
+            LOGGER.debug("Controller for {} cannot count, counting with a find of range 0-0",md.getName());
+            CRUDFindResponse result = controller.find(ctx,
+                                                      req.getQuery(),
+                                                      COUNT_PROJECTION,
+                                                      null,
+                                                      0l,
+                                                      0l);
+            ctx.setDocuments(new ArrayList<DocCtx>());
+            return result.getSize();
+        }
+    }
 }
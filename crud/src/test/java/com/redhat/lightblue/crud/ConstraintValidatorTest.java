@@ -1,6 +1,8 @@
 package com.redhat.lightblue.crud;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -20,8 +22,10 @@ import com.redhat.lightblue.TestDataStoreParser;
 import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
 import com.redhat.lightblue.crud.validator.EmptyEntityConstraintValidators;
 import com.redhat.lightblue.metadata.EntityConstraint;
+import com.redhat.lightblue.metadata.CompositeMetadata;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.FieldConstraint;
+import com.redhat.lightblue.metadata.FieldTreeNode;
 import com.redhat.lightblue.metadata.Type;
 import com.redhat.lightblue.metadata.parser.Extensions;
 import com.redhat.lightblue.metadata.parser.FieldConstraintParser;
@@ -32,6 +36,7 @@ import com.redhat.lightblue.util.DefaultRegistry;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.Registry;
 
 public class ConstraintValidatorTest {
@@ -183,6 +188,88 @@ public class ConstraintValidatorTest {
         assertFalse(validator.hasErrors());
     }
 
+    private EntityMetadata createTestFieldConstraintMetadata() throws IOException {
+        JsonNode validatorNode = JsonUtils.json(getClass().getResourceAsStream(
+                "/crud/validator/schema-test-validation-testFieldConstraint.json"));
+        Map<String, FieldConstraintParser<JsonNode>> fieldConstraintParsers = new HashMap<String, FieldConstraintParser<JsonNode>>();
+        fieldConstraintParsers.put("testFieldConstraint", new TestFieldConstraintParser(new TestFieldConstraint("testFieldConstraintChecker")));
+        return createEntityMetadata(validatorNode, null, fieldConstraintParsers);
+    }
+
+    /**
+     * Only the constrained fields are included in the plan, with their
+     * checkers resolved.
+     */
+    @Test
+    public void testPlan_OnlyConstrainedFields() throws IOException {
+        EntityMetadata entityMetadata = createTestFieldConstraintMetadata();
+        Registry<String, FieldConstraintChecker> fieldCheckerRegistry = new DefaultRegistry<String, FieldConstraintChecker>();
+        FieldConstraintChecker checker = new FieldConstraintChecker() {
+        };
+        fieldCheckerRegistry.add("testFieldConstraintChecker", checker);
+
+        ConstraintPlan plan = ConstraintPlan.compile(entityMetadata, fieldCheckerRegistry,
+                new DefaultRegistry<String, EntityConstraintChecker>());
+
+        assertEquals(0, plan.getEntitySteps().size());
+        assertEquals(1, plan.getFieldSteps().size());
+        assertEquals(new Path("field1"), plan.getFieldSteps().get(0).getFieldPath());
+        assertSame(checker, plan.getFieldSteps().get(0).getChecker());
+    }
+
+    /**
+     * Errors reported by a checker get the field, constraint, and value
+     * context, and the thread context is restored afterwards.
+     */
+    @Test
+    public void testValidate_ErrorContext() throws IOException {
+        EntityMetadata entityMetadata = createTestFieldConstraintMetadata();
+        Map<String, FieldConstraintChecker> fieldConstraintCheckers = new HashMap<String, FieldConstraintChecker>();
+        fieldConstraintCheckers.put("testFieldConstraintChecker", new FieldConstraintValueChecker() {
+            @Override
+            public void checkConstraint(ConstraintValidator validator,
+                                        FieldTreeNode fieldMetadata,
+                                        Path fieldMetadataPath,
+                                        FieldConstraint constraint,
+                                        Path valuePath,
+                                        JsonDoc doc,
+                                        JsonNode fieldValue) {
+                validator.addDocError(Error.get("testError"));
+            }
+        });
+        ConstraintValidator validator = createConstraintValidator(entityMetadata, fieldConstraintCheckers, null);
+
+        JsonDoc doc = new JsonDoc(JsonUtils.json("{\"field1\":\"x\"}"));
+        validator.validateDocs(Arrays.asList(doc));
+        validator.validateDocs(Arrays.asList(doc));
+
+        List<Error> errors = validator.getDocErrors().get(doc);
+        assertEquals(2, errors.size());
+        for (Error e : errors) {
+            assertEquals("validateDocs/validateDoc/field1/testFieldConstraintChecker/field1", e.getContext());
+        }
+        assertEquals("", Error.get("x").getContext());
+    }
+
+    /**
+     * The factory compiles the plan once for a metadata instance
+     */
+    @Test
+    public void testFactory_PlanReused() throws IOException {
+        EntityMetadata entityMetadata = createTestFieldConstraintMetadata();
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        ConstraintPlan plan = factory.getConstraintPlan(entityMetadata);
+        assertSame(plan, factory.getConstraintPlan(entityMetadata));
+        assertSame(plan, factory.getConstraintPlan(CompositeMetadata.buildCompositeMetadata(entityMetadata, null)));
+        // Reloaded metadata gets a new plan
+        assertFalse(plan == factory.getConstraintPlan(createTestFieldConstraintMetadata()));
+
+        factory.addFieldConstraintValidator("testFieldConstraintChecker", new FieldConstraintChecker() {
+        });
+        assertFalse(plan == factory.getConstraintPlan(entityMetadata));
+    }
+
     @SuppressWarnings("serial")
     protected static class TestEntityConstraint implements EntityConstraint {
 
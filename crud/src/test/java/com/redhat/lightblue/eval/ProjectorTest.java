@@ -22,9 +22,11 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.redhat.lightblue.crud.DocCtx;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.query.Projection;
 import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.LazyJsonDoc;
 import com.redhat.lightblue.util.Path;
 import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
 
@@ -55,6 +57,20 @@ public class ProjectorTest extends AbstractJsonNodeTest {
         Assert.assertNull(pdoc.get(new Path("field6.nf7.nnf2")));
     }
 
+    @Test
+    public void fieldProjectorTest_lazy() throws Exception {
+        LazyJsonDoc lazy = new LazyJsonDoc(jsonDoc.getRoot().toString().getBytes("UTF-8"));
+        Projection p = EvalTestContext.projectionFromJson("[{'field':'field2'},{'field':'field6.*'}]");
+        JsonDoc pdoc = Projector.getInstance(p, md).project(new DocCtx(lazy), JSON_NODE_FACTORY);
+        Assert.assertEquals(Projector.getInstance(p, md).project(jsonDoc, JSON_NODE_FACTORY).getRoot(), pdoc.getRoot());
+        Assert.assertEquals(0, lazy.getParsedFieldCount());
+
+        // Query projections need the whole document
+        p = EvalTestContext.projectionFromJson("{'field':'field7','match':{'field':'elemf1','op':'=','rvalue':'elvalue0_1'}}");
+        Projector.getInstance(p, md).project(new DocCtx(lazy), JSON_NODE_FACTORY);
+        Assert.assertTrue(lazy.isParsed());
+    }
+
     @Test
     public void fieldProjectorTest_recursive() throws Exception {
         Projection p = EvalTestContext.projectionFromJson("[{'field':'field2'},{'field':'field6.*','recursive':true}]");
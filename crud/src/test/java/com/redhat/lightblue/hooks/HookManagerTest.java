@@ -20,9 +20,12 @@ package com.redhat.lightblue.hooks;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -45,6 +48,8 @@ import com.redhat.lightblue.TestDataStoreParser;
 import com.redhat.lightblue.query.Projection;
 import com.redhat.lightblue.query.FieldProjection;
 
+import com.netflix.servo.BasicMonitorRegistry;
+import com.netflix.servo.monitor.Monitor;
 import com.redhat.lightblue.crud.CRUDOperationContext;
 import com.redhat.lightblue.crud.Operation;
 import com.redhat.lightblue.crud.Factory;
@@ -406,4 +411,286 @@ public class HookManagerTest extends AbstractJsonNodeTest {
         }
     }
 
+    @Test
+    public void sharedProjectionTest() throws Exception {
+        HookManager hooks = new HookManager(resolver, nodeFactory);
+        TestOperationContext ctx = setupContext(Operation.UPDATE);
+        for (Hook h : ctx.md.getHooks().getHooks()) {
+            h.setProjection(new FieldProjection(new Path("field1"), true, false));
+        }
+
+        hooks.queueHooks(ctx);
+        // Changes after queueing are not seen by the hooks
+        ctx.getDocuments().get(0).modify(new Path("field1"), nodeFactory.textNode("changed"), false);
+        hooks.callQueuedHooks();
+
+        Assert.assertEquals(ctx.getDocuments().size(), hook1.processed.size());
+        Assert.assertEquals(ctx.getDocuments().size(), hook2.processed.size());
+        for (int i = 0; i < hook1.processed.size(); i++) {
+            Assert.assertSame(hook1.processed.get(i).getPreDoc(), hook2.processed.get(i).getPreDoc());
+            Assert.assertSame(hook1.processed.get(i).getPostDoc(), hook2.processed.get(i).getPostDoc());
+            Assert.assertNull(hook1.processed.get(i).getPostDoc().get(new Path("field2")));
+        }
+        Assert.assertEquals("field0", hook1.processed.get(0).getPostDoc().get(new Path("field1")).asText());
+    }
+
+    @Test
+    public void originalCopiedOnceTest() throws Exception {
+        HookManager hooks = new HookManager(resolver, nodeFactory);
+        TestOperationContext ctx = setupContext(Operation.UPDATE);
+
+        hooks.queueHooks(ctx);
+        // The back-end may change the original it shares with the context
+        for (DocCtx doc : ctx.getDocuments()) {
+            doc.getOriginalDocument().modify(new Path("field1"), nodeFactory.textNode("changed"), false);
+        }
+        hooks.callQueuedHooks();
+
+        for (int i = 0; i < ctx.getDocuments().size(); i++) {
+            DocCtx doc = ctx.getDocuments().get(i);
+            Assert.assertNotSame(doc.getOriginalDocument(), hook1.processed.get(i).getPreDoc());
+            Assert.assertSame(hook1.processed.get(i).getPreDoc(), hook2.processed.get(i).getPreDoc());
+            Assert.assertNotEquals("changed", hook1.processed.get(i).getPreDoc().get(new Path("field1")).asText());
+            Assert.assertNotSame(doc, hook1.processed.get(i).getPostDoc());
+            Assert.assertSame(hook1.processed.get(i).getPostDoc(), hook2.processed.get(i).getPostDoc());
+        }
+    }
+
+    public static class TestAsyncConfig implements AsyncHookConfiguration {
+        private final int capacity;
+        private final OverflowPolicy overflowPolicy;
+
+        public TestAsyncConfig(int capacity, OverflowPolicy overflowPolicy) {
+            this.capacity = capacity;
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        @Override
+        public boolean isAsynchronous() {
+            return true;
+        }
+
+        @Override
+        public int getQueueCapacity() {
+            return capacity;
+        }
+
+        @Override
+        public int getThreads() {
+            return 1;
+        }
+
+        @Override
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+    }
+
+    /**
+     * Waits until released, counting the calls
+     */
+    public static class BlockingHook extends AbstractHook {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done;
+        volatile Thread thread;
+
+        public BlockingHook(int nCalls) {
+            super("hook1");
+            done = new CountDownLatch(nCalls);
+        }
+
+        @Override
+        public void processHook(EntityMetadata md,
+                                HookConfiguration cfg,
+                                List<HookDoc> processedDocuments) {
+            thread = Thread.currentThread();
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.processHook(md, cfg, processedDocuments);
+            done.countDown();
+        }
+    }
+
+    private void setHook1Config(TestOperationContext ctx, HookConfiguration cfg) {
+        for (Hook h : ctx.md.getHooks().getHooks()) {
+            if (h.getName().equals("hook1")) {
+                h.setConfiguration(cfg);
+            }
+        }
+    }
+
+    @Test
+    public void asyncHookTest() throws Exception {
+        BlockingHook blockingHook = new BlockingHook(1);
+        Factory factory = new Factory();
+        HookDispatcher dispatcher = factory.getHookDispatcher();
+        HookManager hooks = new HookManager(new TestHookResolver(blockingHook, hook2, mediatorHook), nodeFactory, dispatcher);
+        TestOperationContext ctx = setupContext(Operation.UPDATE);
+        setHook1Config(ctx, new TestAsyncConfig(10, AsyncHookConfiguration.OverflowPolicy.BLOCK));
+        try {
+            hooks.queueHooks(ctx);
+            // Returns while hook1 is still blocked
+            hooks.callQueuedHooks();
+            Assert.assertEquals(ctx.md, hook2.md);
+            blockingHook.release.countDown();
+            Assert.assertTrue(blockingHook.done.await(10, TimeUnit.SECONDS));
+            Assert.assertNotSame(Thread.currentThread(), blockingHook.thread);
+            Assert.assertEquals(ctx.getDocuments().size(), blockingHook.processed.size());
+        } finally {
+            factory.shutdown();
+        }
+        Assert.assertEquals(0, dispatcher.getQueueSize("hook1"));
+        Assert.assertEquals(0, dispatcher.getDroppedCount("hook1"));
+    }
+
+    @Test
+    public void asyncHookDropTest() throws Exception {
+        BlockingHook blockingHook = new BlockingHook(2);
+        BasicMonitorRegistry registry = new BasicMonitorRegistry();
+        HookDispatcher dispatcher = new HookDispatcher(registry);
+        HookManager hooks = new HookManager(new TestHookResolver(blockingHook, hook2, mediatorHook), nodeFactory, dispatcher);
+        TestOperationContext ctx = setupContext(Operation.INSERT);
+        setHook1Config(ctx, new TestAsyncConfig(1, AsyncHookConfiguration.OverflowPolicy.DROP));
+        try {
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+            Assert.assertTrue(blockingHook.started.await(10, TimeUnit.SECONDS));
+            // Worker is busy. First call is queued, the second is dropped
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+            Assert.assertEquals(1, dispatcher.getDroppedCount("hook1"));
+            Assert.assertEquals(1, registry.getRegisteredMonitors().size());
+            Monitor<?> counter = registry.getRegisteredMonitors().iterator().next();
+            Assert.assertEquals(HookDispatcher.DROPPED_COUNTER, counter.getConfig().getName());
+            Assert.assertEquals("hook1", counter.getConfig().getTags().getValue(HookDispatcher.TAG_HOOK));
+            Assert.assertEquals(1L, ((Number) counter.getValue()).longValue());
+            blockingHook.release.countDown();
+            Assert.assertTrue(blockingHook.done.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(0, dispatcher.getQueueSize("hook1"));
+        } finally {
+            dispatcher.shutdown();
+        }
+        Assert.assertTrue(registry.getRegisteredMonitors().isEmpty());
+    }
+
+    @Test
+    public void asyncHookSynchronousOverflowTest() throws Exception {
+        BlockingHook blockingHook = new BlockingHook(3);
+        HookDispatcher dispatcher = new HookDispatcher();
+        HookManager hooks = new HookManager(new TestHookResolver(blockingHook, hook2, mediatorHook), nodeFactory, dispatcher);
+        TestOperationContext ctx = setupContext(Operation.INSERT);
+        setHook1Config(ctx, new TestAsyncConfig(1, AsyncHookConfiguration.OverflowPolicy.SYNCHRONOUS));
+        try {
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+            Assert.assertTrue(blockingHook.started.await(10, TimeUnit.SECONDS));
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+            // Queue is full, this call runs on this thread
+            blockingHook.release.countDown();
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+            Assert.assertTrue(blockingHook.done.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(0, dispatcher.getDroppedCount("hook1"));
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    public static class TestBatchingConfig implements BatchingHookConfiguration {
+        private final int batchSize;
+        private final long window;
+
+        public TestBatchingConfig(int batchSize, long window) {
+            this.batchSize = batchSize;
+            this.window = window;
+        }
+
+        @Override
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        @Override
+        public long getBatchWindowMillis() {
+            return window;
+        }
+    }
+
+    /**
+     * Records the size of each batch, fails if asked to
+     */
+    public static class BatchRecordingHook extends AbstractHook {
+        final List<Integer> batchSizes = new ArrayList<>();
+        volatile boolean fail = false;
+
+        public BatchRecordingHook() {
+            super("hook1");
+        }
+
+        @Override
+        public synchronized void processHook(EntityMetadata md,
+                                             HookConfiguration cfg,
+                                             List<HookDoc> processedDocuments) {
+            super.processHook(md, cfg, processedDocuments);
+            if (fail) {
+                throw new RuntimeException("fail");
+            }
+            batchSizes.add(processedDocuments.size());
+        }
+    }
+
+    @Test
+    public void batchingHookTest() throws Exception {
+        BatchRecordingHook batchHook = new BatchRecordingHook();
+        Factory factory = new Factory();
+        HookBatcher batcher = factory.getHookBatcher();
+        HookManager hooks = new HookManager(new TestHookResolver(batchHook, hook2, mediatorHook), nodeFactory, null, batcher);
+        TestOperationContext ctx = setupContext(Operation.INSERT);
+        setHook1Config(ctx, new TestBatchingConfig(25, 60000));
+
+        // 3 requests of 10 docs each: one batch of 25, 5 pending
+        for (int i = 0; i < 3; i++) {
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+        }
+        Assert.assertEquals(Arrays.asList(25), batchHook.batchSizes);
+        Assert.assertEquals(5, batcher.getPendingCount("hook1"));
+
+        // Flushed when the factory shuts down
+        factory.shutdown();
+        Assert.assertEquals(Arrays.asList(25, 5), batchHook.batchSizes);
+        Assert.assertEquals(30, batcher.getDeliveredCount("hook1"));
+        Assert.assertEquals(0, batcher.getPendingCount("hook1"));
+    }
+
+    @Test
+    public void batchingHookWindowTest() throws Exception {
+        BatchRecordingHook batchHook = new BatchRecordingHook();
+        HookBatcher batcher = new HookBatcher();
+        HookManager hooks = new HookManager(new TestHookResolver(batchHook, hook2, mediatorHook), nodeFactory, null, batcher);
+        TestOperationContext ctx = setupContext(Operation.INSERT);
+        setHook1Config(ctx, new TestBatchingConfig(100, 10));
+        try {
+            batchHook.fail = true;
+            hooks.queueHooks(ctx);
+            hooks.callQueuedHooks();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (batcher.getFailedCount("hook1") == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(10, batcher.getFailedCount("hook1"));
+            Assert.assertEquals(0, batcher.getDeliveredCount("hook1"));
+        } finally {
+            batcher.shutdown();
+        }
+    }
+
 }
@@ -39,6 +39,7 @@ import com.redhat.lightblue.metadata.Metadata;
 import com.redhat.lightblue.metadata.types.DefaultTypes;
 import com.redhat.lightblue.metadata.test.DatabaseMetadata;
 
+import com.redhat.lightblue.crud.CrudConstants;
 import com.redhat.lightblue.crud.Factory;
 import com.redhat.lightblue.crud.FindRequest;
 import com.redhat.lightblue.crud.Operation;
@@ -59,10 +60,13 @@ import com.redhat.lightblue.TestDataStoreParser;
 import com.redhat.lightblue.Response;
 import com.redhat.lightblue.Request;
 import com.redhat.lightblue.EntityVersion;
+import com.redhat.lightblue.ExecutionOptions;
+import com.redhat.lightblue.OperationStatus;
 
 public class CompositeFinderTest extends AbstractJsonSchemaTest {
 
     private Mediator mediator;
+    private volatile boolean expireAfterA=false;
     private static final JsonNodeFactory nodeFactory = JsonNodeFactory.withExactBigDecimals(false);
 
     private class TestMetadata extends DatabaseMetadata {
@@ -113,6 +117,10 @@ public class CompositeFinderTest extends AbstractJsonSchemaTest {
         factory.addCRUDController("mongo", new TestCrudController(new TestCrudController.GetData() {
                 public List<JsonDoc> getData(String entityName) {
                     try {
+                        if(expireAfterA&&"A".equals(entityName)) {
+                            // The deadline passes while A is being retrieved
+                            getLastContext(mediator).setDeadline(1);
+                        }
                         List<JsonDoc> docs=new ArrayList<JsonDoc>();
                         JsonNode node=loadJsonNode("composite/"+entityName+"_data.json");
                         if(node instanceof ArrayNode) {
@@ -148,6 +156,48 @@ public class CompositeFinderTest extends AbstractJsonSchemaTest {
         Assert.assertEquals("A01",response.getEntityData().get(0).get("_id").asText());
     }
 
+    @Test
+    public void timeLimitPartialTest() throws Exception {
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'_id','op':'=','rvalue':'A01'}"));
+        fr.setProjection(projection("[{'field':'*','recursive':1},{'field':'b'}]"));
+        fr.setEntityVersion(new EntityVersion("A","1.0.0"));
+        ExecutionOptions options=new ExecutionOptions();
+        options.setTimeLimit(60000);
+        fr.setExecution(options);
+        expireAfterA=true;
+        Response response=mediator.find(fr);
+        // A is retrieved, B is not
+        Assert.assertEquals(OperationStatus.PARTIAL,response.getStatus());
+        Assert.assertEquals(1,response.getEntityData().size());
+        Assert.assertEquals("A01",response.getEntityData().get(0).get("_id").asText());
+        Assert.assertEquals(0,response.getEntityData().get(0).get("b").size());
+        Assert.assertEquals(CrudConstants.ERR_TIME_LIMIT_EXCEEDED,response.getErrors().get(0).getErrorCode());
+    }
+
+    @Test
+    public void countOnlyTest() throws Exception {
+        FindRequest fr=new FindRequest();
+        fr.setQuery(query("{'field':'b.*.field1','op':'=','rvalue':'GpP8rweso'}"));
+        fr.setProjection(projection("[{'field':'*','recursive':1},{'field':'b'}]"));
+        fr.setEntityVersion(new EntityVersion("A","1.0.0"));
+        fr.setCountOnly(true);
+        Response response=mediator.find(fr);
+        Assert.assertEquals(OperationStatus.COMPLETE,response.getStatus());
+        Assert.assertEquals(1,response.getMatchCount());
+        Assert.assertNull(response.getEntityData());
+        // Only the search plan is executed
+        QueryPlan qplan=(QueryPlan)getLastContext(mediator).getProperty(Mediator.CTX_QPLAN);
+        Assert.assertEquals("B",qplan.getSources()[0].getMetadata().getName());
+
+        // Query on the root entity only
+        fr.setQuery(query("{'field':'_id','op':'=','rvalue':'A01'}"));
+        response=mediator.find(fr);
+        Assert.assertEquals(OperationStatus.COMPLETE,response.getStatus());
+        Assert.assertEquals(1,response.getMatchCount());
+        Assert.assertNull(response.getEntityData());
+    }
+
     @Test
     public void retrieveAandBonly() throws Exception {
         FindRequest fr=new FindRequest();
@@ -19,31 +19,51 @@
 package com.redhat.lightblue.mediator;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.redhat.lightblue.*;
 import com.redhat.lightblue.crud.*;
 import com.redhat.lightblue.crud.interceptors.*;
+import com.netflix.servo.BasicMonitorRegistry;
+import com.netflix.servo.monitor.BasicTimer;
+import com.netflix.servo.monitor.BucketTimer;
+import com.netflix.servo.monitor.Monitor;
+import com.redhat.lightblue.interceptor.InterceptPoint;
+import com.redhat.lightblue.interceptor.MediatorInterceptor;
 import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
 import com.redhat.lightblue.crud.validator.EmptyEntityConstraintValidators;
 import com.redhat.lightblue.metadata.*;
+import com.redhat.lightblue.metadata.constraints.RequiredConstraint;
 import com.redhat.lightblue.metadata.parser.Extensions;
 import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
 import com.redhat.lightblue.metadata.test.DatabaseMetadata;
 import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.query.FieldProjection;
 import com.redhat.lightblue.query.Projection;
 import com.redhat.lightblue.query.QueryExpression;
 import com.redhat.lightblue.query.Sort;
 import com.redhat.lightblue.query.UpdateExpression;
 import com.redhat.lightblue.util.test.AbstractJsonSchemaTest;
 import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.Path;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.containsString;
 
@@ -51,23 +71,30 @@ public class MediatorTest extends AbstractJsonSchemaTest {
     private Mediator mediator;
     private final TestMetadata mdManager = new TestMetadata();
     private final MockCrudController mockCrudController = new MockCrudController();
+    private Factory factory;
 
     private static final JsonNodeFactory nodeFactory = JsonNodeFactory.withExactBigDecimals(false);
 
     private static final class TestMetadata extends DatabaseMetadata {
         EntityMetadata md;
+        int lookups = 0;
 
         @Override
         public EntityMetadata getEntityMetadata(String entityName, String version) {
+            lookups++;
             return md;
         }
     }
 
-    private static final class MockCrudController implements CRUDController {
+    private static class MockCrudController implements CRUDController {
         CRUDUpdateResponse updateResponse;
         CRUDSaveResponse saveResponse;
         CRUDDeleteResponse deleteResponse;
         CRUDFindResponse findResponse;
+        Projection findProjection;
+        Long findFrom;
+        Long findTo;
+        Runnable onFind;
         CRUDInsertionResponse insertResponse;
         CRUDOperationContext ctx;
 
@@ -108,6 +135,12 @@ public class MediatorTest extends AbstractJsonSchemaTest {
                                      Sort sort,
                                      Long from,
                                      Long to) {
+            findProjection = projection;
+            findFrom = from;
+            findTo = to;
+            if (onFind != null) {
+                onFind.run();
+            }
             return findResponse;
         }
 
@@ -160,7 +193,7 @@ public class MediatorTest extends AbstractJsonSchemaTest {
 
     @Before
     public void initMediator() throws Exception {
-        Factory factory = new Factory();
+        factory = new Factory();
         factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
         factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
         new UIDInterceptor().register(factory.getInterceptors());
@@ -169,6 +202,313 @@ public class MediatorTest extends AbstractJsonSchemaTest {
         mediator = new Mediator(mdManager, factory);
     }
 
+    @Test
+    public void parallelConstraintValidationTest() throws Exception {
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
+        factory.addCRUDController("mongo", mockCrudController);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        factory.setValidationExecutor(executor, 3);
+        factory.setParallelValidationThreshold(2);
+        mediator = new Mediator(mdManager, factory);
+
+        RequiredConstraint required = new RequiredConstraint();
+        required.setValue(true);
+        ((Field) mdManager.md.resolve(new Path("field1"))).setConstraints(Arrays.<FieldConstraint>asList(required));
+
+        ArrayNode data = nodeFactory.arrayNode();
+        for (int i = 0; i < 10; i++) {
+            ObjectNode doc = (ObjectNode) loadJsonNode("./sample1.json");
+            doc.put("field3", i);
+            if (i % 3 == 1) {
+                doc.remove("field1");
+            }
+            data.add(doc);
+        }
+        InsertionRequest req = new InsertionRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        req.setEntityData(data);
+        req.setReturnFields(null);
+        req.setClientId(new RestClientIdentification(Arrays.asList("test-insert")));
+
+        try {
+            Response response = mediator.insert(req);
+
+            Assert.assertEquals(3, response.getDataErrors().size());
+            int[] expected = {1, 4, 7};
+            for (int i = 0; i < expected.length; i++) {
+                DataError err = response.getDataErrors().get(i);
+                Assert.assertEquals(expected[i], err.getEntityData().get("field3").intValue());
+                Assert.assertEquals(1, err.getErrors().size());
+                Assert.assertEquals(CrudConstants.ERR_REQUIRED, err.getErrors().get(0).getErrorCode());
+                Assert.assertEquals("insert(test:1.0)/validateDocs/validateDoc/field1/required",
+                        err.getErrors().get(0).getContext());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void bulkTest() throws Exception {
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
+        factory.addCRUDController("mongo", mockCrudController);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        factory.setBulkExecutor(executor);
+        mediator = new Mediator(mdManager, factory);
+        try {
+            for (boolean ordered : new boolean[]{true, false}) {
+                List<Request> requests = new java.util.ArrayList<>();
+                for (int i = 0; i < 6; i++) {
+                    InsertionRequest req = new InsertionRequest();
+                    req.setEntityVersion(new EntityVersion("test", "1.0"));
+                    req.setEntityData(loadJsonNode("./sample1.json"));
+                    req.setReturnFields(null);
+                    if (i % 2 == 0) {
+                        req.setClientId(new RestClientIdentification(Arrays.asList("test-insert")));
+                    }
+                    requests.add(req);
+                }
+                mdManager.md.getAccess().getInsert().setRoles("test-insert");
+                requests.add(new Request() {
+                });
+
+                List<Response> responses = mediator.bulk(requests, ordered);
+
+                Assert.assertEquals(requests.size(), responses.size());
+                for (int i = 0; i < 6; i++) {
+                    if (i % 2 == 0) {
+                        Assert.assertEquals(OperationStatus.COMPLETE, responses.get(i).getStatus());
+                        Assert.assertEquals(1, responses.get(i).getModifiedCount());
+                    } else {
+                        Assert.assertEquals(OperationStatus.ERROR, responses.get(i).getStatus());
+                        Assert.assertEquals(CrudConstants.ERR_NO_ACCESS, responses.get(i).getErrors().get(0).getErrorCode());
+                    }
+                }
+                Assert.assertEquals(OperationStatus.ERROR, responses.get(6).getStatus());
+                Assert.assertEquals(CrudConstants.ERR_UNSUPPORTED_REQUEST, responses.get(6).getErrors().get(0).getErrorCode());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void timeLimitTest() throws Exception {
+        UpdateRequest req = new UpdateRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        req.setClientId(new RestClientIdentification(Arrays.asList("test-update")));
+        ExecutionOptions options = new ExecutionOptions();
+        options.setTimeLimit(60000);
+        req.setExecution(options);
+        mockCrudController.updateResponse = new CRUDUpdateResponse();
+
+        Response response = mediator.update(req);
+
+        Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
+        long remaining = mockCrudController.ctx.getRemainingTime();
+        Assert.assertTrue(remaining > 0 && remaining <= 60000);
+
+        mockCrudController.ctx = null;
+        factory.getInterceptors().registerInterceptor(0, new MediatorInterceptor() {
+            @Override
+            public void run(OperationContext ctx) {
+                ctx.setDeadline(System.currentTimeMillis() - 1);
+            }
+        }, InterceptPoint.PRE_MEDIATOR_UPDATE);
+        response = mediator.update(req);
+
+        Assert.assertEquals(OperationStatus.ERROR, response.getStatus());
+        Assert.assertEquals(CrudConstants.ERR_TIME_LIMIT_EXCEEDED, response.getErrors().get(0).getErrorCode());
+        Assert.assertNull(mockCrudController.ctx);
+    }
+
+    @Test
+    public void asyncTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AsyncTaskManager mgr = new AsyncTaskManager(executor, 10, 60000);
+        factory.setAsyncTaskManager(mgr);
+        final CountDownLatch latch = new CountDownLatch(1);
+        factory.getInterceptors().registerInterceptor(0, new MediatorInterceptor() {
+            @Override
+            public void run(OperationContext ctx) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, InterceptPoint.PRE_MEDIATOR_UPDATE);
+        try {
+            UpdateRequest req = new UpdateRequest();
+            req.setEntityVersion(new EntityVersion("test", "1.0"));
+            req.setClientId(new RestClientIdentification(Arrays.asList("test-update")));
+            ExecutionOptions options = new ExecutionOptions();
+            options.setAsynchronous(10);
+            req.setExecution(options);
+            mockCrudController.updateResponse = new CRUDUpdateResponse();
+
+            Response response = mediator.update(req);
+            Assert.assertEquals(OperationStatus.ASYNC, response.getStatus());
+            String handle = response.getTaskHandle();
+            Assert.assertNotNull(handle);
+            Assert.assertEquals(OperationStatus.ASYNC, mediator.pollAsyncResult(handle).getStatus());
+
+            latch.countDown();
+            mgr.getFuture(handle).get();
+            Assert.assertEquals(OperationStatus.COMPLETE, mediator.pollAsyncResult(handle).getStatus());
+            Assert.assertEquals(OperationStatus.COMPLETE, mediator.getAsyncResult(handle).getStatus());
+            Assert.assertEquals(CrudConstants.ERR_UNKNOWN_TASK, mediator.getAsyncResult(handle).getErrors().get(0).getErrorCode());
+
+            // Completes within the wait time
+            options.setAsynchronous(10000);
+            response = mediator.update(req);
+            Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
+            Assert.assertEquals(0, mgr.getTaskCount());
+        } finally {
+            factory.shutdown();
+        }
+        Assert.assertTrue(executor.isShutdown());
+        Assert.assertEquals(CrudConstants.ERR_ASYNC_REJECTED, mediator.update(new UpdateRequest() {
+            {
+                setEntityVersion(new EntityVersion("test", "1.0"));
+                setExecution(new ExecutionOptions());
+                getExecution().setAsynchronous(10);
+            }
+        }).getErrors().get(0).getErrorCode());
+    }
+
+    @Test
+    public void asyncInBulkTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        factory.setAsyncTaskManager(new AsyncTaskManager(executor, 10, 60000));
+        try {
+            List<Request> requests = new java.util.ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                UpdateRequest req = new UpdateRequest();
+                req.setEntityVersion(new EntityVersion("test", "1.0"));
+                req.setClientId(new RestClientIdentification(Arrays.asList("test-update")));
+                ExecutionOptions options = new ExecutionOptions();
+                options.setAsynchronous(10000);
+                req.setExecution(options);
+                requests.add(req);
+            }
+            mockCrudController.updateResponse = new CRUDUpdateResponse();
+            mdManager.lookups = 0;
+
+            List<Response> responses = mediator.bulk(requests, true);
+
+            for (Response response : responses) {
+                Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
+            }
+            // The async tasks share the metadata resolved by the bulk call
+            Assert.assertEquals(1, mdManager.lookups);
+        } finally {
+            factory.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncCancelTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        factory.setAsyncTaskManager(new AsyncTaskManager(executor, 1, 60000));
+        final CountDownLatch latch = new CountDownLatch(1);
+        factory.getInterceptors().registerInterceptor(0, new MediatorInterceptor() {
+            @Override
+            public void run(OperationContext ctx) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, InterceptPoint.PRE_MEDIATOR_UPDATE);
+        try {
+            UpdateRequest req = new UpdateRequest();
+            req.setEntityVersion(new EntityVersion("test", "1.0"));
+            req.setClientId(new RestClientIdentification(Arrays.asList("test-update")));
+            ExecutionOptions options = new ExecutionOptions();
+            options.setAsynchronous(10);
+            req.setExecution(options);
+            mockCrudController.updateResponse = new CRUDUpdateResponse();
+
+            Response response = mediator.update(req);
+            Assert.assertEquals(OperationStatus.ASYNC, response.getStatus());
+            // The store is full
+            Assert.assertEquals(CrudConstants.ERR_ASYNC_REJECTED, mediator.update(req).getErrors().get(0).getErrorCode());
+
+            Assert.assertTrue(mediator.cancelAsync(response.getTaskHandle()));
+            Assert.assertEquals(CrudConstants.ERR_TASK_CANCELLED,
+                    mediator.pollAsyncResult(response.getTaskHandle()).getErrors().get(0).getErrorCode());
+            Assert.assertEquals(CrudConstants.ERR_TASK_CANCELLED,
+                    mediator.getAsyncResult(response.getTaskHandle()).getErrors().get(0).getErrorCode());
+            // Once fetched, the cancelled task is discarded
+            Assert.assertEquals(CrudConstants.ERR_UNKNOWN_TASK,
+                    mediator.getAsyncResult(response.getTaskHandle()).getErrors().get(0).getErrorCode());
+        } finally {
+            latch.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void metricsTest() throws Exception {
+        BasicMonitorRegistry registry = new BasicMonitorRegistry();
+        MediatorMetrics metrics = new MediatorMetrics(registry);
+        mediator = new Mediator(mdManager, factory, metrics);
+
+        InsertionRequest req = new InsertionRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        req.setEntityData(loadJsonNode("./sample1.json"));
+        req.setReturnFields(null);
+        req.setClientId(new RestClientIdentification(Arrays.asList("test-insert")));
+        Assert.assertEquals(OperationStatus.COMPLETE, mediator.insert(req).getStatus());
+        Assert.assertEquals(OperationStatus.COMPLETE, mediator.insert(req).getStatus());
+
+        boolean found = false;
+        for (Monitor<?> m : registry.getRegisteredMonitors()) {
+            if (MediatorMetrics.REQUEST_TIMER.equals(m.getConfig().getName())) {
+                Assert.assertEquals("insert", m.getConfig().getTags().getValue(MediatorMetrics.TAG_OPERATION).toLowerCase());
+                Assert.assertEquals("test", m.getConfig().getTags().getValue(MediatorMetrics.TAG_ENTITY));
+                Assert.assertEquals("1.0", m.getConfig().getTags().getValue(MediatorMetrics.TAG_VERSION));
+                Assert.assertEquals("COMPLETE", m.getConfig().getTags().getValue(MediatorMetrics.TAG_STATUS));
+                found = true;
+            }
+        }
+        Assert.assertTrue(found);
+
+        // Entities that don't resolve are recorded under a single tag
+        EntityMetadata md = mdManager.md;
+        mdManager.md = null;
+        int n = registry.getRegisteredMonitors().size();
+        for (String entity : new String[]{"nope1", "nope2"}) {
+            req.setEntityVersion(new EntityVersion(entity, "1.0"));
+            Assert.assertEquals(OperationStatus.ERROR, mediator.insert(req).getStatus());
+        }
+        Assert.assertEquals(n + 1, registry.getRegisteredMonitors().size());
+        metrics.getRequestTimer(Operation.INSERT, MediatorMetrics.UNKNOWN, MediatorMetrics.UNKNOWN, OperationStatus.ERROR);
+        Assert.assertEquals(n + 1, registry.getRegisteredMonitors().size());
+        mdManager.md = md;
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        for (String phase : new String[]{MediatorMetrics.PHASE_METADATA, MediatorMetrics.PHASE_VALIDATION,
+                MediatorMetrics.PHASE_CONTROLLER, MediatorMetrics.PHASE_HOOKS, MediatorMetrics.PHASE_INTERCEPTORS}) {
+            BasicTimer timer = (BasicTimer) metrics.getPhaseTimer(phase, Operation.INSERT);
+            Assert.assertTrue(phase, timer.getCount() >= 2);
+        }
+    }
+
+    @Test
+    public void metricsPrecisionTest() throws Exception {
+        MediatorMetrics metrics = new MediatorMetrics(new BasicMonitorRegistry());
+        metrics.recordPhase(MediatorMetrics.PHASE_HOOKS, Operation.FIND, 200000);
+        Assert.assertEquals(0.2, ((BasicTimer) metrics.getPhaseTimer(MediatorMetrics.PHASE_HOOKS, Operation.FIND)).getTotalTime(), 1e-9);
+        metrics.recordRequest(Operation.FIND, mdManager.md, OperationStatus.COMPLETE, 300000);
+        Assert.assertEquals(300L, ((BucketTimer) metrics.getRequestTimer(Operation.FIND, "test", "1.0", OperationStatus.COMPLETE)).getTotalTime().longValue());
+    }
+
     @Test
     public void disabledVersionTest() throws Exception {
 
@@ -357,6 +697,213 @@ public class MediatorTest extends AbstractJsonSchemaTest {
         Assert.assertEquals(0, response.getErrors().size());
     }
 
+    private static final class CountingCrudController extends MockCrudController implements CRUDCounter {
+        @Override
+        public long count(CRUDOperationContext ctx,
+                          QueryExpression query) {
+            return 42;
+        }
+    }
+
+    @Test
+    public void countOnlyTest() throws Exception {
+        FindRequest req = new FindRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        req.setClientId(new RestClientIdentification(Arrays.asList("test-find")));
+        req.setCountOnly(true);
+        mockCrudController.findResponse = new CRUDFindResponse();
+        mockCrudController.findResponse.setSize(5);
+
+        // The controller cannot count, at most one document is retrieved with a minimal projection
+        Response response = mediator.find(req);
+        Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
+        Assert.assertEquals(5, response.getMatchCount());
+        Assert.assertNull(response.getEntityData());
+        Assert.assertEquals(PredefinedFields.OBJECTTYPE_PATH,
+                ((FieldProjection) mockCrudController.findProjection).getField());
+        Assert.assertEquals(Long.valueOf(0), mockCrudController.findFrom);
+        Assert.assertEquals(Long.valueOf(0), mockCrudController.findTo);
+
+        CountingCrudController counter = new CountingCrudController();
+        factory.addCRUDController("mongo", counter);
+        response = mediator.find(req);
+        Assert.assertEquals(OperationStatus.COMPLETE, response.getStatus());
+        Assert.assertEquals(42, response.getMatchCount());
+        Assert.assertNull(response.getEntityData());
+        Assert.assertNull(counter.findProjection);
+    }
+
+    @Test
+    public void coalesceFindTest() throws Exception {
+        FindCoalescer coalescer = new FindCoalescer(0, new BasicMonitorRegistry());
+        factory.setFindCoalescer(coalescer);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger numFinds = new AtomicInteger();
+        final AtomicInteger numPre = new AtomicInteger();
+        final List<OperationContext> postContexts = new CopyOnWriteArrayList<>();
+        mockCrudController.onFind = new Runnable() {
+            @Override
+            public void run() {
+                numFinds.incrementAndGet();
+                entered.countDown();
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        factory.getInterceptors().registerInterceptor(0, new MediatorInterceptor() {
+            @Override
+            public void run(OperationContext ctx) {
+                numPre.incrementAndGet();
+            }
+        }, InterceptPoint.PRE_MEDIATOR_FIND);
+        factory.getInterceptors().registerInterceptor(0, new MediatorInterceptor() {
+            @Override
+            public void run(OperationContext ctx) {
+                postContexts.add(ctx);
+            }
+        }, InterceptPoint.POST_MEDIATOR_FIND);
+
+        final FindRequest req = new FindRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        req.setClientId(new RestClientIdentification(Arrays.asList("test-find")));
+        mockCrudController.findResponse = new CRUDFindResponse();
+        mockCrudController.findResponse.setSize(5);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Callable<Response> call = new Callable<Response>() {
+                @Override
+                public Response call() {
+                    return mediator.find(req);
+                }
+            };
+            Future<Response> first = executor.submit(call);
+            entered.await();
+            Future<Response> second = executor.submit(call);
+            while (coalescer.getHitCount() == 0) {
+                Thread.sleep(1);
+            }
+            latch.countDown();
+            Response r1 = first.get();
+            Response r2 = second.get();
+            Assert.assertEquals(OperationStatus.COMPLETE, r1.getStatus());
+            Assert.assertEquals(OperationStatus.COMPLETE, r2.getStatus());
+            Assert.assertEquals(5, r1.getMatchCount());
+            Assert.assertEquals(5, r2.getMatchCount());
+            Assert.assertNotSame(r1, r2);
+            // The back-end runs once, the interceptors run for each caller
+            Assert.assertEquals(1, numFinds.get());
+            Assert.assertEquals(2, numPre.get());
+            Assert.assertEquals(2, postContexts.size());
+            Assert.assertNotSame(postContexts.get(0), postContexts.get(1));
+            Assert.assertEquals(1, coalescer.getMissCount());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The window is 0, a later request runs again
+        Assert.assertEquals(OperationStatus.COMPLETE, mediator.find(req).getStatus());
+        Assert.assertEquals(2, numFinds.get());
+        Assert.assertEquals(2, coalescer.getMissCount());
+    }
+
+    @Test
+    public void coalesceInvalidateTest() throws Exception {
+        FindCoalescer coalescer = new FindCoalescer(60000, new BasicMonitorRegistry());
+        factory.setFindCoalescer(coalescer);
+        FindRequest req = new FindRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        req.setClientId(new RestClientIdentification(Arrays.asList("test-find")));
+        mockCrudController.findResponse = new CRUDFindResponse();
+        mockCrudController.findResponse.setSize(5);
+
+        Assert.assertEquals(OperationStatus.COMPLETE, mediator.find(req).getStatus());
+        Assert.assertEquals(OperationStatus.COMPLETE, mediator.find(req).getStatus());
+        Assert.assertEquals(1, coalescer.getMissCount());
+        Assert.assertEquals(1, coalescer.getHitCount());
+
+        // A write to the entity discards the result
+        DeleteRequest dreq = new DeleteRequest();
+        dreq.setEntityVersion(new EntityVersion("test", "1.0"));
+        mockCrudController.deleteResponse = new CRUDDeleteResponse();
+        mediator.delete(dreq);
+        Assert.assertEquals(5, mediator.find(req).getMatchCount());
+        Assert.assertEquals(2, coalescer.getMissCount());
+    }
+
+    @Test
+    public void coalesceResultTest() throws Exception {
+        BasicMonitorRegistry registry = new BasicMonitorRegistry();
+        FindCoalescer coalescer = new FindCoalescer(60000, registry);
+        new FindCoalescer(60000, registry);
+        // The counters of the two coalescers don't collide
+        Assert.assertEquals(4, registry.getRegisteredMonitors().size());
+
+        FindRequest req = new FindRequest();
+        req.setEntityVersion(new EntityVersion("test", "1.0"));
+        final OperationContext ctx = new OperationContext(req, mdManager, factory, Operation.FIND);
+        ctx.setDocuments(new ArrayList<>(Arrays.asList(new DocCtx(new JsonDoc(loadJsonNode("./sample1.json"))))));
+        ctx.addError(com.redhat.lightblue.util.Error.get("err", "msg"));
+        final AtomicInteger numFinds = new AtomicInteger();
+        Callable<FindCoalescer.Result> call = new Callable<FindCoalescer.Result>() {
+            @Override
+            public FindCoalescer.Result call() {
+                numFinds.incrementAndGet();
+                return new FindCoalescer.Result(ctx, 1);
+            }
+        };
+        Set<String> entities = new HashSet<>(Arrays.asList("test", "child"));
+
+        // The caller that runs the find keeps its own documents
+        OperationContext ctx1 = new OperationContext(req, mdManager, factory, Operation.FIND);
+        coalescer.find("k", entities, 1000, call).copyTo(ctx1);
+        Assert.assertSame(ctx.getDocuments(), ctx1.getDocuments());
+
+        // A caller sharing the result gets its own documents and errors
+        OperationContext ctx2 = new OperationContext(req, mdManager, factory, Operation.FIND);
+        coalescer.find("k", entities, 1000, call).copyTo(ctx2);
+        Assert.assertEquals(1, numFinds.get());
+        Assert.assertNotSame(ctx.getDocuments().get(0), ctx2.getDocuments().get(0));
+        Assert.assertEquals(ctx.getDocuments().get(0).get(new Path("field1")),
+                ctx2.getDocuments().get(0).get(new Path("field1")));
+        Assert.assertNotSame(ctx.getErrors().get(0), ctx2.getErrors().get(0));
+        Assert.assertEquals("err", ctx2.getErrors().get(0).getErrorCode());
+
+        // Writes to other entities don't discard the result, writes to a
+        // child entity of a composite do
+        coalescer.invalidate("other");
+        coalescer.find("k", entities, 1000, call);
+        Assert.assertEquals(1, numFinds.get());
+        coalescer.invalidate("child");
+        coalescer.find("k", entities, 1000, call);
+        Assert.assertEquals(2, numFinds.get());
+    }
+
+    @Test
+    public void coalesceKeyTest() throws Exception {
+        FindRequest req1 = new FindRequest();
+        req1.setEntityVersion(new EntityVersion("test", "1.0"));
+        req1.setQuery(QueryExpression.fromJson(JsonUtils.json("{'$and':[{'field':'a','op':'=','rvalue':1},{'field':'b','op':'=','rvalue':2}]}".replace('\'', '"'))));
+        FindRequest req2 = new FindRequest();
+        req2.setEntityVersion(new EntityVersion("test", "1.0"));
+        req2.setQuery(QueryExpression.fromJson(JsonUtils.json("{'$and':[{'op':'=','rvalue':1,'field':'a'},{'rvalue':2,'field':'b','op':'='}]}".replace('\'', '"'))));
+        Set<String> roles = new HashSet<>(Arrays.asList("r1", "r2"));
+        Assert.assertEquals(FindCoalescer.getKey(req1, roles),
+                FindCoalescer.getKey(req2, new HashSet<>(Arrays.asList("r2", "r1"))));
+        Assert.assertNotEquals(FindCoalescer.getKey(req1, roles),
+                FindCoalescer.getKey(req2, new HashSet<>(Arrays.asList("r1"))));
+        String key = FindCoalescer.getKey(req1, roles);
+        req1.setExecution(new ExecutionOptions());
+        req1.getExecution().setTimeLimit(1000);
+        Assert.assertNotEquals(key, FindCoalescer.getKey(req1, roles));
+        req2.setTo(10L);
+        Assert.assertNotEquals(FindCoalescer.getKey(req1, roles), FindCoalescer.getKey(req2, roles));
+    }
+
     @Test
     public void uidTest() throws Exception {
         mdManager.md = getMd("./usermd.json");
@@ -51,6 +51,7 @@ public class CompositeMetadata extends EntityMetadata {
     private final Path entityPath;
     private final CompositeMetadata parent;
     private final Map<Path, ResolvedReferenceField> children = new HashMap<>();
+    private EntityMetadata originalMetadata;
 
     /**
      * Interface that returns an instance of entity metadata given the entity
@@ -103,6 +104,14 @@ public class CompositeMetadata extends EntityMetadata {
         return entityPath;
     }
 
+    /**
+     * Returns the entity metadata this composite metadata is built from,
+     * or null if it is not built by buildCompositeMetadata
+     */
+    public EntityMetadata getOriginalMetadata() {
+        return originalMetadata;
+    }
+
     /**
      * Returns if this is a simple metadata, one that has no children
      */
@@ -263,6 +272,7 @@ public class CompositeMetadata extends EntityMetadata {
         // metadata for references
         CompositeSchema cschema = CompositeSchema.newSchemaWithEmptyFields(root.getEntitySchema());
         CompositeMetadata cmd = new CompositeMetadata(root.getEntityInfo(), cschema, entityPath, parentEntity);
+        cmd.originalMetadata = root;
         // copy fields, resolve references
         copyFields(cschema.getFields(), root.getEntitySchema().getFields(), path, cmd, gmd);
         return cmd;
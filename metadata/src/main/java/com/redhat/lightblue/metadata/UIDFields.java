@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.redhat.lightblue.metadata.constraints.IdentityConstraint;
 import com.redhat.lightblue.metadata.constraints.RequiredConstraint;
+import com.redhat.lightblue.metadata.types.UIDGenerator;
 import com.redhat.lightblue.metadata.types.UIDType;
 import com.redhat.lightblue.util.JsonDoc;
 import com.redhat.lightblue.util.KeyValueCursor;
@@ -47,7 +48,21 @@ public final class UIDFields {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UIDFields.class);
 
+    /**
+     * Initializes the UID fields of the document using the default UID
+     * generator
+     */
     public static void initializeUIDFields(JsonNodeFactory factory, EntityMetadata md, JsonDoc doc) {
+        initializeUIDFields(factory, md, doc, null);
+    }
+
+    /**
+     * Initializes the UID fields of the document using the given UID
+     * generator. If the generator is null, the default UID generator is
+     * used.
+     */
+    public static void initializeUIDFields(JsonNodeFactory factory, EntityMetadata md, JsonDoc doc, UIDGenerator generator) {
+        UIDGenerator gen = generator == null ? UIDType.getDefaultGenerator() : generator;
         FieldCursor cursor = md.getFieldCursor();
         while (cursor.next()) {
             FieldTreeNode node = cursor.getCurrentNode();
@@ -57,7 +72,7 @@ public final class UIDFields {
                 LOGGER.debug("Processing UID field {}", p);
                 if (node instanceof Field && required((Field) node)) {
                     LOGGER.debug("Field {} is required", p);
-                    setRequiredField(factory, doc, p, 1, null);
+                    setRequiredField(factory, gen, doc, p, 1, null);
                 } else {
                     // Here, node could be a field or an array
                     LOGGER.debug("Field {} is not required", p);
@@ -66,7 +81,7 @@ public final class UIDFields {
                         nodeCursor.next();
                         JsonNode valueNode = nodeCursor.getCurrentValue();
                         if (valueNode.isNull() || valueNode.asText().length() == 0) {
-                            String value = UIDType.newValue();
+                            String value = gen.newValue();
                             LOGGER.debug("Setting {} to {}", nodeCursor.getCurrentKey(), value);
                             doc.modify(nodeCursor.getCurrentKey(), factory.textNode(value), true);
                         }
@@ -77,6 +92,7 @@ public final class UIDFields {
     }
 
     private static void setRequiredField(JsonNodeFactory factory,
+                                         UIDGenerator gen,
                                          JsonDoc doc,
                                          Path fieldPath,
                                          int startSegment,
@@ -99,7 +115,7 @@ public final class UIDFields {
                     arrPath.push(0);
                     for (int i = 0; i < size; i++) {
                         arrPath.setLast(i);
-                        setRequiredField(factory, doc, fieldPath, segment + 1, arrPath.immutableCopy());
+                        setRequiredField(factory, gen, doc, fieldPath, segment + 1, arrPath.immutableCopy());
                     }
                 }
                 break;
@@ -115,7 +131,7 @@ public final class UIDFields {
             LOGGER.debug("Setting {}", p);
             JsonNode valueNode = doc.get(p);
             if (valueNode == null || valueNode.isNull() || valueNode.asText().length() == 0) {
-                String value = UIDType.newValue();
+                String value = gen.newValue();
                 LOGGER.debug("Setting {} to {}", p, value);
                 doc.modify(p, factory.textNode(value), true);
             }
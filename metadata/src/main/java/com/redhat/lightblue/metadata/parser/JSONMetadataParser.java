@@ -18,38 +18,118 @@
  */
 package com.redhat.lightblue.metadata.parser;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.metadata.EntityInfo;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.EntitySchema;
 import com.redhat.lightblue.metadata.MetadataConstants;
 import com.redhat.lightblue.metadata.TypeResolver;
 import com.redhat.lightblue.query.Projection;
 import com.redhat.lightblue.query.QueryExpression;
 import com.redhat.lightblue.query.Sort;
 import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonCodec;
+import com.redhat.lightblue.util.JsonUtils;
 
 public class JSONMetadataParser extends MetadataParser<JsonNode> {
     private static final Logger LOGGER = LoggerFactory.getLogger(JSONMetadataParser.class);
 
     private final JsonNodeFactory factory;
+    private final ObjectMapper mapper;
 
     public JSONMetadataParser(Extensions<JsonNode> ex,
             TypeResolver resolver,
             JsonNodeFactory factory) {
         super(ex, resolver);
         this.factory = factory;
+        this.mapper = JsonUtils.getObjectMapper();
+        this.mapper.setNodeFactory(factory);
+    }
+
+    /**
+     * Parses entity metadata from a JSON stream. The stream is closed
+     * when parsing is complete.
+     */
+    public EntityMetadata parseEntityMetadata(InputStream stream) {
+        try (JsonParser p = mapper.getFactory().createParser(stream)) {
+            return parseEntityMetadata(p);
+        } catch (IOException e) {
+            throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, e.getMessage());
+        }
+    }
+
+    /**
+     * Parses entity metadata from a stream in the wire format of the
+     * codec, text or binary JSON. The stream is closed when parsing is
+     * complete.
+     */
+    public EntityMetadata parseEntityMetadata(InputStream stream, JsonCodec codec) {
+        try (JsonParser p = codec.createParser(stream)) {
+            return parseEntityMetadata(p);
+        } catch (IOException e) {
+            throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, e.getMessage());
+        }
+    }
+
+    /**
+     * Parses entity metadata from the JSON object at the current
+     * position of the parser. This implementation reads the JSON
+     * object into a tree, and parses the tree.
+     */
+    public EntityMetadata parseEntityMetadata(JsonParser p) throws IOException {
+        return parseEntityMetadata(readTree(p));
+    }
+
+    /**
+     * Parses entity info from the JSON object at the current position
+     * of the parser. This implementation reads the JSON object into a
+     * tree, and parses the tree.
+     */
+    public EntityInfo parseEntityInfo(JsonParser p) throws IOException {
+        return parseEntityInfo(readTree(p));
+    }
+
+    /**
+     * Parses entity schema from the JSON object at the current
+     * position of the parser. This implementation reads the JSON
+     * object into a tree, and parses the tree.
+     */
+    public EntitySchema parseEntitySchema(JsonParser p) throws IOException {
+        return parseEntitySchema(readTree(p));
+    }
+
+    /**
+     * Reads the JSON value at the current position of the parser into
+     * a tree built using the node factory of this parser
+     */
+    protected JsonNode readTree(JsonParser p) throws IOException {
+        return mapper.readTree(p);
+    }
+
+    /**
+     * Returns the node factory used by this parser
+     */
+    public JsonNodeFactory getNodeFactory() {
+        return factory;
     }
 
     @Override
@@ -210,7 +290,8 @@ public class JSONMetadataParser extends MetadataParser<JsonNode> {
     @Override
     public Set<String> getChildNames(JsonNode object) {
         if (object instanceof ObjectNode) {
-            HashSet<String> names = new HashSet<>();
+            // Keep the document order, so fields are parsed in the order they are written
+            Set<String> names = new LinkedHashSet<>();
             for (Iterator<String> itr = ((ObjectNode) object).fieldNames(); itr.hasNext();) {
                 names.add(itr.next());
             }
@@ -176,6 +176,10 @@ public abstract class MetadataParser<T> {
         return this.extensions;
     }
 
+    public TypeResolver getTypeResolver() {
+        return this.typeResolver;
+    }
+
     /**
      * Entry point for entity metadata parser. Expects an Object corresponding
      * to the EntityMetadata object.
@@ -520,7 +524,7 @@ public abstract class MetadataParser<T> {
                     StatusChange item = new StatusChange();
                     String d = getRequiredStringProperty(log, STR_DATE);
                     try {
-                        item.setDate(DateType.getDateFormat().parse(d));
+                        item.setDate(DateType.parseDate(d));
                     } catch (ParseException e) {
                         throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, d);
                     }
@@ -1008,7 +1012,7 @@ public abstract class MetadataParser<T> {
                     for (StatusChange x : changeLog) {
                         T log = newNode();
                         if (x.getDate() != null) {
-                            putString(log, STR_DATE, DateType.getDateFormat().format(x.getDate()));
+                            putString(log, STR_DATE, DateType.formatDate(x.getDate()));
                         }
                         if (x.getStatus() != null) {
                             putString(log, STR_VALUE, toString(x.getStatus()));
@@ -0,0 +1,327 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.metadata.ArrayElement;
+import com.redhat.lightblue.metadata.ArrayField;
+import com.redhat.lightblue.metadata.EntityInfo;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.EntitySchema;
+import com.redhat.lightblue.metadata.Field;
+import com.redhat.lightblue.metadata.MetadataConstants;
+import com.redhat.lightblue.metadata.ObjectArrayElement;
+import com.redhat.lightblue.metadata.ObjectField;
+import com.redhat.lightblue.metadata.ReferenceField;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.metadata.TypeResolver;
+import com.redhat.lightblue.metadata.types.ArrayType;
+import com.redhat.lightblue.metadata.types.ObjectType;
+import com.redhat.lightblue.metadata.types.ReferenceType;
+import com.redhat.lightblue.util.Error;
+
+/**
+ * A JSON metadata parser that builds entity metadata directly from a
+ * Jackson token stream, without first building a tree for the whole
+ * metadata document.
+ *
+ * The entity schema fields, which make up most of a metadata
+ * document, are parsed directly from the stream. Only the small
+ * elements that are passed to pluggable parsers (data store, hooks,
+ * constraints, properties, etc.) or that are parsed by the query
+ * parsers (projection, query, sort) are read as trees, so all
+ * existing extensions work unchanged. The resulting metadata is the
+ * same as the one built by JSONMetadataParser, including the order of
+ * the schema fields.
+ */
+public class StreamingJSONMetadataParser extends JSONMetadataParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingJSONMetadataParser.class);
+
+    private static final String STR_ENTITY_INFO = "entityInfo";
+    private static final String STR_SCHEMA = "schema";
+    private static final String STR_NAME = "name";
+    private static final String STR_VERSION = "version";
+    private static final String STR_STATUS = "status";
+    private static final String STR_ACCESS = "access";
+    private static final String STR_FIELDS = "fields";
+    private static final String STR_ITEMS = "items";
+    private static final String STR_TYPE = "type";
+    private static final String STR_CONSTRAINTS = "constraints";
+    private static final String STR_ENTITY = "entity";
+    private static final String STR_VERSION_VALUE = "versionValue";
+    private static final String STR_PROJECTION = "projection";
+    private static final String STR_QUERY = "query";
+    private static final String STR_SORT = "sort";
+
+    public StreamingJSONMetadataParser(Extensions<JsonNode> ex,
+                                       TypeResolver resolver,
+                                       JsonNodeFactory factory) {
+        super(ex, resolver, factory);
+    }
+
+    @Override
+    public EntityMetadata parseEntityMetadata(JsonParser p) throws IOException {
+        Error.push("parseEntityMetadata");
+        try {
+            startObject(p);
+            EntityInfo info = null;
+            EntitySchema schema = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                p.nextToken();
+                if (STR_ENTITY_INFO.equals(name)) {
+                    info = parseEntityInfo(p);
+                } else if (STR_SCHEMA.equals(name)) {
+                    schema = parseEntitySchema(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+            if (info == null) {
+                throw Error.get(MetadataConstants.ERR_PARSE_MISSING_ELEMENT, STR_ENTITY_INFO);
+            }
+            if (schema == null) {
+                throw Error.get(MetadataConstants.ERR_PARSE_MISSING_ELEMENT, STR_SCHEMA);
+            }
+            return new EntityMetadata(info, schema);
+        } catch (Error e) {
+            // rethrow lightblue error
+            throw e;
+        } catch (Exception e) {
+            // throw new Error (preserves current error context)
+            LOGGER.error(e.getMessage(), e);
+            throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, e.getMessage());
+        } finally {
+            Error.pop();
+        }
+    }
+
+    @Override
+    public EntitySchema parseEntitySchema(JsonParser p) throws IOException {
+        Error.push("parseEntitySchema");
+        try {
+            startObject(p);
+            ObjectNode object = getNodeFactory().objectNode();
+            List<Field> fields = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                if (p.nextToken() == JsonToken.START_OBJECT && STR_FIELDS.equals(name)) {
+                    fields = parseFieldList(p);
+                } else {
+                    object.set(name, readTree(p));
+                }
+            }
+
+            EntitySchema schema = new EntitySchema(getRequiredStringProperty(object, STR_NAME));
+            schema.setVersion(parseVersion(getRequiredObjectProperty(object, STR_VERSION)));
+            parseStatus(schema, getRequiredObjectProperty(object, STR_STATUS));
+            JsonNode access = getObjectProperty(object, STR_ACCESS);
+            if (access != null) {
+                parseEntityAccess(schema.getAccess(), access);
+            }
+            if (fields != null) {
+                for (Field f : fields) {
+                    schema.getFields().addNew(f);
+                }
+            } else {
+                parseFields(schema.getFields(), getRequiredObjectProperty(object, STR_FIELDS));
+            }
+            parseEntityConstraints(schema, getObjectList(object, STR_CONSTRAINTS));
+            parsePropertyParser(object, schema.getProperties());
+            return schema;
+        } catch (Error e) {
+            // rethrow lightblue error
+            throw e;
+        } catch (Exception e) {
+            // throw new Error (preserves current error context)
+            LOGGER.error(e.getMessage(), e);
+            throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, e.getMessage());
+        } finally {
+            Error.pop();
+        }
+    }
+
+    /**
+     * Parses the fields object at the current position of the
+     * parser. Returns the fields in document order.
+     */
+    private List<Field> parseFieldList(JsonParser p) throws IOException {
+        Error.push(STR_FIELDS);
+        try {
+            List<Field> list = new ArrayList<>();
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                p.nextToken();
+                list.add(parseField(name, p));
+            }
+            return list;
+        } finally {
+            Error.pop();
+        }
+    }
+
+    private Field parseField(String name, JsonParser p) throws IOException {
+        Error.push(name);
+        try {
+            if (p.getCurrentToken() != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                throw Error.get(MetadataConstants.ERR_PARSE_MISSING_ELEMENT, STR_TYPE);
+            }
+            ObjectNode object = getNodeFactory().objectNode();
+            List<Field> fields = null;
+            ArrayElement items = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String key = p.getCurrentName();
+                JsonToken t = p.nextToken();
+                if (t == JsonToken.START_OBJECT && STR_FIELDS.equals(key)) {
+                    fields = parseFieldList(p);
+                } else if (t == JsonToken.START_OBJECT && STR_ITEMS.equals(key)) {
+                    items = parseArrayItem(p);
+                } else {
+                    object.set(key, readTree(p));
+                }
+            }
+
+            Field field;
+            String type = getRequiredStringProperty(object, STR_TYPE);
+            if (type.equals(ArrayType.TYPE.getName())) {
+                if (items == null) {
+                    throw Error.get(MetadataConstants.ERR_PARSE_MISSING_ELEMENT, STR_ITEMS);
+                }
+                ArrayField f = new ArrayField(name);
+                f.setElement(items);
+                field = f;
+            } else if (type.equals(ObjectType.TYPE.getName())) {
+                if (fields == null) {
+                    throw Error.get(MetadataConstants.ERR_PARSE_MISSING_ELEMENT, STR_FIELDS);
+                }
+                ObjectField f = new ObjectField(name);
+                for (Field x : fields) {
+                    f.getFields().addNew(x);
+                }
+                field = f;
+            } else if (type.equals(ReferenceType.TYPE.getName())) {
+                ReferenceField f = new ReferenceField(name);
+                f.setEntityName(getRequiredStringProperty(object, STR_ENTITY));
+                f.setVersionValue(getRequiredStringProperty(object, STR_VERSION_VALUE));
+                f.setProjection(parseProjection(getObjectProperty(object, STR_PROJECTION)));
+                f.setQuery(parseQuery(getObjectProperty(object, STR_QUERY)));
+                f.setSort(parseSort(getObjectProperty(object, STR_SORT)));
+                field = f;
+            } else {
+                SimpleField f = new SimpleField(name);
+                f.setType(getType(type));
+                field = f;
+            }
+            parseFieldAccess(field.getAccess(), getObjectProperty(object, STR_ACCESS));
+            parseFieldConstraints(field, getObjectProperty(object, STR_CONSTRAINTS));
+            parsePropertyParser(object, field.getProperties());
+            return field;
+        } catch (Error e) {
+            // rethrow lightblue error
+            throw e;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            // throw new Error (preserves current error context)
+            LOGGER.error(e.getMessage(), e);
+            throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, e.getMessage());
+        } finally {
+            Error.pop();
+        }
+    }
+
+    private ArrayElement parseArrayItem(JsonParser p) throws IOException {
+        Error.push(STR_ITEMS);
+        try {
+            ObjectNode object = getNodeFactory().objectNode();
+            List<Field> fields = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String key = p.getCurrentName();
+                if (p.nextToken() == JsonToken.START_OBJECT && STR_FIELDS.equals(key)) {
+                    fields = parseFieldList(p);
+                } else {
+                    object.set(key, readTree(p));
+                }
+            }
+            String type = getRequiredStringProperty(object, STR_TYPE);
+            if (type.equals(ObjectType.TYPE.getName())) {
+                if (fields == null) {
+                    throw Error.get(MetadataConstants.ERR_PARSE_MISSING_ELEMENT, STR_FIELDS);
+                }
+                ObjectArrayElement ret = new ObjectArrayElement();
+                ret.setType(ObjectType.TYPE);
+                for (Field x : fields) {
+                    ret.getFields().addNew(x);
+                }
+                return ret;
+            } else if (type.equals(ArrayType.TYPE.getName())
+                    || type.equals(ReferenceType.TYPE.getName())) {
+                throw Error.get(MetadataConstants.ERR_INVALID_ARRAY_ELEMENT_TYPE, type);
+            } else {
+                SimpleArrayElement ret = new SimpleArrayElement();
+                ret.setType(getType(type));
+                return ret;
+            }
+        } catch (Error e) {
+            // rethrow lightblue error
+            throw e;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            // throw new Error (preserves current error context)
+            LOGGER.error(e.getMessage(), e);
+            throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, e.getMessage());
+        } finally {
+            Error.pop();
+        }
+    }
+
+    private Type getType(String type) {
+        Type t = getTypeResolver().getType(type);
+        if (t == null) {
+            throw Error.get(MetadataConstants.ERR_INVALID_TYPE, type);
+        }
+        return t;
+    }
+
+    private static void startObject(JsonParser p) throws IOException {
+        JsonToken t = p.getCurrentToken();
+        if (t == null) {
+            t = p.nextToken();
+        }
+        if (t != JsonToken.START_OBJECT) {
+            throw Error.get(MetadataConstants.ERR_ILL_FORMED_METADATA, String.valueOf(t));
+        }
+    }
+}
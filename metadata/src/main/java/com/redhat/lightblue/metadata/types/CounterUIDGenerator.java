@@ -0,0 +1,59 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.types;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates values from a node id, the creation time of the generator,
+ * and a counter, as hexadecimal numbers separated by '-'. Values are
+ * unique as long as each node running a generator at the same time has
+ * a different node id. The creation time distinguishes restarts of the
+ * same node. Generating a value only increments the counter.
+ */
+public class CounterUIDGenerator implements UIDGenerator, Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    public static final String NAME = "counter";
+
+    private final String prefix;
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * Constructs a generator with a random 48-bit node id
+     */
+    public CounterUIDGenerator() {
+        this(ThreadLocalRandom.current().nextLong() & 0xffffffffffffL);
+    }
+
+    /**
+     * Constructs a generator for the node
+     */
+    public CounterUIDGenerator(long nodeId) {
+        prefix = Long.toHexString(nodeId) + "-" + Long.toHexString(System.currentTimeMillis()) + "-";
+    }
+
+    @Override
+    public String newValue() {
+        return prefix + Long.toHexString(counter.incrementAndGet());
+    }
+}
@@ -46,6 +46,31 @@ public final class DateType implements Type, Serializable {
         DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("GMT"));
     }
 
+    /**
+     * Date formats of the threads, for the values that are not in the
+     * canonical layout
+     */
+    private static final ThreadLocal<DateFormat> THREAD_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return getDateFormat();
+        }
+    };
+
+    /**
+     * Length of the canonical layout, yyyyMMddTHH:mm:ss.SSS+hhmm
+     */
+    private static final int CANONICAL_LENGTH = 26;
+
+    /**
+     * Years formatted and parsed without a DateFormat. Earlier dates use
+     * the Julian calendar in DateFormat.
+     */
+    private static final int MIN_FAST_YEAR = 1600;
+    private static final int MAX_FAST_YEAR = 9999;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
     /**
      * Returns a DateFormat instance using the DATE_FORMAT_STR in GMT. Clone of
      * the static internal variable, because SimpleDateFormat is not thread safe
@@ -54,6 +79,150 @@ public final class DateType implements Type, Serializable {
         return (DateFormat) DATE_FORMAT.clone();
     }
 
+    /**
+     * Parses a date in DATE_FORMAT_STR, accepting the same inputs as
+     * getDateFormat().parse(). Dates in the canonical layout are parsed
+     * directly, and other inputs are parsed with a date format of the
+     * calling thread.
+     */
+    public static Date parseDate(String s) throws ParseException {
+        long t = parseCanonical(s);
+        if (t != Long.MIN_VALUE) {
+            return new Date(t);
+        }
+        return THREAD_FORMAT.get().parse(s);
+    }
+
+    /**
+     * Formats a date in DATE_FORMAT_STR in GMT, giving the same output as
+     * getDateFormat().format()
+     */
+    public static String formatDate(Date d) {
+        long t = d.getTime();
+        long days = floorDiv(t, MILLIS_PER_DAY);
+        int millisOfDay = (int) (t - days * MILLIS_PER_DAY);
+        // Civil date from days since epoch
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < MIN_FAST_YEAR || year > MAX_FAST_YEAR) {
+            return THREAD_FORMAT.get().format(d);
+        }
+        char[] buf = new char[CANONICAL_LENGTH];
+        put(buf, 0, (int) year, 4);
+        put(buf, 4, month, 2);
+        put(buf, 6, day, 2);
+        buf[8] = 'T';
+        put(buf, 9, millisOfDay / 3600000, 2);
+        buf[11] = ':';
+        put(buf, 12, millisOfDay / 60000 % 60, 2);
+        buf[14] = ':';
+        put(buf, 15, millisOfDay / 1000 % 60, 2);
+        buf[17] = '.';
+        put(buf, 18, millisOfDay % 1000, 3);
+        buf[21] = '+';
+        put(buf, 22, 0, 4);
+        return new String(buf);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private static void put(char[] buf, int pos, int value, int digits) {
+        int v = value;
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+    }
+
+    /**
+     * Parses a date in the canonical layout with fields in range. Returns
+     * Long.MIN_VALUE if the string is not in that form, so that it is
+     * parsed by a date format, which is lenient.
+     */
+    private static long parseCanonical(String s) {
+        if (s.length() != CANONICAL_LENGTH
+                || s.charAt(8) != 'T'
+                || s.charAt(11) != ':'
+                || s.charAt(14) != ':'
+                || s.charAt(17) != '.') {
+            return Long.MIN_VALUE;
+        }
+        char sign = s.charAt(21);
+        if (sign != '+' && sign != '-') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 4, 2);
+        int day = digits(s, 6, 2);
+        int hour = digits(s, 9, 2);
+        int minute = digits(s, 12, 2);
+        int second = digits(s, 15, 2);
+        int millis = digits(s, 18, 3);
+        int zoneHours = digits(s, 22, 2);
+        int zoneMinutes = digits(s, 24, 2);
+        if (year < MIN_FAST_YEAR
+                || month < 1 || month > 12
+                || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23
+                || minute < 0 || minute > 59
+                || second < 0 || second > 59
+                || millis < 0
+                || zoneHours < 0 || zoneHours > 23
+                || zoneMinutes < 0 || zoneMinutes > 59) {
+            return Long.MIN_VALUE;
+        }
+        // Days since epoch from civil date
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097L + doe - 719468;
+        long offset = (zoneHours * 60L + zoneMinutes) * 60000L;
+        return days * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L + millis
+                - (sign == '+' ? offset : -offset);
+    }
+
+    /**
+     * Returns the value of the decimal digits, or -1 if there is a
+     * non-digit
+     */
+    private static int digits(String s, int pos, int n) {
+        int v = 0;
+        for (int i = pos; i < pos + n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -71,14 +240,14 @@ public final class DateType implements Type, Serializable {
 
     @Override
     public JsonNode toJson(JsonNodeFactory factory, Object obj) {
-        return factory.textNode(getDateFormat().format((Date) cast(obj)));
+        return factory.textNode(formatDate((Date) cast(obj)));
     }
 
     @Override
     public Object fromJson(JsonNode node) {
         if (node.isValueNode()) {
             try {
-                return getDateFormat().parse(node.asText());
+                return parseDate(node.asText());
             } catch (ParseException e) {
                 throw Error.get(NAME, MetadataConstants.ERR_INCOMPATIBLE_VALUE, node.toString());
             }
@@ -91,12 +260,11 @@ public final class DateType implements Type, Serializable {
     public Object cast(Object obj) {
         Date value = null;
         if (obj != null) {
-            DateFormat fmt = getDateFormat();
             if (obj instanceof Date) {
                 value = (Date) obj;
             } else if (obj instanceof String) {
                 try {
-                    value = fmt.parse((String) obj);
+                    value = parseDate((String) obj);
                 } catch (ParseException e) {
                     throw Error.get(NAME, MetadataConstants.ERR_INCOMPATIBLE_VALUE, obj.toString());
                 }
@@ -25,7 +25,6 @@ import com.redhat.lightblue.metadata.Type;
 import com.redhat.lightblue.util.Error;
 
 import java.io.Serializable;
-import java.util.UUID;
 
 public final class UIDType implements Type, Serializable {
 
@@ -34,6 +33,8 @@ public final class UIDType implements Type, Serializable {
     public static final Type TYPE = new UIDType();
     public static final String NAME = "uid";
 
+    private static final UIDGenerator DEFAULT_GENERATOR = new SecureRandomUIDGenerator();
+
     @Override
     public String getName() {
         return NAME;
@@ -104,8 +105,40 @@ public final class UIDType implements Type, Serializable {
         return NAME;
     }
 
+    /**
+     * Returns a new value from the default generator
+     */
     public static String newValue() {
-        return UUID.randomUUID().toString();
+        return DEFAULT_GENERATOR.newValue();
+    }
+
+    /**
+     * Returns the generator used when no generator is given. The
+     * generator to use is configured on the CRUD factory, not here.
+     */
+    public static UIDGenerator getDefaultGenerator() {
+        return DEFAULT_GENERATOR;
+    }
+
+    /**
+     * Returns a new generator of one of the built-in kinds: secure,
+     * random, timeOrdered, or counter
+     *
+     * @throws IllegalArgumentException if there is no such generator
+     */
+    public static UIDGenerator getGenerator(String name) {
+        switch (name) {
+            case SecureRandomUIDGenerator.NAME:
+                return new SecureRandomUIDGenerator();
+            case RandomUIDGenerator.NAME:
+                return new RandomUIDGenerator();
+            case TimeOrderedUIDGenerator.NAME:
+                return new TimeOrderedUIDGenerator();
+            case CounterUIDGenerator.NAME:
+                return new CounterUIDGenerator();
+            default:
+                throw new IllegalArgumentException(name);
+        }
     }
 
     private UIDType() {
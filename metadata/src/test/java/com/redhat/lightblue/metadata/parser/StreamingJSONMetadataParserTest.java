@@ -0,0 +1,138 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.parser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.redhat.lightblue.metadata.DataStore;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldCursor;
+import com.redhat.lightblue.metadata.MetadataConstants;
+import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.Path;
+import com.redhat.lightblue.util.test.AbstractJsonNodeTest;
+
+public class StreamingJSONMetadataParserTest extends AbstractJsonNodeTest {
+
+    private JSONMetadataParser treeParser;
+    private StreamingJSONMetadataParser streamingParser;
+
+    private static class TestDataStoreParser implements DataStoreParser<JsonNode> {
+        @Override
+        public DataStore parse(final String name, MetadataParser<JsonNode> p, JsonNode node) {
+            return new DataStore() {
+                @Override
+                public String getBackend() {
+                    return name;
+                }
+            };
+        }
+
+        @Override
+        public void convert(MetadataParser<JsonNode> p, JsonNode emptyNode, DataStore ds) {
+        }
+
+        @Override
+        public String getDefaultName() {
+            return null;
+        }
+    }
+
+    @Before
+    public void setup() {
+        Extensions<JsonNode> extensions = new Extensions<>();
+        extensions.addDefaultExtensions();
+        extensions.registerDataStoreParser("empty", new TestDataStoreParser());
+        extensions.registerDataStoreParser("mongo", new TestDataStoreParser());
+        JsonNodeFactory factory = JsonNodeFactory.withExactBigDecimals(true);
+        treeParser = new JSONMetadataParser(extensions, new DefaultTypes(), factory);
+        streamingParser = new StreamingJSONMetadataParser(extensions, new DefaultTypes(), factory);
+    }
+
+    private void compare(String resource) throws Exception {
+        EntityMetadata expected = treeParser.parseEntityMetadata(loadJsonNode(resource));
+        EntityMetadata actual = streamingParser.parseEntityMetadata(
+                new ByteArrayInputStream(loadResource(resource).getBytes(StandardCharsets.UTF_8)));
+        JSONAssert.assertEquals(treeParser.convert(expected).toString(),
+                streamingParser.convert(actual).toString(), true);
+        // Same fields, in the same order
+        Assert.assertEquals(treeParser.convert(expected).toString(), streamingParser.convert(actual).toString());
+        Assert.assertEquals(fieldPaths(expected), fieldPaths(actual));
+    }
+
+    private static List<Path> fieldPaths(EntityMetadata md) {
+        List<Path> list = new ArrayList<>();
+        FieldCursor cursor = md.getFieldCursor();
+        while (cursor.next()) {
+            list.add(cursor.getCurrentPath());
+        }
+        return list;
+    }
+
+    @Test
+    public void sameAsTreeParser() throws Exception {
+        compare("JSONMetadataParserTest-object-everything-no-hooks.json");
+        compare("JSONMetadataParserTest-object-binary.json");
+        compare("usermd.json");
+        compare("usermdidf.json");
+        compare("composite/A.json");
+        compare("composite/R.json");
+    }
+
+    @Test
+    public void fieldsInDocumentOrder() throws Exception {
+        String doc = "{\"entityInfo\":{\"name\":\"x\",\"datastore\":{\"backend\":\"empty\"}},"
+                + "\"schema\":{\"name\":\"x\",\"version\":{\"value\":\"1.0\",\"changelog\":\"c\"},"
+                + "\"status\":{\"value\":\"active\"},"
+                + "\"fields\":{\"z\":{\"type\":\"string\"},\"a\":{\"fields\":{\"y\":{\"type\":\"integer\"}},\"type\":\"object\"},"
+                + "\"m\":{\"items\":{\"type\":\"string\"},\"type\":\"array\"}}}}";
+        EntityMetadata md = streamingParser.parseEntityMetadata(new ByteArrayInputStream(doc.getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(fieldPaths(treeParser.parseEntityMetadata(JsonUtils.json(doc))), fieldPaths(md));
+        Assert.assertEquals("z", md.getEntitySchema().getFields().getField(0).getName());
+        Assert.assertEquals("a", md.getEntitySchema().getFields().getField(1).getName());
+        Assert.assertEquals("m", md.getEntitySchema().getFields().getField(2).getName());
+        Assert.assertNotNull(md.resolve(new Path("a.y")));
+    }
+
+    @Test
+    public void missingType() throws Exception {
+        try {
+            streamingParser.parseEntityMetadata(new ByteArrayInputStream(
+                    ("{\"entityInfo\":{\"name\":\"x\",\"datastore\":{\"backend\":\"empty\"}},"
+                    + "\"schema\":{\"name\":\"x\",\"version\":{\"value\":\"1.0\",\"changelog\":\"c\"},"
+                    + "\"status\":{\"value\":\"active\"},"
+                    + "\"fields\":{\"z\":{}}}}").getBytes(StandardCharsets.UTF_8)));
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(MetadataConstants.ERR_PARSE_MISSING_ELEMENT, e.getErrorCode());
+        }
+    }
+}
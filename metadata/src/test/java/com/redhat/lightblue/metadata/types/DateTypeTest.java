@@ -97,6 +97,46 @@ public class DateTypeTest {
         dateType.fromJson(jsonNode);
     }
 
+    @Test
+    public void testSameAsDateFormat() throws Exception {
+        DateFormat fmt = DateType.getDateFormat();
+        java.util.Random rnd = new java.util.Random(42);
+        long[] times = new long[1000];
+        for (int i = 0; i < times.length; i++) {
+            // Years from 1500 to 2500
+            times[i] = -14831769600000L + (long) (rnd.nextDouble() * 31556952000000L);
+        }
+        times[0] = 0;
+        times[1] = -1;
+        times[2] = 951782400000L; // 2000-02-29
+        for (long t : times) {
+            Date d = new Date(t);
+            String s = fmt.format(d);
+            assertEquals(s, DateType.formatDate(d));
+            assertEquals(fmt.parse(s), DateType.parseDate(s));
+        }
+        String[] inputs = {"20140229T10:00:00.000+0000", // Lenient, rolls over to March
+                           "20141301T10:00:00.000+0000",
+                           "20140101T10:00:00.000-0530",
+                           "20140101T10:00:00.000+2400",
+                           "20140101T10:00:00.000+2359",
+                           "20140101T10:00:00.000GMT",
+                           "20140101T10:00:00.000+0000 trailing",
+                           "15000101T10:00:00.000+0000",
+                           "20140101T23:59:60.999+0100"};
+        for (String s : inputs) {
+            assertEquals(s, parse(fmt, s), parse(null, s));
+        }
+    }
+
+    private static Object parse(DateFormat fmt, String s) {
+        try {
+            return fmt == null ? DateType.parseDate(s) : fmt.parse(s);
+        } catch (java.text.ParseException e) {
+            return "unparseable";
+        }
+    }
+
     @Test
     public void testCastNull() {
         assertNull(dateType.cast(null));
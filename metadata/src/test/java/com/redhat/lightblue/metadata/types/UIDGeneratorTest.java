@@ -0,0 +1,125 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.types;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class UIDGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int N = 10000;
+
+    private void assertUnique(final UIDGenerator gen) throws Exception {
+        final Set<String> values = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < N; i++) {
+                            values.add(gen.newValue());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(THREADS * N, values.size());
+    }
+
+    @Test
+    public void testUnique() throws Exception {
+        assertUnique(new SecureRandomUIDGenerator());
+        assertUnique(new RandomUIDGenerator());
+        assertUnique(new TimeOrderedUIDGenerator());
+        assertUnique(new CounterUIDGenerator());
+    }
+
+    @Test
+    public void testRandomIsUUIDv4() {
+        UIDGenerator gen = new RandomUIDGenerator();
+        for (int i = 0; i < 100; i++) {
+            UUID uuid = UUID.fromString(gen.newValue());
+            assertEquals(4, uuid.version());
+            assertEquals(2, uuid.variant());
+        }
+    }
+
+    @Test
+    public void testTimeOrdered() {
+        UIDGenerator gen = new TimeOrderedUIDGenerator();
+        long before = System.currentTimeMillis();
+        String last = null;
+        for (int i = 0; i < 10000; i++) {
+            String value = gen.newValue();
+            UUID uuid = UUID.fromString(value);
+            assertEquals(7, uuid.version());
+            assertEquals(2, uuid.variant());
+            if (last != null) {
+                assertTrue(last.compareTo(value) < 0);
+            }
+            last = value;
+        }
+        long ms = UUID.fromString(last).getMostSignificantBits() >>> 16;
+        assertTrue(ms >= before);
+    }
+
+    @Test
+    public void testCounter() {
+        UIDGenerator gen = new CounterUIDGenerator(0x1f);
+        String a = gen.newValue();
+        String b = gen.newValue();
+        assertTrue(a.startsWith("1f-"));
+        assertTrue(a.endsWith("-1"));
+        assertTrue(b.endsWith("-2"));
+    }
+
+    @Test
+    public void testGetGenerator() {
+        assertTrue(UIDType.getGenerator("secure") instanceof SecureRandomUIDGenerator);
+        assertTrue(UIDType.getGenerator("random") instanceof RandomUIDGenerator);
+        assertTrue(UIDType.getGenerator("timeOrdered") instanceof TimeOrderedUIDGenerator);
+        assertTrue(UIDType.getGenerator("counter") instanceof CounterUIDGenerator);
+        try {
+            UIDType.getGenerator("x");
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
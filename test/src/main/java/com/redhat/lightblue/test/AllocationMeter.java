@@ -0,0 +1,108 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the bytes allocated by the current thread, using the thread
+ * allocation counters of com.sun.management.ThreadMXBean. Use to write
+ * allocation budget tests, and to report allocation in load tests.
+ *
+ * The counters are not available on all JVMs. Check isSupported()
+ * first, and skip the measurement if they are not.
+ */
+public final class AllocationMeter {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean SUPPORTED;
+
+    static {
+        boolean supported = false;
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREADS;
+            if (bean.isThreadAllocatedMemorySupported()) {
+                if (!bean.isThreadAllocatedMemoryEnabled()) {
+                    bean.setThreadAllocatedMemoryEnabled(true);
+                }
+                supported = true;
+            }
+        }
+        SUPPORTED = supported;
+    }
+
+    /**
+     * Returns if thread allocation can be measured
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Returns the total number of bytes allocated by the current thread,
+     * or -1 if allocation cannot be measured
+     */
+    public static long getAllocatedBytes() {
+        if (SUPPORTED) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of bytes allocated by running the operation once
+     * in the current thread, or -1 if allocation cannot be measured
+     */
+    public static long measure(Runnable op) {
+        if (!SUPPORTED) {
+            return -1;
+        }
+        long start = getAllocatedBytes();
+        op.run();
+        return getAllocatedBytes() - start;
+    }
+
+    /**
+     * Returns the average number of bytes allocated by an operation, or
+     * -1 if allocation cannot be measured. The operation is run warmup
+     * times first, so one-time initialization and interpreted execution
+     * are not measured. Then it is run n times, and the allocation of
+     * the measuring code itself is subtracted.
+     */
+    public static long measure(Runnable op, int warmup, int n) {
+        if (!SUPPORTED) {
+            return -1;
+        }
+        for (int i = 0; i < warmup; i++) {
+            op.run();
+        }
+        long overhead = getAllocatedBytes();
+        overhead = getAllocatedBytes() - overhead;
+        long start = getAllocatedBytes();
+        for (int i = 0; i < n; i++) {
+            op.run();
+        }
+        long total = getAllocatedBytes() - start - overhead;
+        return Math.max(0, total / n);
+    }
+
+    private AllocationMeter() {
+    }
+}
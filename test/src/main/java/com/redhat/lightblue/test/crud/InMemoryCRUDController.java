@@ -0,0 +1,593 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.test.crud;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import com.redhat.lightblue.crud.CRUDController;
+import com.redhat.lightblue.crud.CRUDCounter;
+import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDInsertionResponse;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDSaveResponse;
+import com.redhat.lightblue.crud.CRUDUpdateResponse;
+import com.redhat.lightblue.crud.ConstraintValidator;
+import com.redhat.lightblue.crud.CrudConstants;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.Operation;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.eval.QueryEvaluator;
+import com.redhat.lightblue.eval.Updater;
+import com.redhat.lightblue.interceptor.InterceptPoint;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.metadata.MetadataListener;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.metadata.types.UIDGenerator;
+import com.redhat.lightblue.metadata.types.UIDType;
+import com.redhat.lightblue.query.CompositeSortKey;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.query.SortKey;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * A CRUD controller keeping documents in memory, to run the mediator
+ * without a back end in benchmarks and local load tests.
+ *
+ * Documents of an entity are keyed by _id. An _id is generated for
+ * inserted documents that don't have one. The indexes declared in the
+ * entity info on simple fields are kept, and used to select candidate
+ * documents for queries. Unique indexes are enforced. Queries are then
+ * evaluated by QueryEvaluator, updates are applied by Updater, and
+ * results are sorted, ranged and projected as requested.
+ *
+ * The controller can simulate latency and failures: each call sleeps
+ * for a random duration within the latency range, and fails with the
+ * given probability. Use a fixed random seed for repeatable runs.
+ *
+ * Documents are copied in and out of the store, so callers can modify
+ * the documents they pass or receive.
+ */
+public class InMemoryCRUDController implements CRUDController, CRUDCounter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InMemoryCRUDController.class);
+
+    public static final String ERR_DUPLICATE = "memory-crud:Duplicate";
+    public static final String ERR_NOT_FOUND = "memory-crud:NotFound";
+    public static final String ERR_SIMULATED_FAILURE = "memory-crud:SimulatedFailure";
+
+    public static final String ID_FIELD = "_id";
+    public static final Path ID_PATH = new Path(ID_FIELD);
+
+    private final ConcurrentHashMap<String, MemoryStore> stores = new ConcurrentHashMap<>();
+    private final JsonNodeFactory nodeFactory = JsonNodeFactory.withExactBigDecimals(true);
+
+    private volatile long minLatency = 0;
+    private volatile long maxLatency = 0;
+    private volatile double failureRate = 0;
+    private volatile Random random = new Random();
+
+    /**
+     * Sets the simulated latency of each call, in milliseconds. The
+     * latency of a call is chosen uniformly from the range.
+     */
+    public void setLatency(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Invalid latency range:" + minMillis + "-" + maxMillis);
+        }
+        minLatency = minMillis;
+        maxLatency = maxMillis;
+    }
+
+    /**
+     * Sets the probability of a simulated failure of a call, between 0
+     * and 1
+     */
+    public void setFailureRate(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Invalid failure rate:" + rate);
+        }
+        failureRate = rate;
+    }
+
+    /**
+     * Seeds the random source for latencies and failures
+     */
+    public void setRandomSeed(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Stores the documents without running interceptors, constraint
+     * validation, or fault simulation. Use to load fixtures.
+     */
+    public void load(EntityMetadata md, Collection<JsonDoc> docs) {
+        MemoryStore store = getStore(md);
+        store.getLock().writeLock().lock();
+        try {
+            for (JsonDoc doc : docs) {
+                JsonDoc copy = doc.copy();
+                store.put(ensureId(copy, null), copy);
+            }
+        } finally {
+            store.getLock().writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of documents stored for the entity
+     */
+    public int size(String entityName) {
+        MemoryStore store = stores.get(entityName);
+        if (store == null) {
+            return 0;
+        }
+        store.getLock().readLock().lock();
+        try {
+            return store.size();
+        } finally {
+            store.getLock().readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all documents and indexes of all entities
+     */
+    public void clear() {
+        stores.clear();
+    }
+
+    @Override
+    public CRUDInsertionResponse insert(CRUDOperationContext ctx,
+                                        Projection projection) {
+        LOGGER.debug("insert() start");
+        Error.push("insert(" + ctx.getEntityName() + ")");
+        CRUDInsertionResponse response = new CRUDInsertionResponse();
+        try {
+            simulate("insert");
+            EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+            MemoryStore store = getStore(md);
+            Projector projector = projection == null ? null : Projector.getInstance(projection, md);
+            UIDGenerator generator = ctx.getFactory().getUIDGenerator();
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_INSERT, ctx);
+            int n = 0;
+            for (DocCtx doc : ctx.getDocumentsWithoutErrors()) {
+                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_INSERT_DOC, ctx, doc);
+                String id = ensureId(doc, generator);
+                if (insert(store, id, doc)) {
+                    setOutput(doc, projector, Operation.INSERT);
+                    ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_INSERT_DOC, ctx, doc);
+                    n++;
+                }
+            }
+            response.setNumInserted(n);
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_INSERT, ctx);
+        } finally {
+            Error.pop();
+        }
+        LOGGER.debug("insert() end: {} inserted", response.getNumInserted());
+        return response;
+    }
+
+    @Override
+    public CRUDSaveResponse save(CRUDOperationContext ctx,
+                                 boolean upsert,
+                                 Projection projection) {
+        LOGGER.debug("save() start");
+        Error.push("save(" + ctx.getEntityName() + ")");
+        CRUDSaveResponse response = new CRUDSaveResponse();
+        try {
+            simulate("save");
+            EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+            MemoryStore store = getStore(md);
+            Projector projector = projection == null ? null : Projector.getInstance(projection, md);
+            UIDGenerator generator = ctx.getFactory().getUIDGenerator();
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_SAVE, ctx);
+            int n = 0;
+            for (DocCtx doc : ctx.getDocumentsWithoutErrors()) {
+                String id = getId(doc);
+                JsonDoc existing = null;
+                if (id != null) {
+                    store.getLock().readLock().lock();
+                    try {
+                        existing = store.get(id);
+                    } finally {
+                        store.getLock().readLock().unlock();
+                    }
+                }
+                if (existing != null) {
+                    doc.setOriginalDocument(existing.copy());
+                    ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_UPDATE_DOC, ctx, doc);
+                    if (replace(store, id, doc)) {
+                        setOutput(doc, projector, Operation.UPDATE);
+                        ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE_DOC, ctx, doc);
+                        n++;
+                    }
+                } else if (upsert) {
+                    ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_INSERT_DOC, ctx, doc);
+                    id = ensureId(doc, generator);
+                    if (insert(store, id, doc)) {
+                        setOutput(doc, projector, Operation.INSERT);
+                        ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_INSERT_DOC, ctx, doc);
+                        n++;
+                    }
+                } else {
+                    doc.addError(Error.get(ERR_NOT_FOUND, String.valueOf(id)));
+                }
+            }
+            response.setNumSaved(n);
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_SAVE, ctx);
+        } finally {
+            Error.pop();
+        }
+        LOGGER.debug("save() end: {} saved", response.getNumSaved());
+        return response;
+    }
+
+    @Override
+    public CRUDUpdateResponse update(CRUDOperationContext ctx,
+                                     QueryExpression query,
+                                     UpdateExpression update,
+                                     Projection projection) {
+        LOGGER.debug("update() start");
+        Error.push("update(" + ctx.getEntityName() + ")");
+        CRUDUpdateResponse response = new CRUDUpdateResponse();
+        try {
+            simulate("update");
+            EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+            MemoryStore store = getStore(md);
+            Projector projector = projection == null ? null : Projector.getInstance(projection, md);
+            Updater updater = Updater.getInstance(nodeFactory, md, update);
+            ConstraintValidator validator = ctx.getFactory().getConstraintValidator(md);
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_UPDATE, ctx);
+            List<DocCtx> docs = new ArrayList<>();
+            int numUpdated = 0;
+            int numFailed = 0;
+            for (JsonDoc match : match(store, md, query)) {
+                DocCtx doc = new DocCtx(match);
+                doc.startModifications();
+                updater.update(doc, md.getFieldTreeRoot(), Path.EMPTY);
+                PredefinedFields.updateArraySizes(nodeFactory, doc);
+                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_UPDATE_DOC, ctx, doc);
+                validator.clearErrors();
+                validator.validateDoc(doc);
+                List<Error> errors = validator.getDocErrors().get(doc);
+                if (errors != null && !errors.isEmpty()) {
+                    doc.addErrors(errors);
+                }
+                if (validator.getErrors() != null && !validator.getErrors().isEmpty()) {
+                    doc.addErrors(validator.getErrors());
+                }
+                if (!doc.hasErrors() && replace(store, getId(doc), doc)) {
+                    doc.setOutputDocument(projector == null ? null : projector.project(doc, nodeFactory));
+                    doc.setOperationPerformed(Operation.UPDATE);
+                    ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE_DOC, ctx, doc);
+                    numUpdated++;
+                } else {
+                    numFailed++;
+                }
+                docs.add(doc);
+            }
+            ctx.setDocuments(docs);
+            response.setNumUpdated(numUpdated);
+            response.setNumFailed(numFailed);
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE, ctx);
+        } finally {
+            Error.pop();
+        }
+        LOGGER.debug("update() end: {} updated, {} failed", response.getNumUpdated(), response.getNumFailed());
+        return response;
+    }
+
+    @Override
+    public CRUDDeleteResponse delete(CRUDOperationContext ctx,
+                                     QueryExpression query) {
+        LOGGER.debug("delete() start");
+        Error.push("delete(" + ctx.getEntityName() + ")");
+        CRUDDeleteResponse response = new CRUDDeleteResponse();
+        try {
+            simulate("delete");
+            EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+            MemoryStore store = getStore(md);
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_DELETE, ctx);
+            List<DocCtx> docs = new ArrayList<>();
+            int n = 0;
+            for (JsonDoc match : match(store, md, query)) {
+                DocCtx doc = new DocCtx(match);
+                doc.setOriginalDocument(match);
+                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_DELETE_DOC, ctx, doc);
+                JsonDoc removed;
+                store.getLock().writeLock().lock();
+                try {
+                    removed = store.remove(getId(doc));
+                } finally {
+                    store.getLock().writeLock().unlock();
+                }
+                if (removed != null) {
+                    doc.setOperationPerformed(Operation.DELETE);
+                    ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_DELETE_DOC, ctx, doc);
+                    docs.add(doc);
+                    n++;
+                }
+            }
+            ctx.setDocuments(docs);
+            response.setNumDeleted(n);
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_DELETE, ctx);
+        } finally {
+            Error.pop();
+        }
+        LOGGER.debug("delete() end: {} deleted", response.getNumDeleted());
+        return response;
+    }
+
+    @Override
+    public CRUDFindResponse find(CRUDOperationContext ctx,
+                                 QueryExpression query,
+                                 Projection projection,
+                                 Sort sort,
+                                 Long from,
+                                 Long to) {
+        LOGGER.debug("find() start");
+        Error.push("find(" + ctx.getEntityName() + ")");
+        CRUDFindResponse response = new CRUDFindResponse();
+        try {
+            simulate("find");
+            EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+            MemoryStore store = getStore(md);
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_FIND, ctx);
+            List<JsonDoc> matches = match(store, md, query);
+            if (sort != null) {
+                Collections.sort(matches, getComparator(md, sort));
+            }
+            int start = from == null ? 0 : (int) Math.max(0, Math.min(from, matches.size()));
+            int end = to == null ? matches.size() : (int) Math.max(start, Math.min(to + 1, matches.size()));
+            Projector projector = projection == null ? null : Projector.getInstance(projection, md);
+            List<DocCtx> docs = new ArrayList<>(end - start);
+            for (JsonDoc match : matches.subList(start, end)) {
+                DocCtx doc = new DocCtx(match);
+                doc.setOutputDocument(projector == null ? match : projector.project(match, nodeFactory));
+                doc.setOperationPerformed(Operation.FIND);
+                docs.add(doc);
+            }
+            ctx.setDocuments(docs);
+            for (DocCtx doc : docs) {
+                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_FIND_DOC, ctx, doc);
+            }
+            response.setSize(matches.size());
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_FIND, ctx);
+        } finally {
+            Error.pop();
+        }
+        LOGGER.debug("find() end: {} docs", response.getSize());
+        return response;
+    }
+
+    @Override
+    public long count(CRUDOperationContext ctx,
+                      QueryExpression query) {
+        Error.push("count(" + ctx.getEntityName() + ")");
+        try {
+            simulate("count");
+            EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+            return match(getStore(md), md, query).size();
+        } finally {
+            Error.pop();
+        }
+    }
+
+    @Override
+    public MetadataListener getMetadataListener() {
+        return null;
+    }
+
+    @Override
+    public void updatePredefinedFields(CRUDOperationContext ctx, JsonDoc doc) {
+        doc.modify(PredefinedFields.OBJECTTYPE_PATH, nodeFactory.textNode(ctx.getEntityName()), true);
+    }
+
+    private MemoryStore getStore(EntityMetadata md) {
+        MemoryStore store = stores.get(md.getName());
+        if (store == null) {
+            store = new MemoryStore(md);
+            MemoryStore existing = stores.putIfAbsent(md.getName(), store);
+            if (existing != null) {
+                store = existing;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Returns copies of the documents matching the query, in insertion
+     * order
+     */
+    private List<JsonDoc> match(MemoryStore store, EntityMetadata md, QueryExpression query) {
+        QueryEvaluator evaluator = query == null ? null : QueryEvaluator.getInstance(query, md);
+        List<JsonDoc> ret = new ArrayList<>();
+        store.getLock().readLock().lock();
+        try {
+            for (JsonDoc doc : store.candidates(query)) {
+                if (evaluator == null || evaluator.evaluate(doc).getResult()) {
+                    ret.add(doc.copy());
+                }
+            }
+        } finally {
+            store.getLock().readLock().unlock();
+        }
+        return ret;
+    }
+
+    /**
+     * Stores a copy of the document if its id and unique keys are not
+     * used. Otherwise adds an error to the document.
+     */
+    private boolean insert(MemoryStore store, String id, DocCtx doc) {
+        store.getLock().writeLock().lock();
+        try {
+            if (store.get(id) != null) {
+                doc.addError(Error.get(ERR_DUPLICATE, ID_FIELD + "=" + id));
+                return false;
+            }
+            return put(store, id, doc);
+        } finally {
+            store.getLock().writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the stored document with a copy of the document, if the
+     * document is still there and its unique keys are not used.
+     * Otherwise adds an error to the document.
+     */
+    private boolean replace(MemoryStore store, String id, DocCtx doc) {
+        store.getLock().writeLock().lock();
+        try {
+            if (id == null || store.get(id) == null) {
+                doc.addError(Error.get(ERR_NOT_FOUND, String.valueOf(id)));
+                return false;
+            }
+            return put(store, id, doc);
+        } finally {
+            store.getLock().writeLock().unlock();
+        }
+    }
+
+    private boolean put(MemoryStore store, String id, DocCtx doc) {
+        String index = store.checkUnique(id, doc);
+        if (index != null) {
+            doc.addError(Error.get(ERR_DUPLICATE, index));
+            return false;
+        }
+        store.put(id, doc.copy());
+        return true;
+    }
+
+    private void setOutput(DocCtx doc, Projector projector, Operation op) {
+        doc.setOutputDocument(projector == null ? new JsonDoc(nodeFactory.objectNode()) : projector.project(doc, nodeFactory));
+        doc.setOperationPerformed(op);
+    }
+
+    private static String getId(JsonDoc doc) {
+        JsonNode node = doc.get(ID_PATH);
+        return node == null || node.isNull() ? null : node.asText();
+    }
+
+    /**
+     * Returns the id of the document, assigning a new one if the
+     * document doesn't have one
+     */
+    private String ensureId(JsonDoc doc, UIDGenerator generator) {
+        String id = getId(doc);
+        if (id == null) {
+            id = generator == null ? UIDType.newValue() : generator.newValue();
+            doc.modify(ID_PATH, nodeFactory.textNode(id), true);
+        }
+        return id;
+    }
+
+    /**
+     * Sleeps for the simulated latency, and fails with the simulated
+     * failure rate
+     */
+    private void simulate(String op) {
+        Random r = random;
+        long min = minLatency;
+        long max = maxLatency;
+        if (max > 0) {
+            long latency = max > min ? min + (long) (r.nextDouble() * (max - min)) : min;
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failureRate > 0 && r.nextDouble() < failureRate) {
+            throw Error.get(ERR_SIMULATED_FAILURE, op);
+        }
+    }
+
+    /**
+     * Returns a comparator ordering documents by the sort keys. Values
+     * are compared using the field types, and missing values sort
+     * first.
+     */
+    private static Comparator<JsonDoc> getComparator(EntityMetadata md, Sort sort) {
+        List<SortKey> keys;
+        if (sort instanceof CompositeSortKey) {
+            keys = ((CompositeSortKey) sort).getKeys();
+        } else {
+            keys = Collections.singletonList((SortKey) sort);
+        }
+        final Path[] fields = new Path[keys.size()];
+        final Type[] types = new Type[keys.size()];
+        final boolean[] desc = new boolean[keys.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = keys.get(i).getField();
+            desc[i] = keys.get(i).isDesc();
+            FieldTreeNode field = md.resolve(fields[i]);
+            if (!(field instanceof SimpleField)) {
+                throw Error.get(CrudConstants.ERR_CRUD, "Cannot sort by " + fields[i]);
+            }
+            types[i] = field.getType();
+        }
+        return new Comparator<JsonDoc>() {
+            @Override
+            public int compare(JsonDoc d1, JsonDoc d2) {
+                for (int i = 0; i < fields.length; i++) {
+                    JsonNode n1 = d1.get(fields[i]);
+                    JsonNode n2 = d2.get(fields[i]);
+                    boolean null1 = n1 == null || n1.isNull();
+                    boolean null2 = n2 == null || n2.isNull();
+                    int cmp;
+                    if (null1) {
+                        cmp = null2 ? 0 : -1;
+                    } else if (null2) {
+                        cmp = 1;
+                    } else {
+                        cmp = types[i].compare(types[i].fromJson(n1), types[i].fromJson(n2));
+                    }
+                    if (cmp != 0) {
+                        return desc[i] ? -cmp : cmp;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.test.crud;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.metadata.Index;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.query.BinaryComparisonOperator;
+import com.redhat.lightblue.query.SortKey;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * An index of an in-memory entity store. Document ids are kept in a tree
+ * ordered by the value of the leading index field, compared using the
+ * field type. The tree serves equality, $in and range lookups on the
+ * leading field. The full key of each document is kept to check unique
+ * indexes.
+ *
+ * Only indexes on simple fields not contained in arrays are supported.
+ */
+class MemoryIndex {
+
+    private final String name;
+    private final boolean unique;
+    private final Path[] fields;
+    private final Type[] types;
+    private final TreeMap<Object, Set<String>> entries;
+    private final Map<String, Object[]> keys = new HashMap<>();
+
+    private static final class TypeComparator implements Comparator<Object> {
+        private final Type type;
+
+        public TypeComparator(Type type) {
+            this.type = type;
+        }
+
+        @Override
+        public int compare(Object v1, Object v2) {
+            if (v1 == null) {
+                return v2 == null ? 0 : -1;
+            } else if (v2 == null) {
+                return 1;
+            } else {
+                return type.compare(v1, v2);
+            }
+        }
+    }
+
+    /**
+     * Constructs an index
+     *
+     * @throws IllegalArgumentException if the index cannot be kept in
+     * memory
+     */
+    public MemoryIndex(Index index, EntityMetadata md) {
+        name = index.getName();
+        unique = index.isUnique();
+        List<SortKey> keyFields = index.getFields();
+        if (keyFields.isEmpty()) {
+            throw new IllegalArgumentException("No fields in index " + name);
+        }
+        fields = new Path[keyFields.size()];
+        types = new Type[keyFields.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = keyFields.get(i).getField();
+            FieldTreeNode field = fields[i].nAnys() == 0 ? md.resolve(fields[i]) : null;
+            if (!(field instanceof SimpleField)) {
+                throw new IllegalArgumentException("Index " + name + " field " + fields[i] + " is not a simple field");
+            }
+            types[i] = field.getType();
+        }
+        entries = new TreeMap<>(new TypeComparator(types[0]));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    /**
+     * Returns the leading field of the index
+     */
+    public Path getField() {
+        return fields[0];
+    }
+
+    /**
+     * Returns the key of the document
+     */
+    public Object[] getKey(JsonDoc doc) {
+        Object[] key = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            JsonNode node = doc.get(fields[i]);
+            key[i] = node == null || node.isNull() ? null : types[i].fromJson(node);
+        }
+        return key;
+    }
+
+    public void add(String id, Object[] key) {
+        keys.put(id, key);
+        Set<String> ids = entries.get(key[0]);
+        if (ids == null) {
+            ids = new HashSet<>();
+            entries.put(key[0], ids);
+        }
+        ids.add(id);
+    }
+
+    public void remove(String id) {
+        Object[] key = keys.remove(id);
+        if (key != null) {
+            Set<String> ids = entries.get(key[0]);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    entries.remove(key[0]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the id of a document other than id with the same key, or
+     * null if the key is unique. Keys whose values are all null are not
+     * checked.
+     */
+    public String findDuplicate(String id, Object[] key) {
+        boolean allNull = true;
+        for (Object x : key) {
+            if (x != null) {
+                allNull = false;
+                break;
+            }
+        }
+        if (!allNull) {
+            Set<String> ids = entries.get(key[0]);
+            if (ids != null) {
+                for (String x : ids) {
+                    if (!x.equals(id) && sameKey(key, keys.get(x))) {
+                        return x;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean sameKey(Object[] k1, Object[] k2) {
+        for (int i = 0; i < k1.length; i++) {
+            int cmp = new TypeComparator(types[i]).compare(k1[i], k2[i]);
+            if (cmp != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ids of the documents whose leading field value may
+     * satisfy the comparison, or null if the index cannot be used for
+     * it
+     */
+    public Set<String> find(BinaryComparisonOperator op, Object value) {
+        if (value == null && op != BinaryComparisonOperator._eq) {
+            return null;
+        }
+        Object v;
+        try {
+            v = value == null ? null : types[0].cast(value);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        NavigableMap<Object, Set<String>> range;
+        switch (op) {
+            case _eq:
+                Set<String> ids = entries.get(v);
+                return ids == null ? new HashSet<String>() : new HashSet<>(ids);
+            case _lt:
+                range = entries.headMap(v, false);
+                break;
+            case _lte:
+                range = entries.headMap(v, true);
+                break;
+            case _gt:
+                range = entries.tailMap(v, false);
+                break;
+            case _gte:
+                range = entries.tailMap(v, true);
+                break;
+            default:
+                return null;
+        }
+        return union(range.values());
+    }
+
+    /**
+     * Returns the ids of the documents whose leading field value is one
+     * of the values, or null if the index cannot be used
+     */
+    public Set<String> findIn(Collection<Object> values) {
+        Set<String> ret = new HashSet<>();
+        for (Object value : values) {
+            Set<String> ids = find(BinaryComparisonOperator._eq, value);
+            if (ids == null) {
+                return null;
+            }
+            ret.addAll(ids);
+        }
+        return ret;
+    }
+
+    private static Set<String> union(Collection<Set<String>> sets) {
+        Set<String> ret = new HashSet<>();
+        for (Set<String> s : sets) {
+            ret.addAll(s);
+        }
+        return ret;
+    }
+}
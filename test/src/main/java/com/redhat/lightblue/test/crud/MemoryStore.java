@@ -0,0 +1,225 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.test.crud;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Index;
+import com.redhat.lightblue.metadata.Indexes;
+import com.redhat.lightblue.query.NaryLogicalExpression;
+import com.redhat.lightblue.query.NaryLogicalOperator;
+import com.redhat.lightblue.query.NaryRelationalExpression;
+import com.redhat.lightblue.query.NaryRelationalOperator;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Value;
+import com.redhat.lightblue.query.ValueComparisonExpression;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * The documents of an entity, keyed by _id, and the indexes declared in
+ * the entity info. Documents are kept in insertion order. The caller
+ * holds the read lock while reading, and the write lock while
+ * modifying.
+ */
+class MemoryStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryStore.class);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, JsonDoc> docs = new LinkedHashMap<>();
+    // Insertion sequence of each document, to order index lookups
+    private final Map<String, Long> sequence = new HashMap<>();
+    private long nextSequence = 0;
+    private final List<MemoryIndex> indexes = new ArrayList<>();
+
+    public MemoryStore(EntityMetadata md) {
+        Indexes ix = md.getEntityInfo().getIndexes();
+        if (ix != null) {
+            for (Index index : ix.getIndexes()) {
+                try {
+                    indexes.add(new MemoryIndex(index, md));
+                } catch (IllegalArgumentException e) {
+                    LOGGER.debug("Index {} of {} is not kept in memory: {}", index.getName(), md.getName(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    public List<MemoryIndex> getIndexes() {
+        return indexes;
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    public JsonDoc get(String id) {
+        return docs.get(id);
+    }
+
+    public Collection<JsonDoc> getAll() {
+        return docs.values();
+    }
+
+    /**
+     * Returns the name of a unique index violated by storing doc with
+     * the given id, or null if there is no violation
+     */
+    public String checkUnique(String id, JsonDoc doc) {
+        for (MemoryIndex index : indexes) {
+            if (index.isUnique() && index.findDuplicate(id, index.getKey(doc)) != null) {
+                return index.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the document, replacing any document with the same id
+     */
+    public void put(String id, JsonDoc doc) {
+        remove(id);
+        docs.put(id, doc);
+        sequence.put(id, nextSequence++);
+        for (MemoryIndex index : indexes) {
+            index.add(id, index.getKey(doc));
+        }
+    }
+
+    public JsonDoc remove(String id) {
+        JsonDoc doc = docs.remove(id);
+        if (doc != null) {
+            sequence.remove(id);
+            for (MemoryIndex index : indexes) {
+                index.remove(id);
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * Returns the documents that may match the query, using the indexes.
+     * Returns all documents if no index can be used. The result is a
+     * superset of the matching documents, so the query must still be
+     * evaluated.
+     */
+    public Collection<JsonDoc> candidates(QueryExpression query) {
+        Set<String> ids = query == null ? null : findIds(query);
+        if (ids == null) {
+            return docs.values();
+        }
+        List<JsonDoc> ret = new ArrayList<>(ids.size());
+        // Keep insertion order for unsorted results
+        if (ids.size() * 4 < docs.size()) {
+            List<String> ordered = new ArrayList<>(ids);
+            Collections.sort(ordered, new Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Long.compare(sequence.get(a), sequence.get(b));
+                }
+            });
+            for (String id : ordered) {
+                ret.add(docs.get(id));
+            }
+        } else {
+            for (Map.Entry<String, JsonDoc> entry : docs.entrySet()) {
+                if (ids.contains(entry.getKey())) {
+                    ret.add(entry.getValue());
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the ids of the documents that may match the query, or null
+     * if the indexes cannot be used
+     */
+    private Set<String> findIds(QueryExpression query) {
+        if (query instanceof ValueComparisonExpression) {
+            ValueComparisonExpression q = (ValueComparisonExpression) query;
+            MemoryIndex index = getIndex(q.getField());
+            return index == null ? null : index.find(q.getOp(), q.getRvalue().getValue());
+        } else if (query instanceof NaryRelationalExpression) {
+            NaryRelationalExpression q = (NaryRelationalExpression) query;
+            MemoryIndex index = q.getOp() == NaryRelationalOperator._in ? getIndex(q.getField()) : null;
+            if (index != null) {
+                List<Object> values = new ArrayList<>(q.getValues().size());
+                for (Value v : q.getValues()) {
+                    values.add(v.getValue());
+                }
+                return index.findIn(values);
+            }
+        } else if (query instanceof NaryLogicalExpression) {
+            NaryLogicalExpression q = (NaryLogicalExpression) query;
+            if (q.getOp() == NaryLogicalOperator._and) {
+                // Any indexed term restricts the result, use the smallest
+                Set<String> smallest = null;
+                for (QueryExpression x : q.getQueries()) {
+                    Set<String> ids = findIds(x);
+                    if (ids != null && (smallest == null || ids.size() < smallest.size())) {
+                        smallest = ids;
+                    }
+                }
+                return smallest;
+            } else {
+                // All terms must be indexed
+                Set<String> union = new HashSet<>();
+                for (QueryExpression x : q.getQueries()) {
+                    Set<String> ids = findIds(x);
+                    if (ids == null) {
+                        return null;
+                    }
+                    union.addAll(ids);
+                }
+                return union;
+            }
+        }
+        return null;
+    }
+
+    private MemoryIndex getIndex(Path field) {
+        for (MemoryIndex index : indexes) {
+            if (index.getField().equals(field)) {
+                return index;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.test.crud;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.Operation;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Index;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.types.IntegerType;
+import com.redhat.lightblue.metadata.types.StringType;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.query.SortKey;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+import com.redhat.lightblue.util.Path;
+
+public class InMemoryCRUDControllerTest {
+
+    private EntityMetadata md;
+    private Factory factory;
+    private InMemoryCRUDController controller;
+
+    private static class TestCtx extends CRUDOperationContext {
+        private final EntityMetadata md;
+
+        public TestCtx(Operation op, EntityMetadata md, Factory f, List<JsonDoc> docs) {
+            super(op, md.getName(), f, docs);
+            this.md = md;
+        }
+
+        @Override
+        public EntityMetadata getEntityMetadata(String entityName) {
+            return md;
+        }
+    }
+
+    private static JsonDoc doc(String s) throws Exception {
+        return new JsonDoc(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
+    private static QueryExpression query(String s) throws Exception {
+        return QueryExpression.fromJson(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
+    private static Projection projection(String s) throws Exception {
+        return Projection.fromJson(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
+    private static Sort sort(String s) throws Exception {
+        return Sort.fromJson(JsonUtils.json(s.replace('\'', '\"')));
+    }
+
+    private TestCtx ctx(Operation op, JsonDoc... docs) {
+        List<JsonDoc> list = new ArrayList<>();
+        for (JsonDoc d : docs) {
+            list.add(d);
+        }
+        return new TestCtx(op, md, factory, list);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        md = new EntityMetadata("person");
+        md.getFields().addNew(new SimpleField("_id", StringType.TYPE));
+        md.getFields().addNew(new SimpleField("objectType", StringType.TYPE));
+        md.getFields().addNew(new SimpleField("name", StringType.TYPE));
+        md.getFields().addNew(new SimpleField("age", IntegerType.TYPE));
+        Index age = new Index(new SortKey(new Path("age"), false));
+        age.setName("age");
+        md.getEntityInfo().getIndexes().add(age);
+        Index name = new Index(new SortKey(new Path("name"), false));
+        name.setName("name");
+        name.setUnique(true);
+        md.getEntityInfo().getIndexes().add(name);
+
+        factory = new Factory();
+        controller = new InMemoryCRUDController();
+        List<JsonDoc> docs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            docs.add(doc("{'_id':'" + i + "','name':'n" + i + "','age':" + (i % 5) + "}"));
+        }
+        controller.load(md, docs);
+    }
+
+    private List<String> find(QueryExpression q, Sort sort, Long from, Long to) throws Exception {
+        TestCtx ctx = ctx(Operation.FIND);
+        controller.find(ctx, q, projection("{'field':'_id'}"), sort, from, to);
+        List<String> ids = new ArrayList<>();
+        for (DocCtx d : ctx.getDocuments()) {
+            ids.add(d.getOutputDocument().get(new Path("_id")).asText());
+            Assert.assertNull(d.getOutputDocument().get(new Path("name")));
+        }
+        return ids;
+    }
+
+    @Test
+    public void findIndexedTest() throws Exception {
+        Assert.assertEquals(4, find(query("{'field':'age','op':'=','rvalue':3}"), null, null, null).size());
+        Assert.assertEquals(8, find(query("{'field':'age','op':'>=','rvalue':3}"), null, null, null).size());
+        Assert.assertEquals(8, find(query("{'field':'age','op':'$in','values':[0,4]}"), null, null, null).size());
+        Assert.assertEquals(1, find(query("{'$and':[{'field':'age','op':'<','rvalue':2},{'field':'name','op':'=','rvalue':'n5'}]}"), null, null, null).size());
+        Assert.assertEquals(16, find(query("{'field':'age','op':'!=','rvalue':2}"), null, null, null).size());
+        Assert.assertEquals(20, find(null, null, null, null).size());
+        Assert.assertEquals(4, controller.count(ctx(Operation.FIND), query("{'field':'age','op':'=','rvalue':0}")));
+    }
+
+    @Test
+    public void findIndexedOrderTest() throws Exception {
+        // Few matches are looked up by id, and still returned in insertion order
+        Assert.assertEquals(Arrays.asList("3", "8", "13", "18"),
+                find(query("{'field':'age','op':'=','rvalue':3}"), null, null, null));
+        Assert.assertEquals(Arrays.asList("2", "11", "17"),
+                find(query("{'$or':[{'field':'name','op':'=','rvalue':'n17'},{'field':'name','op':'=','rvalue':'n2'},"
+                        + "{'field':'name','op':'=','rvalue':'n11'}]}"), null, null, null));
+        // A replaced document moves to the end
+        controller.save(ctx(Operation.SAVE, doc("{'_id':'8','name':'n8','age':3}")), false, null);
+        Assert.assertEquals(Arrays.asList("3", "13", "18", "8"),
+                find(query("{'field':'age','op':'=','rvalue':3}"), null, null, null));
+    }
+
+    @Test
+    public void findSortRangeTest() throws Exception {
+        List<String> ids = find(query("{'field':'age','op':'<=','rvalue':1}"), sort("[{'age':'$desc'},{'name':'$asc'}]"), 1l, 3l);
+        Assert.assertEquals(3, ids.size());
+        // age=1: n1, n11, n16, n6; age=0: ...
+        Assert.assertEquals("11", ids.get(0));
+        Assert.assertEquals("16", ids.get(1));
+        Assert.assertEquals("6", ids.get(2));
+        TestCtx ctx = ctx(Operation.FIND);
+        Assert.assertEquals(8, controller.find(ctx, query("{'field':'age','op':'<=','rvalue':1}"), null, null, 6l, 20l).getSize());
+        Assert.assertEquals(2, ctx.getDocuments().size());
+    }
+
+    @Test
+    public void insertTest() throws Exception {
+        TestCtx ctx = ctx(Operation.INSERT, doc("{'name':'new','age':7}"), doc("{'name':'n1','age':7}"));
+        Assert.assertEquals(1, controller.insert(ctx, projection("{'field':'_id'}")).getNumInserted());
+        Assert.assertFalse(ctx.getDocuments().get(0).hasErrors());
+        Assert.assertNotNull(ctx.getDocuments().get(0).getOutputDocument().get(new Path("_id")));
+        Assert.assertEquals(InMemoryCRUDController.ERR_DUPLICATE, ctx.getDocuments().get(1).getErrors().get(0).getErrorCode());
+        Assert.assertEquals(21, controller.size("person"));
+        Assert.assertEquals(1, find(query("{'field':'age','op':'=','rvalue':7}"), null, null, null).size());
+    }
+
+    @Test
+    public void saveTest() throws Exception {
+        TestCtx ctx = ctx(Operation.SAVE, doc("{'_id':'1','name':'x','age':9}"), doc("{'_id':'100','name':'y','age':9}"));
+        Assert.assertEquals(1, controller.save(ctx, false, null).getNumSaved());
+        Assert.assertEquals(InMemoryCRUDController.ERR_NOT_FOUND, ctx.getDocuments().get(1).getErrors().get(0).getErrorCode());
+        Assert.assertEquals(1, find(query("{'field':'age','op':'=','rvalue':9}"), null, null, null).size());
+        Assert.assertEquals(3, find(query("{'field':'age','op':'=','rvalue':1}"), null, null, null).size());
+
+        ctx = ctx(Operation.SAVE, doc("{'_id':'100','name':'y','age':9}"));
+        Assert.assertEquals(1, controller.save(ctx, true, null).getNumSaved());
+        Assert.assertEquals(21, controller.size("person"));
+    }
+
+    @Test
+    public void updateTest() throws Exception {
+        TestCtx ctx = ctx(Operation.UPDATE);
+        UpdateExpression u = UpdateExpression.fromJson(JsonUtils.json("{\"$set\":{\"age\":10}}"));
+        Assert.assertEquals(4, controller.update(ctx, query("{'field':'age','op':'=','rvalue':2}"), u, projection("{'field':'*'}")).getNumUpdated());
+        Assert.assertEquals(10, ctx.getDocuments().get(0).getOutputDocument().get(new Path("age")).asInt());
+        Assert.assertEquals(0, find(query("{'field':'age','op':'=','rvalue':2}"), null, null, null).size());
+        Assert.assertEquals(4, find(query("{'field':'age','op':'>','rvalue':9}"), null, null, null).size());
+
+        // Unique index violation
+        ctx = ctx(Operation.UPDATE);
+        u = UpdateExpression.fromJson(JsonUtils.json("{\"$set\":{\"name\":\"n0\"}}"));
+        Assert.assertEquals(1, controller.update(ctx, query("{'field':'_id','op':'=','rvalue':'1'}"), u, null).getNumFailed());
+        Assert.assertEquals(1, find(query("{'field':'name','op':'=','rvalue':'n1'}"), null, null, null).size());
+    }
+
+    @Test
+    public void deleteTest() throws Exception {
+        TestCtx ctx = ctx(Operation.DELETE);
+        Assert.assertEquals(4, controller.delete(ctx, query("{'field':'age','op':'=','rvalue':0}")).getNumDeleted());
+        Assert.assertEquals(16, controller.size("person"));
+        Assert.assertEquals(0, find(query("{'field':'age','op':'=','rvalue':0}"), null, null, null).size());
+    }
+
+    @Test
+    public void simulatedFailureTest() throws Exception {
+        controller.setRandomSeed(1);
+        controller.setFailureRate(1);
+        try {
+            controller.find(ctx(Operation.FIND), null, null, null, null, null);
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(InMemoryCRUDController.ERR_SIMULATED_FAILURE, e.getErrorCode());
+        }
+        controller.setFailureRate(0);
+        controller.setLatency(5, 5);
+        long t = System.currentTimeMillis();
+        controller.find(ctx(Operation.FIND), null, null, null, null, null);
+        Assert.assertTrue(System.currentTimeMillis() - t >= 5);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.test.crud;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.redhat.lightblue.EntityVersion;
+import com.redhat.lightblue.OperationStatus;
+import com.redhat.lightblue.Response;
+import com.redhat.lightblue.crud.Factory;
+import com.redhat.lightblue.crud.FindRequest;
+import com.redhat.lightblue.crud.InsertionRequest;
+import com.redhat.lightblue.crud.UpdateRequest;
+import com.redhat.lightblue.crud.validator.DefaultFieldConstraintValidators;
+import com.redhat.lightblue.crud.validator.EmptyEntityConstraintValidators;
+import com.redhat.lightblue.mediator.Mediator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.metadata.parser.Extensions;
+import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
+import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.UpdateExpression;
+import com.redhat.lightblue.test.AllocationMeter;
+import com.redhat.lightblue.test.metadata.FakeMetadata;
+import com.redhat.lightblue.test.metadata.parser.FakeDataStoreParser;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+
+/**
+ * Allocation budgets of mediator requests on the composite entities of
+ * the crud tests, stored in the in-memory controller. A test fails if
+ * the bytes allocated per request go over its budget. Budgets are
+ * about twice the allocation measured when they were set, to allow
+ * for differences between JVMs. If a change legitimately allocates
+ * more, raise the budget in the same change.
+ */
+public class MediatorAllocationTest {
+
+    private static final int WARMUP = 2000;
+    private static final int N = 500;
+    private static final int INSERT_DOCS = 10;
+
+    private static final long FIND_BUDGET = 55000;
+    private static final long INSERT_BUDGET = 120000;
+    private static final long UPDATE_BUDGET = 55000;
+    private static final long COMPOSITE_FIND_BUDGET = 180000;
+
+    private static final JsonNodeFactory NODE_FACTORY = JsonNodeFactory.withExactBigDecimals(true);
+
+    private Mediator mediator;
+
+    private static JsonNode json(String s) throws Exception {
+        return JsonUtils.json(s.replace('\'', '\"'));
+    }
+
+    private static JsonNode resource(String name) throws Exception {
+        try (InputStream in = MediatorAllocationTest.class.getClassLoader().getResourceAsStream(name)) {
+            return JsonUtils.json(in);
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        Assume.assumeTrue(AllocationMeter.isSupported());
+        Extensions<JsonNode> extensions = new Extensions<>();
+        extensions.addDefaultExtensions();
+        extensions.registerDataStoreParser("mongo", new FakeDataStoreParser<JsonNode>("mongo"));
+        JSONMetadataParser parser = new JSONMetadataParser(extensions, new DefaultTypes(), NODE_FACTORY);
+
+        FakeMetadata metadata = new FakeMetadata();
+        InMemoryCRUDController controller = new InMemoryCRUDController();
+        for (String entity : new String[]{"A", "B", "C", "D"}) {
+            EntityMetadata md = parser.parseEntityMetadata(resource("composite/" + entity + ".json"));
+            PredefinedFields.ensurePredefinedFields(md);
+            metadata.setEntityInfo(md.getEntityInfo());
+            metadata.setEntityMetadata(entity, md.getVersion().getValue(), md);
+            List<JsonDoc> docs = new ArrayList<>();
+            for (JsonNode doc : resource("composite/" + entity + "_data.json")) {
+                docs.add(new JsonDoc(doc));
+            }
+            controller.load(md, docs);
+        }
+        Factory factory = new Factory();
+        factory.addFieldConstraintValidators(new DefaultFieldConstraintValidators());
+        factory.addEntityConstraintValidators(new EmptyEntityConstraintValidators());
+        factory.addCRUDController("mongo", controller);
+        mediator = new Mediator(metadata, factory);
+    }
+
+    /**
+     * Runs the request once to check it succeeds, then measures its
+     * allocation
+     */
+    private void assertBudget(String name, long budget, final Request req) {
+        Response response = req.run();
+        Assert.assertEquals(response.getErrors().toString(), OperationStatus.COMPLETE, response.getStatus());
+        long bytes = AllocationMeter.measure(new Runnable() {
+            @Override
+            public void run() {
+                req.run();
+            }
+        }, WARMUP, N);
+        Assert.assertTrue(name + " allocated " + bytes + " bytes per request, budget is " + budget, bytes <= budget);
+    }
+
+    private interface Request {
+        Response run();
+    }
+
+    @Test
+    public void findBudget() throws Exception {
+        final FindRequest req = new FindRequest();
+        req.setEntityVersion(new EntityVersion("A", "1.0.0"));
+        req.setQuery(QueryExpression.fromJson(json("{'field':'_id','op':'=','rvalue':'A01'}")));
+        req.setProjection(Projection.fromJson(json("{'field':'*','recursive':1}")));
+        assertBudget("find", FIND_BUDGET, new Request() {
+            @Override
+            public Response run() {
+                return mediator.find(req);
+            }
+        });
+    }
+
+    @Test
+    public void compositeFindBudget() throws Exception {
+        final FindRequest req = new FindRequest();
+        req.setEntityVersion(new EntityVersion("A", "1.0.0"));
+        req.setQuery(QueryExpression.fromJson(json("{'field':'_id','op':'=','rvalue':'A01'}")));
+        req.setProjection(Projection.fromJson(json("[{'field':'*','recursive':1},{'field':'b'},{'field':'obj1.c'}]")));
+        assertBudget("compositeFind", COMPOSITE_FIND_BUDGET, new Request() {
+            @Override
+            public Response run() {
+                return mediator.find(req);
+            }
+        });
+    }
+
+    @Test
+    public void insertBudget() throws Exception {
+        final ArrayNode docs = NODE_FACTORY.arrayNode();
+        for (int i = 0; i < INSERT_DOCS; i++) {
+            docs.add(json("{'objectType':'A','field1':'f" + i + "','obj1':{'field1':'o','c_ref':'C01'},'b_ref':'B01'}"));
+        }
+        final Projection projection = Projection.fromJson(json("{'field':'_id'}"));
+        assertBudget("insert of " + INSERT_DOCS + " docs", INSERT_BUDGET, new Request() {
+            private int n = 0;
+
+            @Override
+            public Response run() {
+                // Each request inserts new documents
+                ArrayNode data = NODE_FACTORY.arrayNode();
+                for (JsonNode doc : docs) {
+                    data.add(((ObjectNode) doc).deepCopy().put("_id", "I" + (n++)));
+                }
+                InsertionRequest req = new InsertionRequest();
+                req.setEntityVersion(new EntityVersion("A", "1.0.0"));
+                req.setEntityData(data);
+                req.setReturnFields(projection);
+                return mediator.insert(req);
+            }
+        });
+    }
+
+    @Test
+    public void updateBudget() throws Exception {
+        final UpdateRequest req = new UpdateRequest();
+        req.setEntityVersion(new EntityVersion("A", "1.0.0"));
+        req.setQuery(QueryExpression.fromJson(json("{'field':'_id','op':'=','rvalue':'A01'}")));
+        req.setUpdateExpression(UpdateExpression.fromJson(json("{'$set':{'field1':'x'}}")));
+        assertBudget("update", UPDATE_BUDGET, new Request() {
+            @Override
+            public Response run() {
+                return mediator.update(req);
+            }
+        });
+    }
+}
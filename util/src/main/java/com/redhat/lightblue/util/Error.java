@@ -27,6 +27,8 @@ import org.slf4j.LoggerFactory;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.StringTokenizer;
 
 /**
@@ -82,6 +84,16 @@ public final class Error extends RuntimeException {
         }
     }
 
+    /**
+     * Returns a copy of the context information in the current thread
+     * stack. The elements of the returned list can be pushed by another
+     * thread working on behalf of this thread, so the errors created by
+     * that thread have the same context.
+     */
+    public static List<String> getThreadContext() {
+        return new ArrayList<>(THREAD_CONTEXT.get());
+    }
+
     /**
      * Constructs a new error object by pushing the given context on top of the
      * current context
@@ -0,0 +1,143 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Reads and writes JSON trees in a wire format. The format is given by a
+ * Jackson JsonFactory: a JsonFactory for text JSON, or a binary JSON
+ * factory such as SmileFactory or CBORFactory. All formats are read with
+ * the same settings as JsonUtils.getObjectMapper(), so floating point
+ * numbers are read as BigDecimals, and the node factory determines
+ * whether their scale is kept.
+ *
+ * Instances are thread safe.
+ */
+public class JsonCodec {
+
+    /**
+     * Text JSON codec. Decimal numbers keep their scale.
+     */
+    public static final JsonCodec TEXT = new JsonCodec(new JsonFactory(), JsonNodeFactory.withExactBigDecimals(true));
+
+    /**
+     * Smile binary JSON codec. Decimal numbers keep their scale.
+     */
+    public static final JsonCodec SMILE = new JsonCodec(new SmileFactory(), JsonNodeFactory.withExactBigDecimals(true));
+
+    private final ObjectMapper mapper;
+
+    /**
+     * Constructs a codec for the format, using the default node factory
+     */
+    public JsonCodec(JsonFactory factory) {
+        this(factory, JsonNodeFactory.instance);
+    }
+
+    /**
+     * Constructs a codec for the format, building trees with the node
+     * factory
+     */
+    public JsonCodec(JsonFactory factory, JsonNodeFactory nodeFactory) {
+        mapper = JsonUtils.getObjectMapper(factory);
+        mapper.setNodeFactory(nodeFactory);
+    }
+
+    /**
+     * Returns the object mapper of this codec
+     */
+    public ObjectMapper getObjectMapper() {
+        return mapper;
+    }
+
+    /**
+     * Returns the factory of the wire format
+     */
+    public JsonFactory getFactory() {
+        return mapper.getFactory();
+    }
+
+    /**
+     * Returns the name of the wire format, such as JSON or Smile
+     */
+    public String getFormatName() {
+        return mapper.getFactory().getFormatName();
+    }
+
+    /**
+     * Returns a parser reading the stream. The parser has the object
+     * mapper of this codec, so it can read trees.
+     */
+    public JsonParser createParser(InputStream stream) throws IOException {
+        return mapper.getFactory().createParser(stream);
+    }
+
+    /**
+     * Returns a generator writing to the stream. The generator has the
+     * object mapper of this codec, so it can write trees.
+     */
+    public JsonGenerator createGenerator(OutputStream stream) throws IOException {
+        return mapper.getFactory().createGenerator(stream);
+    }
+
+    /**
+     * Reads a JSON tree from the stream
+     */
+    public JsonNode read(InputStream stream) throws IOException {
+        return mapper.readTree(stream);
+    }
+
+    /**
+     * Reads a JSON tree from the bytes
+     */
+    public JsonNode read(byte[] bytes) throws IOException {
+        return mapper.readTree(bytes);
+    }
+
+    /**
+     * Writes the JSON tree to the stream. The stream is not closed.
+     */
+    public void write(JsonNode node, OutputStream stream) throws IOException {
+        try (JsonGenerator generator = createGenerator(stream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeTree(node);
+        }
+    }
+
+    /**
+     * Returns the JSON tree in the wire format
+     */
+    public byte[] toBytes(JsonNode node) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        write(node, out);
+        return out.toByteArray();
+    }
+}
@@ -36,15 +36,19 @@
  */
 package com.redhat.lightblue.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BaseJsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Wrapper class around JSOn documents
@@ -271,7 +275,7 @@ public class JsonDoc implements Serializable {
 
         public PathCursor(Path p) {
             path = p;
-            nextNode = resolver.resolve(path, docRoot, 0);
+            nextNode = resolver.resolve(path, getRoot(), 0);
             if (nextNode != null) {
                 nextFound = true;
             }
@@ -371,7 +375,7 @@ public class JsonDoc implements Serializable {
     }
 
     public JsonNodeCursor cursor(Path p) {
-        return cursor(docRoot, p);
+        return cursor(getRoot(), p);
     }
 
     public static JsonNodeCursor cursor(JsonNode root, Path p) {
@@ -386,9 +390,23 @@ public class JsonDoc implements Serializable {
      * Returns a cursor iterating through all nodes of arrays, if any
      */
     public KeyValueCursor<Path, JsonNode> getAllNodes(Path p) {
+        if (p.isSimple()) {
+            return new SingleValueCursor<>(p, getSimple(getRoot(), p));
+        }
         return new PathCursor(p);
     }
 
+    /**
+     * Static utility to return all nodes matching a path relative to a
+     * node. The path can contain *
+     */
+    public static KeyValueCursor<Path, JsonNode> getAllNodes(JsonNode root, Path p) {
+        if (p.isSimple()) {
+            return new SingleValueCursor<>(p, getSimple(root, p));
+        }
+        return new JsonDoc(root).new PathCursor(p);
+    }
+
     /**
      * Returns a node matching a path
      *
@@ -399,16 +417,39 @@ public class JsonDoc implements Serializable {
      * @returns The node, or null if the node cannot be found
      */
     public JsonNode get(Path p) {
-        return get(docRoot, p);
+        return get(getRoot(), p);
     }
 
     /**
      * Static utility to resolve a path relative to a node
      */
     public static JsonNode get(JsonNode root, Path p) {
+        if (p.isSimple()) {
+            return getSimple(root, p);
+        }
         return DEFAULT_RESOLVER.resolve(p, root, 0);
     }
 
+    /**
+     * Resolves a path without '*', '$parent' or '$this' by following the
+     * segments
+     */
+    private static JsonNode getSimple(JsonNode root, Path p) {
+        JsonNode output = root;
+        int n = p.numSegments();
+        for (int l = 0; l < n && output != null; l++) {
+            if (output instanceof ObjectNode) {
+                output = output.get(p.head(l));
+            } else if (output instanceof ArrayNode) {
+                int index = p.getIndex(l);
+                output = output.get(index < 0 ? output.size() + index : index);
+            } else {
+                output = null;
+            }
+        }
+        return output;
+    }
+
     /**
      * Modifies an existing node value
      *
@@ -492,14 +533,15 @@ public class JsonDoc implements Serializable {
      * Returns a deep copy of the current document
      */
     public JsonDoc copy() {
-        return new JsonDoc(docRoot.deepCopy());
+        return new JsonDoc(getRoot().deepCopy());
     }
 
     private JsonNode getParentNode(Path parent, boolean createPath, Path p) {
-        JsonNode parentNode = DEFAULT_RESOLVER.resolve(parent, docRoot, 0);
+        JsonNode root = getRoot();
+        JsonNode parentNode = DEFAULT_RESOLVER.resolve(parent, root, 0);
         if (parentNode == null && createPath) {
-            CREATING_RESOLVER.resolve(p, docRoot, 0);
-            parentNode = DEFAULT_RESOLVER.resolve(parent, docRoot, 0);
+            CREATING_RESOLVER.resolve(p, root, 0);
+            parentNode = DEFAULT_RESOLVER.resolve(parent, root, 0);
         }
         if (parentNode != null) {
             if (!parentNode.isContainerNode()) {
@@ -556,8 +598,39 @@ public class JsonDoc implements Serializable {
         return oldValue;
     }
 
+    /**
+     * Returns a document with the top-level fields of this document that
+     * are in the set, used to read only the fields a caller needs. The
+     * returned document may have other fields too: this implementation
+     * returns this document. Documents that parse their fields on demand
+     * return a document without the other fields, so they are not
+     * parsed.
+     */
+    public JsonDoc select(Set<String> fields) {
+        return this;
+    }
+
+    /**
+     * Writes the document to the generator
+     */
+    public void writeTo(JsonGenerator generator) throws IOException {
+        writeNode(generator, getRoot());
+    }
+
+    /**
+     * Writes the node to the generator. If the generator has no object
+     * codec, the node serializes itself.
+     */
+    protected static void writeNode(JsonGenerator generator, JsonNode node) throws IOException {
+        if (generator.getCodec() != null) {
+            generator.writeTree(node);
+        } else {
+            ((BaseJsonNode) node).serialize(generator, null);
+        }
+    }
+
     @Override
     public String toString() {
-        return docRoot.toString();
+        return getRoot().toString();
     }
 }
@@ -18,6 +18,7 @@
  */
 package com.redhat.lightblue.util;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -51,7 +52,17 @@ public final class JsonUtils {
      * Returns an object mapper to parse JSON text
      */
     public static ObjectMapper getObjectMapper() {
-        ObjectMapper mapper = new ObjectMapper();
+        return getObjectMapper(new JsonFactory());
+    }
+
+    /**
+     * Returns an object mapper to read and write the format of the given
+     * factory, with the same settings as the text JSON object mapper. Use
+     * a binary JSON factory, such as SmileFactory or CBORFactory, to
+     * read and write binary JSON.
+     */
+    public static ObjectMapper getObjectMapper(JsonFactory factory) {
+        ObjectMapper mapper = new ObjectMapper(factory);
         mapper.configure(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS, true);
         return mapper;
     }
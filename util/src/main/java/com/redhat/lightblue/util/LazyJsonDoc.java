@@ -0,0 +1,402 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * A JSON document backed by its UTF-8 encoded text. On construction, the
+ * document is scanned once to build an index of the byte ranges of the
+ * top-level field values. A field value is parsed into a JsonNode only
+ * when it is accessed with get, getAllNodes or modify using a path
+ * without '*', '$parent' or '$this'. Any other access, including
+ * getRoot, parses the remaining fields and uses the complete tree from
+ * then on.
+ *
+ * When the document is written to a text generator, the fields that
+ * were not parsed are written as they appear in the input, without
+ * parsing them.
+ *
+ * Nodes returned by this document are part of the document, as with
+ * JsonDoc, so modifications to them are visible in the output.
+ *
+ * A serialized lazy document is written as its current JSON text, and
+ * is read back as a lazy document using the default codec.
+ */
+public class LazyJsonDoc extends JsonDoc {
+
+    private static final long serialVersionUID = 1l;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Codec used when no codec is given. Keeps the scale of decimal
+     * numbers, as the default node factory of the mediator does.
+     */
+    private static final JsonCodec DEFAULT_CODEC = new JsonCodec(new JsonFactory(), JsonNodeFactory.withExactBigDecimals(true));
+
+    private final transient byte[] bytes;
+    private final transient JsonCodec codec;
+    private transient String[] names;
+    private transient int[] starts;
+    private transient int[] ends;
+    private transient JsonNode[] nodes;
+    private transient JsonNode root;
+
+    /**
+     * Constructs a document from UTF-8 encoded JSON text
+     */
+    public LazyJsonDoc(byte[] bytes) {
+        this(bytes, DEFAULT_CODEC);
+    }
+
+    /**
+     * Constructs a document from UTF-8 encoded JSON text, parsing the
+     * field values using the codec
+     *
+     * @throws IllegalArgumentException if the codec is not a text JSON
+     * codec, or the text is not valid JSON
+     */
+    public LazyJsonDoc(byte[] bytes, JsonCodec codec) {
+        super(null);
+        if (!JsonCodec.TEXT.getFormatName().equals(codec.getFormatName())) {
+            throw new IllegalArgumentException(codec.getFormatName());
+        }
+        this.bytes = bytes;
+        this.codec = codec;
+        try {
+            index();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private LazyJsonDoc(LazyJsonDoc doc) {
+        super(null);
+        bytes = doc.bytes;
+        codec = doc.codec;
+        names = doc.names;
+        starts = doc.starts;
+        ends = doc.ends;
+        nodes = new JsonNode[names.length];
+    }
+
+    /**
+     * Constructs a document with n of the fields of doc, sharing the text
+     * and the parsed nodes
+     */
+    private LazyJsonDoc(LazyJsonDoc doc, Set<String> fields, int n) {
+        super(null);
+        bytes = doc.bytes;
+        codec = doc.codec;
+        names = new String[n];
+        starts = new int[n];
+        ends = new int[n];
+        nodes = new JsonNode[n];
+        int k = 0;
+        for (int i = 0; i < doc.names.length; i++) {
+            if (fields.contains(doc.names[i])) {
+                names[k] = doc.names[i];
+                starts[k] = doc.starts[i];
+                ends[k] = doc.ends[i];
+                nodes[k] = doc.nodes[i];
+                k++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of top-level fields that are parsed
+     */
+    public int getParsedFieldCount() {
+        if (root != null) {
+            return root.size();
+        }
+        int n = 0;
+        for (JsonNode x : nodes) {
+            if (x != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns if the whole document is parsed
+     */
+    public boolean isParsed() {
+        return root != null;
+    }
+
+    @Override
+    public JsonNode getRoot() {
+        if (root == null) {
+            ObjectNode node = codec.getObjectMapper().getDeserializationConfig().getNodeFactory().objectNode();
+            for (int i = 0; i < names.length; i++) {
+                node.set(names[i], getField(i));
+            }
+            root = node;
+            names = null;
+            starts = null;
+            ends = null;
+            nodes = null;
+        }
+        return root;
+    }
+
+    @Override
+    public JsonNode get(Path p) {
+        if (root == null && p.isSimple() && p.numSegments() > 0) {
+            int i = find(p.head(0));
+            if (i < 0) {
+                return null;
+            }
+            return JsonDoc.get(getField(i), p.suffix(-1));
+        }
+        return super.get(p);
+    }
+
+    @Override
+    public KeyValueCursor<Path, JsonNode> getAllNodes(Path p) {
+        if (root == null && p.isSimple()) {
+            return new SingleValueCursor<>(p, get(p));
+        }
+        return super.getAllNodes(p);
+    }
+
+    @Override
+    public JsonNode modify(Path p, JsonNode newValue, boolean createPath) {
+        if (root == null && p.isSimple() && p.numSegments() > 1) {
+            int i = find(p.head(0));
+            if (i >= 0) {
+                JsonNode field = getField(i);
+                if (field.isContainerNode()) {
+                    return new JsonDoc(field).modify(p.suffix(-1), newValue, createPath);
+                }
+            }
+        }
+        return super.modify(p, newValue, createPath);
+    }
+
+    @Override
+    public JsonDoc copy() {
+        if (root == null && getParsedFieldCount() == 0) {
+            return new LazyJsonDoc(this);
+        }
+        return super.copy();
+    }
+
+    /**
+     * Returns a lazy document with the top-level fields in the set,
+     * sharing the text and the parsed nodes of this document. If the
+     * whole document is parsed, or all fields are in the set, returns
+     * this.
+     */
+    @Override
+    public JsonDoc select(Set<String> fields) {
+        if (root != null) {
+            return this;
+        }
+        int n = 0;
+        for (String name : names) {
+            if (fields.contains(name)) {
+                n++;
+            }
+        }
+        return n == names.length ? this : new LazyJsonDoc(this, fields, n);
+    }
+
+    @Override
+    public void writeTo(JsonGenerator generator) throws IOException {
+        if (root != null || generator.canWriteBinaryNatively()) {
+            super.writeTo(generator);
+        } else {
+            generator.writeStartObject();
+            for (int i = 0; i < names.length; i++) {
+                generator.writeFieldName(names[i]);
+                if (nodes[i] != null) {
+                    writeNode(generator, nodes[i]);
+                } else {
+                    generator.writeRawValue(new String(bytes, starts[i], ends[i] - starts[i], UTF8));
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = codec.getFactory().createGenerator(out)) {
+            writeTo(generator);
+        } catch (IOException e) {
+            throw new InvalidObjectException(e.toString());
+        }
+        return new SerializedForm(out.toByteArray());
+    }
+
+    /**
+     * The serialized form of a lazy document: its JSON text
+     */
+    private static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1l;
+
+        private final byte[] bytes;
+
+        public SerializedForm(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return new LazyJsonDoc(bytes);
+        }
+    }
+
+    /**
+     * Returns the index of the field. If there are duplicate fields, the
+     * last one is returned, as the parser does.
+     */
+    private int find(String name) {
+        for (int i = names.length - 1; i >= 0; i--) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private JsonNode getField(int i) {
+        if (nodes[i] == null) {
+            try (JsonParser p = codec.getFactory().createParser(bytes, starts[i], ends[i] - starts[i])) {
+                nodes[i] = codec.getObjectMapper().readTree(p);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        return nodes[i];
+    }
+
+    /**
+     * Builds the index of the top-level field values. The parser checks
+     * the structure of the document. The token locations of the parser
+     * are the ends of field values, so the starts of the values are
+     * found by skipping the field names in the text.
+     */
+    private void index() throws IOException {
+        int n = 0;
+        String[] fieldNames = new String[8];
+        int[] nameStarts = new int[8];
+        int[] valueEnds = new int[8];
+        try (JsonParser p = codec.getFactory().createParser(bytes)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                root = codec.read(bytes);
+                return;
+            }
+            JsonToken t = p.nextToken();
+            while (t == JsonToken.FIELD_NAME) {
+                if (n == fieldNames.length) {
+                    fieldNames = Arrays.copyOf(fieldNames, n * 2);
+                    nameStarts = Arrays.copyOf(nameStarts, n * 2);
+                    valueEnds = Arrays.copyOf(valueEnds, n * 2);
+                }
+                fieldNames[n] = p.getCurrentName();
+                nameStarts[n] = (int) p.getTokenLocation().getByteOffset();
+                p.nextToken();
+                p.skipChildren();
+                t = p.nextToken();
+                if (t == null) {
+                    throw new IOException("Unexpected end of input");
+                }
+                valueEnds[n] = (int) p.getTokenLocation().getByteOffset();
+                n++;
+            }
+            if (t != JsonToken.END_OBJECT) {
+                throw new IOException("Unexpected token:" + t);
+            }
+        }
+        names = Arrays.copyOf(fieldNames, n);
+        starts = new int[n];
+        ends = new int[n];
+        nodes = new JsonNode[n];
+        for (int i = 0; i < n; i++) {
+            starts[i] = skipName(nameStarts[i]);
+            ends[i] = trimEnd(starts[i], valueEnds[i]);
+        }
+    }
+
+    /**
+     * Returns the start of the value of the field whose name starts at
+     * the position, skipping the separator before the name, the name,
+     * and the colon
+     */
+    private int skipName(int pos) {
+        int i = skipSeparators(pos);
+        // Opening quote
+        i++;
+        while (bytes[i] != '"') {
+            if (bytes[i] == '\\') {
+                i++;
+            }
+            i++;
+        }
+        i = skipSeparators(i + 1);
+        return i;
+    }
+
+    /**
+     * Skips whitespace, commas and colons
+     */
+    private int skipSeparators(int pos) {
+        int i = pos;
+        while (isSeparator(bytes[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the end of the value before the position, removing
+     * trailing whitespace and commas
+     */
+    private int trimEnd(int start, int end) {
+        int i = end;
+        while (i > start && isSeparator(bytes[i - 1])) {
+            i--;
+        }
+        return i;
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == ',' || b == ':';
+    }
+}
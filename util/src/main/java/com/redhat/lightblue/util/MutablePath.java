@@ -18,8 +18,6 @@
  */
 package com.redhat.lightblue.util;
 
-import java.util.List;
-
 /**
  * A Path that can be modified. Uses copy-on-write semantics to prevent
  * unnecessary copies.
@@ -95,8 +93,8 @@ public class MutablePath extends Path {
         if (x == null) {
             throw new IllegalArgumentException(UtilConstants.ERR_NULL_VALUE_PASSED_TO_PUSH);
         }
-        List<String> s = parse(x);
-        if (s != null && !s.isEmpty()) {
+        PathRep s = parseRep(x);
+        if (s.size() > 0) {
             own();
             getData().append(s);
         }
@@ -150,7 +148,7 @@ public class MutablePath extends Path {
         try {
             own();
             getData().remove(getData().size() - 1);
-            getData().append(parse(x));
+            getData().append(parseRep(x));
             return this;
         } catch (IndexOutOfBoundsException e) {
             throw new IllegalStateException(UtilConstants.ERR_CANT_SET_LAST_SEGMENT_ON_EMPTY_PATH);
@@ -22,6 +22,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a path in a tree, of the form
@@ -50,6 +51,9 @@ import java.util.List;
  *
  * Implementation is optimized to be fast to toString and hashCode, and does not
  * occupy too much memory when a lot of paths are created from a common prefix.
+ * Segments are kept in an array shared by copies, prefixes and suffixes of
+ * the path. Parsed path strings are cached, so paths created from the same
+ * string share the segment array, string value and hash code.
  *
  * $parent and $this keywords can be used to create relative paths.
  * <pre>
@@ -73,6 +77,14 @@ public class Path implements Comparable<Path>, Serializable {
     public static final String PARENT = "$parent";
     public static final String THIS = "$this";
 
+    /**
+     * Maximum number of path strings in the parse cache. The cache is
+     * cleared when it is full.
+     */
+    public static final int PARSE_CACHE_SIZE = 4096;
+
+    private static final ConcurrentHashMap<String, PathRep> PARSE_CACHE = new ConcurrentHashMap<>();
+
     public static final Path EMPTY = new Path();
     public static final Path ANYPATH = new Path(ANY);
 
@@ -113,9 +125,7 @@ public class Path implements Comparable<Path>, Serializable {
     }
 
     public Path(String x) {
-        this();
-        List<String> s = parse(x);
-        data.append(s);
+        data = parseRep(x);
     }
 
     protected void setData(PathRep pr) {
@@ -208,7 +218,7 @@ public class Path implements Comparable<Path>, Serializable {
      * @return
      */
     public int getIndex(int i) {
-        return Integer.valueOf(data.get(i));
+        return Integer.parseInt(data.get(i));
     }
 
     /**
@@ -219,13 +229,16 @@ public class Path implements Comparable<Path>, Serializable {
      * @return
      */
     public boolean isIndex(int i) {
-        return Util.isNumber(data.get(i));
+        return data.isIndex(i);
     }
 
     /**
      * Returns the number of ANY elements in the path
      */
     public int nAnys() {
+        if (!data.hasAny()) {
+            return 0;
+        }
         int n = 0;
         for (Iterator<String> itr = data.iterator(); itr.hasNext();) {
             if (ANY.equals(itr.next())) {
@@ -235,6 +248,15 @@ public class Path implements Comparable<Path>, Serializable {
         return n;
     }
 
+    /**
+     * Returns true if the path has no '*', '$parent' or '$this' segments.
+     * Such a path denotes at most one node, and can be resolved by
+     * following the segments. The result is cached with the path data.
+     */
+    public boolean isSimple() {
+        return !data.hasAny() && !data.isRelative();
+    }
+
     @Override
     public int hashCode() {
         return data.hashCode();
@@ -272,17 +294,11 @@ public class Path implements Comparable<Path>, Serializable {
     public Path suffix(final int x) {
         Path p;
         if (this instanceof MutablePath) {
-            p = new MutablePath((MutablePath) this);
+            p = new MutablePath();
         } else {
-            p = new Path(this);
+            p = new Path();
         }
-        int n = p.data.size();
-        if (x >= 0) {
-            p.data.shiftLeft(n - Math.min(n, x));
-        } else {
-            p.data.shiftLeft(Math.min(n, Math.abs(x)));
-        }
-
+        p.data = data.suffix(x);
         return p;
     }
 
@@ -393,6 +409,27 @@ public class Path implements Comparable<Path>, Serializable {
         return data.toString();
     }
 
+    /**
+     * Returns the representation of the path string. Parsed strings are
+     * cached, the returned representation shares the segment array of the
+     * cached one.
+     */
+    static PathRep parseRep(String x) {
+        PathRep rep = PARSE_CACHE.get(x);
+        if (rep == null) {
+            List<String> s = parse(x);
+            rep = new PathRep(s.toArray(new String[s.size()]));
+            rep.hashCode();
+            rep.toString();
+            rep.hasAny();
+            if (PARSE_CACHE.size() >= PARSE_CACHE_SIZE) {
+                PARSE_CACHE.clear();
+            }
+            PARSE_CACHE.put(x, rep);
+        }
+        return new PathRep(rep);
+    }
+
     /**
      * Parses the input path string (x) and appends each segment to the segments
      * argument.
@@ -19,35 +19,68 @@
 package com.redhat.lightblue.util;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
- * Internal representation of Path
+ * Internal representation of Path. Segments are kept in a range of a
+ * string array. Copies, prefixes and suffixes share the array with the
+ * source. Once an array is shared, it is not modified: a shared
+ * representation copies its range to a new array before the first
+ * modification.
+ *
+ * The array index flags of the segments are computed on first use, and
+ * shared along with the array.
  */
 class PathRep implements Serializable, Comparable<PathRep> {
     private static final long serialVersionUID = 1l;
 
-    private final List<String> segments;
+    private static final String[] NO_SEGMENTS = new String[0];
 
+    private static final int KIND_COMPUTED = 1;
+    private static final int KIND_ANY = 2;
+    private static final int KIND_RELATIVE = 4;
+
+    private String[] segments;
+    private int start;
+    private int size;
+
+    /**
+     * If true, the segments array is shared with another representation,
+     * and must be copied before modification
+     */
+    private transient boolean shared;
+    private transient volatile boolean[] indexFlags;
     private transient String stringValue = null;
     private transient int hashValue = 0;
+    private transient int kind = 0;
 
     /**
      * Creates an empty path
      */
     public PathRep() {
-        segments = new ArrayList<>(10);
+        segments = NO_SEGMENTS;
+        shared = true;
+    }
+
+    /**
+     * Creates a path with the segments. The array is owned by the new
+     * path.
+     */
+    PathRep(String[] segments) {
+        this.segments = segments;
+        this.size = segments.length;
     }
 
     /**
      * Copy ctor
      */
     public PathRep(PathRep data) {
-        segments = new ArrayList<>(data.segments);
+        this(data, data.start, data.size);
         stringValue = data.stringValue;
         hashValue = data.hashValue;
+        kind = data.kind;
     }
 
     /**
@@ -58,27 +91,51 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * elements from the end are removed
      */
     public PathRep(PathRep data, int x) {
-        int k = data.segments.size();
-        segments = new ArrayList<>(k);
+        this(data, data.start, prefixSize(data.size, x));
+    }
+
+    /**
+     * Creates a view of the source, containing n segments starting from
+     * the array index from
+     */
+    private PathRep(PathRep data, int from, int n) {
+        segments = data.segments;
+        start = from;
+        size = n;
+        indexFlags = data.indexFlags;
+        shared = true;
+        data.shared = true;
+    }
+
+    private static int prefixSize(int k, int x) {
         int n;
         if (x >= 0) {
             n = k > x ? x : k;
         } else {
             n = k + x;
         }
-        for (String s: data.segments) {
-            if (n <= 0)
-                break;
-            segments.add(s);
-            n--;
-        }
+        return n < 0 ? 0 : n;
+    }
+
+    /**
+     * Returns a suffix of this path. If x>=0, the suffix contains the
+     * last x elements. If x<0, -x elements from the beginning are
+     * removed.
+     */
+    public PathRep suffix(int x) {
+        int n = x >= 0 ? Math.min(size, x) : size - Math.min(size, -x);
+        return new PathRep(this, start + size - n, n);
     }
 
     /**
      * Clears the path
      */
     public void clear() {
-        segments.clear();
+        segments = NO_SEGMENTS;
+        start = 0;
+        size = 0;
+        indexFlags = null;
+        shared = true;
         resetState();
     }
 
@@ -88,27 +145,79 @@ class PathRep implements Serializable, Comparable<PathRep> {
     public void resetState() {
         stringValue = null;
         hashValue = 0;
+        kind = 0;
     }
 
     /**
      * Returns the number of segments
      */
     public int size() {
-        return segments.size();
+        return size;
     }
 
     /**
      * Returns the element at the index
      */
     public String get(int index) {
-        return segments.get(index);
+        checkIndex(index);
+        return segments[start + index];
+    }
+
+    /**
+     * Returns if the element at the index is an array index
+     */
+    public boolean isIndex(int index) {
+        checkIndex(index);
+        boolean[] flags = indexFlags;
+        if (flags == null) {
+            flags = new boolean[segments.length];
+            for (int i = 0; i < flags.length; i++) {
+                flags[i] = Util.isNumber(segments[i]);
+            }
+            indexFlags = flags;
+        }
+        return flags[start + index];
+    }
+
+    /**
+     * Returns if the path has '*' segments
+     */
+    public boolean hasAny() {
+        return (getKind() & KIND_ANY) != 0;
+    }
+
+    /**
+     * Returns if the path has '$parent' or '$this' segments
+     */
+    public boolean isRelative() {
+        return (getKind() & KIND_RELATIVE) != 0;
+    }
+
+    private int getKind() {
+        int k = kind;
+        if (k == 0) {
+            k = KIND_COMPUTED;
+            for (int i = start, end = start + size; i < end; i++) {
+                String s = segments[i];
+                if (Path.ANY.equals(s)) {
+                    k |= KIND_ANY;
+                } else if (Path.PARENT.equals(s) || Path.THIS.equals(s)) {
+                    k |= KIND_RELATIVE;
+                }
+            }
+            kind = k;
+        }
+        return k;
     }
 
     /**
      * Removes the element at index
      */
     public void remove(int index) {
-        segments.remove(index);
+        checkIndex(index);
+        own(size);
+        System.arraycopy(segments, index + 1, segments, index, size - index - 1);
+        segments[--size] = null;
         resetState();
     }
 
@@ -116,7 +225,9 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Sets the element at index
      */
     public void set(int index, String x) {
-        segments.set(index, x);
+        checkIndex(index);
+        own(size);
+        segments[index] = x;
         resetState();
     }
 
@@ -124,13 +235,37 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Returns an iterator over segments
      */
     public Iterator<String> iterator() {
-        return segments.iterator();
+        return new Iterator<String>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            public String next() {
+                if (i >= size) {
+                    throw new NoSuchElementException();
+                }
+                return segments[start + i++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     @Override
     public int hashCode() {
         if (hashValue == 0) {
-            hashValue = segments.hashCode();
+            int h = 1;
+            for (int i = start, end = start + size; i < end; i++) {
+                h = 31 * h + segments[i].hashCode();
+            }
+            hashValue = h;
         }
         return hashValue;
     }
@@ -139,7 +274,21 @@ class PathRep implements Serializable, Comparable<PathRep> {
     public boolean equals(Object o) {
         if (o instanceof PathRep) {
             PathRep r = (PathRep) o;
-            return r.segments.equals(segments);
+            if (r.size != size) {
+                return false;
+            }
+            if (r.segments == segments && r.start == start) {
+                return true;
+            }
+            if (hashValue != 0 && r.hashValue != 0 && hashValue != r.hashValue) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (!segments[start + i].equals(r.segments[r.start + i])) {
+                    return false;
+                }
+            }
+            return true;
         }
         return false;
     }
@@ -149,21 +298,10 @@ class PathRep implements Serializable, Comparable<PathRep> {
      */
     public void shiftLeft(final int from) {
         if (from > 0) {
-            int n = segments.size();
-            if (from >= n) {
-                segments.clear();
-            } else {
-                int iFrom = from;
-                int k = n - iFrom;
-                int to = 0;
-                for (int i = 0; i < k; i++) {
-                    segments.set(to++, segments.get(iFrom++));
-                }
-                k = n - k;
-                for (int i = 0; i < k; i++) {
-                    segments.remove(--n);
-                }
-            }
+            // The array is not modified, the range is moved
+            int n = Math.min(from, size);
+            start += n;
+            size -= n;
             resetState();
         }
     }
@@ -172,26 +310,65 @@ class PathRep implements Serializable, Comparable<PathRep> {
      * Appends p to the end of this
      */
     public void append(PathRep p) {
-        append(p.segments);
-        resetState();
+        if (p.size > 0) {
+            if (size == 0) {
+                segments = p.segments;
+                start = p.start;
+                size = p.size;
+                indexFlags = p.indexFlags;
+                shared = true;
+                p.shared = true;
+            } else {
+                own(size + p.size);
+                System.arraycopy(p.segments, p.start, segments, size, p.size);
+                size += p.size;
+            }
+            resetState();
+        }
     }
 
     /**
      * Appends the string segments to the end of this
      */
     public void append(List<String> x) {
-        segments.addAll(x);
-        resetState();
+        if (!x.isEmpty()) {
+            own(size + x.size());
+            for (String s : x) {
+                segments[size++] = s;
+            }
+            resetState();
+        }
+    }
+
+    /**
+     * Makes sure this representation has its own array starting at 0,
+     * with at least the given capacity
+     */
+    private void own(int capacity) {
+        if (shared || start > 0 || segments.length < capacity) {
+            String[] arr = new String[Math.max(capacity, Math.max(size, 4) * 2)];
+            System.arraycopy(segments, start, arr, 0, size);
+            segments = arr;
+            start = 0;
+            shared = false;
+        }
+        indexFlags = null;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
     }
 
     @Override
     public int compareTo(PathRep x) {
-        int tn = segments.size();
-        int xn = x.segments.size();
+        int tn = size;
+        int xn = x.size;
         int n = tn > xn ? xn : tn;
         int index = 0;
         while (index < n) {
-            int cmp = segments.get(index).compareTo(x.segments.get(index));
+            int cmp = segments[start + index].compareTo(x.segments[x.start + index]);
             if (cmp != 0) {
                 return cmp;
             }
@@ -203,15 +380,12 @@ class PathRep implements Serializable, Comparable<PathRep> {
     @Override
     public String toString() {
         if (stringValue == null) {
-            StringBuilder buf = new StringBuilder(segments.size() * 8);
-            boolean first = true;
-            for (String x : segments) {
-                if (first) {
-                    first = false;
-                } else {
+            StringBuilder buf = new StringBuilder(size * 8);
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
                     buf.append('.');
                 }
-                buf.append(x);
+                buf.append(segments[start + i]);
             }
             stringValue = buf.toString();
         }
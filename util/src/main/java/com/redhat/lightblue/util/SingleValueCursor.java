@@ -0,0 +1,58 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+/**
+ * A cursor over at most one key-value pair. If the value is null, the
+ * cursor is empty.
+ */
+public class SingleValueCursor<K, V> implements KeyValueCursor<K, V> {
+
+    private final K key;
+    private final V value;
+    private boolean hasNext;
+    private boolean current = false;
+
+    public SingleValueCursor(K key, V value) {
+        this.key = key;
+        this.value = value;
+        hasNext = value != null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    public void next() {
+        current = hasNext;
+        hasNext = false;
+    }
+
+    @Override
+    public K getCurrentKey() {
+        return current ? key : null;
+    }
+
+    @Override
+    public V getCurrentValue() {
+        return current ? value : null;
+    }
+}
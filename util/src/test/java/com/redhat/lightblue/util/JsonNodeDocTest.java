@@ -139,4 +139,36 @@ public class JsonNodeDocTest extends AbstractJsonNodeTest {
         Assert.assertEquals(1, c.getCurrentValue().asInt());
         Assert.assertTrue(!c.hasNext());
     }
+
+    @Test
+    public void simplePathTest() throws Exception {
+        JsonDoc doc = new JsonDoc(JsonUtils.json("{\"a\":{\"b\":[{\"c\":1},{\"c\":2}]}}"));
+        Assert.assertTrue(new Path("a.b.1.c").isSimple());
+        Assert.assertFalse(new Path("a.b.*.c").isSimple());
+        Assert.assertFalse(new Path("a.$parent.b").isSimple());
+
+        Assert.assertEquals(2, doc.get(new Path("a.b.1.c")).intValue());
+        Assert.assertEquals(2, doc.get(new Path("a.b.-1.c")).intValue());
+        Assert.assertNull(doc.get(new Path("a.b.2.c")));
+        Assert.assertNull(doc.get(new Path("a.x.y")));
+        Assert.assertNull(doc.get(new Path("a.b.0.c.d")));
+
+        KeyValueCursor<Path, JsonNode> c = doc.getAllNodes(new Path("a.b.0.c"));
+        Assert.assertTrue(c.hasNext());
+        c.next();
+        Assert.assertEquals(new Path("a.b.0.c"), c.getCurrentKey());
+        Assert.assertEquals(1, c.getCurrentValue().intValue());
+        Assert.assertFalse(c.hasNext());
+
+        c = JsonDoc.getAllNodes(doc.getRoot(), new Path("a.b.5.c"));
+        Assert.assertFalse(c.hasNext());
+
+        c = JsonDoc.getAllNodes(doc.getRoot(), new Path("a.b.*.c"));
+        int n = 0;
+        while (c.hasNext()) {
+            c.next();
+            n++;
+        }
+        Assert.assertEquals(2, n);
+    }
 }
@@ -18,6 +18,12 @@
  */
 package com.redhat.lightblue.util;
 
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -120,4 +126,35 @@ public class JsonUtilsTest {
         // TODO review the generated test code and remove the default call to fail.
         fail("The test case is a prototype.");
     }
+
+    @Test
+    public void testCodecRoundTrip() throws Exception {
+        ObjectNode node = nodeFactory.objectNode();
+        node.put("decimal", new BigDecimal("1.50"));
+        node.set("bigint", nodeFactory.numberNode(new BigInteger("123456789012345678901234567890")));
+        node.put("text", "value");
+        node.putArray("arr").add(1).add(true).addNull();
+        node.putObject("obj").put("x", 1);
+
+        JsonCodec codec = new JsonCodec(new JsonFactory(), nodeFactory);
+        JsonNode read = codec.read(codec.toBytes(node));
+        Assert.assertEquals(node, read);
+        Assert.assertEquals(2, read.get("decimal").decimalValue().scale());
+        Assert.assertEquals(node, codec.read(new ByteArrayInputStream(codec.toBytes(node))));
+        Assert.assertEquals(2, JsonCodec.TEXT.read(codec.toBytes(node)).get("decimal").decimalValue().scale());
+
+        // Binary JSON
+        byte[] smile = JsonCodec.SMILE.toBytes(node);
+        Assert.assertFalse(Arrays.equals(codec.toBytes(node), smile));
+        read = JsonCodec.SMILE.read(smile);
+        Assert.assertEquals(node, read);
+        Assert.assertEquals(2, read.get("decimal").decimalValue().scale());
+        Assert.assertEquals(node, JsonCodec.SMILE.read(new ByteArrayInputStream(smile)));
+        Assert.assertEquals("Smile", JsonCodec.SMILE.getFormatName());
+
+        // Same semantics as the text object mapper
+        Assert.assertEquals(JsonUtils.getObjectMapper().readTree(node.toString()),
+                JsonCodec.TEXT.read(node.toString().getBytes("UTF-8")));
+        Assert.assertEquals("JSON", JsonCodec.TEXT.getFormatName());
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+public class LazyJsonDocTest {
+
+    private static final String TEXT = "{ \"a\" : 1 , \"s\":\"x\\\"y,}\" ,\n"
+            + "\"obj\":{\"b\":[1,2,{\"c\":\"d\"}],\"e\":1.50},\"arr\": [ 1, 2 ] ,\"n\":null, \"t\" : true }";
+
+    private static LazyJsonDoc doc() throws Exception {
+        return new LazyJsonDoc(TEXT.getBytes("UTF-8"));
+    }
+
+    private static JsonNode expected() throws Exception {
+        return JsonUtils.json(TEXT);
+    }
+
+    @Test
+    public void getTest() throws Exception {
+        LazyJsonDoc doc = doc();
+        Assert.assertEquals(0, doc.getParsedFieldCount());
+        Assert.assertEquals(1, doc.get(new Path("a")).intValue());
+        Assert.assertEquals("x\"y,}", doc.get(new Path("s")).asText());
+        Assert.assertEquals("d", doc.get(new Path("obj.b.2.c")).asText());
+        Assert.assertEquals(2, doc.get(new Path("obj.e")).decimalValue().scale());
+        Assert.assertNull(doc.get(new Path("missing")));
+        Assert.assertNull(doc.get(new Path("obj.missing")));
+        Assert.assertEquals(3, doc.getParsedFieldCount());
+        Assert.assertFalse(doc.isParsed());
+
+        KeyValueCursor<Path, JsonNode> c = doc.getAllNodes(new Path("arr.1"));
+        Assert.assertTrue(c.hasNext());
+        c.next();
+        Assert.assertEquals(2, c.getCurrentValue().intValue());
+        Assert.assertFalse(doc.isParsed());
+
+        // Wildcards use the whole document
+        c = doc.getAllNodes(new Path("arr.*"));
+        int n = 0;
+        while (c.hasNext()) {
+            c.next();
+            n++;
+        }
+        Assert.assertEquals(2, n);
+        Assert.assertTrue(doc.isParsed());
+        Assert.assertEquals(expected(), doc.getRoot());
+    }
+
+    @Test
+    public void modifyTest() throws Exception {
+        LazyJsonDoc doc = doc();
+        doc.modify(new Path("obj.e"), JsonNodeFactory.instance.textNode("v"), false);
+        Assert.assertFalse(doc.isParsed());
+        Assert.assertEquals("v", doc.get(new Path("obj.e")).asText());
+
+        doc.modify(new Path("new"), JsonNodeFactory.instance.numberNode(5), false);
+        Assert.assertTrue(doc.isParsed());
+        Assert.assertEquals("v", doc.get(new Path("obj.e")).asText());
+        Assert.assertEquals(5, doc.get(new Path("new")).intValue());
+    }
+
+    @Test
+    public void writeTest() throws Exception {
+        LazyJsonDoc doc = doc();
+        doc.modify(new Path("obj.e"), JsonNodeFactory.instance.textNode("v"), false);
+
+        StringWriter out = new StringWriter();
+        JsonGenerator gen = new JsonFactory().createGenerator(out);
+        gen.writeStartArray();
+        doc.writeTo(gen);
+        doc().writeTo(gen);
+        gen.writeEndArray();
+        gen.close();
+        Assert.assertFalse(doc.isParsed());
+
+        JsonNode written = JsonUtils.json(out.toString());
+        JsonNode modified = expected();
+        new JsonDoc(modified).modify(new Path("obj.e"), JsonNodeFactory.instance.textNode("v"), false);
+        Assert.assertEquals(modified, written.get(0));
+        Assert.assertEquals(expected(), written.get(1));
+    }
+
+    @Test
+    public void copyTest() throws Exception {
+        LazyJsonDoc doc = doc();
+        JsonDoc copy = doc.copy();
+        Assert.assertEquals(expected(), copy.getRoot());
+        Assert.assertFalse(doc.isParsed());
+    }
+
+    @Test
+    public void selectTest() throws Exception {
+        LazyJsonDoc doc = doc();
+        doc.get(new Path("a"));
+        JsonDoc sel = doc.select(new HashSet<>(Arrays.asList("a", "arr", "missing")));
+        Assert.assertNull(sel.get(new Path("obj")));
+        Assert.assertEquals(2, sel.get(new Path("arr.1")).intValue());
+        Assert.assertEquals(2, ((LazyJsonDoc) sel).getParsedFieldCount());
+        Assert.assertEquals(1, doc.getParsedFieldCount());
+        Assert.assertEquals(JsonUtils.json("{\"a\":1,\"arr\":[1,2]}"), sel.getRoot());
+
+        doc.getRoot();
+        Assert.assertSame(doc, doc.select(new HashSet<>(Arrays.asList("a"))));
+    }
+
+    @Test
+    public void serializeTest() throws Exception {
+        LazyJsonDoc doc = doc();
+        doc.modify(new Path("a"), JsonNodeFactory.instance.numberNode(2), false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream os = new ObjectOutputStream(out)) {
+            os.writeObject(doc);
+        }
+        LazyJsonDoc read;
+        try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            read = (LazyJsonDoc) is.readObject();
+        }
+        Assert.assertEquals(0, read.getParsedFieldCount());
+        JsonNode modified = expected();
+        new JsonDoc(modified).modify(new Path("a"), JsonNodeFactory.instance.numberNode(2), false);
+        Assert.assertEquals(modified, read.getRoot());
+    }
+
+    @Test
+    public void nonObjectTest() throws Exception {
+        LazyJsonDoc doc = new LazyJsonDoc("[1,2]".getBytes("UTF-8"));
+        Assert.assertTrue(doc.isParsed());
+        Assert.assertEquals(2, doc.get(new Path("1")).intValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTest() throws Exception {
+        new LazyJsonDoc("{\"a\":1,".getBytes("UTF-8"));
+    }
+}
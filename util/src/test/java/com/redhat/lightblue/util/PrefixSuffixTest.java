@@ -68,4 +68,41 @@ public class PrefixSuffixTest {
         Assert.assertEquals("", p.suffix(-5).toString());
         Assert.assertEquals("", p.suffix(-6).toString());
     }
+
+    @Test
+    public void sharedSegmentsTest() {
+        MutablePath p = new MutablePath("zero.one.two.three.four");
+        Path prefix = p.prefix(-2).immutableCopy();
+        Path suffix = p.immutableCopy().suffix(-2);
+        p.setLast("x");
+        p.set(0, "y");
+        p.push("five");
+        Assert.assertEquals("y.one.two.three.x.five", p.toString());
+        Assert.assertEquals("zero.one.two", prefix.toString());
+        Assert.assertEquals("two.three.four", suffix.toString());
+
+        MutablePath q = new MutablePath(suffix);
+        q.pop();
+        q.push("1");
+        Assert.assertEquals("two.three.1", q.toString());
+        Assert.assertTrue(q.isIndex(2));
+        Assert.assertFalse(q.isIndex(1));
+        Assert.assertEquals("two.three.four", suffix.toString());
+        Assert.assertEquals(new Path("two.three.four"), suffix);
+        Assert.assertEquals(new Path("two.three.four").hashCode(), suffix.hashCode());
+    }
+
+    @Test
+    public void parseCacheTest() {
+        Path p1 = new Path("a.b.1");
+        Path p2 = new Path("a.b.1");
+        Assert.assertEquals(p1, p2);
+        Assert.assertSame(p1.toString(), p2.toString());
+        Assert.assertTrue(p1.isIndex(2));
+
+        MutablePath m = new MutablePath("a.b.1");
+        m.setLast(2);
+        Assert.assertEquals("a.b.2", m.toString());
+        Assert.assertEquals("a.b.1", new Path("a.b.1").toString());
+    }
 }